@@ -0,0 +1,124 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of a harness run, written as a JSON document so that runs
+ * can be compared by tools: the settings of the run, the load rate, and for
+ * every measurement its number of runs and results and its latency
+ * percentiles in microseconds.
+ */
+public class BenchmarkReport {
+
+	private final Map<String, Object> settings = new LinkedHashMap<String, Object>();
+	private final Map<String, Object> load = new LinkedHashMap<String, Object>();
+	private final List<LatencyRecorder> measurements = new ArrayList<LatencyRecorder>();
+	private final Map<String, Object> counters = new LinkedHashMap<String, Object>();
+
+	public void setSetting(String name, Object value) {
+		settings.put(name, value);
+	}
+
+	public void setLoad(long statements, long nanos) {
+		load.put("statements", statements);
+		load.put("seconds", nanos / 1e9);
+		load.put("statementsPerSecond", nanos > 0 ? statements * 1e9 / nanos : 0);
+	}
+
+	public void addMeasurement(LatencyRecorder recorder) {
+		measurements.add(recorder);
+	}
+
+	/**
+	 * Adds a counter of the store, such as those of its background tasks.
+	 */
+	public void setCounter(String name, Object value) {
+		counters.put(name, value);
+	}
+
+	public void write(File file) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			out.write(toJSON());
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	public String toJSON() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n");
+		json.append("  \"settings\": ");
+		appendObject(json, settings);
+		json.append(",\n  \"load\": ");
+		appendObject(json, load);
+		json.append(",\n  \"measurements\": {");
+
+		for (int i = 0; i < measurements.size(); ++i) {
+			LatencyRecorder recorder = measurements.get(i);
+
+			Map<String, Object> values = new LinkedHashMap<String, Object>();
+			values.put("count", recorder.getCount());
+			values.put("rows", recorder.getRows());
+			values.put("meanMicros", recorder.getCount() > 0 ? recorder.getTotalNanos() / recorder.getCount() / 1000 : 0);
+			values.put("p50Micros", recorder.getPercentile(50) / 1000);
+			values.put("p90Micros", recorder.getPercentile(90) / 1000);
+			values.put("p99Micros", recorder.getPercentile(99) / 1000);
+			values.put("maxMicros", recorder.getPercentile(100) / 1000);
+
+			json.append(i > 0 ? ",\n    " : "\n    ");
+			appendString(json, recorder.getName());
+			json.append(": ");
+			appendObject(json, values);
+		}
+
+		json.append("\n  },\n  \"counters\": ");
+		appendObject(json, counters);
+		json.append("\n}\n");
+
+		return json.toString();
+	}
+
+	private static void appendObject(StringBuilder json, Map<String, Object> values) {
+		json.append('{');
+		boolean first = true;
+		for (Map.Entry<String, Object> entry : values.entrySet()) {
+			if (!first)
+				json.append(", ");
+			first = false;
+
+			appendString(json, entry.getKey());
+			json.append(": ");
+			Object value = entry.getValue();
+			if (value instanceof Number || value instanceof Boolean)
+				json.append(value);
+			else
+				appendString(json, String.valueOf(value));
+		}
+		json.append('}');
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < 0x20)
+				json.append(String.format("\\u%04x", (int)c));
+			else
+				json.append(c);
+		}
+		json.append('"');
+	}
+}
@@ -0,0 +1,65 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openrdf.sail.hbase.util.ByteArray;
+
+/**
+ * Measures {@link ByteArray} as a hash key, as used by the range index (four
+ * byte predicate IDs) and the transaction buffer (sixteen byte triples).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ByteArrayBenchmark {
+
+	private static final int NUM_KEYS = 1024;
+
+	@Param({ "4", "16" })
+	public int keyLength;
+
+	private byte[][] keys;
+	private Map<ByteArray, Integer> map;
+
+	private int next;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		keys = new byte[NUM_KEYS][];
+		map = new HashMap<ByteArray, Integer>();
+		for (int i = 0; i < NUM_KEYS; ++i) {
+			keys[i] = new byte[keyLength];
+			for (int j = 0; j < keyLength; j += Bytes.SIZEOF_INT)
+				Bytes.putInt(keys[i], j, random.nextInt());
+			map.put(new ByteArray(keys[i]), i);
+		}
+	}
+
+	private byte[] nextKey() {
+		next = (next + 1) & (NUM_KEYS - 1);
+		return keys[next];
+	}
+
+	@Benchmark
+	public int hash() {
+		return new ByteArray(nextKey()).hashCode();
+	}
+
+	@Benchmark
+	public Integer lookup() {
+		return map.get(new ByteArray(nextKey()));
+	}
+}
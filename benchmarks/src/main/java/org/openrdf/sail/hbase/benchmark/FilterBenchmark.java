@@ -0,0 +1,86 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.sail.hbase.config.IndexSpec;
+import org.openrdf.sail.hbase.data.TripleIndex;
+import org.openrdf.sail.hbase.data.ValueTable;
+import org.openrdf.sail.hbase.data.filter.DistinctValueFilter;
+import org.openrdf.sail.hbase.data.filter.StatementFilter;
+
+/**
+ * Measures the server-side filters on the rows of the default
+ * <tt>csp/o</tt> index, as the region servers run them for every row of a
+ * scan. The rows are in key order, with few contexts, and one in sixteen
+ * has the predicate and object that the statement filter looks for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FilterBenchmark {
+
+	private static final int NUM_ROWS = 4096;
+	private static final int NUM_CONTEXTS = 8;
+
+	private KeyValue[] rows;
+
+	private StatementFilter statementFilter;
+	private byte[] contextMask;
+
+	@Setup
+	public void setUp() {
+		TripleIndex index = new TripleIndex("benchmark", new IndexSpec("csp", "o", null, "0060"), null);
+
+		Random random = new Random(42);
+		byte[] pred = Bytes.toBytes(0x0badcafe);
+		byte[] obj = Bytes.toBytes(0x0defaced);
+
+		rows = new KeyValue[NUM_ROWS];
+		for (int i = 0; i < NUM_ROWS; ++i) {
+			byte[] subj = Bytes.toBytes(random.nextInt());
+			byte[] ctx = Bytes.toBytes(random.nextInt(NUM_CONTEXTS) << 4);
+			boolean match = random.nextInt(16) == 0;
+			byte[] p = match ? pred : Bytes.toBytes(random.nextInt());
+			byte[] o = match ? obj : Bytes.toBytes(random.nextInt());
+
+			rows[i] = new KeyValue(index.getKey(subj, p, o, ctx), index.getFamily(subj, p, o, ctx),
+					index.getQualifier(subj, p, o, ctx), index.getValue(subj, p, o, ctx));
+		}
+		Arrays.sort(rows, KeyValue.COMPARATOR);
+
+		// fields in index order: c, s, p, o
+		statementFilter = new StatementFilter(new byte[][] { null, null, pred, obj });
+
+		contextMask = ValueTable.MAX_VALUE;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_ROWS)
+	public void statementFilter(Blackhole bh) {
+		for (KeyValue row : rows)
+			bh.consume(statementFilter.filterKeyValue(row));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_ROWS)
+	public void distinctValueFilter(Blackhole bh) {
+		DistinctValueFilter filter = new DistinctValueFilter(contextMask);
+		for (KeyValue row : rows) {
+			filter.reset();
+			bh.consume(filter.filterKeyValue(row));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openrdf.sail.hbase.util.IntObjectCache;
+
+/**
+ * Measures an {@link IntObjectCache} under the load of
+ * {@link LRUCacheBenchmark}, so that the two value caches can be compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IntObjectCacheBenchmark {
+
+	private static final int NUM_KEYS = 4096;
+
+	/**
+	 * The capacity of the cache; the value store's value cache holds 512.
+	 */
+	@Param({ "512", "4096" })
+	public int capacity;
+
+	private IntObjectCache<Object> cache;
+
+	@State(Scope.Thread)
+	public static class Reader {
+
+		private final Random random = new Random();
+
+		int nextKey() {
+			// skewed towards the low keys, as value lookups are
+			int r = random.nextInt(NUM_KEYS);
+			return (r * r / NUM_KEYS + 1) << 4;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		cache = new IntObjectCache<Object>(capacity);
+		for (int i = 1; i <= NUM_KEYS; ++i)
+			cache.put(i << 4, Integer.valueOf(i));
+	}
+
+	private Object read(Reader reader) {
+		int key = reader.nextKey();
+
+		Object value;
+		synchronized (cache) {
+			value = cache.get(key);
+		}
+
+		if (value == null) {
+			synchronized (cache) {
+				cache.put(key, Integer.valueOf(key));
+			}
+		}
+
+		return value;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object singleReader(Reader reader) {
+		return read(reader);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object fourReaders(Reader reader) {
+		return read(reader);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public Object reader(Reader reader) {
+		return read(reader);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public void writer(Reader reader) {
+		int key = reader.nextKey();
+		synchronized (cache) {
+			cache.put(key, Integer.valueOf(key));
+		}
+	}
+}
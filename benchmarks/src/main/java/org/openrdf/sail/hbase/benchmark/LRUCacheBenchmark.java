@@ -0,0 +1,110 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openrdf.sail.hbase.util.ByteArray;
+import org.openrdf.sail.hbase.util.LRUCache;
+
+/**
+ * Measures an {@link LRUCache} shared by concurrent readers, locked the way
+ * the value store locks its caches. The key set is larger than the cache, so
+ * that a share of the reads miss and replace an entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LRUCacheBenchmark {
+
+	private static final int NUM_KEYS = 4096;
+
+	/**
+	 * The capacity of the cache; the value store's value cache holds 512.
+	 */
+	@Param({ "512", "4096" })
+	public int capacity;
+
+	private ByteArray[] keys;
+	private LRUCache<ByteArray, Object> cache;
+
+	@State(Scope.Thread)
+	public static class Reader {
+
+		private final Random random = new Random();
+
+		int nextKey() {
+			// skewed towards the low keys, as value lookups are
+			int r = random.nextInt(NUM_KEYS);
+			return r * r / NUM_KEYS;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		keys = new ByteArray[NUM_KEYS];
+		for (int i = 0; i < NUM_KEYS; ++i)
+			keys[i] = new ByteArray(Bytes.toBytes(i << 4));
+
+		cache = new LRUCache<ByteArray, Object>(capacity);
+		for (int i = 0; i < NUM_KEYS; ++i)
+			cache.put(keys[i], keys[i]);
+	}
+
+	private Object read(Reader reader) {
+		ByteArray key = keys[reader.nextKey()];
+
+		Object value;
+		synchronized (cache) {
+			value = cache.get(key);
+		}
+
+		if (value == null) {
+			synchronized (cache) {
+				cache.put(key, key);
+			}
+		}
+
+		return value;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object singleReader(Reader reader) {
+		return read(reader);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object fourReaders(Reader reader) {
+		return read(reader);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public Object reader(Reader reader) {
+		return read(reader);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public Object writer(Reader reader) {
+		ByteArray key = keys[reader.nextKey()];
+		synchronized (cache) {
+			return cache.put(key, key);
+		}
+	}
+}
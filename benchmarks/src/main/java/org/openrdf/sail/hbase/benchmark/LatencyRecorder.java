@@ -0,0 +1,63 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Records the latencies and result sizes of the runs of one measurement.
+ */
+public class LatencyRecorder {
+
+	private final String name;
+
+	private long[] latencies = new long[64];
+	private int count;
+	private long rows;
+
+	public LatencyRecorder(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records a run that started at <tt>start</tt>, as by
+	 * {@link System#nanoTime()}, and returned <tt>rows</tt> results.
+	 */
+	public void record(long start, long rows) {
+		long latency = System.nanoTime() - start;
+		if (count == latencies.length)
+			latencies = Arrays.copyOf(latencies, count * 2);
+		latencies[count++] = latency;
+		this.rows += rows;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public long getTotalNanos() {
+		long total = 0;
+		for (int i = 0; i < count; ++i)
+			total += latencies[i];
+		return total;
+	}
+
+	/**
+	 * Gets a percentile of the latencies in nanoseconds, by the nearest rank.
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0)
+			return 0;
+
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		int rank = (int)Math.ceil(percentile / 100 * count);
+		return sorted[Math.max(rank - 1, 0)];
+	}
+}
@@ -0,0 +1,303 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.openrdf.cursor.Cursor;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.algebra.QueryModel;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.query.parser.QueryParserUtil;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.hbase.HBaseStore;
+import org.openrdf.sail.hbase.TaskStats;
+import org.openrdf.sail.hbase.config.HBaseStoreConfig;
+import org.openrdf.sail.hbase.config.IndexSpec;
+import org.openrdf.sail.hbase.data.PatternCache;
+import org.openrdf.store.StoreException;
+
+/**
+ * Loads a {@link SyntheticDataset} into a new store and measures, through
+ * the Sail API: the load rate, point lookups of all triples of a subject,
+ * star and path queries, <tt>size()</tt> and the listing of contexts. The
+ * results are written as a {@link BenchmarkReport}.
+ * <p>
+ * The store runs on an HBase mini-cluster started in this JVM, on the
+ * cluster configured on the classpath, or on the local backend. Settings are
+ * passed as <tt>name=value</tt> arguments:
+ * <ul>
+ * <li><tt>cluster</tt>: <tt>mini</tt> (default), <tt>external</tt> or
+ * <tt>local</tt></li>
+ * <li><tt>latency</tt>: the time in microseconds every request to the local
+ * backend takes (0)</li>
+ * <li><tt>prefetch</tt>: the maximum number of batches a scan reads ahead,
+ * see {@link HBaseStoreConfig#getScanPrefetch()} (0)</li>
+ * <li><tt>patternCache</tt>: the size in bytes of the cache of triple
+ * patterns, see {@link HBaseStoreConfig#getPatternCacheSize()} (0)</li>
+ * <li><tt>indexes</tt>: triple indexes in the form of
+ * {@link IndexSpec#parse(String)}, separated by <tt>;</tt>, e.g.
+ * <tt>csp/o;opc/s</tt>; the store's default indexes if not given</li>
+ * <li><tt>universities</tt>: the scale of the dataset (1)</li>
+ * <li><tt>batch</tt>: statements per transaction while loading (1000)</li>
+ * <li><tt>lookups</tt>: point lookups to run (1000)</li>
+ * <li><tt>queries</tt>: runs of every query (50)</li>
+ * <li><tt>warmup</tt>: untimed runs before every measurement (10)</li>
+ * <li><tt>seed</tt>: seed of the dataset and of the choice of subjects (42)</li>
+ * <li><tt>out</tt>: the report file (<tt>benchmark-report.json</tt>)</li>
+ * </ul>
+ */
+public class LoadQueryHarness {
+
+	private static final String PREFIXES = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
+			+ "PREFIX ub: <" + SyntheticDataset.NS + ">\n";
+
+	/**
+	 * The graduate students of a department, with their names and email
+	 * addresses.
+	 */
+	private static final String STAR_QUERY = PREFIXES
+			+ "SELECT ?x ?n ?e WHERE { ?x rdf:type ub:GraduateStudent . ?x ub:memberOf <%s> . "
+			+ "?x ub:name ?n . ?x ub:emailAddress ?e }";
+
+	/**
+	 * The students of the professors of a department who take a course of
+	 * their advisor.
+	 */
+	private static final String PATH_QUERY = PREFIXES
+			+ "SELECT ?s ?p ?c WHERE { ?p ub:worksFor <%s> . ?s ub:advisor ?p . "
+			+ "?p ub:teacherOf ?c . ?s ub:takesCourse ?c }";
+
+	private final Map<String, String> settings;
+	private final BenchmarkReport report = new BenchmarkReport();
+
+	public LoadQueryHarness(Map<String, String> settings) {
+		this.settings = settings;
+	}
+
+	private String get(String name, String defaultValue) {
+		String value = settings.get(name);
+		return value != null ? value : defaultValue;
+	}
+
+	private int getInt(String name, int defaultValue) {
+		return Integer.parseInt(get(name, String.valueOf(defaultValue)));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (eq < 0)
+				throw new IllegalArgumentException("Settings are name=value pairs: " + arg);
+			settings.put(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+
+		new LoadQueryHarness(settings).run();
+	}
+
+	public void run() throws Exception {
+		String clusterType = get("cluster", "mini");
+		boolean local = "local".equals(clusterType);
+		boolean mini = !local && !"external".equals(clusterType);
+		int universities = getInt("universities", 1);
+		long seed = getInt("seed", 42);
+		File out = new File(get("out", "benchmark-report.json"));
+
+		ArrayList<IndexSpec> indexes = null;
+		if (settings.containsKey("indexes")) {
+			indexes = new ArrayList<IndexSpec>();
+			for (String spec : settings.get("indexes").split(";"))
+				indexes.add(IndexSpec.parse(spec));
+		}
+
+		HBaseStoreConfig storeConf = new HBaseStoreConfig("benchmark" + System.currentTimeMillis(), indexes);
+		storeConf.setMetrics(true);
+		storeConf.setScanPrefetch(getInt("prefetch", 0));
+		storeConf.setPatternCacheSize(getInt("patternCache", 0));
+		if (local) {
+			storeConf.setBackend(HBaseStoreConfig.LOCAL_BACKEND);
+			storeConf.setBackendLatency(getInt("latency", 0));
+		}
+
+		report.setSetting("cluster", local ? "local" : mini ? "mini" : "external");
+		if (local)
+			report.setSetting("latencyMicros", storeConf.getBackendLatency());
+		report.setSetting("scanPrefetch", storeConf.getScanPrefetch());
+		report.setSetting("patternCacheSize", storeConf.getPatternCacheSize());
+		report.setSetting("catalog", storeConf.getCatalogName());
+		StringBuilder indexNames = new StringBuilder();
+		for (IndexSpec spec : storeConf.getTripleIndexes())
+			indexNames.append(indexNames.length() > 0 ? ";" : "").append(spec.getName());
+		report.setSetting("indexes", indexNames.toString());
+		report.setSetting("universities", universities);
+		report.setSetting("seed", seed);
+
+		HBaseTestingUtility cluster = null;
+		HBaseConfiguration hbaseConf = null;
+		if (mini) {
+			cluster = new HBaseTestingUtility();
+			cluster.startMiniCluster();
+			hbaseConf = new HBaseConfiguration(cluster.getConfiguration());
+		}
+		else if (!local) {
+			hbaseConf = new HBaseConfiguration();
+		}
+
+		try {
+			HBaseStore store = new HBaseStore(storeConf, hbaseConf);
+			store.initialize();
+			try {
+				SyntheticDataset dataset = new SyntheticDataset(universities, seed);
+				load(store, dataset);
+				measure(store, dataset, new Random(seed));
+
+				for (TaskStats stats : store.getTaskStats()) {
+					report.setCounter("tasks." + stats.getType() + ".completed", stats.getCompleted());
+					report.setCounter("tasks." + stats.getType() + ".inline", stats.getInline());
+					report.setCounter("tasks." + stats.getType() + ".waitMicros", stats.getWaitTime() / 1000);
+				}
+
+				PatternCache patternCache = store.getTripleTable().getPatternCache();
+				if (patternCache != null) {
+					report.setCounter("patternCache.hits", patternCache.getHits());
+					report.setCounter("patternCache.misses", patternCache.getMisses());
+					report.setCounter("patternCache.bytes", patternCache.getSize());
+				}
+			}
+			finally {
+				store.shutDown();
+			}
+		}
+		finally {
+			if (cluster != null)
+				cluster.shutdownMiniCluster();
+		}
+
+		report.write(out);
+		System.out.println(report.toJSON());
+	}
+
+	private void load(HBaseStore store, SyntheticDataset dataset) throws StoreException {
+		final int batch = getInt("batch", 1000);
+		final SailConnection conn = store.getConnection();
+		final LatencyRecorder commits = new LatencyRecorder("commit");
+
+		try {
+			final long[] count = new long[1];
+			long start = System.nanoTime();
+
+			conn.begin();
+			dataset.generate(store.getValueFactory(), new SyntheticDataset.Sink() {
+				public void add(Resource subj, URI pred, Value obj, Resource context) throws StoreException {
+					if (context != null)
+						conn.addStatement(subj, pred, obj, context);
+					else
+						conn.addStatement(subj, pred, obj);
+
+					if (++count[0] % batch == 0) {
+						long commitStart = System.nanoTime();
+						conn.commit();
+						commits.record(commitStart, batch);
+						conn.begin();
+					}
+				}
+			});
+			long commitStart = System.nanoTime();
+			conn.commit();
+			commits.record(commitStart, count[0] % batch);
+
+			report.setLoad(count[0], System.nanoTime() - start);
+			report.addMeasurement(commits);
+		}
+		finally {
+			conn.close();
+		}
+	}
+
+	private void measure(HBaseStore store, SyntheticDataset dataset, Random random) throws Exception {
+		int warmup = getInt("warmup", 10);
+		int lookups = getInt("lookups", 1000);
+		int queries = getInt("queries", 50);
+
+		List<URI> people = dataset.getPeople();
+		List<URI> departments = dataset.getDepartments();
+
+		SailConnection conn = store.getConnection();
+		try {
+			LatencyRecorder lookup = new LatencyRecorder("pointLookup");
+			for (int i = -warmup; i < lookups; ++i) {
+				URI subj = people.get(random.nextInt(people.size()));
+				long start = System.nanoTime();
+				long rows = drain(conn.getStatements(subj, null, null, false));
+				if (i >= 0)
+					lookup.record(start, rows);
+			}
+			report.addMeasurement(lookup);
+
+			report.addMeasurement(runQuery(conn, "starQuery", STAR_QUERY, departments, random, warmup, queries));
+			report.addMeasurement(runQuery(conn, "pathQuery", PATH_QUERY, departments, random, warmup, queries));
+
+			int rounds = Math.max(queries / 10, 1);
+
+			LatencyRecorder size = new LatencyRecorder("size");
+			for (int i = 0; i < rounds; ++i) {
+				long start = System.nanoTime();
+				long rows = conn.size(null, null, null, false);
+				size.record(start, rows);
+			}
+			report.addMeasurement(size);
+
+			LatencyRecorder contexts = new LatencyRecorder("contextIDs");
+			for (int i = 0; i < rounds; ++i) {
+				long start = System.nanoTime();
+				long rows = drain(conn.getContextIDs());
+				contexts.record(start, rows);
+			}
+			report.addMeasurement(contexts);
+		}
+		finally {
+			conn.close();
+		}
+	}
+
+	private LatencyRecorder runQuery(SailConnection conn, String name, String query, List<URI> departments,
+			Random random, int warmup, int runs)
+		throws Exception
+	{
+		LatencyRecorder recorder = new LatencyRecorder(name);
+		for (int i = -warmup; i < runs; ++i) {
+			URI dept = departments.get(random.nextInt(departments.size()));
+			QueryModel model = QueryParserUtil.parseQuery(QueryLanguage.SPARQL,
+					String.format(query, dept.stringValue()), null);
+
+			long start = System.nanoTime();
+			Cursor<? extends BindingSet> result = conn.evaluate(model, EmptyBindingSet.getInstance(), false);
+			long rows = drain(result);
+			if (i >= 0)
+				recorder.record(start, rows);
+		}
+		return recorder;
+	}
+
+	private static long drain(Cursor<?> cursor) throws StoreException {
+		long rows = 0;
+		try {
+			while (cursor.next() != null)
+				++rows;
+		}
+		finally {
+			cursor.close();
+		}
+		return rows;
+	}
+}
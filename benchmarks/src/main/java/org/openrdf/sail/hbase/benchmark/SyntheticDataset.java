@@ -0,0 +1,165 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.store.StoreException;
+
+/**
+ * Generates a university dataset in the style of LUBM: universities with
+ * departments, whose faculty teach courses and advise students, who are
+ * members of a department and take courses. The triples of a department are
+ * in a context of their own. The same scale and seed always give the same
+ * triples, in the same order.
+ */
+public class SyntheticDataset {
+
+	public static final String NS = "http://swat.cse.lehigh.edu/onto/univ-bench.owl#";
+
+	/**
+	 * Receives the generated triples.
+	 */
+	public interface Sink {
+
+		void add(Resource subj, URI pred, Value obj, Resource context) throws StoreException;
+	}
+
+	private static final int DEPARTMENTS = 15;
+	private static final int PROFESSORS = 20;
+	private static final int LECTURERS = 6;
+	private static final int COURSES_PER_FACULTY = 2;
+	private static final int UNDERGRADUATES_PER_FACULTY = 8;
+	private static final int GRADUATES_PER_FACULTY = 3;
+
+	private final int universities;
+	private final long seed;
+
+	private final List<URI> departments = new ArrayList<URI>();
+	private final List<URI> people = new ArrayList<URI>();
+
+	/**
+	 * @param universities
+	 *        The scale of the dataset: about 40 000 triples per university.
+	 */
+	public SyntheticDataset(int universities, long seed) {
+		this.universities = universities;
+		this.seed = seed;
+	}
+
+	/**
+	 * Gets the departments of the last generated dataset.
+	 */
+	public List<URI> getDepartments() {
+		return departments;
+	}
+
+	/**
+	 * Gets the faculty and students of the last generated dataset.
+	 */
+	public List<URI> getPeople() {
+		return people;
+	}
+
+	public void generate(ValueFactory vf, Sink sink) throws StoreException {
+
+		departments.clear();
+		people.clear();
+		Random random = new Random(seed);
+
+		URI type = RDF.TYPE;
+		URI name = vf.createURI(NS, "name");
+		URI email = vf.createURI(NS, "emailAddress");
+		URI age = vf.createURI(NS, "age");
+		URI subOrganizationOf = vf.createURI(NS, "subOrganizationOf");
+		URI worksFor = vf.createURI(NS, "worksFor");
+		URI memberOf = vf.createURI(NS, "memberOf");
+		URI teacherOf = vf.createURI(NS, "teacherOf");
+		URI takesCourse = vf.createURI(NS, "takesCourse");
+		URI advisor = vf.createURI(NS, "advisor");
+
+		URI university = vf.createURI(NS, "University");
+		URI department = vf.createURI(NS, "Department");
+		URI professor = vf.createURI(NS, "FullProfessor");
+		URI lecturer = vf.createURI(NS, "Lecturer");
+		URI course = vf.createURI(NS, "Course");
+		URI undergraduate = vf.createURI(NS, "UndergraduateStudent");
+		URI graduate = vf.createURI(NS, "GraduateStudent");
+
+		for (int u = 0; u < universities; ++u) {
+			String univNS = "http://www.University" + u + ".edu/";
+			URI univ = vf.createURI(univNS);
+			sink.add(univ, type, university, null);
+			sink.add(univ, name, vf.createLiteral("University" + u), null);
+
+			for (int d = 0; d < DEPARTMENTS; ++d) {
+				String deptNS = "http://www.Department" + d + ".University" + u + ".edu/";
+				URI dept = vf.createURI(deptNS);
+				departments.add(dept);
+
+				sink.add(dept, type, department, dept);
+				sink.add(dept, subOrganizationOf, univ, dept);
+				sink.add(dept, name, vf.createLiteral("Department" + d), dept);
+
+				int faculty = PROFESSORS + LECTURERS;
+				URI[] professors = new URI[PROFESSORS];
+				URI[] courses = new URI[faculty * COURSES_PER_FACULTY];
+
+				for (int f = 0; f < faculty; ++f) {
+					boolean isProfessor = f < PROFESSORS;
+					URI person = vf.createURI(deptNS, (isProfessor ? "FullProfessor" : "Lecturer") + f);
+					if (isProfessor)
+						professors[f] = person;
+					people.add(person);
+
+					sink.add(person, type, isProfessor ? professor : lecturer, dept);
+					addPerson(vf, sink, person, "Faculty" + f, deptNS, random, name, email, age, 30, dept);
+					sink.add(person, worksFor, dept, dept);
+
+					for (int c = 0; c < COURSES_PER_FACULTY; ++c) {
+						int courseNum = f * COURSES_PER_FACULTY + c;
+						URI courseURI = vf.createURI(deptNS, "Course" + courseNum);
+						courses[courseNum] = courseURI;
+
+						sink.add(courseURI, type, course, dept);
+						sink.add(courseURI, name, vf.createLiteral("Course" + courseNum), dept);
+						sink.add(person, teacherOf, courseURI, dept);
+					}
+				}
+
+				int students = faculty * (UNDERGRADUATES_PER_FACULTY + GRADUATES_PER_FACULTY);
+				for (int s = 0; s < students; ++s) {
+					boolean isGraduate = s < faculty * GRADUATES_PER_FACULTY;
+					URI person = vf.createURI(deptNS, (isGraduate ? "GraduateStudent" : "UndergraduateStudent") + s);
+					people.add(person);
+
+					sink.add(person, type, isGraduate ? graduate : undergraduate, dept);
+					addPerson(vf, sink, person, "Student" + s, deptNS, random, name, email, age, 18, dept);
+					sink.add(person, memberOf, dept, dept);
+
+					int numCourses = 2 + random.nextInt(3);
+					for (int c = 0; c < numCourses; ++c)
+						sink.add(person, takesCourse, courses[random.nextInt(courses.length)], dept);
+
+					if (isGraduate)
+						sink.add(person, advisor, professors[random.nextInt(professors.length)], dept);
+				}
+			}
+		}
+	}
+
+	private static void addPerson(ValueFactory vf, Sink sink, URI person, String personName, String deptNS,
+			Random random, URI name, URI email, URI age, int minAge, URI dept)
+		throws StoreException
+	{
+		sink.add(person, name, vf.createLiteral(personName), dept);
+		sink.add(person, email, vf.createLiteral(personName + "@" + deptNS.substring("http://www.".length())), dept);
+		sink.add(person, age, vf.createLiteral(String.valueOf(minAge + random.nextInt(40)), XMLSchema.INTEGER), dept);
+	}
+}
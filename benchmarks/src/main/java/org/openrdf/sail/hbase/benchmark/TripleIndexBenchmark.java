@@ -0,0 +1,128 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openrdf.sail.hbase.config.IndexSpec;
+import org.openrdf.sail.hbase.data.TripleIndex;
+import org.openrdf.sail.hbase.data.ValueTable;
+
+/**
+ * Measures the encoding of triples into the rows of a triple index and
+ * their decoding, for the default indexes and a salted one. The
+ * <tt>reused</tt> variants decode into and encode through buffers that are
+ * kept across rows, as scans and batch writes do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TripleIndexBenchmark {
+
+	private static final int NUM_TRIPLES = 1024;
+
+	/**
+	 * The index: key fields, qualifier fields and family field bits,
+	 * optionally followed by a salt field and salt bits.
+	 */
+	@Param({ "csp/o/0060", "opc/s/0600", "spc/o/0000/s/4" })
+	public String index;
+
+	private TripleIndex tripleIndex;
+
+	private byte[][][] triples;
+	private KeyValue[] rows;
+
+	private int next;
+
+	private final byte[][] valueIDs = new byte[4][ValueTable.NUM_VALUE_BYTES];
+	private final int[] ids = new int[4];
+	private byte[] buffer;
+
+	@Setup
+	public void setUp() {
+		String[] parts = index.split("/");
+		IndexSpec spec = parts.length > 3
+				? new IndexSpec(parts[0], parts[1], null, parts[2], parts[3].charAt(0), Integer.parseInt(parts[4]))
+				: new IndexSpec(parts[0], parts[1], null, parts[2]);
+		tripleIndex = new TripleIndex("benchmark", spec, null);
+		buffer = new byte[tripleIndex.getBufferLength()];
+
+		Random random = new Random(42);
+		triples = new byte[NUM_TRIPLES][][];
+		rows = new KeyValue[NUM_TRIPLES];
+		for (int i = 0; i < NUM_TRIPLES; ++i) {
+			byte[][] ids = new byte[4][];
+			for (int j = 0; j < 4; ++j)
+				ids[j] = Bytes.toBytes(random.nextInt());
+			triples[i] = ids;
+
+			rows[i] = new KeyValue(
+					tripleIndex.getKey(ids[0], ids[1], ids[2], ids[3]),
+					tripleIndex.getFamily(ids[0], ids[1], ids[2], ids[3]),
+					tripleIndex.getQualifier(ids[0], ids[1], ids[2], ids[3]),
+					tripleIndex.getValue(ids[0], ids[1], ids[2], ids[3]));
+		}
+	}
+
+	private int nextIndex() {
+		next = (next + 1) & (NUM_TRIPLES - 1);
+		return next;
+	}
+
+	@Benchmark
+	public byte[] getKey() {
+		byte[][] ids = triples[nextIndex()];
+		return tripleIndex.getKey(ids[0], ids[1], ids[2], ids[3]);
+	}
+
+	@Benchmark
+	public byte[] getStartKey() {
+		byte[][] ids = triples[nextIndex()];
+		return tripleIndex.getStartKey(ids[0], ids[1], null, null);
+	}
+
+	@Benchmark
+	public byte[][] getFamilies() {
+		byte[][] ids = triples[nextIndex()];
+		return tripleIndex.getFamilies(ids[0], ids[1], null, null);
+	}
+
+	@Benchmark
+	public byte[][] getValueIDs() {
+		return tripleIndex.getValueIDs(rows[nextIndex()]);
+	}
+
+	@Benchmark
+	public byte[][] getValueIDsReused() {
+		return tripleIndex.getValueIDs(rows[nextIndex()], valueIDs);
+	}
+
+	@Benchmark
+	public int[] getIDs() {
+		return tripleIndex.getIDs(rows[nextIndex()], new int[4]);
+	}
+
+	@Benchmark
+	public int[] getIDsReused() {
+		return tripleIndex.getIDs(rows[nextIndex()], ids);
+	}
+
+	@Benchmark
+	public Put getPut() throws IOException {
+		byte[][] ids = triples[nextIndex()];
+		return tripleIndex.getPut(ids[0], ids[1], ids[2], ids[3], HConstants.LATEST_TIMESTAMP, buffer);
+	}
+}
@@ -0,0 +1,111 @@
+package org.openrdf.sail.hbase.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.sail.hbase.data.HBaseTableFactory;
+import org.openrdf.sail.hbase.data.ValueTable;
+
+/**
+ * Measures the encoding of URIs and literals into the rows of the value
+ * table, and their decoding, as done by the value store for every value
+ * that misses its caches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueCodecBenchmark {
+
+	private static final byte[] NAMESPACE_ID = new byte[] { 0x12, 0x34, 0x56, 0x70 };
+	private static final byte[] DATATYPE_ID = new byte[] { 0x65, 0x43, 0x21, 0x00 };
+
+	/**
+	 * The length of the labels in characters.
+	 */
+	@Param({ "8", "64", "512" })
+	public int labelLength;
+
+	private String localName;
+	private String label;
+
+	private KeyValue uriRow;
+	private KeyValue plainLiteralRow;
+	private KeyValue languageLiteralRow;
+	private KeyValue typedLiteralRow;
+
+	@Setup
+	public void setUp() {
+		StringBuilder text = new StringBuilder(labelLength);
+		for (int i = 0; i < labelLength; ++i)
+			text.append((char)('a' + i % 26));
+
+		localName = "resource" + labelLength;
+		label = text.toString();
+
+		uriRow = createRow(ValueTable.encodeURI(NAMESPACE_ID, localName));
+		plainLiteralRow = createRow(ValueTable.encodeLiteral(null, null, label));
+		languageLiteralRow = createRow(ValueTable.encodeLiteral(null, "en", label));
+		typedLiteralRow = createRow(ValueTable.encodeLiteral(DATATYPE_ID, null, label));
+	}
+
+	private static KeyValue createRow(byte[] data) {
+		return new KeyValue(Bytes.toBytes(0x12345670), HBaseTableFactory.FAMILY_NAMES[0], new byte[] { 1 }, data);
+	}
+
+	@Benchmark
+	public byte[] encodeURI() {
+		return ValueTable.encodeURI(NAMESPACE_ID, localName);
+	}
+
+	@Benchmark
+	public byte[] encodePlainLiteral() {
+		return ValueTable.encodeLiteral(null, null, label);
+	}
+
+	@Benchmark
+	public byte[] encodeLanguageLiteral() {
+		return ValueTable.encodeLiteral(null, "en", label);
+	}
+
+	@Benchmark
+	public byte[] encodeTypedLiteral() {
+		return ValueTable.encodeLiteral(DATATYPE_ID, null, label);
+	}
+
+	@Benchmark
+	public void decodeURI(Blackhole bh) {
+		bh.consume(ValueTable.getNamespaceID(uriRow));
+		bh.consume(ValueTable.getLocalName(uriRow));
+	}
+
+	@Benchmark
+	public void decodePlainLiteral(Blackhole bh) {
+		decodeLiteral(plainLiteralRow, bh);
+	}
+
+	@Benchmark
+	public void decodeLanguageLiteral(Blackhole bh) {
+		decodeLiteral(languageLiteralRow, bh);
+	}
+
+	@Benchmark
+	public void decodeTypedLiteral(Blackhole bh) {
+		decodeLiteral(typedLiteralRow, bh);
+	}
+
+	private static void decodeLiteral(KeyValue row, Blackhole bh) {
+		bh.consume(ValueTable.getDatatypeID(row));
+		bh.consume(ValueTable.getLanguage(row));
+		bh.consume(ValueTable.getLabel(row));
+	}
+}
@@ -4,14 +4,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import org.apache.hadoop.hbase.client.Delete;
-import org.apache.hadoop.hbase.client.HTable;
-import org.apache.hadoop.hbase.client.Put;
-import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.openrdf.OpenRDFUtil;
 import org.openrdf.cursor.CollectionCursor;
 import org.openrdf.cursor.Cursor;
@@ -30,7 +25,6 @@ import org.openrdf.query.algebra.evaluation.impl.CompareOptimizer;
 import org.openrdf.query.algebra.evaluation.impl.ConjunctiveConstraintSplitter;
 import org.openrdf.query.algebra.evaluation.impl.ConstantOptimizer;
 import org.openrdf.query.algebra.evaluation.impl.DisjunctiveConstraintOptimizer;
-import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
 import org.openrdf.query.algebra.evaluation.impl.FilterOptimizer;
 import org.openrdf.query.algebra.evaluation.impl.QueryModelPruner;
 import org.openrdf.query.algebra.evaluation.impl.SameTermFilterOptimizer;
@@ -38,6 +32,8 @@ import org.openrdf.query.algebra.evaluation.util.QueryOptimizerList;
 import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
 import org.openrdf.query.impl.EmptyBindingSet;
 import org.openrdf.sail.hbase.data.HBaseStatementCursor;
+import org.openrdf.sail.hbase.data.MutationBuffer;
+import org.openrdf.sail.hbase.evaluation.HBaseEvaluationStrategy;
 import org.openrdf.sail.hbase.data.TripleTable;
 import org.openrdf.sail.hbase.data.ValueTable;
 import org.openrdf.sail.helpers.DefaultSailChangedEvent;
@@ -50,7 +46,11 @@ public class HBaseConnection extends SailConnectionBase {
 
 	protected final HBaseStore store;
 	
-	protected HashMap<String, HTable> tables;
+	/**
+	 * The changes of the current transaction, <tt>null</tt> in auto-commit
+	 * mode.
+	 */
+	private MutationBuffer buffer;
 	private volatile DefaultSailChangedEvent sailChangedEvent;
 
 	/*--------------*
@@ -61,7 +61,6 @@ public class HBaseConnection extends SailConnectionBase {
 		super();
 		
 		this.store = store;
-		this.tables = new HashMap<String, HTable>(this.store.getTripleTable().getIndexes().length + 2);
 
 		this.sailChangedEvent = new DefaultSailChangedEvent(store);
 
@@ -93,7 +92,7 @@ public class HBaseConnection extends SailConnectionBase {
 
 		HBaseTripleSource tripleSource = new HBaseTripleSource(store, this,
 				includeInferred, !isAutoCommit());
-		EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(
+		HBaseEvaluationStrategy strategy = new HBaseEvaluationStrategy(
 				tripleSource, query);
 
 		QueryOptimizerList optimizerList = new QueryOptimizerList();
@@ -159,6 +158,19 @@ public class HBaseConnection extends SailConnectionBase {
 	public long size(Resource subj, URI pred, Value obj,
 			boolean includeInferred, Resource... contexts)
 			throws StoreException {
+		if (hasPendingChanges()) {
+			// the indexes do not know the transaction's changes yet
+			Cursor<? extends Statement> statements = getStatements(subj, pred, obj, includeInferred, contexts);
+			try {
+				long size = 0L;
+				while (statements.next() != null)
+					++size;
+				return size;
+			} finally {
+				statements.close();
+			}
+		}
+		
 		try {
 			ValueStore valueStore = store.getValueStore();
 
@@ -210,53 +222,19 @@ public class HBaseConnection extends SailConnectionBase {
 		return store.getNamespaceTable().getNamespace(prefix);
 	}
 
-	protected void setAutoFlush(boolean autoFlush) {
-		for (HTable table : this.tables.values())
-			table.setAutoFlush(autoFlush);
-	}
-
-	public HTable getHTable(String tableName) {
-		if (!this.tables.containsKey(tableName))
-		{
-			HTable table = this.store.getHTable(tableName);
-			table.setAutoFlush(this.isAutoCommit());
-			try {
-				table.setWriteBufferSize(2 << 20);
-			}
-			catch (IOException ioe) {
-				logger.error("Error setting the write buffer size", ioe);
-			}
-						
-			this.tables.put(tableName, table);
-		}
-
-		return this.tables.get(tableName);
-	}
-
-	public void putHTable(HTable table) {
-		String tableName = Bytes.toString(table.getTableName());
-		if (this.tables.containsKey(tableName))
-			this.tables.remove(tableName);
-
-		this.store.putHTable(table);
+	/**
+	 * Gets the calling thread's handle of a table; transactions are written
+	 * through {@link #getMutationBuffer()}, so it flushes right away.
+	 */
+	public HTableInterface getHTable(String tableName) throws IOException {
+		return this.store.getHTable(tableName);
 	}
 
 	@Override
 	public void begin() throws StoreException {
 		super.begin();
 
-		/*
-		if (this.puts == null)
-			this.puts = new HashMap<String, ArrayList<Put>>(this.store
-					.getTripleTable().getIndexes().length);
-
-		if (this.deletes == null)
-			this.deletes = new HashMap<String, ArrayList<Delete>>(this.store
-					.getTripleTable().getIndexes().length);
-		*/
-		
-		for (HTable table : this.tables.values())
-			table.setAutoFlush(false);
+		this.buffer = new MutationBuffer();
 	}
 
 	@Override
@@ -266,15 +244,11 @@ public class HBaseConnection extends SailConnectionBase {
 			throw new StoreException("Transaction not started; cannot commit.");
 
 		try {
-			//for (Map.Entry<String, ArrayList<Put>> p : this.puts.entrySet())
-			//	this.getHTable(p.getKey()).put(p.getValue());
-			//for (Map.Entry<String, ArrayList<Delete>> d : this.deletes.entrySet())
-			//	this.getHTable(d.getKey()).delete(d.getValue());
-
-			for (HTable table : this.tables.values()) {
-				table.flushCommits();
-				table.setAutoFlush(true);
-			}
+			// the buffer is kept until it is written, so that a failed commit
+			// can be retried or rolled back
+			if (!buffer.isEmpty())
+				store.getTripleTable().flush(this, buffer);
+			this.buffer = null;
 
 			super.commit();
 
@@ -298,11 +272,8 @@ public class HBaseConnection extends SailConnectionBase {
 			throw new StoreException("Transaction not started; cannot commit.");
 
 		try {
-			//for (ArrayList<Put> p : this.puts.values())
-			//	p.clear();
-
-			//for (ArrayList<Delete> d : this.deletes.values())
-			//	d.clear();
+			// nothing has been written yet
+			this.buffer = null;
 
 			super.rollback();
 
@@ -314,22 +285,24 @@ public class HBaseConnection extends SailConnectionBase {
 			throw e;
 		}
 	}
-/*
-	public void addPut(String tableName, Put put) {
-		
-		if (!this.puts.containsKey(tableName))
-			this.puts.put(tableName, new ArrayList<Put>());
-
-		this.puts.get(tableName).add(put);
+	/**
+	 * Gets the changes of the current transaction, which the triple table
+	 * collects instead of writing them.
+	 * 
+	 * @return The changes, or <tt>null</tt> in auto-commit mode.
+	 */
+	public MutationBuffer getMutationBuffer() {
+		return buffer;
 	}
 
-	public void addDelete(String tableName, Delete del) {
-		if (!this.deletes.containsKey(tableName))
-			this.deletes.put(tableName, new ArrayList<Delete>());
-
-		this.deletes.get(tableName).add(del);
+	/**
+	 * Checks whether the current transaction has changes that have not been
+	 * written to the store yet.
+	 */
+	public boolean hasPendingChanges() {
+		return buffer != null && !buffer.isEmpty();
 	}
-*/
+
 	public void addStatement(Resource subj, URI pred, Value obj, Resource... contexts) throws StoreException {
 		addStatement(subj, pred, obj, true, contexts);
 	}
@@ -531,17 +504,16 @@ public class HBaseConnection extends SailConnectionBase {
 	@Override
 	public void close() throws StoreException {
 
-		try {
-			for (HTable table : this.tables.values()) {
-				if (!table.isAutoFlush())
-					table.flushCommits();
+		// an uncommitted transaction is discarded
+		this.buffer = null;
 
-				this.store.putHTable(table);
-			}
+		super.close();
+
+		// connections are often used by threads that come and go
+		try {
+			this.store.releaseHTables();
 		} catch (IOException ioe) {
 			throw new HBaseException(ioe);
 		}
-
-		super.close();
 	}
 }
@@ -3,18 +3,16 @@ package org.openrdf.sail.hbase;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.hadoop.hbase.HBaseConfiguration;
-import org.apache.hadoop.hbase.client.HTable;
-import org.apache.hadoop.hbase.client.HTablePool;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.openrdf.OpenRDFUtil;
 import org.openrdf.cursor.Cursor;
 import org.openrdf.cursor.EmptyCursor;
@@ -29,9 +27,17 @@ import org.openrdf.query.algebra.evaluation.cursors.UnionCursor;
 import org.openrdf.sail.NotifyingSailConnection;
 import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.hbase.config.HBaseStoreConfig;
+import org.openrdf.sail.hbase.config.IndexSpec;
 import org.openrdf.sail.hbase.data.HBaseStatementCursor;
+import org.openrdf.sail.hbase.data.HBaseBackend;
 import org.openrdf.sail.hbase.data.HBaseTableFactory;
+import org.openrdf.sail.hbase.data.IndexStateTable;
+import org.openrdf.sail.hbase.data.LocalBackend;
 import org.openrdf.sail.hbase.data.NamespaceTable;
+import org.openrdf.sail.hbase.data.RangeIndexTable;
+import org.openrdf.sail.hbase.data.StorageBackend;
+import org.openrdf.sail.hbase.data.StorageMetrics;
+import org.openrdf.sail.hbase.data.TextIndexTable;
 import org.openrdf.sail.hbase.data.TripleTable;
 import org.openrdf.sail.hbase.data.ValueTable;
 import org.openrdf.sail.helpers.NotifyingSailBase;
@@ -45,33 +51,50 @@ public class HBaseStore extends SailBase {
 	private ValueStore values;
 	private TripleTable triples;
 	private NamespaceTable namespaces;
+	private RangeIndexTable ranges;
+	private TextIndexTable text;
 
-	private HBaseConfiguration hbaseConf;
-	private HTablePool tablePool;
+	private StorageBackend backend;
+	private HBaseTableFactory tableFactory;
 	
-	private Thread[] threads;
-	private BlockingQueue<Runnable> queue;
-	private volatile boolean shutDown = false;
+	private StoreExecutor executor;
 	
 	public HBaseStore() throws StoreException {
 		this(new HBaseStoreConfig());
 	}
 
 	public HBaseStore(HBaseStoreConfig storeConf) throws StoreException {
+		this(storeConf, new HBaseConfiguration());
+	}
+
+	/**
+	 * Creates a store on the cluster of the supplied configuration, rather
+	 * than on the one configured on the classpath, unless the store is
+	 * configured to run on the local backend.
+	 */
+	public HBaseStore(HBaseStoreConfig storeConf, HBaseConfiguration hbaseConf) throws StoreException {
+		this(storeConf, createBackend(storeConf, hbaseConf));
+	}
+
+	/**
+	 * Creates a store on the supplied storage backend.
+	 */
+	public HBaseStore(HBaseStoreConfig storeConf, StorageBackend backend) throws StoreException {
 		super();
 
 		this.conf = storeConf;
+		if (this.conf.isMetrics())
+			StorageMetrics.setEnabled(true);
 
 		try {
-			this.hbaseConf = new HBaseConfiguration();
-			this.tablePool = new HTablePool();
-
-			HBaseTableFactory tableFactory = new HBaseTableFactory(this, this.conf,
-					this.hbaseConf);
+			this.backend = backend;
+			this.tableFactory = new HBaseTableFactory(this, this.conf, this.backend);
 			
 			this.namespaces = tableFactory.getNamespaceTable();
 			this.values = new ValueStore(this, tableFactory.getValueTable());
 			this.triples = tableFactory.getTripleTable();
+			this.ranges = tableFactory.getRangeIndexTable();
+			this.text = tableFactory.getTextIndexTable();
 		} catch (IOException ioe) {
 			throw new StoreException(ioe);
 		}
@@ -81,46 +104,63 @@ public class HBaseStore extends SailBase {
 		return conf;
 	}
 	
+	private static StorageBackend createBackend(HBaseStoreConfig storeConf, HBaseConfiguration hbaseConf)
+		throws StoreException
+	{
+		if (HBaseStoreConfig.LOCAL_BACKEND.equals(storeConf.getBackend()))
+			return new LocalBackend(storeConf.getBackendLatency());
+
+		try {
+			return new HBaseBackend(hbaseConf, storeConf.getWriteBufferSize());
+		} catch (IOException ioe) {
+			throw new StoreException(ioe);
+		}
+	}
+	
+	/**
+	 * Gets the configuration of the cluster the store runs on, or
+	 * <tt>null</tt> if it does not run on HBase.
+	 */
 	public HBaseConfiguration getHBaseConfiguration() {
-		return this.hbaseConf;
+		if (backend instanceof HBaseBackend)
+			return ((HBaseBackend)backend).getConfiguration();
+		return null;
 	}
 	
-	public HTable getHTable(String tableName)
-	{
-		return this.tablePool.getTable(tableName);
+	public StorageBackend getStorageBackend() {
+		return backend;
 	}
-
-	public void putHTable(HTable table)
+	
+	/**
+	 * Applies the storage profiles of the configuration to the existing
+	 * tables of the store.
+	 */
+	public void alterTables() throws StoreException {
+		try {
+			tableFactory.alterTables();
+		} catch (IOException ioe) {
+			throw new StoreException(ioe);
+		}
+	}
+	
+	/**
+	 * Gets the calling thread's handle of a table, see
+	 * {@link StorageBackend#getTable(String)}.
+	 */
+	public HTableInterface getHTable(String tableName) throws IOException
 	{
-		this.tablePool.putTable(table);
-	}	
+		return this.backend.getTable(tableName);
+	}
 	
-	private void initializeWorkerThreads()
+	/**
+	 * Releases the calling thread's table handles, see
+	 * {@link StorageBackend#releaseTables()}.
+	 */
+	public void releaseHTables() throws IOException
 	{
-		final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(8); 
-		this.queue = queue;
-		
-		this.threads = new Thread[4];
-		for (int i = 0; i < 4; ++i) {
-			this.threads[i] = new Thread(
-				new Runnable() {
-					@Override
-					public void run() {
-						while (!shutDown) {
-							try {
-								queue.take().run();
-							}
-							catch (InterruptedException ie) {
-								logger.error("Thread: " + Thread.currentThread().getName() + "was interrupted while waiting to take a new task.");
-							}
-						}
-					}					
-				}, "Store Worker " + i);
-			
-			this.threads[i].start();
-		}
+		this.backend.releaseTables();
 	}
-
+	
 	@Override
 	protected SailConnection getConnectionInternal()
 			throws StoreException {
@@ -135,23 +175,35 @@ public class HBaseStore extends SailBase {
 
 	@Override
 	public void initialize() throws StoreException {
-		this.initializeWorkerThreads();
+		this.executor = new StoreExecutor(conf.getWorkerThreads(), conf.getWorkerQueueSize());
+		
+		try {
+			IndexStateTable states = tableFactory.getIndexStateTable();
+			this.triples.buildIndexes(states, conf.getIndexBuildThreads(), conf.getIndexBuildRate());
+			if (this.ranges != null)
+				this.ranges.build(states, conf.getIndexBuildRate());
+			if (this.text != null)
+				this.text.build(states, conf.getIndexBuildRate());
+		} catch (IOException ioe) {
+			throw new StoreException(ioe);
+		}
 	}
 
 	@Override
 	protected void shutDownInternal() throws StoreException {
-		this.shutDown = true;
+		this.triples.stopBuilding();
+		if (this.ranges != null)
+			this.ranges.stopBuilding();
+		if (this.text != null)
+			this.text.stopBuilding();
 		
-		for (int i = 0; i < this.threads.length; ++i) {
-			try {
-				this.queue.put(
-					new Runnable() { 
-						public void run() {}
-					});
-			}
-			catch (InterruptedException ie) {
-				logger.error("Thread: " + Thread.currentThread().getName() + "was interrupted while waiting to put end tasks.");
-			}
+		if (this.executor != null)
+			this.executor.shutDown();
+		
+		try {
+			this.backend.close();
+		} catch (IOException ioe) {
+			throw new StoreException(ioe);
 		}
 	}
 
@@ -173,6 +225,20 @@ public class HBaseStore extends SailBase {
 		return values;
 	}
 
+	/**
+	 * Gets the range index, or <tt>null</tt> if the store has none.
+	 */
+	public RangeIndexTable getRangeIndexTable() {
+		return ranges;
+	}
+
+	/**
+	 * Gets the text index, or <tt>null</tt> if the store has none.
+	 */
+	public TextIndexTable getTextIndexTable() {
+		return text;
+	}
+
 	public TripleTable getTripleTable() {
 		return triples;
 	}
@@ -183,12 +249,80 @@ public class HBaseStore extends SailBase {
 		
 	public void execute(Runnable r)
 	{
-		try {
-			queue.put(r);
-		}
-		catch (InterruptedException ie) {
-			logger.error("Thread: " + Thread.currentThread().getName() + "was interrupted while waiting to put a new task.");
-		}
+		execute(StoreExecutor.OTHER, r);
+	}
+	
+	/**
+	 * Runs a task on the store's executor, or in the caller's thread if the
+	 * store is not initialized.
+	 * 
+	 * @param type
+	 *        The type of the task, under which it is counted.
+	 */
+	public void execute(String type, Runnable r)
+	{
+		StoreExecutor executor = this.executor;
+		if (executor != null)
+			executor.execute(type, r);
+		else
+			r.run();
+	}
+		
+	public <T> Future<T> submit(Callable<T> task)
+	{
+		return submit(StoreExecutor.OTHER, task);
+	}
+	
+	/**
+	 * Runs a task on the store's executor, see {@link StoreExecutor}.
+	 * 
+	 * @param type
+	 *        The type of the task, under which it is counted.
+	 * @return The future result of the task.
+	 */
+	public <T> Future<T> submit(String type, Callable<T> task)
+	{
+		StoreExecutor executor = this.executor;
+		if (executor != null)
+			return executor.submit(type, task);
+		
+		FutureTask<T> future = new FutureTask<T>(task);
+		future.run();
+		return future;
+	}
+	
+	/**
+	 * Starts a long task on the store's executor, see
+	 * {@link StoreExecutor#start(String, Runnable)}. The store must be
+	 * initialized.
+	 */
+	public Future<?> start(String type, Runnable r)
+	{
+		StoreExecutor executor = this.executor;
+		if (executor == null)
+			throw new IllegalStateException("Store is not initialized");
+		return executor.start(type, r);
+	}
+	
+	/**
+	 * Checks whether the store's executor has been shut down and runs no
+	 * task any more, see {@link StoreExecutor#isTerminated()}.
+	 */
+	public boolean isExecutorTerminated()
+	{
+		StoreExecutor executor = this.executor;
+		return executor != null && executor.isTerminated();
+	}
+	
+	/**
+	 * Gets the counters of the tasks the store has run, one per task type.
+	 */
+	public Collection<TaskStats> getTaskStats()
+	{
+		StoreExecutor executor = this.executor;
+		if (executor == null)
+			return Collections.emptyList();
+		return executor.getStats();
 	}
 		
 	protected List<byte[]> getContextIDs(Resource... contexts)
@@ -299,8 +433,42 @@ public class HBaseStore extends SailBase {
 		}
 	}
 
-	public void setTripleIndexes(String tripleIndexes) {
+	/**
+	 * Adds the given triple indexes, e.g. <tt>"cpos/ ospc/"</tt>, to the
+	 * store. Indexes that the store does not have yet are filled from an
+	 * existing index in the background and are used for queries once they are
+	 * complete. Existing indexes are kept.
+	 */
+	public synchronized void setTripleIndexes(String tripleIndexes) throws StoreException {
+
+		List<String> names = new ArrayList<String>();
+		for (IndexSpec indexSpec : conf.getTripleIndexes())
+			names.add(indexSpec.getName());
 
+		try {
+			for (String spec : tripleIndexes.trim().split("[,\\s]+")) {
+				if (spec.length() == 0)
+					continue;
+
+				IndexSpec indexSpec = IndexSpec.parse(spec);
+				if (names.contains(indexSpec.getName()))
+					continue;
+
+				tableFactory.createTripleIndex(indexSpec);
+				conf.addTripleIndex(indexSpec);
+				triples.addIndex(indexSpec);
+				names.add(indexSpec.getName());
+			}
+
+			triples.buildIndexes(tableFactory.getIndexStateTable(),
+					conf.getIndexBuildThreads(), conf.getIndexBuildRate());
+		}
+		catch (IOException ioe) {
+			throw new StoreException(ioe);
+		}
+		catch (IllegalArgumentException iae) {
+			throw new StoreException(iae);
+		}
 	}
 
 }
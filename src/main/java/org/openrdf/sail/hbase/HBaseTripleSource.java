@@ -50,6 +50,22 @@ public class HBaseTripleSource implements TripleSource {
 		}
 	}
 
+	public HBaseStore getStore() {
+		return store;
+	}
+
+	public HBaseConnection getConnection() {
+		return conn;
+	}
+
+	public boolean isIncludeInferred() {
+		return includeInferred;
+	}
+
+	public boolean isReadTransaction() {
+		return readTransaction;
+	}
+
 	public ValueFactory getValueFactory() {
 		return store.getValueFactory();
 	}
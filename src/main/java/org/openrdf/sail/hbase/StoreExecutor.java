@@ -0,0 +1,214 @@
+package org.openrdf.sail.hbase;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the background tasks of a store, such as parallel scans and
+ * asynchronous reads, on a fixed pool of worker threads with a bounded queue.
+ * Long tasks, such as index builds, are started on threads of their own
+ * instead, so that they do not hold up the workers. Threads are kept between
+ * tasks, and with them their table handles.
+ * <p>
+ * A task is run in the submitting thread instead if the queue is full, if
+ * the executor has been shut down, or if the submitting thread is running a
+ * task itself: such a task could otherwise wait forever for a worker that is
+ * waiting for it.
+ */
+public class StoreExecutor {
+	private static final Logger logger = LoggerFactory.getLogger(StoreExecutor.class);
+
+	/**
+	 * The type of tasks that are submitted without one.
+	 */
+	public static final String OTHER = "other";
+
+	private static final long SHUTDOWN_TIMEOUT = 10000;
+
+	private final ExecutorService executor;
+
+	private final ExecutorService longExecutor;
+
+	private final ThreadLocal<Boolean> running = new ThreadLocal<Boolean>();
+
+	private final ConcurrentMap<String, TaskStats> stats = new ConcurrentHashMap<String, TaskStats>();
+
+	/**
+	 * @param threads
+	 *        The number of worker threads.
+	 * @param queueSize
+	 *        The number of tasks that can wait for a worker thread.
+	 */
+	public StoreExecutor(int threads, int queueSize) {
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new WorkerFactory("Store Worker "));
+		longExecutor = Executors.newCachedThreadPool(new WorkerFactory("Store Builder "));
+	}
+
+	public void execute(String type, Runnable task) {
+		submit(type, Executors.callable(task));
+	}
+
+	/**
+	 * Runs a task in the background.
+	 *
+	 * @param type
+	 *        The type of the task, under which it is counted.
+	 * @return The future result of the task.
+	 */
+	public <T> Future<T> submit(String type, Callable<T> task) {
+
+		TaskStats typeStats = getStats(type);
+		FutureTask<T> future = new FutureTask<T>(new Task<T>(typeStats, task));
+
+		if (running.get() == null) {
+			try {
+				executor.execute(future);
+				return future;
+			}
+			catch (RejectedExecutionException e) {
+				// full or shut down
+			}
+		}
+
+		typeStats.recordInline();
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Starts a long task, such as an index build, on a thread that is not one
+	 * of the workers. The task must stop soon when the store is shut down, as
+	 * {@link #shutDown()} waits for it.
+	 *
+	 * @param type
+	 *        The type of the task, under which it is counted.
+	 * @return The future end of the task.
+	 */
+	public Future<?> start(String type, Runnable task) {
+
+		FutureTask<Object> future = new FutureTask<Object>(new Task<Object>(getStats(type),
+				Executors.callable(task)));
+		longExecutor.execute(future);
+		return future;
+	}
+
+	private TaskStats getStats(String type) {
+		TaskStats typeStats = stats.get(type);
+		if (typeStats == null) {
+			TaskStats created = new TaskStats(type);
+			typeStats = stats.putIfAbsent(type, created);
+			if (typeStats == null)
+				typeStats = created;
+		}
+		return typeStats;
+	}
+
+	/**
+	 * Gets the counters of the tasks run so far, one per task type.
+	 */
+	public Collection<TaskStats> getStats() {
+		return Collections.unmodifiableCollection(stats.values());
+	}
+
+	/**
+	 * Checks whether the executor has been shut down and no task is running
+	 * any more. Tasks that were still queued when the wait for them ran out
+	 * are dropped; they never run.
+	 */
+	public boolean isTerminated() {
+		return executor.isTerminated() && longExecutor.isTerminated();
+	}
+
+	/**
+	 * Stops accepting tasks and waits for the running and queued ones to
+	 * finish, interrupting them if they take too long.
+	 */
+	public void shutDown() {
+
+		longExecutor.shutdown();
+		executor.shutdown();
+
+		awaitTermination(longExecutor);
+		awaitTermination(executor);
+
+		for (TaskStats typeStats : stats.values())
+			logger.debug(typeStats.toString());
+	}
+
+	private static void awaitTermination(ExecutorService executor) {
+		try {
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				logger.warn("Store tasks did not finish in time, interrupting them.");
+				executor.shutdownNow();
+			}
+		}
+		catch (InterruptedException ie) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private class Task<T> implements Callable<T> {
+
+		private final TaskStats typeStats;
+		private final Callable<T> task;
+		private final long submitted = System.nanoTime();
+
+		Task(TaskStats typeStats, Callable<T> task) {
+			this.typeStats = typeStats;
+			this.task = task;
+		}
+
+		public T call() throws Exception {
+
+			boolean nested = running.get() != null;
+			running.set(Boolean.TRUE);
+
+			long started = System.nanoTime();
+			boolean succeeded = false;
+			try {
+				T result = task.call();
+				succeeded = true;
+				return result;
+			}
+			finally {
+				typeStats.record(started - submitted, System.nanoTime() - started, succeeded);
+				if (!nested)
+					running.remove();
+			}
+		}
+	}
+
+	private static class WorkerFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		WorkerFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package org.openrdf.sail.hbase;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the tasks of one type that a {@link StoreExecutor} has run.
+ * Times are in nanoseconds and summed over all tasks.
+ */
+public class TaskStats {
+
+	private final String type;
+
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong inline = new AtomicLong();
+	private final AtomicLong waitTime = new AtomicLong();
+	private final AtomicLong runTime = new AtomicLong();
+
+	public TaskStats(String type) {
+		this.type = type;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the number of tasks that ran to completion.
+	 */
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * Gets the number of tasks that threw an exception.
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Gets the number of tasks that ran in the submitting thread, rather than
+	 * on a worker.
+	 */
+	public long getInline() {
+		return inline.get();
+	}
+
+	/**
+	 * Gets the time tasks spent queued before they started.
+	 */
+	public long getWaitTime() {
+		return waitTime.get();
+	}
+
+	/**
+	 * Gets the time tasks spent running.
+	 */
+	public long getRunTime() {
+		return runTime.get();
+	}
+
+	void recordInline() {
+		inline.incrementAndGet();
+	}
+
+	void record(long waited, long ran, boolean succeeded) {
+		waitTime.addAndGet(waited);
+		runTime.addAndGet(ran);
+		(succeeded ? completed : failed).incrementAndGet();
+	}
+
+	@Override
+	public String toString() {
+		return type + ": " + completed + " completed, " + failed + " failed, " + inline + " inline, "
+				+ waitTime.get() / 1000000 + " ms waiting, " + runTime.get() / 1000000 + " ms running";
+	}
+}
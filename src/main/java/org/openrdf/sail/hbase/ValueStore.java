@@ -5,7 +5,6 @@ import java.util.Arrays;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
-import org.apache.hadoop.util.StringUtils;
 import org.openrdf.model.BNode;
 import org.openrdf.model.BNodeFactory;
 import org.openrdf.model.Literal;
@@ -21,6 +20,8 @@ import org.openrdf.model.impl.LiteralImpl;
 import org.openrdf.model.impl.StatementImpl;
 import org.openrdf.model.impl.URIImpl;
 import org.openrdf.sail.hbase.data.HBaseTableFactory;
+import org.openrdf.sail.hbase.data.PatternCache;
+import org.openrdf.sail.hbase.data.TextIndexTable;
 import org.openrdf.sail.hbase.data.ValueStoreRevision;
 import org.openrdf.sail.hbase.data.ValueTable;
 import org.openrdf.sail.hbase.model.HBaseBNode;
@@ -28,7 +29,7 @@ import org.openrdf.sail.hbase.model.HBaseLiteral;
 import org.openrdf.sail.hbase.model.HBaseResource;
 import org.openrdf.sail.hbase.model.HBaseURI;
 import org.openrdf.sail.hbase.model.HBaseValue;
-import org.openrdf.sail.hbase.util.ByteArray;
+import org.openrdf.sail.hbase.util.IntObjectCache;
 import org.openrdf.sail.hbase.util.LRUCache;
 import org.openrdf.sail.hbase.util.Utils;
 import org.slf4j.Logger;
@@ -60,19 +61,19 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 	 * A simple cache containing the [VALUE_CACHE_SIZE] most-recently used values
 	 * stored by their ID.
 	 */
-	private final LRUCache<ByteArray, HBaseValue> valueCache;
+	private final IntObjectCache<HBaseValue> valueCache;
 
 	/**
 	 * A simple cache containing the [ID_CACHE_SIZE] most-recently used value-IDs
 	 * stored by their value.
 	 */
-	private final LRUCache<Value, byte[]> valueIDCache;
+	private final LRUCache<Value, Integer> valueIDCache;
 
 	/**
 	 * A simple cache containing the [NAMESPACE_CACHE_SIZE] most-recently used
 	 * namespaces stored by their ID.
 	 */
-	private final LRUCache<ByteArray, String> namespaceCache;
+	private final IntObjectCache<String> namespaceCache;
 
 	/**
 	 * A simple cache containing the [NAMESPACE_ID_CACHE_SIZE] most-recently used
@@ -96,9 +97,9 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 		this.store = store;
 		this.values = values;
 
-		valueCache = new LRUCache<ByteArray, HBaseValue>(VALUE_CACHE_SIZE);
-		valueIDCache = new LRUCache<Value, byte[]>(VALUE_ID_CACHE_SIZE);
-		namespaceCache = new LRUCache<ByteArray, String>(NAMESPACE_CACHE_SIZE);
+		valueCache = new IntObjectCache<HBaseValue>(VALUE_CACHE_SIZE);
+		valueIDCache = new LRUCache<Value, Integer>(VALUE_ID_CACHE_SIZE);
+		namespaceCache = new IntObjectCache<String>(NAMESPACE_CACHE_SIZE);
 		namespaceIDCache = new LRUCache<String, byte[]>(NAMESPACE_ID_CACHE_SIZE);
 
 		setNewRevision();
@@ -120,6 +121,21 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 		return revision;
 	}
 
+	/**
+	 * Gets the value for the specified ID as it is stored in the tables, see
+	 * {@link #getValue(int)}.
+	 */
+	public HBaseValue getValue(byte[] id) throws IOException
+	{
+		 return getValue(Bytes.toInt(id), (byte)-1);
+	}
+	
+	public HBaseValue getValue(byte[] id, byte type)
+		throws IOException
+	{
+		return getValue(Bytes.toInt(id), type);
+	}
+
 	/**
 	 * Gets the value for the specified ID.
 	 * 
@@ -130,20 +146,19 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 	 * @exception IOException
 	 *            If an I/O error occurred.
 	 */
-	public HBaseValue getValue(byte[] id) throws IOException
+	public HBaseValue getValue(int id) throws IOException
 	{
 		 return getValue(id, (byte)-1);
 	}
 	
-	public HBaseValue getValue(byte[] id, byte type)
+	public HBaseValue getValue(int id, byte type)
 		throws IOException
 	{
-		ByteArray idObject = new ByteArray(id);
 		HBaseValue resultValue = null;
 				
 		// Check value cache
 		synchronized (valueCache) {
-			resultValue = valueCache.get(idObject);
+			resultValue = valueCache.get(id);
 		}
 
 		if (resultValue == null) {
@@ -160,7 +175,7 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 
 				// Store value in cache
 				synchronized (valueCache) {
-					valueCache.put(idObject, resultValue);
+					valueCache.put(id, resultValue);
 				}
 			}
 		}
@@ -168,27 +183,44 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 		return resultValue;
 	}
 	
-	public Value getInternalValue(byte[] id)
+	public Value getInternalValue(int id)
 	{
 		return this.getInternalValue(id, (byte)-1);
 	}
 	
-	public Value getInternalValue(byte[] id, byte type)
+	public Value getInternalValue(int id, byte type)
 	{
 		try {
-			KeyValue data = values.getData(id, type);
+			KeyValue data = values.getData(Bytes.toBytes(id), type);
 			if (data != null) {
 				Value value = data2value(data);
 				return value;
 			}
 		}
 		catch (IOException ioe)	{
-			logger.error("Failed to get Value for ID: " + StringUtils.byteToHexString(id), ioe);
+			logger.error("Failed to get Value for ID: " + Integer.toHexString(id), ioe);
 		}
 				
 		return null;
 	}
 
+	/**
+	 * Gets the ID for the specified value.
+	 * 
+	 * @param value
+	 *        A value.
+	 * @return The ID for the specified value, or <tt>null</tt> if no such ID
+	 *         could be found.
+	 * @exception IOException
+	 *            If an I/O error occurred.
+	 */
+	public byte[] getID(Value value)
+		throws IOException
+	{
+		int id = getIntID(value);
+		return id != HBaseValue.UNKNOWN_ID ? Bytes.toBytes(id) : null;
+	}
+
 	/**
 	 * Gets the ID for the specified value.
 	 * 
@@ -199,9 +231,15 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 	 * @exception IOException
 	 *            If an I/O error occurred.
 	 */
-	public byte[] getID(Value value)
+	public int getIntID(Value value)
 		throws IOException
 	{
+		// Values read from this store carry their ID; a HBaseValue without an
+		// ID resolves it through this method with its wrapped, non-native value
+		if (isOwnValue(value) && revisionIsCurrent((HBaseValue)value)) {
+			return ((HBaseValue)value).getInternalID();
+		}
+
 		/*
 		// Try to get the internal ID from the value itself
 		boolean isOwnValue = isOwnValue(value);
@@ -210,9 +248,9 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 			HBaseValue nativeValue = (HBaseValue)value;
 
 			if (revisionIsCurrent(nativeValue)) {
-				byte[] id = nativeValue.getInternalID();
+				int id = nativeValue.getInternalID();
 
-				if (id != null) {
+				if (id != HBaseValue.UNKNOWN_ID) {
 					return id;
 				}
 			}
@@ -220,7 +258,7 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 		 */
 		
 		// Check cache
-		byte[] cachedID = null;
+		Integer cachedID = null;
 		synchronized (valueIDCache) {
 			cachedID = valueIDCache.get(value);
 		}
@@ -243,24 +281,25 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 			byte[] id = values.getID(data);
 
 			if (id != null) {
+				int intID = Bytes.toInt(id);
 				//if (isOwnValue) {
 				//	// Store id in value for fast access in any consecutive calls
-				//	((HBaseValue)value).setInternalID(id, revision);
+				//	((HBaseValue)value).setInternalID(intID, revision);
 				//}
 				//else {
 					// Store id in cache
 					synchronized (valueIDCache) {
-						valueIDCache.put(value, id);
+						valueIDCache.put(value, intID);
 					}
 				//}
+				return intID;
 			}
-
-			return id;
 		}
 
-		return null;
+		return HBaseValue.UNKNOWN_ID;
 	}
 	
+	
 	public static byte getValueType(Value value)
 	{
 		if (value instanceof URI)
@@ -299,16 +338,16 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 
 			if (revisionIsCurrent(nativeValue)) {
 				// Value's ID is still current
-				byte[] id = nativeValue.getInternalID();
+				int id = nativeValue.getInternalID();
 
-				if (id != null) {
-					return id;
+				if (id != HBaseValue.UNKNOWN_ID) {
+					return Bytes.toBytes(id);
 				}
 			}
 		}
 
 		// ID not stored in value itself, try the ID cache
-		byte[] cachedID = null;
+		Integer cachedID = null;
 		synchronized (valueIDCache) {
 			cachedID = valueIDCache.get(value);
 		}
@@ -320,7 +359,7 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 				((HBaseValue)value).setInternalID(cachedID, revision);
 			}
 
-			return cachedID;
+			return Bytes.toBytes(cachedID);
 		}
 
 		// Unable to get internal ID in a cheap way, just store it in the data
@@ -328,16 +367,24 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 		byte[] valueData = value2data(value, true);
 		byte valueType = ValueStore.getValueType(value);
 
-		byte[] id = values.putData(valueData, valueType);
+		boolean[] created = new boolean[1];
+		byte[] id = values.putData(valueData, valueType, created);
 
-		if (isOwnValue) {
-			// Store id in value for fast access in any consecutive calls
-			((HBaseValue)value).setInternalID(id, revision);
+		TextIndexTable text = store.getTextIndexTable();
+		if (text != null && created[0] && value instanceof Literal) {
+			text.storeLiteral(id, ((Literal)value).getLabel());
 		}
-		else {
-			// Update cache
-			synchronized (valueIDCache) {
-				valueIDCache.put(value, id);
+
+		if (id != null) {
+			if (isOwnValue) {
+				// Store id in value for fast access in any consecutive calls
+				((HBaseValue)value).setInternalID(Bytes.toInt(id), revision);
+			}
+			else {
+				// Update cache
+				synchronized (valueIDCache) {
+					valueIDCache.put(value, Bytes.toInt(id));
+				}
 			}
 		}
 
@@ -354,6 +401,11 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 		throws IOException
 	{
 		values.clear();
+
+		// cached patterns are keyed by IDs, which are handed out again
+		PatternCache patternCache = store.getTripleTable().getPatternCache();
+		if (patternCache != null)
+			patternCache.invalidateAll();
 	}
 
 	/**
@@ -399,16 +451,7 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 			return null;
 		}
 
-		// Get local name in UTF-8
-		byte[] localNameData = uri.getLocalName().getBytes("UTF-8");
-
-		// Combine parts in a single byte array
-		byte[] uriData = new byte[nsID.length + localNameData.length];
-
-		Bytes.putBytes(uriData, 0, nsID, 0, nsID.length);
-		Bytes.putBytes(uriData, nsID.length, localNameData, 0, localNameData.length);
-
-		return uriData;
+		return ValueTable.encodeURI(nsID, uri.getLocalName());
 	}
 
 	private byte[] bnode2data(BNode bNode, boolean create)
@@ -437,35 +480,7 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 			}
 		}
 
-		// get language bytes
-		byte[] langData = null;
-		int langDataLength = 0;
-		if (literal.getLanguage() != null) {
-			langData = Bytes.toBytes(literal.getLanguage());
-			langDataLength = langData.length;
-		}
-
-		// get label bytes
-		byte[] labelData = Bytes.toBytes(literal.getLabel());
-
-		// Combine parts in a single byte array
-		byte[] literalData = new byte[ValueTable.NUM_VALUE_BYTES + 1 + langDataLength + labelData.length];
-		
-		if (datatypeID != null)
-		{
-			assert (datatypeID.length == ValueTable.NUM_VALUE_BYTES);
-			Bytes.putBytes(literalData, 0, datatypeID, 0, datatypeID.length);
-		}
-		
-		literalData[ValueTable.NUM_VALUE_BYTES] = (byte)langDataLength;
-		
-		if (langData != null) {
-			Bytes.putBytes(literalData, ValueTable.NUM_VALUE_BYTES + 1, langData, 0, langDataLength);
-		}
-		
-		Bytes.putBytes(literalData, ValueTable.NUM_VALUE_BYTES + 1 + langDataLength, labelData, 0, labelData.length);
-
-		return literalData;
+		return ValueTable.encodeLiteral(datatypeID, literal.getLanguage(), literal.getLabel());
 	}
 
 	protected Value data2value(KeyValue kv)
@@ -488,10 +503,8 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 	protected URI data2uri(KeyValue kv)
 		throws IOException
 	{
-		byte[] nsID = ValueStore.getByteArraySlice(kv.getBuffer(), kv.getValueOffset(), ValueTable.NUM_VALUE_BYTES);
-		String namespace = getNamespace(nsID);
-
-		String localName = Bytes.toString(kv.getBuffer(), kv.getValueOffset() + ValueTable.NUM_VALUE_BYTES, kv.getValueLength() - ValueTable.NUM_VALUE_BYTES);
+		String namespace = getNamespace(ValueTable.getNamespaceID(kv));
+		String localName = ValueTable.getLocalName(kv);
 
 		return new URIImpl(namespace + localName);
 	}
@@ -503,13 +516,6 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 		return new BNodeImpl(nodeID);
 	}
 	
-	private static byte[] getByteArraySlice(byte[] source, int offset, int length)
-	{
-		byte [] result = new byte[length];
-		System.arraycopy(source, offset, result, 0, length);
-		return result;
-	}
-	
 	private static byte[] getInternalID(KeyValue kv)
 	{
 		byte[] internalID = kv.getRow();
@@ -522,23 +528,14 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 		throws IOException
 	{
 		// Get datatype
-		byte[] datatypeID = ValueStore.getByteArraySlice(kv.getBuffer(), kv.getValueOffset(), ValueTable.NUM_VALUE_BYTES);
+		int datatypeID = ValueTable.getDatatypeID(kv);
 		URI datatype = null;
-		if (datatypeID != null) {
+		if (datatypeID != HBaseValue.UNKNOWN_ID) {
 			datatype = (URI)getValue(datatypeID, ValueTable.URI_VALUE);
 		}
 
-		// Get language tag
-		String lang = null;
-		int langLength = kv.getBuffer()[kv.getValueOffset() + datatypeID.length];
-		if (langLength > 0) {
-			lang = Bytes.toString(kv.getBuffer(), kv.getValueOffset() + datatypeID.length + 1, langLength);
-		}
-		
-		// Get label
-		String label = Bytes.toString(kv.getBuffer(), 
-				kv.getValueOffset() + datatypeID.length + 1 + langLength,
-				kv.getValueLength() - (datatypeID.length + 1 + langLength));
+		String lang = ValueTable.getLanguage(kv);
+		String label = ValueTable.getLabel(kv);
 
 		if (datatype != null) {
 			return new LiteralImpl(label, datatype);
@@ -578,22 +575,21 @@ public class ValueStore extends LiteralFactoryImpl implements ValueFactory {
 		return id;
 	}
 
-	private String getNamespace(byte[] id)
+	private String getNamespace(int id)
 		throws IOException
 	{
-		ByteArray idObject = new ByteArray(id);
 		String namespace = null;
 
 		synchronized (namespaceCache) {
-			namespace = namespaceCache.get(idObject);
+			namespace = namespaceCache.get(id);
 		}
 
 		if (namespace == null) {
-			byte[] namespaceData = values.getData(id, ValueTable.URI_VALUE).getValue();
+			byte[] namespaceData = values.getData(Bytes.toBytes(id), ValueTable.URI_VALUE).getValue();
 			namespace = Bytes.toString(namespaceData);
 
 			synchronized (namespaceCache) {
-				namespaceCache.put(idObject, namespace);
+				namespaceCache.put(id, namespace);
 			}
 		}
 
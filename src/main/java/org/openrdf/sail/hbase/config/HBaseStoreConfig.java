@@ -1,11 +1,35 @@
 package org.openrdf.sail.hbase.config;
 
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.BACKEND;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.BACKEND_LATENCY;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.BLOCK_SIZE;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.BLOOM_FILTER;
 import static org.openrdf.sail.hbase.config.HBaseStoreSchema.CATALOG_NAME;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.COMPRESSION;
 import static org.openrdf.sail.hbase.config.HBaseStoreSchema.FAMILY_FIELD_BITS;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.INDEX_BUILD_RATE;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.INDEX_BUILD_THREADS;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.INITIAL_REGIONS;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.IN_MEMORY;
 import static org.openrdf.sail.hbase.config.HBaseStoreSchema.KEY_FIELDS;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.NAMESPACE_STORAGE;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.PARTITION_PREDICATE;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.PATTERN_CACHE_SIZE;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.METRICS;
 import static org.openrdf.sail.hbase.config.HBaseStoreSchema.QUALIFIER_FIELDS;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.RANGE_INDEX_PREDICATE;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.SALT_BITS;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.SALT_FIELD;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.SCAN_PREFETCH;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.TEXT_INDEX;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.TEXT_INDEX_GRAM_LENGTH;
 import static org.openrdf.sail.hbase.config.HBaseStoreSchema.TRIPLE_INDEX;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.TRIPLE_STORAGE;
 import static org.openrdf.sail.hbase.config.HBaseStoreSchema.VALUE_FIELDS;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.VALUE_STORAGE;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.WORKER_QUEUE_SIZE;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.WORKER_THREADS;
+import static org.openrdf.sail.hbase.config.HBaseStoreSchema.WRITE_BUFFER_SIZE;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -16,6 +40,7 @@ import org.openrdf.model.BNode;
 import org.openrdf.model.Model;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
 import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.model.util.ModelException;
 import org.openrdf.sail.config.SailImplConfigBase;
@@ -33,9 +58,45 @@ public class HBaseStoreConfig extends SailImplConfigBase {
 		return indexSpecs;
 	}
 	
+	/**
+	 * The backend that keeps the tables on an HBase cluster.
+	 */
+	public static final String HBASE_BACKEND = "hbase";
+	
+	/**
+	 * The backend that keeps the tables in memory.
+	 */
+	public static final String LOCAL_BACKEND = "local";
+	
 	private String catalogName;
 	private ArrayList<IndexSpec> tripleIndexes;
 	
+	private int initialRegions;
+	
+	private int indexBuildThreads = 2;
+	private int indexBuildRate = 20000;
+	
+	private List<String> rangeIndexPredicates = new ArrayList<String>();
+	
+	private boolean textIndex;
+	private int textIndexGramLength;
+	
+	private long writeBufferSize = 2 << 20;
+	
+	private int workerThreads = 4;
+	private int workerQueueSize = 8;
+	private int scanPrefetch;
+	private long patternCacheSize;
+	
+	private boolean metrics;
+	
+	private String backend = HBASE_BACKEND;
+	private long backendLatency;
+	
+	private StorageProfile tripleStorage = StorageProfile.DEFAULT_TRIPLES;
+	private StorageProfile valueStorage = StorageProfile.DEFAULT_VALUES;
+	private StorageProfile namespaceStorage = StorageProfile.DEFAULT_NAMESPACES;
+	
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -70,6 +131,213 @@ public class HBaseStoreConfig extends SailImplConfigBase {
 		return Collections.unmodifiableList(tripleIndexes);
 	}
 
+	public void addTripleIndex(IndexSpec indexSpec) {
+		if (tripleIndexes == DEFAULT_INDEXES)
+			tripleIndexes = new ArrayList<IndexSpec>(DEFAULT_INDEXES);
+		tripleIndexes.add(indexSpec);
+	}
+
+	/**
+	 * Gets the number of threads that copy triples into an index that is
+	 * added to a store with data.
+	 */
+	public int getIndexBuildThreads() {
+		return indexBuildThreads;
+	}
+
+	public void setIndexBuildThreads(int indexBuildThreads) {
+		this.indexBuildThreads = indexBuildThreads;
+	}
+
+	/**
+	 * Gets the maximum number of triples per second that are copied into an
+	 * index that is being built, <tt>0</tt> meaning no limit.
+	 */
+	public int getIndexBuildRate() {
+		return indexBuildRate;
+	}
+
+	public void setIndexBuildRate(int indexBuildRate) {
+		this.indexBuildRate = indexBuildRate;
+	}
+
+	/**
+	 * Gets the predicates whose numeric and dateTime objects are kept in the
+	 * range index, in order of their values. The range index is not created
+	 * if there are none.
+	 */
+	public List<String> getRangeIndexPredicates() {
+		return Collections.unmodifiableList(rangeIndexPredicates);
+	}
+
+	public void addRangeIndexPredicate(String predicate) {
+		if (!rangeIndexPredicates.contains(predicate))
+			rangeIndexPredicates.add(predicate);
+	}
+
+	/**
+	 * Checks whether the tokens of literal labels are indexed, so that text
+	 * filters can look up the literals that contain a word.
+	 */
+	public boolean isTextIndex() {
+		return textIndex;
+	}
+
+	public void setTextIndex(boolean textIndex) {
+		this.textIndex = textIndex;
+	}
+
+	/**
+	 * Gets the length of the character n-grams that are indexed along with
+	 * the tokens of literal labels, <tt>0</tt>, the default, meaning none.
+	 * N-grams let text filters use the index for parts of words.
+	 */
+	public int getTextIndexGramLength() {
+		return textIndexGramLength;
+	}
+
+	public void setTextIndexGramLength(int textIndexGramLength) {
+		this.textIndexGramLength = textIndexGramLength;
+	}
+
+	/**
+	 * Gets the number of regions new triple and value tables are split into
+	 * when they are created. <tt>0</tt>, the default, means one region per
+	 * region server of the cluster. Tables are only pre-split on an HBase
+	 * client of version 0.90 or newer.
+	 */
+	public int getInitialRegions() {
+		return initialRegions;
+	}
+
+	public void setInitialRegions(int initialRegions) {
+		this.initialRegions = initialRegions;
+	}
+
+	/**
+	 * Gets the size in bytes of the client-side write buffer of a table
+	 * handle, which bounds the size of a batch of mutations sent at once.
+	 */
+	public long getWriteBufferSize() {
+		return writeBufferSize;
+	}
+
+	public void setWriteBufferSize(long writeBufferSize) {
+		this.writeBufferSize = writeBufferSize;
+	}
+
+	/**
+	 * Gets the number of threads that run the background tasks of the store,
+	 * such as parallel scans.
+	 */
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public void setWorkerThreads(int workerThreads) {
+		this.workerThreads = workerThreads;
+	}
+
+	/**
+	 * Gets the number of background tasks that can wait for a worker thread;
+	 * beyond that, tasks run in the thread that submits them.
+	 */
+	public int getWorkerQueueSize() {
+		return workerQueueSize;
+	}
+
+	public void setWorkerQueueSize(int workerQueueSize) {
+		this.workerQueueSize = workerQueueSize;
+	}
+
+	/**
+	 * Gets the maximum number of batches of rows that a scan of a triple
+	 * index reads ahead on the worker threads, or <tt>0</tt> if scans only
+	 * read when their rows are needed. Scans of salted indexes always read
+	 * one batch ahead.
+	 */
+	public int getScanPrefetch() {
+		return scanPrefetch;
+	}
+
+	public void setScanPrefetch(int scanPrefetch) {
+		this.scanPrefetch = scanPrefetch;
+	}
+
+	/**
+	 * Gets the number of bytes of rows that are kept of recently read triple
+	 * patterns, or <tt>0</tt> if none are. The cache only sees the writes of
+	 * this store, so it must be off if other processes write to the store's
+	 * tables.
+	 */
+	public long getPatternCacheSize() {
+		return patternCacheSize;
+	}
+
+	public void setPatternCacheSize(long patternCacheSize) {
+		this.patternCacheSize = patternCacheSize;
+	}
+
+	/**
+	 * Checks whether the requests made to HBase are counted and published
+	 * over JMX, see {@link org.openrdf.sail.hbase.data.StorageMetrics}.
+	 */
+	public boolean isMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(boolean metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets the storage backend of the store: {@link #HBASE_BACKEND} or
+	 * {@link #LOCAL_BACKEND}.
+	 */
+	public String getBackend() {
+		return backend;
+	}
+
+	public void setBackend(String backend) {
+		this.backend = backend;
+	}
+
+	/**
+	 * Gets the time in microseconds that every request to a table of the
+	 * local backend takes.
+	 */
+	public long getBackendLatency() {
+		return backendLatency;
+	}
+
+	public void setBackendLatency(long backendLatency) {
+		this.backendLatency = backendLatency;
+	}
+
+	public StorageProfile getTripleStorage() {
+		return tripleStorage;
+	}
+
+	public void setTripleStorage(StorageProfile tripleStorage) {
+		this.tripleStorage = tripleStorage;
+	}
+
+	public StorageProfile getValueStorage() {
+		return valueStorage;
+	}
+
+	public void setValueStorage(StorageProfile valueStorage) {
+		this.valueStorage = valueStorage;
+	}
+
+	public StorageProfile getNamespaceStorage() {
+		return namespaceStorage;
+	}
+
+	public void setNamespaceStorage(StorageProfile namespaceStorage) {
+		this.namespaceStorage = namespaceStorage;
+	}
+
 	@Override
 	public Resource export(Model model) {
 		Resource implNode = super.export(model);
@@ -82,12 +350,56 @@ public class HBaseStoreConfig extends SailImplConfigBase {
 			model.add(indexNode, KEY_FIELDS, vf.createLiteral(new String(indexSpec.getKeyFields())));
 			model.add(indexNode, QUALIFIER_FIELDS, vf.createLiteral(new String(indexSpec.getQualifierFields())));
 			model.add(indexNode, VALUE_FIELDS, vf.createLiteral(new String(indexSpec.getValueFields())));
+			if (indexSpec.isSalted()) {
+				model.add(indexNode, SALT_FIELD, vf.createLiteral(String.valueOf(indexSpec.getSaltField())));
+				model.add(indexNode, SALT_BITS, vf.createLiteral(indexSpec.getSaltBits()));
+			}
+			if (indexSpec.isPartitioned()) {
+				model.add(indexNode, PARTITION_PREDICATE, vf.createURI(indexSpec.getPredicate()));
+			}
 			
 			model.add(implNode, TRIPLE_INDEX, indexNode);
 		}
+		
+		if (initialRegions > 0)
+			model.add(implNode, INITIAL_REGIONS, vf.createLiteral(initialRegions));
+		model.add(implNode, INDEX_BUILD_THREADS, vf.createLiteral(indexBuildThreads));
+		model.add(implNode, INDEX_BUILD_RATE, vf.createLiteral(indexBuildRate));
+		for (String predicate : rangeIndexPredicates)
+			model.add(implNode, RANGE_INDEX_PREDICATE, vf.createURI(predicate));
+		model.add(implNode, TEXT_INDEX, vf.createLiteral(textIndex));
+		if (textIndexGramLength > 0)
+			model.add(implNode, TEXT_INDEX_GRAM_LENGTH, vf.createLiteral(textIndexGramLength));
+		model.add(implNode, WRITE_BUFFER_SIZE, vf.createLiteral(writeBufferSize));
+		model.add(implNode, WORKER_THREADS, vf.createLiteral(workerThreads));
+		model.add(implNode, WORKER_QUEUE_SIZE, vf.createLiteral(workerQueueSize));
+		if (scanPrefetch > 0)
+			model.add(implNode, SCAN_PREFETCH, vf.createLiteral(scanPrefetch));
+		if (patternCacheSize > 0)
+			model.add(implNode, PATTERN_CACHE_SIZE, vf.createLiteral(patternCacheSize));
+		model.add(implNode, METRICS, vf.createLiteral(metrics));
+		model.add(implNode, BACKEND, vf.createLiteral(backend));
+		if (backendLatency > 0)
+			model.add(implNode, BACKEND_LATENCY, vf.createLiteral(backendLatency));
+		
+		exportStorage(model, implNode, TRIPLE_STORAGE, tripleStorage);
+		exportStorage(model, implNode, VALUE_STORAGE, valueStorage);
+		exportStorage(model, implNode, NAMESPACE_STORAGE, namespaceStorage);
 
 		return implNode;
 	}
+	
+	private void exportStorage(Model model, Resource implNode, URI property, StorageProfile profile) {
+		ValueFactoryImpl vf = ValueFactoryImpl.getInstance();
+
+		BNode profileNode = vf.createBNode();
+		model.add(profileNode, COMPRESSION, vf.createLiteral(profile.getCompression()));
+		model.add(profileNode, BLOOM_FILTER, vf.createLiteral(profile.isBloomFilter()));
+		model.add(profileNode, BLOCK_SIZE, vf.createLiteral(profile.getBlockSize()));
+		model.add(profileNode, IN_MEMORY, vf.createLiteral(profile.isInMemory()));
+		
+		model.add(implNode, property, profileNode);
+	}
 
 	@Override
 	public void parse(Model model, Resource implNode)
@@ -108,12 +420,176 @@ public class HBaseStoreConfig extends SailImplConfigBase {
 					String valueFields = model.filter((Resource)indexSpec.getObject(), VALUE_FIELDS, null).objectLiteral().getLabel();
 					String familyFieldBits = model.filter((Resource)indexSpec.getObject(), FAMILY_FIELD_BITS, null).objectLiteral().getLabel();
 					
-					tripleIndexes.add(new IndexSpec(keyFields, qualifierFields, valueFields, familyFieldBits));
+					
+					char saltField = 0;
+					int saltBits = 0;
+					if (!model.filter((Resource)indexSpec.getObject(), SALT_FIELD, null).isEmpty()) {
+						saltField = model.filter((Resource)indexSpec.getObject(), SALT_FIELD, null).objectLiteral().getLabel().charAt(0);
+						saltBits = model.filter((Resource)indexSpec.getObject(), SALT_BITS, null).objectLiteral().intValue();
+					}
+					
+					String predicate = null;
+					if (!model.filter((Resource)indexSpec.getObject(), PARTITION_PREDICATE, null).isEmpty()) {
+						predicate = model.filter((Resource)indexSpec.getObject(), PARTITION_PREDICATE, null).objectString();
+					}
+					
+					try {
+						tripleIndexes.add(new IndexSpec(keyFields, qualifierFields, valueFields, familyFieldBits, saltField, saltBits, predicate));
+					}
+					catch (IllegalArgumentException e) {
+						throw new StoreConfigException(e.getMessage(), e);
+					}
+				}
+			}
+			
+			if (!model.filter(implNode, INITIAL_REGIONS, null).isEmpty()) {
+				try {
+					initialRegions = model.filter(implNode, INITIAL_REGIONS, null).objectLiteral().intValue();
+				}
+				catch (NumberFormatException e) {
+					throw new StoreConfigException("Initial regions must be an integer", e);
+				}
+			}
+			
+			try {
+				if (!model.filter(implNode, INDEX_BUILD_THREADS, null).isEmpty())
+					indexBuildThreads = model.filter(implNode, INDEX_BUILD_THREADS, null).objectLiteral().intValue();
+				if (!model.filter(implNode, INDEX_BUILD_RATE, null).isEmpty())
+					indexBuildRate = model.filter(implNode, INDEX_BUILD_RATE, null).objectLiteral().intValue();
+			}
+			catch (NumberFormatException e) {
+				throw new StoreConfigException("Index build threads and rate must be integers", e);
+			}
+			
+			for (Statement st : model.filter(implNode, RANGE_INDEX_PREDICATE, null)) {
+				if (!(st.getObject() instanceof URI))
+					throw new StoreConfigException("Range index predicates must be URIs: " + st.getObject());
+				addRangeIndexPredicate(st.getObject().stringValue());
+			}
+			
+			if (!model.filter(implNode, TEXT_INDEX, null).isEmpty())
+				textIndex = model.filter(implNode, TEXT_INDEX, null).objectLiteral().booleanValue();
+			if (!model.filter(implNode, TEXT_INDEX_GRAM_LENGTH, null).isEmpty()) {
+				try {
+					textIndexGramLength = model.filter(implNode, TEXT_INDEX_GRAM_LENGTH, null).objectLiteral().intValue();
+				}
+				catch (NumberFormatException e) {
+					throw new StoreConfigException("Text index gram length must be an integer", e);
 				}
 			}
+			
+			if (!model.filter(implNode, WRITE_BUFFER_SIZE, null).isEmpty()) {
+				try {
+					writeBufferSize = model.filter(implNode, WRITE_BUFFER_SIZE, null).objectLiteral().longValue();
+				}
+				catch (NumberFormatException e) {
+					throw new StoreConfigException("Write buffer size must be an integer", e);
+				}
+			}
+			
+			if (!model.filter(implNode, WORKER_THREADS, null).isEmpty()) {
+				try {
+					workerThreads = model.filter(implNode, WORKER_THREADS, null).objectLiteral().intValue();
+				}
+				catch (NumberFormatException e) {
+					throw new StoreConfigException("Worker threads must be an integer", e);
+				}
+				if (workerThreads < 1)
+					throw new StoreConfigException("Worker threads must be at least 1");
+			}
+			if (!model.filter(implNode, WORKER_QUEUE_SIZE, null).isEmpty()) {
+				try {
+					workerQueueSize = model.filter(implNode, WORKER_QUEUE_SIZE, null).objectLiteral().intValue();
+				}
+				catch (NumberFormatException e) {
+					throw new StoreConfigException("Worker queue size must be an integer", e);
+				}
+				if (workerQueueSize < 1)
+					throw new StoreConfigException("Worker queue size must be at least 1");
+			}
+			if (!model.filter(implNode, SCAN_PREFETCH, null).isEmpty()) {
+				try {
+					scanPrefetch = model.filter(implNode, SCAN_PREFETCH, null).objectLiteral().intValue();
+				}
+				catch (NumberFormatException e) {
+					throw new StoreConfigException("Scan prefetch must be an integer", e);
+				}
+				if (scanPrefetch < 0)
+					throw new StoreConfigException("Scan prefetch must not be negative");
+			}
+			if (!model.filter(implNode, PATTERN_CACHE_SIZE, null).isEmpty()) {
+				try {
+					patternCacheSize = model.filter(implNode, PATTERN_CACHE_SIZE, null).objectLiteral().longValue();
+				}
+				catch (NumberFormatException e) {
+					throw new StoreConfigException("Pattern cache size must be an integer", e);
+				}
+				if (patternCacheSize < 0)
+					throw new StoreConfigException("Pattern cache size must not be negative");
+			}
+			
+			if (!model.filter(implNode, METRICS, null).isEmpty())
+				metrics = model.filter(implNode, METRICS, null).objectLiteral().booleanValue();
+			
+			if (!model.filter(implNode, BACKEND, null).isEmpty()) {
+				backend = model.filter(implNode, BACKEND, null).objectString();
+				if (!HBASE_BACKEND.equals(backend) && !LOCAL_BACKEND.equals(backend))
+					throw new StoreConfigException("Unknown storage backend: " + backend);
+			}
+			if (!model.filter(implNode, BACKEND_LATENCY, null).isEmpty()) {
+				try {
+					backendLatency = model.filter(implNode, BACKEND_LATENCY, null).objectLiteral().longValue();
+				}
+				catch (NumberFormatException e) {
+					throw new StoreConfigException("Backend latency must be an integer", e);
+				}
+				if (backendLatency < 0)
+					throw new StoreConfigException("Backend latency must not be negative");
+			}
+			
+			tripleStorage = parseStorage(model, implNode, TRIPLE_STORAGE, tripleStorage);
+			valueStorage = parseStorage(model, implNode, VALUE_STORAGE, valueStorage);
+			namespaceStorage = parseStorage(model, implNode, NAMESPACE_STORAGE, namespaceStorage);
 		}
 		catch (ModelException e) {
 			throw new StoreConfigException(e.getMessage(), e);
 		}
-	}	
+	}
+	
+	/**
+	 * Parses a storage profile; settings that are not specified keep the value
+	 * they have in <tt>defaults</tt>.
+	 */
+	private StorageProfile parseStorage(Model model, Resource implNode, URI property, StorageProfile defaults)
+		throws ModelException, StoreConfigException
+	{
+		Resource profileNode = model.filter(implNode, property, null).objectResource();
+		if (profileNode == null) {
+			return defaults;
+		}
+		
+		String compression = defaults.getCompression();
+		if (!model.filter(profileNode, COMPRESSION, null).isEmpty())
+			compression = model.filter(profileNode, COMPRESSION, null).objectString();
+		
+		boolean bloomFilter = defaults.isBloomFilter();
+		if (!model.filter(profileNode, BLOOM_FILTER, null).isEmpty())
+			bloomFilter = model.filter(profileNode, BLOOM_FILTER, null).objectLiteral().booleanValue();
+		
+		int blockSize = defaults.getBlockSize();
+		if (!model.filter(profileNode, BLOCK_SIZE, null).isEmpty()) {
+			try {
+				blockSize = model.filter(profileNode, BLOCK_SIZE, null).objectLiteral().intValue();
+			}
+			catch (NumberFormatException e) {
+				throw new StoreConfigException("Block size must be an integer", e);
+			}
+		}
+		
+		boolean inMemory = defaults.isInMemory();
+		if (!model.filter(profileNode, IN_MEMORY, null).isEmpty())
+			inMemory = model.filter(profileNode, IN_MEMORY, null).objectLiteral().booleanValue();
+		
+		return new StorageProfile(compression, bloomFilter, blockSize, inMemory);
+	}
 }
@@ -25,6 +25,78 @@ public class HBaseStoreSchema {
 	/** <tt>http://www.openrdf.org/config/sail/hbase#familyFieldBits</tt> */
 	public final static URI FAMILY_FIELD_BITS;
 	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#saltField</tt> */
+	public final static URI SALT_FIELD;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#saltBits</tt> */
+	public final static URI SALT_BITS;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#partitionPredicate</tt> */
+	public final static URI PARTITION_PREDICATE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#initialRegions</tt> */
+	public final static URI INITIAL_REGIONS;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#indexBuildThreads</tt> */
+	public final static URI INDEX_BUILD_THREADS;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#indexBuildRate</tt> */
+	public final static URI INDEX_BUILD_RATE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#rangeIndexPredicate</tt> */
+	public final static URI RANGE_INDEX_PREDICATE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#textIndex</tt> */
+	public final static URI TEXT_INDEX;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#textIndexGramLength</tt> */
+	public final static URI TEXT_INDEX_GRAM_LENGTH;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#writeBufferSize</tt> */
+	public final static URI WRITE_BUFFER_SIZE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#workerThreads</tt> */
+	public final static URI WORKER_THREADS;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#workerQueueSize</tt> */
+	public final static URI WORKER_QUEUE_SIZE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#scanPrefetch</tt> */
+	public final static URI SCAN_PREFETCH;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#patternCacheSize</tt> */
+	public final static URI PATTERN_CACHE_SIZE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#metrics</tt> */
+	public final static URI METRICS;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#backend</tt> */
+	public final static URI BACKEND;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#backendLatency</tt> */
+	public final static URI BACKEND_LATENCY;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#tripleStorage</tt> */
+	public final static URI TRIPLE_STORAGE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#valueStorage</tt> */
+	public final static URI VALUE_STORAGE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#namespaceStorage</tt> */
+	public final static URI NAMESPACE_STORAGE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#compression</tt> */
+	public final static URI COMPRESSION;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#bloomFilter</tt> */
+	public final static URI BLOOM_FILTER;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#blockSize</tt> */
+	public final static URI BLOCK_SIZE;
+	
+	/** <tt>http://www.openrdf.org/config/sail/hbase#inMemory</tt> */
+	public final static URI IN_MEMORY;
+	
 	static {
 		ValueFactory factory = ValueFactoryImpl.getInstance();
 		
@@ -39,5 +111,54 @@ public class HBaseStoreSchema {
 		VALUE_FIELDS = factory.createURI(NAMESPACE, "valueFields");
 		
 		FAMILY_FIELD_BITS = factory.createURI(NAMESPACE, "familyFieldBits");
+		
+		SALT_FIELD = factory.createURI(NAMESPACE, "saltField");
+		
+		SALT_BITS = factory.createURI(NAMESPACE, "saltBits");
+		
+		PARTITION_PREDICATE = factory.createURI(NAMESPACE, "partitionPredicate");
+		
+		INITIAL_REGIONS = factory.createURI(NAMESPACE, "initialRegions");
+		
+		INDEX_BUILD_THREADS = factory.createURI(NAMESPACE, "indexBuildThreads");
+		
+		INDEX_BUILD_RATE = factory.createURI(NAMESPACE, "indexBuildRate");
+		
+		RANGE_INDEX_PREDICATE = factory.createURI(NAMESPACE, "rangeIndexPredicate");
+		
+		TEXT_INDEX = factory.createURI(NAMESPACE, "textIndex");
+		
+		TEXT_INDEX_GRAM_LENGTH = factory.createURI(NAMESPACE, "textIndexGramLength");
+		
+		WRITE_BUFFER_SIZE = factory.createURI(NAMESPACE, "writeBufferSize");
+		
+		WORKER_THREADS = factory.createURI(NAMESPACE, "workerThreads");
+		
+		WORKER_QUEUE_SIZE = factory.createURI(NAMESPACE, "workerQueueSize");
+		
+		
+		SCAN_PREFETCH = factory.createURI(NAMESPACE, "scanPrefetch");
+		
+		PATTERN_CACHE_SIZE = factory.createURI(NAMESPACE, "patternCacheSize");
+		
+		METRICS = factory.createURI(NAMESPACE, "metrics");
+		
+		BACKEND = factory.createURI(NAMESPACE, "backend");
+		
+		BACKEND_LATENCY = factory.createURI(NAMESPACE, "backendLatency");
+		
+		TRIPLE_STORAGE = factory.createURI(NAMESPACE, "tripleStorage");
+		
+		VALUE_STORAGE = factory.createURI(NAMESPACE, "valueStorage");
+		
+		NAMESPACE_STORAGE = factory.createURI(NAMESPACE, "namespaceStorage");
+		
+		COMPRESSION = factory.createURI(NAMESPACE, "compression");
+		
+		BLOOM_FILTER = factory.createURI(NAMESPACE, "bloomFilter");
+		
+		BLOCK_SIZE = factory.createURI(NAMESPACE, "blockSize");
+		
+		IN_MEMORY = factory.createURI(NAMESPACE, "inMemory");
 	}
 }
@@ -1,5 +1,7 @@
 package org.openrdf.sail.hbase.config;
 
+import java.util.Arrays;
+
 public class IndexSpec {
 
 	private char[] fieldSeq;
@@ -32,8 +34,90 @@ public class IndexSpec {
 		return familyFieldBits;
 	}
 
+	private char saltField;
+
+	/**
+	 * Gets the field whose ID determines the salt prefix of the row keys, or
+	 * <tt>0</tt> if the row keys are not salted.
+	 */
+	public char getSaltField() {
+		return saltField;
+	}
+
+	private byte saltBits;
+
+	public byte getSaltBits() {
+		return saltBits;
+	}
+
+	public boolean isSalted() {
+		return saltBits > 0;
+	}
+
+	private String predicate;
+
+	/**
+	 * Gets the URI of the predicate whose statements this index holds, or
+	 * <tt>null</tt> if it holds the statements of all predicates.
+	 */
+	public String getPredicate() {
+		return predicate;
+	}
+
+	public boolean isPartitioned() {
+		return predicate != null;
+	}
+
+	/**
+	 * Gets the name of the index, which is its field sequence followed by its
+	 * salt field and bits if it is salted, e.g. <tt>pso-s4</tt>, and by a hash
+	 * of its predicate if it is partitioned.
+	 */
+	public String getName() {
+		return new String(fieldSeq) 
+			+ (isSalted() ? "-" + saltField + saltBits : "")
+			+ (isPartitioned() ? "-p" + Integer.toHexString(predicate.hashCode()) : "");
+	}
+
 	public IndexSpec(String keyFields, String qualifierFields,
 			String valueFields, String familyFieldBits) {
+		this(keyFields, qualifierFields, valueFields, familyFieldBits, (char)0, 0);
+	}
+
+	/**
+	 * Creates the spec of an index whose row keys are prefixed with a salt
+	 * byte: <tt>saltBits</tt> bits of a hash of the ID of <tt>saltField</tt>,
+	 * which must be one of the key fields.
+	 * Salting spreads the rows of a low-cardinality leading field over
+	 * <tt>2^saltBits</tt> key ranges without adding column families.
+	 */
+	public IndexSpec(String keyFields, String qualifierFields,
+			String valueFields, String familyFieldBits, char saltField, int saltBits) {
+		this(keyFields, qualifierFields, valueFields, familyFieldBits, saltField, saltBits, null);
+	}
+
+	/**
+	 * Creates the spec of an index that only holds the statements of a single
+	 * predicate, in a table of its own. The predicate is implied, so the
+	 * fields are a sequence of <tt>s</tt>, <tt>o</tt> and <tt>c</tt>.
+	 */
+	public IndexSpec(String keyFields, String qualifierFields,
+			String valueFields, String familyFieldBits, String predicate) {
+		this(keyFields, qualifierFields, valueFields, familyFieldBits, (char)0, 0, predicate);
+	}
+
+	public IndexSpec(String keyFields, String qualifierFields,
+			String valueFields, String familyFieldBits, char saltField, int saltBits, 
+			String predicate) {
+		
+		if (saltBits < 0 || saltBits > 8)
+			throw new IllegalArgumentException("saltBits must be between 0 and 8: " + saltBits);
+		if (saltBits > 0 && keyFields.indexOf(saltField) < 0)
+			throw new IllegalArgumentException("salt field '" + saltField + "' is not a key field: " + keyFields);
+		
+		this.saltField = saltField;
+		this.saltBits = (byte)saltBits;
+		this.predicate = predicate;
 		
 		this.fieldSeq = 
 			(keyFields
@@ -41,6 +125,12 @@ public class IndexSpec {
 				+ (valueFields != null ? valueFields : ""))
 					.toCharArray();
 
+		char[] fields = (predicate != null ? "cos" : "cops").toCharArray();
+		char[] sortedFields = this.fieldSeq.clone();
+		Arrays.sort(sortedFields);
+		if (!Arrays.equals(sortedFields, fields))
+			throw new IllegalArgumentException("field sequence must be a permutation of '" + new String(fields) + "': " + new String(this.fieldSeq));
+
 		this.keyFields = keyFields.toCharArray();
 		this.qualifierFields = qualifierFields != null ? qualifierFields.toCharArray() : null;
 		this.valueFields = valueFields != null ? valueFields.toCharArray() : null;
@@ -50,4 +140,27 @@ public class IndexSpec {
 			this.familyFieldBits[i] = Byte.parseByte(new String(familyFieldBits.toCharArray(), i, 1));
 		}
 	}
+
+	/**
+	 * Parses an index spec of the form <tt>keyFields/qualifierFields</tt> or
+	 * <tt>keyFields/qualifierFields/valueFields</tt>, e.g. <tt>csp/o</tt>,
+	 * without column family fan-out.
+	 */
+	public static IndexSpec parse(String spec) {
+		
+		String[] parts = spec.trim().split("/");
+		if (parts.length < 1 || parts.length > 3 || parts[0].length() == 0)
+			throw new IllegalArgumentException("invalid index spec: " + spec);
+		
+		String keyFields = parts[0];
+		String qualifierFields = parts.length > 1 && parts[1].length() > 0 ? parts[1] : null;
+		String valueFields = parts.length > 2 && parts[2].length() > 0 ? parts[2] : null;
+		
+		int numFields = spec.replace("/", "").trim().length();
+		StringBuilder familyFieldBits = new StringBuilder(numFields);
+		for (int i = 0; i < numFields; ++i)
+			familyFieldBits.append('0');
+		
+		return new IndexSpec(keyFields, qualifierFields, valueFields, familyFieldBits.toString());
+	}
 }
@@ -0,0 +1,66 @@
+package org.openrdf.sail.hbase.config;
+
+/**
+ * The storage settings for the column families of a table: compression
+ * codec, whether the family has a Bloom filter, block size and whether the
+ * blocks are kept in memory. The codec is the name HBase uses for it,
+ * <tt>GZ</tt> or <tt>LZO</tt>; <tt>NONE</tt> turns compression off.
+ */
+public class StorageProfile {
+
+	public static final String NONE = "NONE";
+
+	/**
+	 * Triple rows are fixed-width runs of IDs with long shared prefixes, and
+	 * most reads are for a single row prefix.
+	 */
+	public static final StorageProfile DEFAULT_TRIPLES = new StorageProfile(NONE, true, 16 * 1024, false);
+
+	/**
+	 * Values are looked up by ID one row at a time.
+	 */
+	public static final StorageProfile DEFAULT_VALUES = new StorageProfile(NONE, true, 64 * 1024, false);
+
+	/**
+	 * The namespace table is tiny and read in full.
+	 */
+	public static final StorageProfile DEFAULT_NAMESPACES = new StorageProfile(NONE, false, 64 * 1024, true);
+
+	private String compression;
+
+	public String getCompression() {
+		return compression;
+	}
+
+	private boolean bloomFilter;
+
+	public boolean isBloomFilter() {
+		return bloomFilter;
+	}
+
+	private int blockSize;
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	private boolean inMemory;
+
+	public boolean isInMemory() {
+		return inMemory;
+	}
+
+	public StorageProfile(String compression, boolean bloomFilter, int blockSize, boolean inMemory) {
+
+		this.compression = compression != null ? compression.toUpperCase() : NONE;
+		this.bloomFilter = bloomFilter;
+		this.blockSize = blockSize;
+		this.inMemory = inMemory;
+	}
+
+	@Override
+	public String toString() {
+		return "compression: " + compression + ", bloom filter: " + bloomFilter + ", block size: "
+				+ blockSize + ", in memory: " + inMemory;
+	}
+}
@@ -0,0 +1,147 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the tables of a store on an HBase cluster. Table handles are cached
+ * per thread by a {@link HTableCache}.
+ */
+public class HBaseBackend implements StorageBackend {
+	private static final Logger logger = LoggerFactory.getLogger(HBaseBackend.class);
+
+	/**
+	 * <tt>HBaseAdmin.createTable(HTableDescriptor, byte[][])</tt>, which
+	 * creates a table split at given keys. The HBase 0.20 client has no way
+	 * to choose where a region splits, so this is <tt>null</tt> unless the
+	 * store runs on a newer client.
+	 */
+	private static final Method CREATE_TABLE_SPLIT = getCreateTableSplit();
+
+	private static Method getCreateTableSplit() {
+		try {
+			return HBaseAdmin.class.getMethod("createTable", HTableDescriptor.class, byte[][].class);
+		}
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private final HBaseConfiguration conf;
+	private final HBaseAdmin admin;
+	private final HTableCache tables;
+
+	public HBaseBackend(HBaseConfiguration conf, long writeBufferSize) throws IOException {
+		this.conf = conf;
+		this.admin = new HBaseAdmin(conf);
+		this.tables = new HTableCache(conf, writeBufferSize);
+	}
+
+	public HBaseConfiguration getConfiguration() {
+		return conf;
+	}
+
+	public HTableInterface getTable(String tableName) throws IOException {
+		return tables.getTable(tableName);
+	}
+
+	public void releaseTables() throws IOException {
+		tables.release();
+	}
+
+	public boolean tableExists(String tableName) throws IOException {
+		return admin.tableExists(tableName);
+	}
+
+	/**
+	 * Creates a table. The table is only split at <tt>splitKeys</tt> on an
+	 * HBase client of version 0.90 or newer; the 0.20 client creates it with
+	 * a single region, which HBase splits as it grows.
+	 */
+	public void createTable(HTableDescriptor desc, byte[][] splitKeys) throws IOException {
+		if (splitKeys == null || splitKeys.length == 0) {
+			admin.createTable(desc);
+			return;
+		}
+
+		if (CREATE_TABLE_SPLIT == null) {
+			logger.warn("Creating table: " + desc.getNameAsString() 
+					+ " with a single region; pre-splitting tables needs HBase 0.90 or newer.");
+			admin.createTable(desc);
+			return;
+		}
+
+		try {
+			CREATE_TABLE_SPLIT.invoke(admin, desc, splitKeys);
+		}
+		catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+		catch (IllegalAccessException e) {
+			throw new IOException(e);
+		}
+	}
+
+	public void enableTable(String tableName) throws IOException {
+		if (!admin.isTableEnabled(tableName))
+			admin.enableTable(tableName);
+	}
+
+	public HTableDescriptor getTableDescriptor(String tableName) throws IOException {
+		return admin.getTableDescriptor(Bytes.toBytes(tableName));
+	}
+
+	public void modifyFamilies(String tableName, List<HColumnDescriptor> families) throws IOException {
+
+		boolean enabled = admin.isTableEnabled(tableName);
+		if (enabled)
+			admin.disableTable(tableName);
+
+		try {
+			for (HColumnDescriptor family : families)
+				admin.modifyColumn(tableName, family.getNameAsString(), family);
+		}
+		finally {
+			if (enabled)
+				admin.enableTable(tableName);
+		}
+	}
+
+	public void truncate(String tableName) throws IOException {
+
+		HTableDescriptor desc = getTableDescriptor(tableName);
+		admin.disableTable(tableName);
+		admin.deleteTable(tableName);
+		admin.createTable(desc);
+	}
+
+	public void drop(String tableName) throws IOException {
+
+		if (admin.tableExists(tableName)) {
+			if (admin.isTableEnabled(tableName))
+				admin.disableTable(tableName);
+			admin.deleteTable(tableName);
+		}
+	}
+
+	public int getServerCount() throws IOException {
+		return admin.getClusterStatus().getServers();
+	}
+
+	public void close() throws IOException {
+		tables.close();
+	}
+}
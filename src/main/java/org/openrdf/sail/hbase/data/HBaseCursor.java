@@ -3,8 +3,6 @@ package org.openrdf.sail.hbase.data;
 import java.io.IOException;
 
 import org.apache.hadoop.hbase.KeyValue;
-import org.apache.hadoop.hbase.client.HTable;
-import org.apache.hadoop.hbase.client.HTablePool;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.openrdf.cursor.Cursor;
@@ -13,9 +11,10 @@ import org.openrdf.sail.hbase.HBaseException;
 public class HBaseCursor implements Cursor<KeyValue> {
 		
 	private ResultScanner scanner;
-	private HTable table;
-	private HTablePool tablePool;
 	
+	private Result[] results;
+	private int resultIndex;
+
 	private Result currentResult;
 	private int keyValueIndex = -1;
 	
@@ -24,14 +23,7 @@ public class HBaseCursor implements Cursor<KeyValue> {
 
 	public HBaseCursor(ResultScanner scanner)
 	{
-		this(scanner, null, null);
-	}
-	
-	public HBaseCursor(ResultScanner scanner, HTable table, HTablePool tablePool) {
-		
 		this.scanner = scanner;
-		this.table = table;
-		this.tablePool = tablePool;
 	}
 	
 	public HBaseCursor(Result result)
@@ -39,12 +31,14 @@ public class HBaseCursor implements Cursor<KeyValue> {
 		this.currentResult = result;
 	}
 
+	public HBaseCursor(Result[] results)
+	{
+		this.results = results;
+	}
+
 	public void close() {
 		if (this.scanner != null)
 			this.scanner.close();
-		
-		if (this.table != null && this.tablePool != null)
-			this.tablePool.putTable(this.table);
 	}
 
 	public boolean hasNext() throws HBaseException {
@@ -56,18 +50,15 @@ public class HBaseCursor implements Cursor<KeyValue> {
 		try {
 			advanced = true;
 			
-			if (scanner != null && (keyValueIndex < 0 || (keyValueIndex + 1) >= currentResult.raw().length)) {
-				currentResult = scanner.next();
-				keyValueIndex = -1;
+			while (currentResult == null || currentResult.isEmpty() || (keyValueIndex + 1) >= currentResult.raw().length) {
+				if (!nextResult()) {
+					hasNext = false;
+					return hasNext;
+				}
 			}
 			
-			if (currentResult != null && (keyValueIndex + 1) < currentResult.raw().length) {
-				++keyValueIndex;
-				hasNext = true;
-			}
-			else {
-				hasNext = false;
-			}
+			++keyValueIndex;
+			hasNext = true;
 						
 			return hasNext;
 			
@@ -76,6 +67,21 @@ public class HBaseCursor implements Cursor<KeyValue> {
 		}
 	}
 
+	private boolean nextResult() throws IOException {
+		if (scanner != null) {
+			currentResult = scanner.next();
+		}
+		else if (results != null && resultIndex < results.length) {
+			currentResult = results[resultIndex++];
+		}
+		else {
+			return false;
+		}
+		
+		keyValueIndex = -1;
+		return currentResult != null;
+	}
+
 	public KeyValue next() throws HBaseException {
 		
 		if (hasNext()) {
@@ -1,6 +1,7 @@
 package org.openrdf.sail.hbase.data;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.ResultScanner;
@@ -11,6 +12,7 @@ import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.sail.hbase.ValueStore;
+import org.openrdf.sail.hbase.model.HBaseValue;
 import org.openrdf.store.StoreException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,53 +20,121 @@ import org.slf4j.LoggerFactory;
 public class HBaseStatementCursor implements Cursor<Statement> {
 	private Logger logger = LoggerFactory.getLogger(HBaseStatementCursor.class);
 
+	private static final int NULL_CONTEXT_ID = Bytes.toInt(ValueTable.NULL_CONTEXT);
+
 	private HBaseCursor internalCursor;
 	private TripleIndex index;
 	private ValueStore values;
+	private char orderField;
+	private MutationBuffer buffer;
+	private List<byte[][]> added;
+	private int addedIndex;
+	private StorageMetrics.TableMetrics metrics;
+
+	private final int[] ids = new int[4];
+	private byte[][] valueIDs;
 
 	public HBaseStatementCursor(HBaseCursor cursor,
 			TripleIndex index, ValueStore values) {
+		this(cursor, index, values, (char)0);
+	}
+
+	public HBaseStatementCursor(HBaseCursor cursor,
+			TripleIndex index, ValueStore values, char orderField) {
 
 		this.internalCursor = cursor ;
 		this.index = index;
 		this.values = values;
+		this.orderField = orderField;
+		this.metrics = StorageMetrics.getTable(index.getTableName());
 	}
 
-	public boolean hasNext() throws StoreException {
+	/**
+	 * Creates a cursor that reads through the changes of a transaction:
+	 * stored triples that the transaction changed are skipped, and the
+	 * triples it added follow the stored ones.
+	 *
+	 * @param added
+	 *        The triples in <tt>buffer</tt> that were added and match the
+	 *        pattern of <tt>cursor</tt>.
+	 */
+	public HBaseStatementCursor(HBaseCursor cursor,
+			TripleIndex index, ValueStore values, char orderField,
+			MutationBuffer buffer, List<byte[][]> added) {
 
-		return this.internalCursor.hasNext();
+		this(cursor, index, values, orderField);
+		this.buffer = buffer;
+		this.added = added;
 	}
 
-	public Statement next() throws StoreException {
-		if (hasNext()) {
+	public TripleIndex getIndex() {
+		return index;
+	}
 
-			try {
-				KeyValue keyValue = internalCursor.next();
+	/**
+	 * Gets the field ('s', 'p', 'o' or 'c') on whose internal ID the
+	 * statements of this cursor are ordered, or <tt>0</tt> if the order is not
+	 * known.
+	 */
+	public char getOrderField() {
+		return orderField;
+	}
 
-				byte[][] valueIDs = index.getValueIDs(keyValue);
+	public boolean hasNext() throws StoreException {
 
-				Resource subj = (Resource) values.getValue(valueIDs[0]);
-				URI pred = (URI) values.getValue(valueIDs[1]);
-				Value obj = values.getValue(valueIDs[2]);
+		return this.internalCursor.hasNext() || added != null && addedIndex < added.size();
+	}
 
-				Resource context = null;
-				byte[] contextID = valueIDs[3];
-				if (!Bytes.equals(contextID, ValueTable.NULL_VALUE)) {
-					context = (Resource) values.getValue(contextID);
+	public Statement next() throws StoreException {
+		try {
+			while (internalCursor.hasNext()) {
+				KeyValue keyValue = internalCursor.next();
+
+				if (buffer != null) {
+					if (valueIDs == null)
+						valueIDs = new byte[4][ValueTable.NUM_VALUE_BYTES];
+					index.getValueIDs(keyValue, valueIDs);
+					if (buffer.getChange(valueIDs[0], valueIDs[1], valueIDs[2], valueIDs[3]) != null) {
+						// removed, or returned from the added triples
+						continue;
+					}
 				}
 
-				Statement statement = values.createStatement(subj, pred, obj,
-					context);
-				return statement;
+				if (metrics != null)
+					metrics.returned();
+				return createStatement(index.getIDs(keyValue, ids));
+			}
 
-			} catch (IOException ioe) {
-				throw new StoreException(ioe);
+			if (added != null && addedIndex < added.size()) {
+				byte[][] addedIDs = added.get(addedIndex++);
+				for (int i = 0; i < 4; ++i)
+					ids[i] = Bytes.toInt(addedIDs[i]);
+				return createStatement(ids);
 			}
-		} else {
+
 			return null;
+
+		} catch (IOException ioe) {
+			throw new StoreException(ioe);
 		}
 	}
 
+	private Statement createStatement(int[] ids) throws IOException {
+
+		Resource subj = (Resource) values.getValue(ids[0]);
+		URI pred = (URI) values.getValue(ids[1]);
+		Value obj = values.getValue(ids[2]);
+
+		// no value is stored for the null context
+		Resource context = null;
+		int contextID = ids[3];
+		if (contextID != HBaseValue.UNKNOWN_ID && contextID != NULL_CONTEXT_ID) {
+			context = (Resource) values.getValue(contextID);
+		}
+
+		return values.createStatement(subj, pred, obj, context);
+	}
+
 	@Override
 	public void close() throws StoreException {
 
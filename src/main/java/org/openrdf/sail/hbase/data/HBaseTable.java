@@ -1,33 +1,48 @@
 package org.openrdf.sail.hbase.data;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
 
-import org.apache.hadoop.hbase.HBaseConfiguration;
-import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
-import org.apache.hadoop.hbase.client.HBaseAdmin;
-import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.Filter;
-import org.apache.hadoop.hbase.util.Bytes;
-import org.apache.hadoop.util.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+/**
+ * Helpers for the requests the store makes to HBase. Requests made through
+ * these are counted in the {@link StorageMetrics}.
+ */
 public class HBaseTable {
-	private static final Logger logger = LoggerFactory.getLogger(HBaseTable.class);
 	
-    public static void put(HTable table, byte[] key, byte[] family, byte[] qualifier, byte[] value) throws IOException {
+	/**
+	 * Rows fetched per round trip by a scan whose rows are decoded.
+	 */
+	public static final int SCAN_CACHING = 32;
+	
+	/**
+	 * Rows fetched per round trip by a scan that only counts rows.
+	 */
+	public static final int COUNT_SCAN_CACHING = 1000;
+	
+    public static void put(HTableInterface table, byte[] key, byte[] family, byte[] qualifier, byte[] value) throws IOException {
     	
-    	logger.info("Putting to table: " + Bytes.toString(table.getTableName()) + ", autoFlush: " + table.isAutoFlush() + ", key: " + StringUtils.byteToHexString(key) + ", family: " + StringUtils.byteToHexString(family) + ", qualifier: " + (qualifier != null ? StringUtils.byteToHexString(qualifier) : "null") + ", value: " + (value != null ? StringUtils.byteToHexString(value) : "null") + ".");
-		table.put(HBaseTable.getPut(key, family, qualifier, value));
+    	long began = StorageMetrics.start();
+    	Put p = HBaseTable.getPut(key, family, qualifier, value);
+		table.put(p);
+		StorageMetrics.put(table, p, began);
 	}
     
+    public static void put(HTableInterface table, List<Put> puts) throws IOException {
+    	
+    	long began = StorageMetrics.start();
+    	table.put(puts);
+    	StorageMetrics.put(table, puts, began);
+    }
+    
     public static Put getPut(byte[] key, byte[] family, byte[] qualifier, byte[] value)
     {
     	Put p = new Put(key);
@@ -35,10 +50,26 @@ public class HBaseTable {
 		return p;	    	
     }
         
-    public static void delete(HTable table, byte[] key, byte[] family, byte[] qualifier) throws IOException {
+    public static Put getPut(byte[] key, byte[] family, byte[] qualifier, long timestamp, byte[] value)
+    {
+    	Put p = new Put(key);
+		p.add(family, qualifier, timestamp, value);
+		return p;	    	
+    }
+        
+    public static void delete(HTableInterface table, byte[] key, byte[] family, byte[] qualifier) throws IOException {
 
-    	logger.info("Deleting from table: " + Bytes.toString(table.getTableName()) + ", autoFlush: " + table.isAutoFlush() + ", key: " + StringUtils.byteToHexString(key) + ", family: " + StringUtils.byteToHexString(family) + ", qualifier: " + (qualifier != null ? StringUtils.byteToHexString(qualifier) : "null") + ".");
-    	table.delete(HBaseTable.getDelete(key, family, qualifier));
+    	long began = StorageMetrics.start();
+    	Delete d = HBaseTable.getDelete(key, family, qualifier);
+    	table.delete(d);
+    	StorageMetrics.delete(table, d, began);
+    }
+    
+    public static void delete(HTableInterface table, List<Delete> deletes) throws IOException {
+
+    	long began = StorageMetrics.start();
+    	table.delete(deletes);
+    	StorageMetrics.delete(table, deletes, began);
     }
     
     public static Delete getDelete(byte[] key, byte[] family, byte[] qualifier)
@@ -49,12 +80,12 @@ public class HBaseTable {
     	return d;
     }
         
-    public static Result get(HTable table, byte[] key, byte[] family) throws IOException
+    public static Result get(HTableInterface table, byte[] key, byte[] family) throws IOException
     {
     	return HBaseTable.get(table, key, family, null);
     }
     
-    public static Result get(HTable table, byte[] key, byte[] family, byte[] qualifier) throws IOException
+    public static Result get(HTableInterface table, byte[] key, byte[] family, byte[] qualifier) throws IOException
     {
     	Get g = new Get(key);
     	
@@ -63,10 +94,10 @@ public class HBaseTable {
     	else if (family != null) 
     		g.addFamily(family);
     	
-    	return table.get(g);    	
+    	return HBaseTable.get(table, g);    	
     }
     
-    public static Result get(HTable table, byte[] key, byte[][] families) throws IOException
+    public static Result get(HTableInterface table, byte[] key, byte[][] families) throws IOException
     {
     	Get g = new Get(key);
     	
@@ -75,10 +106,10 @@ public class HBaseTable {
     			if (family != null)
     				g.addFamily(family);
     	
-    	return table.get(g);    	    
+    	return HBaseTable.get(table, g);    	    
     }
     
-    public static Result get(HTable table, byte[] key, byte[][] families, byte[] qualifier) throws IOException
+    public static Result get(HTableInterface table, byte[] key, byte[][] families, byte[] qualifier) throws IOException
     {
     	Get g = new Get(key);
 
@@ -89,17 +120,50 @@ public class HBaseTable {
 		    	else 
 		    		g.addFamily(family);    			
     	
-    	return table.get(g);    	    
+    	return HBaseTable.get(table, g);    	    
+    }
+    
+    public static Result get(HTableInterface table, Get g) throws IOException
+    {
+    	long began = StorageMetrics.start();
+    	Result result = table.get(g);
+    	StorageMetrics.get(table, result, began);
+    	return result;
+    }
+    
+    /**
+     * Gets several rows, one request after the other: the 0.20 client has no
+     * multi-get.
+     */
+    public static Result[] get(HTableInterface table, List<Get> gets) throws IOException
+    {
+    	long began = StorageMetrics.start();
+    	Result[] results = new Result[gets.size()];
+    	for (int i = 0; i < results.length; ++i)
+    		results[i] = table.get(gets.get(i));
+    	StorageMetrics.get(table, results, began);
+    	return results;
     }
     
-    public static ResultScanner scan(HTable table, byte[] start, byte[] stop, byte[][] families) throws IOException {
+    public static ResultScanner scan(HTableInterface table, byte[] start, byte[] stop, byte[][] families) throws IOException {
     	return HBaseTable.scan(table, start, stop, families, null, null);
     }
     
-	public static ResultScanner scan(HTable table, byte[] start, byte[] stop, byte[][] families, byte[] qualifier, Filter filter) throws IOException {
+	public static ResultScanner scan(HTableInterface table, byte[] start, byte[] stop, byte[][] families, byte[] qualifier, Filter filter) throws IOException {
+		return HBaseTable.scan(table, start, stop, families, qualifier, filter, SCAN_CACHING);
+	}
+	
+	public static ResultScanner scan(HTableInterface table, byte[] start, byte[] stop, byte[][] families, byte[] qualifier, Filter filter, int caching) throws IOException {
+		
+		long began = StorageMetrics.start();
+		ResultScanner scanner = table.getScanner(HBaseTable.getScan(start, stop, families, qualifier, filter, caching));
+		return StorageMetrics.scan(table, scanner, began);
+	}
+	
+	public static Scan getScan(byte[] start, byte[] stop, byte[][] families, byte[] qualifier, Filter filter, int caching) {
 		
 		Scan s = new Scan();
-		s.setCaching(32);
+		s.setCaching(caching);
 		
 		if (start != null)
 			s.setStartRow(start);
@@ -116,27 +180,6 @@ public class HBaseTable {
 		if (filter != null)
 			s.setFilter(filter);
 		
-		logger.info("Scanning table: " + Bytes.toString(table.getTableName()) + ", start: " + (start != null ? StringUtils.byteToHexString(start) : "null") + ", stop: " + (stop != null ? StringUtils.byteToHexString(stop) : "null") + ".");
-		
-		return table.getScanner(s);
+		return s;
 	}
-	
-	public static void drop(HTable table, HBaseConfiguration conf) throws IOException {
-		
-		HBaseAdmin admin = new HBaseAdmin(conf);
-		if (admin.tableExists(table.getTableName())) {
-			if (admin.isTableEnabled(table.getTableName()))
-				admin.disableTable(table.getTableName());
-			admin.deleteTable(table.getTableName());
-		}
-	}
-
-	public static void clear(HTable table, HBaseConfiguration conf) throws IOException {		
-		HTableDescriptor desc = table.getTableDescriptor();
-		
-		HBaseAdmin admin = new HBaseAdmin(conf);
-		admin.disableTable(table.getTableName());
-		admin.deleteTable(table.getTableName());
-		admin.createTable(desc);
-	}		
 }
@@ -1,21 +1,26 @@
 package org.openrdf.sail.hbase.data;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
-import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
-import org.apache.hadoop.hbase.client.HBaseAdmin;
-import org.apache.hadoop.hbase.client.HTablePool;
+import org.apache.hadoop.hbase.io.hfile.Compression;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.util.StringUtils;
 import org.openrdf.sail.hbase.HBaseStore;
+import org.openrdf.sail.hbase.ValueStore;
 import org.openrdf.sail.hbase.config.HBaseStoreConfig;
 import org.openrdf.sail.hbase.config.IndexSpec;
+import org.openrdf.sail.hbase.config.StorageProfile;
 import org.openrdf.store.StoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class HBaseTableFactory {
+	private static final Logger logger = LoggerFactory.getLogger(HBaseTableFactory.class);
 	
 	private static final String NAMESPACES = "namespaces";
 	public static final byte NUM_NAMESPACE_FAMILIES = 1;
@@ -26,6 +31,12 @@ public class HBaseTableFactory {
 	
 	private static final String TRIPLES = "triples";
 	
+	private static final String INDEXES = "indexes";
+	
+	private static final String RANGES = "ranges";
+	
+	private static final String TEXT = "text";
+	
 	public static final int MAX_FAMILIES = 128;
 	
 	public static final byte[][] FAMILY_NAMES = getFamilyNames();
@@ -80,50 +91,197 @@ public class HBaseTableFactory {
 	private HBaseStore store;
 	private HBaseStoreConfig storeConf;
 	
-	private HTablePool tablePool;
-	private HBaseAdmin admin;
+	private StorageBackend backend;
+	
+	/**
+	 * Whether the store already had complete triple indexes when it was
+	 * opened.
+	 */
+	private boolean hasTriples;
 	
-	public HBaseTableFactory(HBaseStore store, HBaseStoreConfig conf, HBaseConfiguration hbaseConf) throws IOException
+	public HBaseTableFactory(HBaseStore store, HBaseStoreConfig conf, StorageBackend backend)
 	{
 		this.store = store;
 		this.storeConf = conf;
 		
-		this.tablePool = new HTablePool();
-		this.admin = new HBaseAdmin(hbaseConf);		
+		this.backend = backend;
 	}
 	
 	public TripleTable getTripleTable()
 			throws IOException, StoreException {
 		
+		IndexStateTable states = getIndexStateTable();
+		
+		// indexes that are added to a store with complete indexes have to be
+		// built from those before they can be used
+		List<IndexSpec> created = new ArrayList<IndexSpec>();
+		boolean hasReadyIndex = false;
+		
 		for (IndexSpec indexSpec : storeConf.getTripleIndexes())
 		{	
-			byte familyBits = 0;
-			for (byte numBits : indexSpec.getFamilyFieldBits())
-				familyBits += numBits;
-			String tableName = HBaseTableFactory.getTripleTableName(storeConf.getCatalogName(), new String(indexSpec.getFieldSeq()));
-			if (!admin.tableExists(tableName)) {
-				createHTable(tableName, (byte)(1 << familyBits));
-			} else if (!admin.isTableEnabled(tableName)) {
-				admin.enableTable(tableName);
+			String tableName = HBaseTableFactory.getTripleTableName(storeConf.getCatalogName(), indexSpec.getName());
+			if (!backend.tableExists(tableName)) {
+				createTripleHTable(tableName, indexSpec);
+				created.add(indexSpec);
+			} else {
+				backend.enableTable(tableName);
+				
+				String state = states.getState(indexSpec.getName());
+				if (state == null) {
+					states.setState(indexSpec.getName(), IndexStateTable.READY);
+				}
+				hasReadyIndex |= !IndexStateTable.BUILDING.equals(state) && !indexSpec.isPartitioned();
 			}
 		}
+		
+		for (IndexSpec indexSpec : created) {
+			states.setState(indexSpec.getName(), hasReadyIndex ? IndexStateTable.BUILDING : IndexStateTable.READY);
+		}
 
-		return new TripleTable(store);
+		this.hasTriples = hasReadyIndex;
+
+		TripleTable triples = new TripleTable(store);
+		for (TripleIndex index : triples.getIndexes()) {
+			index.setReady(!IndexStateTable.BUILDING.equals(states.getState(index.getName())));
+		}
+		
+		return triples;
+	}
+	
+	/**
+	 * Creates the table of an index that is added to the store while it is
+	 * open, and marks it as building.
+	 */
+	public void createTripleIndex(IndexSpec indexSpec) throws IOException {
+		
+		String tableName = HBaseTableFactory.getTripleTableName(storeConf.getCatalogName(), indexSpec.getName());
+		if (!backend.tableExists(tableName)) {
+			createTripleHTable(tableName, indexSpec);
+		}
+		
+		getIndexStateTable().setState(indexSpec.getName(), IndexStateTable.BUILDING);
+	}
+	
+	private void createTripleHTable(String tableName, IndexSpec indexSpec) throws IOException {
+		
+		byte familyBits = 0;
+		for (byte numBits : indexSpec.getFamilyFieldBits())
+			familyBits += numBits;
+		
+		createHTable(tableName, (byte)(1 << familyBits), storeConf.getTripleStorage(), 
+				getTripleSplitKeys(indexSpec, getInitialRegions()));
 	}
 	
-	public static String getTripleTableName(String catalogName, String fieldSeq)
+	public IndexStateTable getIndexStateTable() 
+			throws IOException {
+		
+		String tableName = HBaseTableFactory.getIndexStateTableName(storeConf.getCatalogName());
+		if (!backend.tableExists(tableName)) {
+			createHTable(tableName, NUM_NAMESPACE_FAMILIES, storeConf.getNamespaceStorage(), null);
+		} else {
+			backend.enableTable(tableName);
+		}
+		
+		return new IndexStateTable(store);
+	}
+	
+	/**
+	 * Gets the range index, or <tt>null</tt> if no predicates are configured
+	 * for it. The index of a predicate that is added to a store that already
+	 * has triples is marked as building until it has been filled from the
+	 * triple table.
+	 */
+	public RangeIndexTable getRangeIndexTable() 
+			throws IOException {
+		
+		if (storeConf.getRangeIndexPredicates().isEmpty())
+			return null;
+		
+		String tableName = HBaseTableFactory.getRangeIndexTableName(storeConf.getCatalogName());
+		if (!backend.tableExists(tableName)) {
+			createHTable(tableName, (byte)1, storeConf.getTripleStorage(), 
+					getUniformSplitKeys(null, getInitialRegions()));
+		} else {
+			backend.enableTable(tableName);
+		}
+		
+		IndexStateTable states = getIndexStateTable();
+		RangeIndexTable ranges = new RangeIndexTable(store);
+		ValueStore values = store.getValueStore();
+		
+		for (String predicate : storeConf.getRangeIndexPredicates()) {
+			String stateName = RangeIndexTable.getStateName(predicate);
+			String state = states.getState(stateName);
+			if (state == null) {
+				state = hasTriples ? IndexStateTable.BUILDING : IndexStateTable.READY;
+				states.setState(stateName, state);
+			}
+			
+			ranges.addPredicate(values.storeValue(values.createURI(predicate)), 
+					IndexStateTable.READY.equals(state));
+		}
+		
+		return ranges;
+	}
+	
+	public static String getRangeIndexTableName(String catalogName)
 	{
-		return (catalogName != null ? (catalogName + "-") : "") + TRIPLES + "-" + fieldSeq;
+		return (catalogName != null ? (catalogName + "-") : "") + RANGES;
+	}
+	
+	/**
+	 * Gets the text index, or <tt>null</tt> if it is not enabled. A text index
+	 * that is enabled on a store that already has triples is marked as
+	 * building until it has been filled from the value table.
+	 */
+	public TextIndexTable getTextIndexTable() 
+			throws IOException {
+		
+		if (!storeConf.isTextIndex())
+			return null;
+		
+		String tableName = HBaseTableFactory.getTextIndexTableName(storeConf.getCatalogName());
+		if (!backend.tableExists(tableName)) {
+			createHTable(tableName, (byte)1, storeConf.getValueStorage(), null);
+		} else {
+			backend.enableTable(tableName);
+		}
+		
+		IndexStateTable states = getIndexStateTable();
+		String state = states.getState(TextIndexTable.STATE_NAME);
+		if (state == null) {
+			state = hasTriples ? IndexStateTable.BUILDING : IndexStateTable.READY;
+			states.setState(TextIndexTable.STATE_NAME, state);
+		}
+		
+		return new TextIndexTable(store, storeConf.getTextIndexGramLength(), 
+				IndexStateTable.READY.equals(state));
+	}
+	
+	public static String getTextIndexTableName(String catalogName)
+	{
+		return (catalogName != null ? (catalogName + "-") : "") + TEXT;
+	}
+	
+	public static String getIndexStateTableName(String catalogName)
+	{
+		return (catalogName != null ? (catalogName + "-") : "") + INDEXES;
+	}
+	
+	public static String getTripleTableName(String catalogName, String indexName)
+	{
+		return (catalogName != null ? (catalogName + "-") : "") + TRIPLES + "-" + indexName;
 	}
 	
 	public ValueTable getValueTable()
 			throws IOException {
 		
 		String tableName = HBaseTableFactory.getValueTableName(storeConf.getCatalogName());
-		if (!admin.tableExists(tableName)) {
-			createHTable(tableName, NUM_VALUE_FAMILIES);
-		} else if (!admin.isTableEnabled(tableName)) {
-			admin.enableTable(tableName);
+		if (!backend.tableExists(tableName)) {
+			createHTable(tableName, NUM_VALUE_FAMILIES, storeConf.getValueStorage(), 
+					getUniformSplitKeys(null, getInitialRegions()));
+		} else {
+			backend.enableTable(tableName);
 		}
 
 		return new ValueTable(store);		
@@ -138,10 +296,10 @@ public class HBaseTableFactory {
 			throws IOException {
 		
 		String tableName = HBaseTableFactory.getNamespaceTableName(storeConf.getCatalogName());
-		if (!admin.tableExists(tableName)) {
-			createHTable(tableName, NUM_NAMESPACE_FAMILIES);
-		} else if (!admin.isTableEnabled(tableName)) {
-			admin.enableTable(tableName);
+		if (!backend.tableExists(tableName)) {
+			createHTable(tableName, NUM_NAMESPACE_FAMILIES, storeConf.getNamespaceStorage(), null);
+		} else {
+			backend.enableTable(tableName);
 		}
 
 		return new NamespaceTable(store);
@@ -152,14 +310,14 @@ public class HBaseTableFactory {
 		return (catalogName != null ? (catalogName + "-") : "") + NAMESPACES;
 	}
 		
-	private void createHTable(String tableName, byte numFamilies) 
+	private void createHTable(String tableName, byte numFamilies, StorageProfile profile, byte[][] splitKeys) 
 			throws IOException {
 		
 		HTableDescriptor desc = new HTableDescriptor(tableName);
 		
 		for (byte i = 0; i < numFamilies; ++i) {
 
-			desc.addFamily(
+			HColumnDescriptor family = 
 				new HColumnDescriptor(
 					HBaseTableFactory.FAMILY_NAMES[i],
 					HColumnDescriptor.DEFAULT_VERSIONS,
@@ -167,13 +325,166 @@ public class HBaseTableFactory {
 					HColumnDescriptor.DEFAULT_IN_MEMORY,
 					HColumnDescriptor.DEFAULT_BLOCKCACHE,
 					HColumnDescriptor.DEFAULT_TTL, 
-					false)); 		
-			};
+					false);
+			applyStorageProfile(family, profile);
+			desc.addFamily(family);
+		}
 		
-		admin.createTable(desc);
+		if (splitKeys != null && splitKeys.length > 0)
+			logger.info("Creating table: " + tableName + " with " + (splitKeys.length + 1) + " regions.");
+		backend.createTable(desc, splitKeys);
+	}
+	
+	/**
+	 * Gets the number of regions to create new triple and value tables with:
+	 * the configured number, or one per region server.
+	 */
+	private int getInitialRegions() throws IOException {
+		
+		if (storeConf.getInitialRegions() > 0)
+			return storeConf.getInitialRegions();
+		
+		return backend.getServerCount();
+	}
+	
+	/**
+	 * Gets the keys that split a table into regions of equal ranges of IDs.
+	 * Value IDs are hashes, so the rows of the value table and the leading
+	 * subject, predicate or object field of a triple index are spread evenly
+	 * over the ID space.
+	 * 
+	 * @param prefix
+	 *        A prefix of the split keys, or <tt>null</tt>.
+	 */
+	static byte[][] getUniformSplitKeys(byte[] prefix, int numRegions) {
+		
+		if (numRegions < 2)
+			return null;
+		
+		int prefixLength = prefix != null ? prefix.length : 0;
+		byte[][] splitKeys = new byte[numRegions - 1][];
+		for (int i = 1; i < numRegions; ++i) {
+			
+			byte[] splitKey = new byte[prefixLength + ValueTable.NUM_VALUE_BYTES];
+			if (prefix != null)
+				Bytes.putBytes(splitKey, 0, prefix, 0, prefixLength);
+			Bytes.putInt(splitKey, prefixLength, (int)((1L << 32) * i / numRegions));
+			
+			splitKeys[i - 1] = splitKey;
+		}
+		
+		return splitKeys;
+	}
+	
+	/**
+	 * Gets the keys that split a salted triple index into regions of whole
+	 * salt values, as close to equal in number as the salt allows.
+	 */
+	static byte[][] getSaltSplitKeys(IndexSpec indexSpec, int numRegions) {
+		
+		int numSalts = 1 << indexSpec.getSaltBits();
+		numRegions = Math.min(numRegions, numSalts);
+		
+		byte[][] splitKeys = new byte[numRegions - 1][];
+		for (int i = 1; i < numRegions; ++i)
+			splitKeys[i - 1] = new byte[] { (byte)(i * numSalts / numRegions) };
+		
+		return splitKeys;
+	}
+	
+	/**
+	 * Gets the keys that split a triple index into regions by its leading
+	 * field. A context-first index holds all statements without a context
+	 * under the single null context ID, so half of its regions split that
+	 * context on the second key field and the others split the named
+	 * contexts.
+	 */
+	static byte[][] getTripleSplitKeys(IndexSpec indexSpec, int numRegions) {
+		
+		if (numRegions < 2)
+			return null;
+		
+		if (indexSpec.isSalted())
+			return getSaltSplitKeys(indexSpec, numRegions);
+		
+		char[] keyFields = indexSpec.getKeyFields();
+		if (keyFields[0] != 'c')
+			return getUniformSplitKeys(null, numRegions);
+		
+		List<byte[]> splitKeys = new ArrayList<byte[]>(numRegions);
+		
+		int nullContextRegions = numRegions / 2;
+		if (keyFields.length > 1 && nullContextRegions > 1)
+			splitKeys.addAll(Arrays.asList(getUniformSplitKeys(ValueTable.NULL_CONTEXT, nullContextRegions)));
+		
+		splitKeys.add(ValueTable.FIRST_VALUE);
+		
+		byte[][] contextSplitKeys = getUniformSplitKeys(null, numRegions - nullContextRegions);
+		if (contextSplitKeys != null)
+			splitKeys.addAll(Arrays.asList(contextSplitKeys));
+		
+		return splitKeys.toArray(new byte[splitKeys.size()][]);
+	}
+	
+	/**
+	 * Brings the column families of all tables of the store in line with the
+	 * configured storage profiles. Tables whose families need to change are
+	 * disabled while they are modified. The new settings apply to store files
+	 * written from then on; existing files are rewritten by the next major
+	 * compaction.
+	 */
+	public void alterTables() throws IOException {
+		
+		alterHTable(HBaseTableFactory.getNamespaceTableName(storeConf.getCatalogName()), storeConf.getNamespaceStorage());
+		alterHTable(HBaseTableFactory.getValueTableName(storeConf.getCatalogName()), storeConf.getValueStorage());
+		
+		for (IndexSpec indexSpec : storeConf.getTripleIndexes())
+			alterHTable(HBaseTableFactory.getTripleTableName(storeConf.getCatalogName(), indexSpec.getName()), 
+					storeConf.getTripleStorage());
+		
+		if (!storeConf.getRangeIndexPredicates().isEmpty())
+			alterHTable(HBaseTableFactory.getRangeIndexTableName(storeConf.getCatalogName()), 
+					storeConf.getTripleStorage());
+		
+		if (storeConf.isTextIndex())
+			alterHTable(HBaseTableFactory.getTextIndexTableName(storeConf.getCatalogName()), 
+					storeConf.getValueStorage());
+	}
+	
+	private void alterHTable(String tableName, StorageProfile profile) 
+			throws IOException {
+		
+		HTableDescriptor desc = backend.getTableDescriptor(tableName);
+		
+		List<HColumnDescriptor> changed = new ArrayList<HColumnDescriptor>();
+		for (HColumnDescriptor family : desc.getFamilies()) {
+			if (!hasStorageProfile(family, profile)) {
+				applyStorageProfile(family, profile);
+				changed.add(family);
+			}
+		}
+		
+		if (changed.isEmpty())
+			return;
+		
+		logger.info("Altering table: " + tableName + " to " + profile + ".");
+		
+		backend.modifyFamilies(tableName, changed);
+	}
+	
+	private static void applyStorageProfile(HColumnDescriptor family, StorageProfile profile) {
+		
+		family.setCompressionType(Compression.Algorithm.valueOf(profile.getCompression()));
+		family.setBloomfilter(profile.isBloomFilter());
+		family.setBlocksize(profile.getBlockSize());
+		family.setInMemory(profile.isInMemory());
+	}
+	
+	private static boolean hasStorageProfile(HColumnDescriptor family, StorageProfile profile) {
+		
+		return profile.getCompression().equalsIgnoreCase(family.getCompression().name())
+			&& profile.isBloomFilter() == family.isBloomfilter()
+			&& profile.getBlockSize() == family.getBlocksize()
+			&& profile.isInMemory() == family.isInMemory();
 	}
-
-	public HTablePool getTablePool() {
-		return this.tablePool;
-	}	
 }
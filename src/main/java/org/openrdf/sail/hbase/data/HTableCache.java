@@ -0,0 +1,125 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out table handles for a store. An {@link HTable} is not thread-safe
+ * but is costly to create, so every thread gets its own handle per table,
+ * which it keeps until it releases its handles or the cache is closed. All
+ * handles share the connection that HBase keeps per configuration, and with
+ * it the cache of region locations.
+ * <p>
+ * Handles flush every mutation right away; batches of mutations are bounded
+ * by the configured write buffer size.
+ */
+public class HTableCache {
+	private static final Logger logger = LoggerFactory.getLogger(HTableCache.class);
+
+	private final HBaseConfiguration conf;
+	private final long writeBufferSize;
+
+	private final ThreadLocal<Map<String, HTable>> tables = new ThreadLocal<Map<String, HTable>>() {
+		@Override
+		protected Map<String, HTable> initialValue() {
+			return new HashMap<String, HTable>();
+		}
+	};
+
+	/**
+	 * All handles that have been handed out, to be closed with the cache.
+	 */
+	private final Queue<HTable> handles = new ConcurrentLinkedQueue<HTable>();
+
+	private volatile boolean closed;
+
+	public HTableCache(HBaseConfiguration conf, long writeBufferSize) {
+		this.conf = conf;
+		this.writeBufferSize = writeBufferSize;
+	}
+
+	/**
+	 * Gets the calling thread's handle of a table. The handle must not be
+	 * passed to other threads.
+	 */
+	public HTable getTable(String tableName) throws IOException {
+
+		if (closed)
+			throw new IOException("Table cache is closed");
+
+		Map<String, HTable> threadTables = tables.get();
+		HTable table = threadTables.get(tableName);
+		if (table == null) {
+			table = new HTable(conf, tableName);
+			table.setAutoFlush(true);
+			table.setWriteBufferSize(writeBufferSize);
+
+			threadTables.put(tableName, table);
+			handles.add(table);
+		}
+
+		return table;
+	}
+
+	/**
+	 * Flushes and closes the handles of the calling thread, which is done
+	 * with the store for now, so that threads that come and go do not leave
+	 * their handles behind. The thread gets new handles when it needs them
+	 * again.
+	 */
+	public void release() throws IOException {
+
+		Map<String, HTable> threadTables = tables.get();
+		tables.remove();
+
+		IOException error = null;
+		for (HTable table : threadTables.values()) {
+			if (!handles.remove(table))
+				continue; // closed with the cache
+
+			try {
+				table.close();
+			}
+			catch (IOException ioe) {
+				logger.error("Error closing table: " + Bytes.toString(table.getTableName()), ioe);
+				error = ioe;
+			}
+		}
+
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * Flushes and closes all handles that have been handed out. Threads must
+	 * not use their handles afterwards, and get no new ones.
+	 */
+	public void close() throws IOException {
+
+		closed = true;
+
+		IOException error = null;
+		HTable table;
+		while ((table = handles.poll()) != null) {
+			try {
+				table.close();
+			}
+			catch (IOException ioe) {
+				logger.error("Error closing table: " + Bytes.toString(table.getTableName()), ioe);
+				error = ioe;
+			}
+		}
+
+		if (error != null)
+			throw error;
+	}
+}
@@ -0,0 +1,173 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.openrdf.sail.hbase.HBaseStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fills an index that is being built with the triples of a complete index,
+ * in the background. The rows of the source index are divided into key
+ * ranges, one per thread, and every thread copies its range in batches at a
+ * bounded rate. Triples are copied with the timestamp they have in the
+ * source, so a triple that is removed while the copy runs stays removed:
+ * the delete masks the older put. When all ranges have been copied the
+ * target index is marked ready.
+ */
+public class IndexBuilder {
+	private static final Logger logger = LoggerFactory.getLogger(IndexBuilder.class);
+
+	private static final int BATCH_SIZE = 1000;
+
+	private final HBaseStore store;
+	private final TripleIndex source;
+	private final TripleIndex target;
+	private final IndexStateTable states;
+	private final int numThreads;
+	private final int rate;
+
+	private final AtomicInteger remaining;
+	private volatile boolean stopped;
+	private volatile boolean failed;
+
+	/**
+	 * @param numThreads
+	 *        The number of ranges to copy in parallel.
+	 * @param rate
+	 *        The maximum number of triples to copy per second over all
+	 *        threads, or <tt>0</tt> for no limit.
+	 */
+	public IndexBuilder(HBaseStore store, TripleIndex source, TripleIndex target,
+			IndexStateTable states, int numThreads, int rate) {
+
+		this.store = store;
+		this.source = source;
+		this.target = target;
+		this.states = states;
+		this.numThreads = Math.max(1, Math.min(numThreads, 256));
+		this.rate = rate;
+		this.remaining = new AtomicInteger(this.numThreads);
+	}
+
+	public TripleIndex getTarget() {
+		return target;
+	}
+
+	public void start() {
+
+		logger.info("Building index: " + target.getTableName() + " from: " + source.getTableName()
+				+ " with " + numThreads + " threads.");
+
+		for (int i = 0; i < numThreads; ++i) {
+			// split the source on the first byte of its row keys
+			final byte[] startKey = i > 0 ? new byte[] { (byte)(i * 256 / numThreads) } : null;
+			final byte[] stopKey = i < numThreads - 1 ? new byte[] { (byte)((i + 1) * 256 / numThreads) } : null;
+
+			store.start("build", new Runnable() {
+				public void run() {
+					copy(startKey, stopKey);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stops copying. The target stays in the building state and is built
+	 * again from scratch the next time the store is opened.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	private void copy(byte[] startKey, byte[] stopKey) {
+
+		ResultScanner scanner = null;
+
+		try {
+			HTableInterface sourceTable = store.getHTable(source.getTableName());
+			HTableInterface targetTable = store.getHTable(target.getTableName());
+
+			scanner = HBaseTable.scan(sourceTable, startKey, stopKey, null, null, null, BATCH_SIZE);
+
+			List<Put> puts = new ArrayList<Put>(BATCH_SIZE);
+			byte[][] ids = new byte[4][ValueTable.NUM_VALUE_BYTES];
+			byte[] buffer = new byte[target.getBufferLength()];
+			long started = System.currentTimeMillis();
+			long copied = 0;
+
+			Result result;
+			while (!stopped && (result = scanner.next()) != null) {
+				for (KeyValue kv : result.raw()) {
+					source.getValueIDs(kv, ids);
+					if (!target.contains(ids[1]))
+						continue;
+
+					puts.add(target.getPut(ids[0], ids[1], ids[2], ids[3], kv.getTimestamp(), buffer));
+				}
+
+				if (puts.size() >= BATCH_SIZE) {
+					HBaseTable.put(targetTable, puts);
+					copied += puts.size();
+					puts.clear();
+					throttle(copied, started);
+				}
+			}
+
+			if (!stopped && !puts.isEmpty()) {
+				HBaseTable.put(targetTable, puts);
+			}
+		}
+		catch (IOException ioe) {
+			failed = true;
+			logger.error("Error building index: " + target.getTableName(), ioe);
+		}
+		catch (InterruptedException ie) {
+			stopped = true;
+		}
+		finally {
+			if (scanner != null)
+				scanner.close();
+		}
+
+		if (remaining.decrementAndGet() == 0 && !stopped && !failed) {
+			try {
+				states.setState(target.getName(), IndexStateTable.READY);
+				target.setReady(true);
+
+				// reads may move on to the new index, which leaves the
+				// patterns cached on the others to take up room
+				PatternCache patternCache = store.getTripleTable().getPatternCache();
+				if (patternCache != null)
+					patternCache.invalidateAll();
+
+				logger.info("Index: " + target.getTableName() + " is ready.");
+			}
+			catch (IOException ioe) {
+				logger.error("Error marking index: " + target.getTableName() + " as ready", ioe);
+			}
+		}
+	}
+
+	/**
+	 * Sleeps for as long as this thread is ahead of its share of the rate.
+	 */
+	private void throttle(long copied, long started) throws InterruptedException {
+
+		if (rate <= 0)
+			return;
+
+		long due = started + copied * 1000 * numThreads / rate;
+		long now = System.currentTimeMillis();
+		if (due > now)
+			Thread.sleep(due - now);
+	}
+}
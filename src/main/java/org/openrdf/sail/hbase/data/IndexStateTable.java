@@ -0,0 +1,51 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.sail.hbase.HBaseStore;
+
+/**
+ * Records whether each triple index of a store is complete. An index that
+ * is added to an existing store starts out {@link #BUILDING} and is only
+ * read from once its backfill has made it {@link #READY}. Indexes without a
+ * recorded state predate this table and are ready.
+ */
+public class IndexStateTable {
+
+	public static final String BUILDING = "building";
+	public static final String READY = "ready";
+
+	private static final byte[] STATE = Bytes.toBytes("state");
+
+	private final HBaseStore store;
+	private final String tableName;
+
+	public IndexStateTable(HBaseStore store) {
+		this.store = store;
+		this.tableName = HBaseTableFactory.getIndexStateTableName(store.getHBaseStoreConfig().getCatalogName());
+	}
+
+	public String getTableName() {
+		return this.tableName;
+	}
+
+	/**
+	 * Gets the state of the named index, or <tt>null</tt> if none is recorded.
+	 */
+	public String getState(String indexName) throws IOException {
+
+		HTableInterface table = this.store.getHTable(this.tableName);
+		Result result = HBaseTable.get(table, Bytes.toBytes(indexName), HBaseTableFactory.FAMILY_NAMES[0], STATE);
+		byte[] state = result.getValue(HBaseTableFactory.FAMILY_NAMES[0], STATE);
+		return state != null ? Bytes.toString(state) : null;
+	}
+
+	public void setState(String indexName, String state) throws IOException {
+
+		HTableInterface table = this.store.getHTable(this.tableName);
+		HBaseTable.put(table, Bytes.toBytes(indexName), HBaseTableFactory.FAMILY_NAMES[0], STATE, Bytes.toBytes(state));
+	}
+}
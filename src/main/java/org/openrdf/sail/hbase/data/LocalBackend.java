@@ -0,0 +1,101 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableExistsException;
+import org.apache.hadoop.hbase.TableNotFoundException;
+import org.apache.hadoop.hbase.client.HTableInterface;
+
+/**
+ * Keeps the tables of a store in memory, for as long as the backend lives,
+ * so that the store can be run and measured without a cluster. Column
+ * family settings and split keys are recorded but have no effect.
+ * <p>
+ * Every request to a table can be made to take a fixed time, which stands in
+ * for the round trip to a region server: the number of requests then shows
+ * in the run time, as it would on a cluster, and the effect of batching
+ * requests can be measured offline.
+ */
+public class LocalBackend implements StorageBackend {
+
+	private final long latency;
+
+	private final ConcurrentMap<String, LocalTable> tables = new ConcurrentHashMap<String, LocalTable>();
+
+	public LocalBackend() {
+		this(0);
+	}
+
+	/**
+	 * @param latency
+	 *        The time in microseconds that every request to a table waits for.
+	 */
+	public LocalBackend(long latency) {
+		this.latency = latency * 1000;
+	}
+
+	private LocalTable get(String tableName) throws IOException {
+		LocalTable table = tables.get(tableName);
+		if (table == null)
+			throw new TableNotFoundException(tableName);
+		return table;
+	}
+
+	/**
+	 * Gets a table. The handles of a local table are thread-safe; all threads
+	 * get the same one.
+	 */
+	public HTableInterface getTable(String tableName) throws IOException {
+		return get(tableName);
+	}
+
+	/**
+	 * Keeps the handles, which are shared by all threads.
+	 */
+	public void releaseTables() {
+	}
+
+	public boolean tableExists(String tableName) {
+		return tables.containsKey(tableName);
+	}
+
+	public void createTable(HTableDescriptor desc, byte[][] splitKeys) throws IOException {
+		if (tables.putIfAbsent(desc.getNameAsString(), new LocalTable(desc, latency)) != null)
+			throw new TableExistsException(desc.getNameAsString());
+	}
+
+	public void enableTable(String tableName) throws IOException {
+		get(tableName);
+	}
+
+	public HTableDescriptor getTableDescriptor(String tableName) throws IOException {
+		return new HTableDescriptor(get(tableName).getTableDescriptor());
+	}
+
+	public void modifyFamilies(String tableName, List<HColumnDescriptor> families) throws IOException {
+		get(tableName).modifyFamilies(families);
+	}
+
+	public void truncate(String tableName) throws IOException {
+		get(tableName).clear();
+	}
+
+	public void drop(String tableName) {
+		tables.remove(tableName);
+	}
+
+	public int getServerCount() {
+		return 1;
+	}
+
+	/**
+	 * Keeps the tables, so that a store can be opened on the backend again.
+	 */
+	public void close() {
+	}
+}
@@ -0,0 +1,497 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.RowLock;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * A table of a {@link LocalBackend}, whose rows are kept in a sorted map in
+ * memory. A table keeps a single version of every cell, the one with the
+ * highest timestamp, and applies filters in the calling thread the way a
+ * region server does. One handle is shared by all threads.
+ * <p>
+ * Deletes leave markers, as in HBase: a later put with a timestamp that is
+ * not newer than the delete is dropped. As the table is never compacted,
+ * markers are kept until the table is cleared.
+ * <p>
+ * Every request waits for the latency of the backend first: a get, put or
+ * delete, a batch of them, and every batch of rows a scanner fetches, as by
+ * the caching of its scan. Compare-and-set operations, increments and row
+ * locks are not supported.
+ */
+public class LocalTable implements HTableInterface {
+
+	/**
+	 * Orders the cells of a row by family and qualifier.
+	 */
+	private static final Comparator<KeyValue> COLUMN_ORDER = new Comparator<KeyValue>() {
+		public int compare(KeyValue a, KeyValue b) {
+			int c = Bytes.compareTo(a.getBuffer(), a.getFamilyOffset(), a.getFamilyLength(),
+					b.getBuffer(), b.getFamilyOffset(), b.getFamilyLength());
+			if (c != 0)
+				return c;
+			return Bytes.compareTo(a.getBuffer(), a.getQualifierOffset(), a.getQualifierLength(),
+					b.getBuffer(), b.getQualifierOffset(), b.getQualifierLength());
+		}
+	};
+
+	/**
+	 * The cells and delete markers of a row. A row that has lost its last
+	 * cell and has no markers is removed from the table; writers that find it
+	 * removed look it up again.
+	 */
+	private static class LocalRow {
+		final TreeMap<KeyValue, KeyValue> cells = new TreeMap<KeyValue, KeyValue>(COLUMN_ORDER);
+
+		/**
+		 * The timestamps of the deletes of the row, of its families and of its
+		 * columns, <tt>-1</tt> meaning none.
+		 */
+		long deleted = -1;
+		final TreeMap<byte[], Long> deletedFamilies = new TreeMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
+		final TreeMap<KeyValue, Long> deletedColumns = new TreeMap<KeyValue, Long>(COLUMN_ORDER);
+
+		boolean removed;
+
+		/**
+		 * Checks whether a delete covers a cell.
+		 */
+		boolean isDeleted(KeyValue cell) {
+			long timestamp = cell.getTimestamp();
+			if (timestamp <= deleted)
+				return true;
+
+			Long family = deletedFamilies.get(cell.getFamily());
+			if (family != null && timestamp <= family)
+				return true;
+
+			Long column = deletedColumns.get(cell);
+			return column != null && timestamp <= column;
+		}
+
+		boolean isEmpty() {
+			return cells.isEmpty() && deleted < 0 && deletedFamilies.isEmpty() && deletedColumns.isEmpty();
+		}
+	}
+
+	private final byte[] tableName;
+	private final long latency;
+
+	private volatile HTableDescriptor desc;
+
+	private final ConcurrentSkipListMap<byte[], LocalRow> rows =
+		new ConcurrentSkipListMap<byte[], LocalRow>(Bytes.BYTES_COMPARATOR);
+
+	/**
+	 * @param latency
+	 *        The time in nanoseconds that every request waits for.
+	 */
+	LocalTable(HTableDescriptor desc, long latency) {
+		this.desc = desc;
+		this.tableName = desc.getName();
+		this.latency = latency;
+	}
+
+	private void pause() {
+		if (latency > 0)
+			LockSupport.parkNanos(latency);
+	}
+
+	public byte[] getTableName() {
+		return tableName;
+	}
+
+	public HTableDescriptor getTableDescriptor() {
+		return desc;
+	}
+
+	synchronized void modifyFamilies(List<HColumnDescriptor> families) {
+		HTableDescriptor modified = new HTableDescriptor(desc);
+		for (HColumnDescriptor family : families)
+			modified.addFamily(family);
+		this.desc = modified;
+	}
+
+	void clear() {
+		rows.clear();
+	}
+
+	public boolean exists(Get get) throws IOException {
+		return !get(get).isEmpty();
+	}
+
+	public Result get(Get get) throws IOException {
+		pause();
+		return read(get);
+	}
+
+	private Result read(Get get) throws IOException {
+		Filter filter = get.getFilter() != null ? copy(get.getFilter()) : null;
+		LocalRow row = rows.get(get.getRow());
+
+		List<KeyValue> cells = null;
+		if (row != null)
+			cells = read(get.getRow(), row, get.getFamilyMap(), filter);
+		return new Result(cells != null ? cells.toArray(new KeyValue[cells.size()]) : new KeyValue[0]);
+	}
+
+	/**
+	 * Reads the cells of a row that are in the requested columns and pass the
+	 * filter.
+	 *
+	 * @return The cells, or <tt>null</tt> if the row is filtered out or has
+	 *         no cells left.
+	 */
+	private static List<KeyValue> read(byte[] key, LocalRow row, Map<byte[], NavigableSet<byte[]>> columns, Filter filter) {
+
+		List<KeyValue> cells;
+		synchronized (row) {
+			cells = new ArrayList<KeyValue>(row.cells.values());
+		}
+
+		if (filter != null) {
+			filter.reset();
+			if (filter.filterRowKey(key, 0, key.length))
+				return null;
+		}
+
+		List<KeyValue> selected = new ArrayList<KeyValue>(cells.size());
+		for (KeyValue kv : cells) {
+			if (columns != null && !columns.isEmpty()) {
+				if (!columns.containsKey(kv.getFamily()))
+					continue;
+				NavigableSet<byte[]> qualifiers = columns.get(kv.getFamily());
+				if (qualifiers != null && !qualifiers.isEmpty() && !qualifiers.contains(kv.getQualifier()))
+					continue;
+			}
+
+			if (filter != null) {
+				// filters may rewrite the cells they are given
+				kv = new KeyValue(kv.getRow(), kv.getFamily(), kv.getQualifier(), kv.getTimestamp(), kv.getValue());
+				Filter.ReturnCode code = filter.filterKeyValue(kv);
+				if (code == Filter.ReturnCode.NEXT_ROW)
+					break;
+				if (code != Filter.ReturnCode.INCLUDE)
+					continue;
+			}
+
+			selected.add(kv);
+		}
+
+		if (filter != null && filter.filterRow())
+			return null;
+
+		return selected.isEmpty() ? null : selected;
+	}
+
+	/**
+	 * Copies a filter through its serialized form, as it is sent to a region
+	 * server, so that the state of a filter is not shared by scans.
+	 */
+	private static Filter copy(Filter filter) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		filter.write(new DataOutputStream(bytes));
+
+		Filter copy;
+		try {
+			copy = filter.getClass().newInstance();
+		}
+		catch (InstantiationException e) {
+			throw new IOException(e);
+		}
+		catch (IllegalAccessException e) {
+			throw new IOException(e);
+		}
+		copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		return copy;
+	}
+
+	public ResultScanner getScanner(Scan scan) throws IOException {
+		NavigableMap<byte[], LocalRow> range = rows;
+		if (scan.getStartRow().length > 0)
+			range = range.tailMap(scan.getStartRow(), true);
+		if (scan.getStopRow().length > 0)
+			range = range.headMap(scan.getStopRow(), false);
+
+		return new LocalScanner(range.entrySet().iterator(), scan.getFamilyMap(),
+				scan.getFilter() != null ? copy(scan.getFilter()) : null,
+				scan.getCaching() > 0 ? scan.getCaching() : 1);
+	}
+
+	public ResultScanner getScanner(byte[] family) throws IOException {
+		return getScanner(new Scan().addFamily(family));
+	}
+
+	public ResultScanner getScanner(byte[] family, byte[] qualifier) throws IOException {
+		return getScanner(new Scan().addColumn(family, qualifier));
+	}
+
+	public void put(Put put) throws IOException {
+		pause();
+		write(put);
+	}
+
+	public void put(List<Put> puts) throws IOException {
+		pause();
+		for (Put put : puts)
+			write(put);
+	}
+
+	private LocalRow getRow(byte[] key) {
+		LocalRow row = rows.get(key);
+		if (row == null) {
+			LocalRow created = new LocalRow();
+			row = rows.putIfAbsent(key, created);
+			if (row == null)
+				row = created;
+		}
+		return row;
+	}
+
+	private void write(Put put) {
+		long now = System.currentTimeMillis();
+
+		while (true) {
+			LocalRow row = getRow(put.getRow());
+			synchronized (row) {
+				if (row.removed)
+					continue;
+
+				for (List<KeyValue> kvs : put.getFamilyMap().values()) {
+					for (KeyValue kv : kvs) {
+						KeyValue cell = new KeyValue(kv.getRow(), kv.getFamily(), kv.getQualifier(),
+								kv.isLatestTimestamp() ? now : kv.getTimestamp(), kv.getValue());
+						if (row.isDeleted(cell))
+							continue;
+
+						KeyValue current = row.cells.get(cell);
+						if (current == null || current.getTimestamp() <= cell.getTimestamp())
+							row.cells.put(cell, cell);
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	public void delete(Delete delete) throws IOException {
+		pause();
+		write(delete);
+	}
+
+	public void delete(List<Delete> deletes) throws IOException {
+		pause();
+		for (Delete delete : deletes)
+			write(delete);
+	}
+
+	private void write(Delete delete) {
+		long now = System.currentTimeMillis();
+
+		while (true) {
+			LocalRow row = getRow(delete.getRow());
+			synchronized (row) {
+				if (row.removed)
+					continue;
+
+				if (delete.getFamilyMap().isEmpty()) {
+					long timestamp = delete.getTimeStamp() == HConstants.LATEST_TIMESTAMP ? now : delete.getTimeStamp();
+					row.deleted = Math.max(row.deleted, timestamp);
+					removeCells(row, null, timestamp);
+				}
+				else {
+					for (List<KeyValue> kvs : delete.getFamilyMap().values()) {
+						for (KeyValue kv : kvs) {
+							long timestamp = kv.isLatestTimestamp() ? now : kv.getTimestamp();
+							if (kv.getType() == KeyValue.Type.DeleteFamily.getCode()) {
+								Long family = row.deletedFamilies.get(kv.getFamily());
+								if (family == null || family < timestamp)
+									row.deletedFamilies.put(kv.getFamily(), timestamp);
+								removeCells(row, kv, timestamp);
+							}
+							else if (kv.getType() == KeyValue.Type.DeleteColumn.getCode()) {
+								Long column = row.deletedColumns.get(kv);
+								if (column == null || column < timestamp)
+									row.deletedColumns.put(kv, timestamp);
+								KeyValue current = row.cells.get(kv);
+								if (current != null && current.getTimestamp() <= timestamp)
+									row.cells.remove(kv);
+							}
+							else {
+								// a single version, which is the only one kept
+								KeyValue current = row.cells.get(kv);
+								if (current != null && (kv.isLatestTimestamp() || current.getTimestamp() == timestamp))
+									row.cells.remove(kv);
+							}
+						}
+					}
+				}
+
+				if (row.isEmpty()) {
+					row.removed = true;
+					rows.remove(delete.getRow(), row);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes the cells of a row, or of one family if <tt>family</tt> is not
+	 * <tt>null</tt>, that are not newer than a timestamp.
+	 */
+	private static void removeCells(LocalRow row, KeyValue family, long timestamp) {
+		Iterator<KeyValue> cells = row.cells.keySet().iterator();
+		while (cells.hasNext()) {
+			KeyValue cell = cells.next();
+			if (cell.getTimestamp() <= timestamp && (family == null || Bytes.equals(
+					cell.getBuffer(), cell.getFamilyOffset(), cell.getFamilyLength(),
+					family.getBuffer(), family.getFamilyOffset(), family.getFamilyLength())))
+				cells.remove();
+		}
+	}
+
+	public boolean isAutoFlush() {
+		return true;
+	}
+
+	public void flushCommits() {
+		// writes are applied right away
+	}
+
+	public void close() {
+		// the table lives as long as its backend
+	}
+
+	public Result getRowOrBefore(byte[] row, byte[] family) {
+		throw new UnsupportedOperationException();
+	}
+
+	public boolean checkAndPut(byte[] row, byte[] family, byte[] qualifier, byte[] value, Put put) {
+		throw new UnsupportedOperationException();
+	}
+
+	public long incrementColumnValue(byte[] row, byte[] family, byte[] qualifier, long amount) {
+		throw new UnsupportedOperationException();
+	}
+
+	public long incrementColumnValue(byte[] row, byte[] family, byte[] qualifier, long amount, boolean writeToWAL) {
+		throw new UnsupportedOperationException();
+	}
+
+	public RowLock lockRow(byte[] row) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void unlockRow(RowLock rl) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Reads the rows of a range in batches of the caching of its scan.
+	 */
+	private class LocalScanner implements ResultScanner {
+
+		private final Iterator<Map.Entry<byte[], LocalRow>> rows;
+		private final Map<byte[], NavigableSet<byte[]>> columns;
+		private final Filter filter;
+		private final int caching;
+
+		private final ArrayDeque<Result> fetched = new ArrayDeque<Result>();
+		private boolean done;
+
+		LocalScanner(Iterator<Map.Entry<byte[], LocalRow>> rows, Map<byte[], NavigableSet<byte[]>> columns,
+				Filter filter, int caching) {
+			this.rows = rows;
+			this.columns = columns;
+			this.filter = filter;
+			this.caching = caching;
+		}
+
+		private void fetch() {
+			pause();
+			while (fetched.size() < caching) {
+				if (!rows.hasNext() || filter != null && filter.filterAllRemaining()) {
+					done = true;
+					return;
+				}
+
+				Map.Entry<byte[], LocalRow> entry = rows.next();
+				List<KeyValue> cells = read(entry.getKey(), entry.getValue(), columns, filter);
+				if (cells != null)
+					fetched.add(new Result(cells));
+			}
+		}
+
+		public Result next() {
+			if (fetched.isEmpty() && !done)
+				fetch();
+			return fetched.poll();
+		}
+
+		public Result[] next(int nbRows) {
+			List<Result> results = new ArrayList<Result>(nbRows);
+			Result result;
+			while (results.size() < nbRows && (result = next()) != null)
+				results.add(result);
+			return results.toArray(new Result[results.size()]);
+		}
+
+		public void close() {
+			done = true;
+			fetched.clear();
+		}
+
+		public Iterator<Result> iterator() {
+			return new Iterator<Result>() {
+				private Result next;
+
+				public boolean hasNext() {
+					if (next == null)
+						next = LocalScanner.this.next();
+					return next != null;
+				}
+
+				public Result next() {
+					if (!hasNext())
+						return null;
+					Result result = next;
+					next = null;
+					return result;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
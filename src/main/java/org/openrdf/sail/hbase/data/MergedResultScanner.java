@@ -0,0 +1,225 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.sail.hbase.HBaseStore;
+
+/**
+ * Runs several scans over one table in parallel and merges their rows into
+ * the order of their keys without the first <tt>keyOffset</tt> bytes. This
+ * is how a salted index is read: one scan per salt value, merged back into
+ * key order, and how the key ranges of a batch of patterns are read. Every
+ * scan is opened on the table handle of the worker thread that first runs
+ * it, and fetches its next batch of rows on the store's worker threads
+ * while the current batch is consumed.
+ */
+public class MergedResultScanner implements ResultScanner {
+
+	private final HBaseStore store;
+	private final SubScan[] subScans;
+	private final PriorityQueue<SubScan> queue;
+
+	private boolean started;
+
+	public MergedResultScanner(HBaseStore store, String tableName, List<Scan> scans,
+			final int keyOffset) {
+
+		this.store = store;
+
+		this.subScans = new SubScan[scans.size()];
+		for (int i = 0; i < subScans.length; ++i)
+			subScans[i] = new SubScan(tableName, scans.get(i));
+
+		this.queue = new PriorityQueue<SubScan>(subScans.length, new Comparator<SubScan>() {
+			public int compare(SubScan s1, SubScan s2) {
+				byte[] row1 = s1.current().getRow();
+				byte[] row2 = s2.current().getRow();
+				return Bytes.compareTo(
+						row1, keyOffset, row1.length - keyOffset,
+						row2, keyOffset, row2.length - keyOffset);
+			}
+		});
+	}
+
+	public Result next() throws IOException {
+
+		if (!started) {
+			started = true;
+
+			for (SubScan subScan : subScans)
+				subScan.fetch();
+			for (SubScan subScan : subScans)
+				if (subScan.advance())
+					queue.add(subScan);
+		}
+
+		SubScan subScan = queue.poll();
+		if (subScan == null)
+			return null;
+
+		Result result = subScan.current();
+		if (subScan.advance())
+			queue.add(subScan);
+
+		return result;
+	}
+
+	public Result[] next(int nbRows) throws IOException {
+
+		List<Result> results = new ArrayList<Result>(nbRows);
+		Result result;
+		while (results.size() < nbRows && (result = next()) != null)
+			results.add(result);
+
+		return results.toArray(new Result[results.size()]);
+	}
+
+	public void close() {
+
+		for (SubScan subScan : subScans)
+			subScan.close();
+	}
+
+	public Iterator<Result> iterator() {
+
+		return new Iterator<Result>() {
+
+			private Result next;
+
+			public boolean hasNext() {
+				if (next == null) {
+					try {
+						next = MergedResultScanner.this.next();
+					}
+					catch (IOException ioe) {
+						throw new RuntimeException(ioe);
+					}
+				}
+				return next != null;
+			}
+
+			public Result next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				Result result = next;
+				next = null;
+				return result;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private class SubScan {
+
+		private final String tableName;
+		private final Scan scan;
+		private ResultScanner scanner;
+
+		private FutureTask<Result[]> pending;
+		private Result[] batch;
+		private int index;
+
+		SubScan(String tableName, Scan scan) {
+			this.tableName = tableName;
+			this.scan = scan;
+		}
+
+		/**
+		 * Starts fetching the next batch of rows in the background.
+		 */
+		void fetch() {
+
+			pending = new FutureTask<Result[]>(new Callable<Result[]>() {
+				public Result[] call() throws IOException {
+					if (scanner == null)
+						scanner = store.getHTable(tableName).getScanner(scan);
+					return scanner.next(scan.getCaching());
+				}
+			});
+
+			store.execute("scan", pending);
+		}
+
+		/**
+		 * Moves to the next row, waiting for the pending batch if the current
+		 * one is used up.
+		 *
+		 * @return <tt>false</tt> if the scan has no more rows.
+		 */
+		boolean advance() throws IOException {
+
+			if (batch != null && ++index < batch.length)
+				return true;
+
+			if (pending == null)
+				return false;
+
+			batch = await();
+			index = 0;
+
+			if (batch == null || batch.length == 0)
+				return false;
+
+			// a short batch means the scanner ran out of rows
+			if (batch.length == scan.getCaching())
+				fetch();
+
+			return true;
+		}
+
+		Result current() {
+			return batch[index];
+		}
+
+		private Result[] await() throws IOException {
+
+			try {
+				return pending.get();
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for scan results");
+			}
+			catch (ExecutionException ee) {
+				if (ee.getCause() instanceof IOException)
+					throw (IOException)ee.getCause();
+				throw new IOException(ee.getCause());
+			}
+			finally {
+				pending = null;
+			}
+		}
+
+		void close() {
+
+			if (pending != null) {
+				try {
+					await();
+				}
+				catch (IOException ioe) {
+					// closing anyway
+				}
+			}
+
+			if (scanner != null)
+				scanner.close();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package org.openrdf.sail.hbase.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.sail.hbase.util.ByteArray;
+
+/**
+ * The triples that a transaction adds and removes, kept on the client until
+ * it commits. Changes are coalesced per triple, the last one winning, so
+ * every index receives at most one mutation per triple, and a triple that
+ * is added and removed again without ever having reached the store is
+ * dropped altogether. The added triples are indexed by each of their IDs, so
+ * that reading the triples of a pattern does not go through all changes.
+ */
+public class MutationBuffer {
+
+	private static final int TRIPLE_LENGTH = 4 * ValueTable.NUM_VALUE_BYTES;
+
+	/**
+	 * <tt>TRUE</tt> for added and <tt>FALSE</tt> for removed triples, by
+	 * their subject, predicate, object and context IDs.
+	 */
+	private final Map<ByteArray, Boolean> changes = new LinkedHashMap<ByteArray, Boolean>();
+
+	/**
+	 * The keys of the added triples by their subject, predicate, object and
+	 * context IDs.
+	 */
+	private final List<Map<ByteArray, Set<ByteArray>>> added = new ArrayList<Map<ByteArray, Set<ByteArray>>>(4);
+
+	public MutationBuffer() {
+		for (int i = 0; i < 4; ++i)
+			added.add(new HashMap<ByteArray, Set<ByteArray>>());
+	}
+
+	public void add(byte[] subj, byte[] pred, byte[] obj, byte[] context) {
+		ByteArray key = getKey(subj, pred, obj, context);
+		if (!Boolean.TRUE.equals(changes.put(key, Boolean.TRUE)))
+			index(key);
+	}
+
+	public void remove(byte[] subj, byte[] pred, byte[] obj, byte[] context) {
+		ByteArray key = getKey(subj, pred, obj, context);
+		if (Boolean.TRUE.equals(changes.put(key, Boolean.FALSE)))
+			unindex(key);
+	}
+
+	/**
+	 * Forgets a change to a triple, for an added triple that is removed again
+	 * and that the store does not have.
+	 */
+	public void cancel(byte[] subj, byte[] pred, byte[] obj, byte[] context) {
+		ByteArray key = getKey(subj, pred, obj, context);
+		if (Boolean.TRUE.equals(changes.remove(key)))
+			unindex(key);
+	}
+
+	private void index(ByteArray key) {
+		for (int i = 0; i < 4; ++i) {
+			ByteArray id = getID(key, i);
+			Set<ByteArray> keys = added.get(i).get(id);
+			if (keys == null) {
+				keys = new LinkedHashSet<ByteArray>();
+				added.get(i).put(id, keys);
+			}
+			keys.add(key);
+		}
+	}
+
+	private void unindex(ByteArray key) {
+		for (int i = 0; i < 4; ++i) {
+			ByteArray id = getID(key, i);
+			Set<ByteArray> keys = added.get(i).get(id);
+			if (keys != null && keys.remove(key) && keys.isEmpty())
+				added.get(i).remove(id);
+		}
+	}
+
+	/**
+	 * Gets the change to a triple.
+	 *
+	 * @return <tt>TRUE</tt> if the triple was added, <tt>FALSE</tt> if it was
+	 *         removed, or <tt>null</tt> if it was not changed.
+	 */
+	public Boolean getChange(byte[] subj, byte[] pred, byte[] obj, byte[] context) {
+		return changes.get(getKey(subj, pred, obj, context));
+	}
+
+	/**
+	 * Gets the added triples that match a pattern.
+	 *
+	 * @param subj
+	 *        The subject ID, or <tt>null</tt> for any subject; likewise for
+	 *        the other positions.
+	 * @return The subject, predicate, object and context IDs of the triples.
+	 */
+	public List<byte[][]> getAdded(byte[] subj, byte[] pred, byte[] obj, byte[] context) {
+
+		byte[][] pattern = new byte[][] { subj, pred, obj, context };
+
+		// the triples with the rarest of the bound IDs
+		Collection<ByteArray> keys = null;
+		for (int i = 0; i < 4; ++i) {
+			if (pattern[i] == null)
+				continue;
+
+			Set<ByteArray> idKeys = added.get(i).get(new ByteArray(pattern[i]));
+			if (idKeys == null)
+				return new ArrayList<byte[][]>(0);
+			if (keys == null || idKeys.size() < keys.size())
+				keys = idKeys;
+		}
+
+		if (keys == null) {
+			keys = new ArrayList<ByteArray>(changes.size());
+			for (Map.Entry<ByteArray, Boolean> change : changes.entrySet()) {
+				if (change.getValue())
+					keys.add(change.getKey());
+			}
+		}
+
+		List<byte[][]> result = new ArrayList<byte[][]>(keys.size());
+		for (ByteArray key : keys) {
+			byte[][] ids = getIDs(key);
+			if (matches(ids, pattern))
+				result.add(ids);
+		}
+
+		return result;
+	}
+
+	private static boolean matches(byte[][] ids, byte[][] pattern) {
+		for (int i = 0; i < 4; ++i) {
+			if (pattern[i] != null && !Bytes.equals(ids[i], pattern[i]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the removed triples.
+	 *
+	 * @return The subject, predicate, object and context IDs of the triples.
+	 */
+	public List<byte[][]> getRemoved() {
+
+		List<byte[][]> removed = new ArrayList<byte[][]>();
+		for (Map.Entry<ByteArray, Boolean> change : changes.entrySet()) {
+			if (!change.getValue())
+				removed.add(getIDs(change.getKey()));
+		}
+
+		return removed;
+	}
+
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	public int size() {
+		return changes.size();
+	}
+
+	public void clear() {
+		changes.clear();
+		for (Map<ByteArray, Set<ByteArray>> ids : added)
+			ids.clear();
+	}
+
+	private static ByteArray getKey(byte[] subj, byte[] pred, byte[] obj, byte[] context) {
+
+		byte[] key = new byte[TRIPLE_LENGTH];
+		int offset = Bytes.putBytes(key, 0, subj, 0, ValueTable.NUM_VALUE_BYTES);
+		offset = Bytes.putBytes(key, offset, pred, 0, ValueTable.NUM_VALUE_BYTES);
+		offset = Bytes.putBytes(key, offset, obj, 0, ValueTable.NUM_VALUE_BYTES);
+		Bytes.putBytes(key, offset, context, 0, ValueTable.NUM_VALUE_BYTES);
+
+		return new ByteArray(key);
+	}
+
+	private static ByteArray getID(ByteArray key, int position) {
+
+		byte[] id = new byte[ValueTable.NUM_VALUE_BYTES];
+		System.arraycopy(key.getArray(), position * ValueTable.NUM_VALUE_BYTES, id, 0, ValueTable.NUM_VALUE_BYTES);
+
+		return new ByteArray(id);
+	}
+
+	private static byte[][] getIDs(ByteArray key) {
+
+		byte[][] ids = new byte[4][];
+		for (int i = 0; i < 4; ++i) {
+			ids[i] = new byte[ValueTable.NUM_VALUE_BYTES];
+			System.arraycopy(key.getArray(), i * ValueTable.NUM_VALUE_BYTES, ids[i], 0, ValueTable.NUM_VALUE_BYTES);
+		}
+
+		return ids;
+	}
+}
@@ -6,7 +6,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.hadoop.hbase.KeyValue;
-import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.openrdf.model.Namespace;
 import org.openrdf.model.impl.NamespaceImpl;
@@ -49,9 +49,8 @@ public class NamespaceTable implements Iterable<Namespace> {
 		Namespace newNamespace = new NamespaceImpl(prefix, name);
 		namespacesMap.put(prefix, newNamespace);
 
-		HTable table = this.store.getHTable(this.tableName);
+		HTableInterface table = this.store.getHTable(this.tableName);
 		HBaseTable.put(table, Bytes.toBytes(prefix), HBaseTableFactory.FAMILY_NAMES[0], null, Bytes.toBytes(name));
-		this.store.putHTable(table);
 	}
 
 	public void removeNamespace(String prefix) throws IOException {
@@ -59,18 +58,16 @@ public class NamespaceTable implements Iterable<Namespace> {
 
 		if (ns != null) {
 
-			HTable table = this.store.getHTable(this.tableName);
+			HTableInterface table = this.store.getHTable(this.tableName);
 			HBaseTable.delete(table, Bytes.toBytes(prefix), HBaseTableFactory.FAMILY_NAMES[0], null);
-			this.store.putHTable(table);
 		}
 	}
 
 	protected void readNamespaces() throws IOException {
-		HTable table = null;
 		HBaseCursor cursor = null;
 
 		try {
-			table = this.store.getHTable(this.tableName);
+			HTableInterface table = this.store.getHTable(this.tableName);
 			cursor = new HBaseCursor(HBaseTable.scan(table, null, null, new byte[][] {{ 0 }}));
 
 			while (cursor.hasNext()) {
@@ -84,8 +81,8 @@ public class NamespaceTable implements Iterable<Namespace> {
 		}
 		finally
 		{
-			if (table != null)
-				this.store.putHTable(table);
+			if (cursor != null)
+				cursor.close();
 		}
 	}
 
@@ -97,8 +94,6 @@ public class NamespaceTable implements Iterable<Namespace> {
 	{
 		namespacesMap.clear();		
 		
-		HTable table = this.store.getHTable(this.tableName);
-		HBaseTable.clear(table, store.getHBaseConfiguration());
-		this.store.putHTable(table);
+		this.store.getStorageBackend().truncate(this.tableName);
 	}
 }
\ No newline at end of file
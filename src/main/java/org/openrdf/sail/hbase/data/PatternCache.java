@@ -0,0 +1,360 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.sail.hbase.util.ByteArray;
+
+/**
+ * Keeps the rows that recent reads of triple patterns returned, so that
+ * patterns that are read over and over, such as the types of a resource or
+ * the properties of a schema class, are answered without a request to
+ * HBase. The cache holds at most a fixed number of bytes of cells; a pattern
+ * whose rows take more than a sixteenth of that is not kept, and the least
+ * recently read patterns are dropped first.
+ * <p>
+ * A pattern stays valid until a triple that it may match is written. Every
+ * pattern is tagged with its first fixed ID of predicate, subject, object
+ * and context, and every tag has a write epoch: writing a triple moves on
+ * the epochs of the tags of its four IDs. Tags share their epochs in a fixed
+ * number of stripes, so a write may also drop some patterns it does not
+ * match. Epochs are moved on after the write reached HBase, so that a read
+ * that overlaps a write is never kept past it.
+ * <p>
+ * Only the writes of this store are seen: the cache must not be used when
+ * other processes write to the same tables.
+ */
+public class PatternCache {
+
+	private static final int STRIPE_BITS = 10;
+
+	/**
+	 * The epoch of the patterns without any fixed ID; the stripes of the tags
+	 * come before it.
+	 */
+	private static final int UNTAGGED = 1 << STRIPE_BITS;
+
+	/**
+	 * The order in which the positions of a pattern are tried for its tag.
+	 */
+	private static final int[] TAG_ORDER = { 1, 0, 2, 3 };
+
+	/**
+	 * The bytes counted for every row besides its cells.
+	 */
+	private static final int ROW_OVERHEAD = 64;
+
+	private final long capacity;
+	private final long maxPatternSize;
+
+	private final AtomicLongArray epochs = new AtomicLongArray(UNTAGGED + 1);
+
+	private final LinkedHashMap<ByteArray, Entry> entries = new LinkedHashMap<ByteArray, Entry>(64, 0.75f, true);
+	private long size;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *        The number of bytes of rows the cache holds.
+	 */
+	public PatternCache(long capacity) {
+		this.capacity = capacity;
+		this.maxPatternSize = capacity / 16;
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the key of a pattern on an index, <tt>null</tt> meaning a
+	 * wildcard.
+	 */
+	public Pattern getPattern(TripleIndex index, byte[] subj, byte[] pred, byte[] obj, byte[] context) {
+
+		byte[][] ids = { subj, pred, obj, context };
+		byte[] tableName = Bytes.toBytes(index.getTableName());
+
+		byte[] key = new byte[tableName.length + 4 * ValueTable.NUM_VALUE_BYTES];
+		System.arraycopy(tableName, 0, key, 0, tableName.length);
+
+		int stripe = UNTAGGED;
+		for (int position : TAG_ORDER) {
+			byte[] id = ids[position];
+			if (id == null)
+				continue;
+
+			System.arraycopy(id, 0, key, tableName.length + position * ValueTable.NUM_VALUE_BYTES,
+					ValueTable.NUM_VALUE_BYTES);
+			if (stripe == UNTAGGED)
+				stripe = getStripe(position, id);
+		}
+
+		// the null ID is never stored, so it marks the wildcards
+		return new Pattern(new ByteArray(key), stripe);
+	}
+
+	private static int getStripe(int position, byte[] id) {
+		return ((Bytes.toInt(id) << 2 | position) * 0x9E3779B9) >>> (32 - STRIPE_BITS);
+	}
+
+	/**
+	 * Gets the write epoch of a pattern. It must be read before the rows of
+	 * the pattern are requested from HBase, and passed on when they are
+	 * cached.
+	 */
+	public long getEpoch(Pattern pattern) {
+		return epochs.get(pattern.stripe);
+	}
+
+	/**
+	 * Gets the cached rows of a pattern.
+	 *
+	 * @return The rows, or <tt>null</tt> if the pattern is not cached or a
+	 *         triple it may match was written since.
+	 */
+	public Result[] get(Pattern pattern) {
+
+		long epoch = epochs.get(pattern.stripe);
+		synchronized (this) {
+			Entry entry = entries.get(pattern.key);
+			if (entry != null) {
+				if (entry.epoch == epoch) {
+					hits.incrementAndGet();
+					return entry.rows;
+				}
+
+				entries.remove(pattern.key);
+				size -= entry.size;
+			}
+		}
+
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Caches the rows of a pattern, unless they are too large or a triple the
+	 * pattern may match was written since <tt>epoch</tt>.
+	 */
+	public void put(Pattern pattern, long epoch, Result[] rows) {
+
+		long rowsSize = 0;
+		for (Result row : rows)
+			rowsSize += getSize(row);
+
+		put(pattern, epoch, rows, rowsSize);
+	}
+
+	private void put(Pattern pattern, long epoch, Result[] rows, long rowsSize) {
+
+		if (rowsSize > maxPatternSize || epochs.get(pattern.stripe) != epoch)
+			return;
+
+		synchronized (this) {
+			Entry old = entries.put(pattern.key, new Entry(rows, epoch, rowsSize));
+			if (old != null)
+				size -= old.size;
+			size += rowsSize;
+
+			Iterator<Entry> eldest = entries.values().iterator();
+			while (size > capacity && eldest.hasNext()) {
+				size -= eldest.next().size;
+				eldest.remove();
+			}
+		}
+	}
+
+	/**
+	 * Wraps the scanner of a pattern, so that its rows are cached when all of
+	 * them have been read.
+	 *
+	 * @param epoch
+	 *        The epoch of the pattern from before the scanner was opened.
+	 */
+	public ResultScanner record(Pattern pattern, long epoch, ResultScanner scanner) {
+		return new RecordingScanner(pattern, epoch, scanner);
+	}
+
+	/**
+	 * Drops the patterns that a triple may match. Must be called after the
+	 * triple has been written or deleted.
+	 */
+	public void invalidate(byte[] subj, byte[] pred, byte[] obj, byte[] context) {
+
+		byte[][] ids = { subj, pred, obj, context };
+		for (int position = 0; position < ids.length; ++position)
+			if (ids[position] != null)
+				epochs.incrementAndGet(getStripe(position, ids[position]));
+
+		epochs.incrementAndGet(UNTAGGED);
+	}
+
+	/**
+	 * Drops all patterns.
+	 */
+	public void invalidateAll() {
+
+		for (int i = 0; i < epochs.length(); ++i)
+			epochs.incrementAndGet(i);
+
+		synchronized (this) {
+			entries.clear();
+			size = 0;
+		}
+	}
+
+	/**
+	 * Gets the size of a row, decoding its cells so that readers that share
+	 * the row do not.
+	 */
+	private static long getSize(Result row) {
+
+		long rowSize = ROW_OVERHEAD;
+		KeyValue[] cells = row.raw();
+		if (cells != null)
+			for (KeyValue cell : cells)
+				rowSize += cell.getLength();
+
+		return rowSize;
+	}
+
+	/**
+	 * The key of a pattern in the cache, see
+	 * {@link PatternCache#getPattern(TripleIndex, byte[], byte[], byte[], byte[])}.
+	 */
+	public static class Pattern {
+
+		private final ByteArray key;
+		private final int stripe;
+
+		private Pattern(ByteArray key, int stripe) {
+			this.key = key;
+			this.stripe = stripe;
+		}
+	}
+
+	private static class Entry {
+
+		final Result[] rows;
+		final long epoch;
+		final long size;
+
+		Entry(Result[] rows, long epoch, long size) {
+			this.rows = rows;
+			this.epoch = epoch;
+			this.size = size;
+		}
+	}
+
+	private class RecordingScanner implements ResultScanner {
+
+		private final Pattern pattern;
+		private final long epoch;
+		private final ResultScanner scanner;
+
+		/**
+		 * The rows read so far, or <tt>null</tt> if they are too large.
+		 */
+		private List<Result> rows = new ArrayList<Result>();
+		private long rowsSize;
+
+		RecordingScanner(Pattern pattern, long epoch, ResultScanner scanner) {
+			this.pattern = pattern;
+			this.epoch = epoch;
+			this.scanner = scanner;
+		}
+
+		public Result next() throws IOException {
+
+			Result result = scanner.next();
+			if (rows == null)
+				return result;
+
+			if (result == null) {
+				put(pattern, epoch, rows.toArray(new Result[rows.size()]), rowsSize);
+				rows = null;
+			}
+			else {
+				rowsSize += getSize(result);
+				if (rowsSize <= maxPatternSize)
+					rows.add(result);
+				else
+					rows = null;
+			}
+
+			return result;
+		}
+
+		public Result[] next(int nbRows) throws IOException {
+
+			List<Result> results = new ArrayList<Result>(nbRows);
+			Result result;
+			while (results.size() < nbRows && (result = next()) != null)
+				results.add(result);
+
+			return results.toArray(new Result[results.size()]);
+		}
+
+		public void close() {
+			scanner.close();
+		}
+
+		public Iterator<Result> iterator() {
+
+			return new Iterator<Result>() {
+
+				private Result next;
+
+				public boolean hasNext() {
+					if (next == null) {
+						try {
+							next = RecordingScanner.this.next();
+						}
+						catch (IOException ioe) {
+							throw new RuntimeException(ioe);
+						}
+					}
+					return next != null;
+				}
+
+				public Result next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+
+					Result result = next;
+					next = null;
+					return result;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
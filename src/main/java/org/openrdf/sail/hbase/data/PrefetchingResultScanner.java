@@ -0,0 +1,286 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.openrdf.sail.hbase.HBaseStore;
+
+/**
+ * Reads the batches of rows of a scan ahead on the store's worker threads,
+ * so that the thread that consumes the rows does not wait for a round trip
+ * to the region server at the end of every batch. The scanner is opened on
+ * the table handle of the worker thread that first runs it, as in
+ * {@link MergedResultScanner}.
+ * <p>
+ * The number of batches read ahead adapts to the consumer: it doubles, up to
+ * a maximum, whenever the consumer finds no batch ready, and shrinks by one
+ * whenever the consumer finds the reader waiting for room. A fast consumer
+ * thus hides the latency of the scan, while a slow one does not keep more
+ * rows in memory than it needs.
+ * <p>
+ * Waits for the reader are cut short once the store's executor has
+ * terminated, as a reader that was dropped from its queue never runs.
+ */
+public class PrefetchingResultScanner implements ResultScanner {
+
+	/**
+	 * The time in milliseconds between checks of the store's executor while
+	 * waiting for the reader.
+	 */
+	private static final long WAIT_INTERVAL = 100;
+
+	private final HBaseStore store;
+	private final String tableName;
+	private final Scan scan;
+	private final int maxBatches;
+
+	/**
+	 * Guards the fields below, which are shared with the reader.
+	 */
+	private final Object lock = new Object();
+	private final LinkedList<Result[]> batches = new LinkedList<Result[]>();
+	private int aheadBatches = 1;
+	private boolean reading;
+	private boolean exhausted;
+	private boolean closed;
+	private IOException error;
+
+	/**
+	 * Used by one reader at a time, see {@link #reading}.
+	 */
+	private ResultScanner scanner;
+
+	private Result[] batch;
+	private int index;
+
+	private final Runnable reader = new Runnable() {
+		public void run() {
+			read();
+		}
+	};
+
+	/**
+	 * @param maxBatches
+	 *        The maximum number of batches of {@link Scan#getCaching()} rows
+	 *        that are read ahead.
+	 */
+	public PrefetchingResultScanner(HBaseStore store, String tableName, Scan scan, int maxBatches) {
+		this.store = store;
+		this.tableName = tableName;
+		this.scan = scan;
+		this.maxBatches = Math.max(1, maxBatches);
+	}
+
+	public Result next() throws IOException {
+
+		if (batch == null || index >= batch.length) {
+			batch = take();
+			index = 0;
+
+			if (batch == null)
+				return null;
+		}
+
+		return batch[index++];
+	}
+
+	private Result[] take() throws IOException {
+
+		synchronized (lock) {
+			if (batches.isEmpty() && !exhausted && error == null) {
+				// the consumer caught up with the reader
+				aheadBatches = Math.min(maxBatches, 2 * aheadBatches);
+				startReading();
+
+				while (batches.isEmpty() && !exhausted && error == null)
+					await();
+			}
+			else if (batches.size() >= aheadBatches && aheadBatches > 1) {
+				// the reader is waiting for the consumer
+				--aheadBatches;
+			}
+
+			Result[] next = batches.poll();
+			if (next == null) {
+				if (error != null)
+					throw error;
+				return null;
+			}
+
+			startReading();
+			return next;
+		}
+	}
+
+	/**
+	 * Starts a reader if none is running and there is room for more batches.
+	 * Must be called holding the lock.
+	 */
+	private void startReading() {
+
+		if (reading || exhausted || closed || error != null || batches.size() >= aheadBatches)
+			return;
+
+		reading = true;
+		store.execute("scan", reader);
+	}
+
+	/**
+	 * Reads batches until there is no room for more, or the scan ends. The
+	 * reader is marked done however it ends, so that no one waits for it
+	 * forever.
+	 */
+	private void read() {
+
+		boolean completed = false;
+		try {
+			readBatches();
+			completed = true;
+		}
+		finally {
+			synchronized (lock) {
+				if (!completed && error == null && !exhausted)
+					error = new IOException("Scan reader failed");
+				reading = false;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private void readBatches() {
+
+		while (true) {
+			synchronized (lock) {
+				if (closed || batches.size() >= aheadBatches)
+					return;
+			}
+
+			Result[] next = null;
+			IOException failure = null;
+			try {
+				if (scanner == null)
+					scanner = store.getHTable(tableName).getScanner(scan);
+				next = scanner.next(scan.getCaching());
+			}
+			catch (IOException ioe) {
+				failure = ioe;
+			}
+			catch (RuntimeException re) {
+				failure = new IOException(re);
+			}
+
+			synchronized (lock) {
+				if (failure != null) {
+					error = failure;
+				}
+				else {
+					if (next.length > 0)
+						batches.add(next);
+
+					// a short batch means the scanner ran out of rows
+					if (next.length < scan.getCaching())
+						exhausted = true;
+				}
+
+				lock.notifyAll();
+
+				if (error != null || exhausted)
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Waits for the reader. Must be called holding the lock.
+	 */
+	private void await() throws IOException {
+
+		try {
+			lock.wait(WAIT_INTERVAL);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for scan results");
+		}
+
+		if (reading && store.isExecutorTerminated()) {
+			reading = false;
+			error = new IOException("Store is shut down");
+		}
+	}
+
+	public Result[] next(int nbRows) throws IOException {
+
+		List<Result> results = new ArrayList<Result>(nbRows);
+		Result result;
+		while (results.size() < nbRows && (result = next()) != null)
+			results.add(result);
+
+		return results.toArray(new Result[results.size()]);
+	}
+
+	public void close() {
+
+		synchronized (lock) {
+			closed = true;
+			batches.clear();
+
+			// the running reader stops after its current batch
+			boolean interrupted = false;
+			while (reading && !store.isExecutorTerminated()) {
+				try {
+					lock.wait(WAIT_INTERVAL);
+				}
+				catch (InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+			reading = false;
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		if (scanner != null)
+			scanner.close();
+	}
+
+	public Iterator<Result> iterator() {
+
+		return new Iterator<Result>() {
+
+			private Result next;
+
+			public boolean hasNext() {
+				if (next == null) {
+					try {
+						next = PrefetchingResultScanner.this.next();
+					}
+					catch (IOException ioe) {
+						throw new RuntimeException(ioe);
+					}
+				}
+				return next != null;
+			}
+
+			public Result next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				Result result = next;
+				next = null;
+				return result;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,383 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.cursor.ConvertingCursor;
+import org.openrdf.cursor.Cursor;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.datatypes.XMLDatatypeUtil;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.sail.hbase.HBaseConnection;
+import org.openrdf.sail.hbase.HBaseStore;
+import org.openrdf.sail.hbase.util.ByteArray;
+import org.openrdf.store.StoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A secondary index over the triples of selected predicates whose objects
+ * are numeric or dateTime literals, ordered on the value of the object. Row
+ * keys are the predicate ID, a type byte, an 8 byte encoding of the value
+ * whose byte order is the order of the values, and the subject, object and
+ * context IDs; the rows have no content. A range comparison on the object of
+ * such a predicate is a single bounded scan.
+ * <p>
+ * Numeric values are encoded as doubles and dateTimes as milliseconds since
+ * the epoch, in UTC where the dateTime has no timezone. Neither is exact, so
+ * the bounds of a scan are inclusive and widened where needed, and the
+ * comparison has to be applied to the scanned triples again.
+ */
+public class RangeIndexTable {
+	private static final Logger logger = LoggerFactory.getLogger(RangeIndexTable.class);
+
+	public static final byte NUMERIC = 'n';
+	public static final byte DATE_TIME = 't';
+
+	/**
+	 * The length of an encoded value: the type byte and 8 value bytes.
+	 */
+	public static final int VALUE_LENGTH = 1 + Bytes.SIZEOF_LONG;
+
+	private static final int KEY_LENGTH = ValueTable.NUM_VALUE_BYTES + VALUE_LENGTH + 3 * ValueTable.NUM_VALUE_BYTES;
+
+	/**
+	 * The most a dateTime without timezone can be off from its UTC reading.
+	 */
+	private static final long MAX_TIMEZONE_MILLIS = 14 * 60 * 60 * 1000L;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private static final int BATCH_SIZE = 1000;
+
+	private final HBaseStore store;
+	private final String tableName;
+
+	/**
+	 * Whether the index of each indexed predicate is complete, by predicate
+	 * ID.
+	 */
+	private final Map<ByteArray, Boolean> predicates = new ConcurrentHashMap<ByteArray, Boolean>();
+
+	private final List<Future<?>> builders = new ArrayList<Future<?>>();
+	private volatile boolean stopped;
+
+	public RangeIndexTable(HBaseStore store) {
+		this.store = store;
+		this.tableName = HBaseTableFactory.getRangeIndexTableName(store.getHBaseStoreConfig().getCatalogName());
+	}
+
+	public String getTableName() {
+		return this.tableName;
+	}
+
+	/**
+	 * Gets the name under which the state of the range index of a predicate
+	 * is kept in the {@link IndexStateTable}.
+	 */
+	public static String getStateName(String predicate) {
+		return "range-p" + Integer.toHexString(predicate.hashCode());
+	}
+
+	void addPredicate(byte[] predID, boolean ready) {
+		this.predicates.put(new ByteArray(predID), ready);
+	}
+
+	/**
+	 * Checks whether the objects of the supplied predicate are indexed.
+	 */
+	public boolean contains(byte[] predID) {
+		return this.predicates.containsKey(new ByteArray(predID));
+	}
+
+	/**
+	 * Checks whether the index of the supplied predicate is complete, and
+	 * hence can be read from.
+	 */
+	public boolean isReady(byte[] predID) {
+		return Boolean.TRUE.equals(this.predicates.get(new ByteArray(predID)));
+	}
+
+	/**
+	 * Encodes a literal into a type byte and 8 bytes whose order is that of
+	 * the literal values of that type.
+	 *
+	 * @return The encoded value, or <tt>null</tt> if the literal is neither a
+	 *         valid numeric nor a valid dateTime value.
+	 */
+	public static byte[] encode(Literal literal) {
+		return encode(literal, 0);
+	}
+
+	/**
+	 * Encodes a literal for the lower bound of a scan: dateTimes without a
+	 * timezone are moved to the earliest point in time they can denote.
+	 */
+	public static byte[] encodeLowerBound(Literal literal) {
+		return encode(literal, -MAX_TIMEZONE_MILLIS);
+	}
+
+	/**
+	 * Encodes a literal for the upper bound of a scan, see
+	 * {@link #encodeLowerBound(Literal)}.
+	 */
+	public static byte[] encodeUpperBound(Literal literal) {
+		return encode(literal, MAX_TIMEZONE_MILLIS);
+	}
+
+	private static byte[] encode(Literal literal, long timezoneMillis) {
+
+		URI datatype = literal.getDatatype();
+		if (datatype == null)
+			return null;
+
+		try {
+			byte[] encoded = new byte[VALUE_LENGTH];
+
+			if (XMLDatatypeUtil.isNumericDatatype(datatype)) {
+				double d = Double.parseDouble(literal.getLabel().trim());
+				if (Double.isNaN(d))
+					return null;
+
+				// flip the sign bit of positive values and all bits of
+				// negative ones to order the bits as the values
+				long bits = Double.doubleToLongBits(d == 0.0 ? 0.0 : d);
+				bits ^= bits < 0 ? 0xffffffffffffffffL : Long.MIN_VALUE;
+
+				encoded[0] = NUMERIC;
+				Bytes.putLong(encoded, 1, bits);
+				return encoded;
+			}
+
+			if (XMLSchema.DATETIME.equals(datatype)) {
+				XMLGregorianCalendar calendar = literal.calendarValue();
+				boolean local = calendar.getTimezone() == DatatypeConstants.FIELD_UNDEFINED;
+				if (local) {
+					// read in UTC rather than in the default timezone of the JVM
+					calendar = (XMLGregorianCalendar)calendar.clone();
+					calendar.setTimezone(0);
+				}
+
+				long millis = calendar.toGregorianCalendar().getTimeInMillis();
+				if (local)
+					millis += timezoneMillis;
+
+				encoded[0] = DATE_TIME;
+				Bytes.putLong(encoded, 1, millis ^ Long.MIN_VALUE);
+				return encoded;
+			}
+		}
+		catch (IllegalArgumentException e) {
+			// not a valid value of its datatype
+		}
+
+		return null;
+	}
+
+	/**
+	 * Adds a triple to the index if its predicate is indexed and its object is
+	 * a numeric or dateTime literal.
+	 */
+	public void storeTriple(HBaseConnection conn, byte[] subj, byte[] pred, byte[] obj,
+			byte[] context) throws IOException {
+
+		byte[] key = getKey(subj, pred, obj, context);
+		if (key != null)
+			HBaseTable.put(conn.getHTable(tableName), key, HBaseTableFactory.FAMILY_NAMES[0], EMPTY, EMPTY);
+	}
+
+	public void removeTriple(HBaseConnection conn, byte[] subj, byte[] pred, byte[] obj,
+			byte[] context) throws IOException {
+
+		byte[] key = getKey(subj, pred, obj, context);
+		if (key != null)
+			HBaseTable.delete(conn.getHTable(tableName), key, HBaseTableFactory.FAMILY_NAMES[0], EMPTY);
+	}
+
+	/**
+	 * Gets the row key of a triple, or <tt>null</tt> if it is not indexed.
+	 */
+	private byte[] getKey(byte[] subj, byte[] pred, byte[] obj, byte[] context) throws IOException {
+
+		if (!contains(pred))
+			return null;
+
+		Value value = store.getValueStore().getValue(obj);
+		if (!(value instanceof Literal))
+			return null;
+
+		byte[] encoded = encode((Literal)value);
+		if (encoded == null)
+			return null;
+
+		byte[] key = new byte[KEY_LENGTH];
+		int offset = Bytes.putBytes(key, 0, pred, 0, ValueTable.NUM_VALUE_BYTES);
+		offset = Bytes.putBytes(key, offset, encoded, 0, VALUE_LENGTH);
+		offset = Bytes.putBytes(key, offset, subj, 0, ValueTable.NUM_VALUE_BYTES);
+		offset = Bytes.putBytes(key, offset, obj, 0, ValueTable.NUM_VALUE_BYTES);
+		Bytes.putBytes(key, offset, context, 0, ValueTable.NUM_VALUE_BYTES);
+
+		return key;
+	}
+
+	/**
+	 * Gets the IDs of the triples of a predicate whose objects lie between
+	 * the supplied encoded bounds, both inclusive, in the order of their
+	 * objects' values. Both bounds must be of the same type.
+	 *
+	 * @param lower
+	 *        The lower bound, or <tt>null</tt> for the lowest value of the
+	 *        type of <tt>upper</tt>.
+	 * @param upper
+	 *        The upper bound, or <tt>null</tt> for the highest value of the
+	 *        type of <tt>lower</tt>.
+	 * @return A cursor over subject, predicate, object and context IDs.
+	 */
+	public Cursor<int[]> getTriples(HBaseConnection conn, byte[] pred, byte[] lower, byte[] upper)
+			throws IOException {
+
+		byte type = lower != null ? lower[0] : upper[0];
+
+		byte[] startKey = new byte[ValueTable.NUM_VALUE_BYTES + VALUE_LENGTH];
+		Bytes.putBytes(startKey, 0, pred, 0, ValueTable.NUM_VALUE_BYTES);
+		if (lower != null)
+			Bytes.putBytes(startKey, ValueTable.NUM_VALUE_BYTES, lower, 0, VALUE_LENGTH);
+		else
+			startKey[ValueTable.NUM_VALUE_BYTES] = type;
+
+		// one byte longer than the keys up to the upper bound, so that these
+		// are all included
+		byte[] stopKey = new byte[KEY_LENGTH + 1];
+		Bytes.putBytes(stopKey, 0, pred, 0, ValueTable.NUM_VALUE_BYTES);
+		if (upper != null)
+			Bytes.putBytes(stopKey, ValueTable.NUM_VALUE_BYTES, upper, 0, VALUE_LENGTH);
+		else
+			for (int i = ValueTable.NUM_VALUE_BYTES; i < ValueTable.NUM_VALUE_BYTES + VALUE_LENGTH; ++i)
+				stopKey[i] = (byte)0xff;
+		stopKey[ValueTable.NUM_VALUE_BYTES] = type;
+		for (int i = ValueTable.NUM_VALUE_BYTES + VALUE_LENGTH; i < KEY_LENGTH; ++i)
+			stopKey[i] = (byte)0xff;
+
+		ResultScanner scanner = HBaseTable.scan(conn.getHTable(tableName), startKey, stopKey, null);
+
+		return new ConvertingCursor<KeyValue, int[]>(new HBaseCursor(scanner)) {
+
+			@Override
+			protected int[] convert(KeyValue kv) {
+				int offset = kv.getRowOffset();
+				byte[] row = kv.getBuffer();
+
+				int[] ids = new int[4];
+				ids[1] = Bytes.toInt(row, offset);
+				offset += ValueTable.NUM_VALUE_BYTES + VALUE_LENGTH;
+				ids[0] = Bytes.toInt(row, offset);
+				ids[2] = Bytes.toInt(row, offset + ValueTable.NUM_VALUE_BYTES);
+				ids[3] = Bytes.toInt(row, offset + 2 * ValueTable.NUM_VALUE_BYTES);
+
+				return ids;
+			}
+		};
+	}
+
+	/**
+	 * Starts filling the index of every predicate whose index is not complete
+	 * from the triple table, in the background and at no more than
+	 * <tt>rate</tt> triples per second (<tt>0</tt> for no limit). Predicates
+	 * are marked ready in <tt>states</tt> when they are done.
+	 */
+	public synchronized void build(final IndexStateTable states, final int rate) {
+
+		for (Map.Entry<ByteArray, Boolean> entry : predicates.entrySet()) {
+			if (entry.getValue())
+				continue;
+
+			final byte[] predID = entry.getKey().getArray();
+			builders.add(store.start("build", new Runnable() {
+				public void run() {
+					copy(predID, states, rate);
+				}
+			}));
+		}
+	}
+
+	public synchronized void stopBuilding() {
+		stopped = true;
+		builders.clear();
+	}
+
+	private void copy(byte[] predID, IndexStateTable states, int rate) {
+
+		TripleTable triples = store.getTripleTable();
+		TripleIndex source = triples.getBestIndex(null, predID, null, null);
+		HBaseCursor cursor = null;
+
+		try {
+			HTableInterface sourceTable = store.getHTable(source.getTableName());
+			HTableInterface targetTable = store.getHTable(tableName);
+
+			cursor = triples.getTriplesInternal(sourceTable, source, null, predID, null, null);
+
+			List<Put> puts = new ArrayList<Put>(BATCH_SIZE);
+			long started = System.currentTimeMillis();
+			long copied = 0;
+
+			KeyValue kv;
+			while (!stopped && (kv = cursor.next()) != null) {
+				byte[][] ids = source.getValueIDs(kv);
+				byte[] key = getKey(ids[0], ids[1], ids[2], ids[3]);
+				if (key == null)
+					continue;
+
+				puts.add(HBaseTable.getPut(key, HBaseTableFactory.FAMILY_NAMES[0], EMPTY, kv.getTimestamp(), EMPTY));
+				if (puts.size() >= BATCH_SIZE) {
+					HBaseTable.put(targetTable, puts);
+					copied += puts.size();
+					puts.clear();
+
+					long due = rate > 0 ? started + copied * 1000 / rate : 0;
+					long now = System.currentTimeMillis();
+					if (due > now)
+						Thread.sleep(due - now);
+				}
+			}
+
+			if (stopped)
+				return;
+
+			if (!puts.isEmpty())
+				HBaseTable.put(targetTable, puts);
+			
+			String predicate = store.getValueStore().getValue(predID).stringValue();
+			states.setState(getStateName(predicate), IndexStateTable.READY);
+			addPredicate(predID, true);
+			logger.info("Range index of: " + predicate + " is ready.");
+		}
+		catch (IOException ioe) {
+			logger.error("Error building range index of predicate: " + Bytes.toInt(predID), ioe);
+		}
+		catch (StoreException se) {
+			logger.error("Error building range index of predicate: " + Bytes.toInt(predID), se);
+		}
+		catch (InterruptedException ie) {
+			// stopped
+		}
+		finally {
+			if (cursor != null)
+				cursor.close();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HTableInterface;
+
+/**
+ * The storage a store keeps its tables in. Rows are read and written through
+ * the {@link HTableInterface} handles of the backend: gets, scans with a
+ * filter, and batches of puts and deletes; the backend manages the tables
+ * themselves. The store runs on {@link HBaseBackend} unless it is
+ * configured otherwise; {@link LocalBackend} keeps the tables in memory.
+ */
+public interface StorageBackend {
+
+	/**
+	 * Gets the calling thread's handle of a table. The handle must not be
+	 * passed to other threads.
+	 */
+	HTableInterface getTable(String tableName) throws IOException;
+
+	/**
+	 * Releases the calling thread's table handles, for a thread that is done
+	 * with the store for now.
+	 */
+	void releaseTables() throws IOException;
+
+	boolean tableExists(String tableName) throws IOException;
+
+	/**
+	 * Creates a table.
+	 *
+	 * @param splitKeys
+	 *        The keys that split the new table into regions, or <tt>null</tt>
+	 *        to create it with a single region.
+	 */
+	void createTable(HTableDescriptor desc, byte[][] splitKeys) throws IOException;
+
+	/**
+	 * Enables a table if it is disabled.
+	 */
+	void enableTable(String tableName) throws IOException;
+
+	HTableDescriptor getTableDescriptor(String tableName) throws IOException;
+
+	/**
+	 * Changes the settings of column families of a table. The table is not
+	 * available while it is modified.
+	 */
+	void modifyFamilies(String tableName, List<HColumnDescriptor> families) throws IOException;
+
+	/**
+	 * Removes all rows of a table, keeping its settings.
+	 */
+	void truncate(String tableName) throws IOException;
+
+	/**
+	 * Removes a table, if it exists.
+	 */
+	void drop(String tableName) throws IOException;
+
+	/**
+	 * Gets the number of servers that the tables are spread over.
+	 */
+	int getServerCount() throws IOException;
+
+	void close() throws IOException;
+}
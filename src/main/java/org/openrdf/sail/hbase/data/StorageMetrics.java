@@ -0,0 +1,423 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the requests that the stores of this JVM make to HBase, per table
+ * and per operation, and publishes the counts as MBeans named
+ * <tt>org.openrdf.sail.hbase:type=Table,name=&lt;table&gt;</tt> and
+ * <tt>org.openrdf.sail.hbase:type=Operation,table=&lt;table&gt;,name=&lt;operation&gt;</tt>.
+ * <p>
+ * Counting is off until {@link #setEnabled(boolean) enabled}; until then
+ * every recording method returns after reading one field. Operation times
+ * are kept in a histogram of power-of-two buckets of microseconds. A scan
+ * is one operation, timed by the time spent in its requests for rows, not
+ * by the time its rows are consumed.
+ */
+public class StorageMetrics {
+	private static final Logger logger = LoggerFactory.getLogger(StorageMetrics.class);
+
+	private static final String DOMAIN = "org.openrdf.sail.hbase";
+
+	/**
+	 * The number of latency buckets; bucket <tt>i</tt> counts the operations
+	 * that took less than 2<sup>i</sup> microseconds, the last one all
+	 * others.
+	 */
+	public static final int NUM_BUCKETS = 24;
+
+	public static final String PUT = "put";
+	public static final String DELETE = "delete";
+	public static final String GET = "get";
+	public static final String SCAN = "scan";
+
+	private static volatile boolean enabled;
+
+	private static final ConcurrentMap<String, TableMetrics> tables = new ConcurrentHashMap<String, TableMetrics>();
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		StorageMetrics.enabled = enabled;
+	}
+
+	/**
+	 * Gets the metrics of a table, or <tt>null</tt> if counting is off.
+	 */
+	public static TableMetrics getTable(String tableName) {
+		if (!enabled)
+			return null;
+
+		TableMetrics metrics = tables.get(tableName);
+		if (metrics == null) {
+			TableMetrics created = new TableMetrics(tableName);
+			metrics = tables.putIfAbsent(tableName, created);
+			if (metrics == null) {
+				metrics = created;
+				metrics.register();
+			}
+		}
+		return metrics;
+	}
+
+	private static TableMetrics getTable(HTableInterface table) {
+		return enabled ? getTable(Bytes.toString(table.getTableName())) : null;
+	}
+
+	/**
+	 * Gets the start time of an operation, if counting is on.
+	 */
+	static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	static void put(HTableInterface table, Put put, long start) {
+		TableMetrics metrics = getTable(table);
+		if (metrics != null)
+			metrics.put.record(start, 1, getSize(put));
+	}
+
+	static void put(HTableInterface table, List<Put> puts, long start) {
+		TableMetrics metrics = getTable(table);
+		if (metrics != null) {
+			long bytes = 0;
+			for (Put put : puts)
+				bytes += getSize(put);
+			metrics.put.record(start, puts.size(), bytes);
+		}
+	}
+
+	static void delete(HTableInterface table, Delete delete, long start) {
+		TableMetrics metrics = getTable(table);
+		if (metrics != null)
+			metrics.delete.record(start, 1, delete.getRow().length);
+	}
+
+	static void delete(HTableInterface table, List<Delete> deletes, long start) {
+		TableMetrics metrics = getTable(table);
+		if (metrics != null) {
+			long bytes = 0;
+			for (Delete delete : deletes)
+				bytes += delete.getRow().length;
+			metrics.delete.record(start, deletes.size(), bytes);
+		}
+	}
+
+	static void get(HTableInterface table, Result result, long start) {
+		TableMetrics metrics = getTable(table);
+		if (metrics != null)
+			metrics.get.record(start, 1, getSize(result));
+	}
+
+	static void get(HTableInterface table, Result[] results, long start) {
+		TableMetrics metrics = getTable(table);
+		if (metrics != null) {
+			long bytes = 0;
+			for (Result result : results)
+				bytes += getSize(result);
+			metrics.get.record(start, results.length, bytes);
+		}
+	}
+
+	/**
+	 * Wraps a scanner of a table so that its rows are counted, if counting is
+	 * on.
+	 */
+	static ResultScanner scan(String tableName, ResultScanner scanner, long start) {
+		TableMetrics metrics = start != 0 ? getTable(tableName) : null;
+		return metrics != null ? new MeteredScanner(metrics, scanner, start) : scanner;
+	}
+
+	static ResultScanner scan(HTableInterface table, ResultScanner scanner, long start) {
+		return enabled ? scan(Bytes.toString(table.getTableName()), scanner, start) : scanner;
+	}
+
+	private static long getSize(Put put) {
+		long size = 0;
+		for (List<KeyValue> kvs : put.getFamilyMap().values())
+			for (KeyValue kv : kvs)
+				size += kv.getLength();
+		return size;
+	}
+
+	private static long getSize(Result result) {
+		long size = 0;
+		if (result != null && !result.isEmpty())
+			for (KeyValue kv : result.raw())
+				size += kv.getLength();
+		return size;
+	}
+
+	/*------------*
+	 * JMX views  *
+	 *------------*/
+
+	public interface TableMBean {
+
+		/**
+		 * Gets the number of rows that scans of the table read.
+		 */
+		long getRowsScanned();
+
+		/**
+		 * Gets the number of cells that scans of the table read; on a triple
+		 * index, one per triple.
+		 */
+		long getCellsScanned();
+
+		/**
+		 * Gets the number of triples that cursors over the table returned, if
+		 * it is a triple index, after client-side filtering.
+		 */
+		long getRowsReturned();
+	}
+
+	public interface OperationMBean {
+
+		long getCount();
+
+		/**
+		 * Gets the number of rows the operations wrote, read or deleted.
+		 */
+		long getRows();
+
+		/**
+		 * Gets the number of key and value bytes the operations wrote or read;
+		 * for deletes, the bytes of the row keys.
+		 */
+		long getBytes();
+
+		/**
+		 * Gets the total time of the operations in microseconds.
+		 */
+		long getTotalTime();
+
+		/**
+		 * Gets the counts of the operations by latency, see
+		 * {@link StorageMetrics#NUM_BUCKETS}.
+		 */
+		long[] getLatencyHistogram();
+	}
+
+	public static class TableMetrics implements TableMBean {
+
+		private final String tableName;
+
+		final Operation put = new Operation();
+		final Operation delete = new Operation();
+		final Operation get = new Operation();
+		final Operation scan = new Operation();
+
+		private final AtomicLong rowsScanned = new AtomicLong();
+		private final AtomicLong cellsScanned = new AtomicLong();
+		private final AtomicLong rowsReturned = new AtomicLong();
+
+		TableMetrics(String tableName) {
+			this.tableName = tableName;
+		}
+
+		public String getTableName() {
+			return tableName;
+		}
+
+		public long getRowsScanned() {
+			return rowsScanned.get();
+		}
+
+		public long getCellsScanned() {
+			return cellsScanned.get();
+		}
+
+		public long getRowsReturned() {
+			return rowsReturned.get();
+		}
+
+		/**
+		 * Counts a row that a cursor over the table returned.
+		 */
+		public void returned() {
+			rowsReturned.incrementAndGet();
+		}
+
+		public OperationMBean getOperation(String name) {
+			if (PUT.equals(name))
+				return put;
+			if (DELETE.equals(name))
+				return delete;
+			if (GET.equals(name))
+				return get;
+			if (SCAN.equals(name))
+				return scan;
+			return null;
+		}
+
+		void register() {
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				String table = ObjectName.quote(tableName);
+
+				server.registerMBean(new StandardMBean(this, TableMBean.class),
+						new ObjectName(DOMAIN + ":type=Table,name=" + table));
+				for (String name : new String[] { PUT, DELETE, GET, SCAN })
+					server.registerMBean(new StandardMBean(getOperation(name), OperationMBean.class),
+							new ObjectName(DOMAIN + ":type=Operation,table=" + table + ",name=" + name));
+			}
+			catch (JMException e) {
+				logger.warn("Could not publish the metrics of table: " + tableName, e);
+			}
+		}
+	}
+
+	static class Operation implements OperationMBean {
+
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong rows = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong time = new AtomicLong();
+		private final AtomicLongArray histogram = new AtomicLongArray(NUM_BUCKETS);
+
+		void record(long start, long rows, long bytes) {
+			if (start == 0) {
+				// counting was switched on during the operation
+				return;
+			}
+			recordTime((System.nanoTime() - start) / 1000);
+			this.rows.addAndGet(rows);
+			this.bytes.addAndGet(bytes);
+		}
+
+		void recordTime(long micros) {
+			count.incrementAndGet();
+			time.addAndGet(micros);
+			histogram.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), NUM_BUCKETS - 1));
+		}
+
+		void addRows(long rows, long bytes) {
+			this.rows.addAndGet(rows);
+			this.bytes.addAndGet(bytes);
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getRows() {
+			return rows.get();
+		}
+
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		public long getTotalTime() {
+			return time.get();
+		}
+
+		public long[] getLatencyHistogram() {
+			long[] counts = new long[NUM_BUCKETS];
+			for (int i = 0; i < NUM_BUCKETS; ++i)
+				counts[i] = histogram.get(i);
+			return counts;
+		}
+	}
+
+	/**
+	 * Counts the rows of a scan, and records the scan as one operation when
+	 * it is closed.
+	 */
+	private static class MeteredScanner implements ResultScanner {
+
+		private final TableMetrics metrics;
+		private final ResultScanner scanner;
+
+		private long time;
+		private boolean closed;
+
+		MeteredScanner(TableMetrics metrics, ResultScanner scanner, long start) {
+			this.metrics = metrics;
+			this.scanner = scanner;
+			this.time = System.nanoTime() - start;
+		}
+
+		public Result next() throws IOException {
+			long start = System.nanoTime();
+			Result result = scanner.next();
+			time += System.nanoTime() - start;
+
+			if (result != null)
+				count(result);
+			return result;
+		}
+
+		public Result[] next(int nbRows) throws IOException {
+			long start = System.nanoTime();
+			Result[] results = scanner.next(nbRows);
+			time += System.nanoTime() - start;
+
+			for (Result result : results)
+				count(result);
+			return results;
+		}
+
+		private void count(Result result) {
+			long cells = result.isEmpty() ? 0 : result.size();
+			metrics.rowsScanned.incrementAndGet();
+			metrics.cellsScanned.addAndGet(cells);
+			metrics.scan.addRows(1, getSize(result));
+		}
+
+		public Iterator<Result> iterator() {
+			final Iterator<Result> results = scanner.iterator();
+			return new Iterator<Result>() {
+				public boolean hasNext() {
+					long start = System.nanoTime();
+					boolean hasNext = results.hasNext();
+					time += System.nanoTime() - start;
+					return hasNext;
+				}
+
+				public Result next() {
+					Result result = results.next();
+					count(result);
+					return result;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		public void close() {
+			scanner.close();
+			if (!closed) {
+				closed = true;
+				metrics.scan.recordTime(time / 1000);
+			}
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.filter.ColumnCountGetFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+import org.openrdf.sail.hbase.HBaseStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An inverted index from the words of literal labels to the IDs of the
+ * literals. A word is a maximal run of letters and digits, case folded one
+ * character at a time, so that every case-insensitive match of a text is a
+ * match of its folded form; optionally the character n-grams of every word are
+ * indexed as well. Rows are keyed by a type byte and the UTF-8 bytes of the
+ * word or n-gram, and have one column per literal ID.
+ * <p>
+ * Values are never removed from the value store, so neither are they from
+ * this index.
+ */
+public class TextIndexTable {
+	private static final Logger logger = LoggerFactory.getLogger(TextIndexTable.class);
+
+	/**
+	 * The name under which the state of the index is kept in the
+	 * {@link IndexStateTable}.
+	 */
+	public static final String STATE_NAME = "text";
+
+	private static final byte TOKEN = 't';
+	private static final byte GRAM = 'g';
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private static final int BATCH_SIZE = 1000;
+
+	private final HBaseStore store;
+	private final String tableName;
+	private final int gramLength;
+
+	private volatile boolean ready;
+
+	private Future<?> builder;
+	private volatile boolean stopped;
+
+	/**
+	 * @param gramLength
+	 *        The length of the n-grams to index, or <tt>0</tt> for none.
+	 */
+	public TextIndexTable(HBaseStore store, int gramLength, boolean ready) {
+		this.store = store;
+		this.tableName = HBaseTableFactory.getTextIndexTableName(store.getHBaseStoreConfig().getCatalogName());
+		this.gramLength = gramLength;
+		this.ready = ready;
+	}
+
+	public String getTableName() {
+		return this.tableName;
+	}
+
+	/**
+	 * Checks whether all literals are indexed, and hence the index can be
+	 * read from.
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Indexes the label of a literal.
+	 */
+	public void storeLiteral(byte[] id, String label) throws IOException {
+
+		List<Put> puts = new ArrayList<Put>();
+		addPuts(id, label, puts, HConstants.LATEST_TIMESTAMP);
+
+		HBaseTable.put(store.getHTable(tableName), puts);
+	}
+
+	private void addPuts(byte[] id, String label, List<Put> puts, long timestamp) {
+
+		for (byte[] key : getKeys(label, true, true, true))
+			puts.add(HBaseTable.getPut(key, HBaseTableFactory.FAMILY_NAMES[0], id, timestamp, EMPTY));
+	}
+
+	/**
+	 * Gets the index keys that every literal whose label contains the
+	 * supplied text is stored under. A word of the text is only certain to
+	 * be a word of the label if it is delimited on both sides within the
+	 * text, or if the text is anchored on that side; the n-grams of all
+	 * words are certain.
+	 *
+	 * @param anchoredStart
+	 *        Whether the text has to occur at the start of the label, or of a
+	 *        line of it.
+	 * @param anchoredEnd
+	 *        Whether the text has to occur at the end of the label, or of a
+	 *        line of it.
+	 * @return The keys, possibly none.
+	 */
+	public List<byte[]> getSearchKeys(String text, boolean anchoredStart, boolean anchoredEnd) {
+		return getKeys(text, anchoredStart, anchoredEnd, false);
+	}
+
+	private List<byte[]> getKeys(String text, boolean anchoredStart, boolean anchoredEnd, boolean all) {
+
+		TreeSet<byte[]> keys = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+
+		int offset = 0;
+		while (offset < text.length()) {
+			int cp = text.codePointAt(offset);
+			if (!Character.isLetterOrDigit(cp)) {
+				offset += Character.charCount(cp);
+				continue;
+			}
+
+			int start = offset;
+			StringBuilder word = new StringBuilder();
+			List<Integer> codePoints = new ArrayList<Integer>();
+			while (offset < text.length() && Character.isLetterOrDigit(cp = text.codePointAt(offset))) {
+				int folded = Character.toLowerCase(Character.toUpperCase(cp));
+				word.appendCodePoint(folded);
+				codePoints.add(folded);
+				offset += Character.charCount(cp);
+			}
+
+			boolean whole = all || (start > 0 || anchoredStart) && (offset < text.length() || anchoredEnd);
+			if (whole)
+				keys.add(getKey(TOKEN, word.toString()));
+
+			if (gramLength > 0) {
+				for (int i = 0; i + gramLength <= codePoints.size(); ++i) {
+					StringBuilder gram = new StringBuilder(gramLength);
+					for (int j = i; j < i + gramLength; ++j)
+						gram.appendCodePoint(codePoints.get(j));
+					keys.add(getKey(GRAM, gram.toString()));
+				}
+			}
+		}
+
+		return new ArrayList<byte[]>(keys);
+	}
+
+	private static byte[] getKey(byte type, String text) {
+
+		byte[] textBytes = Bytes.toBytes(text);
+		byte[] key = new byte[1 + textBytes.length];
+		key[0] = type;
+		Bytes.putBytes(key, 1, textBytes, 0, textBytes.length);
+		return key;
+	}
+
+	/**
+	 * Gets the IDs of the literals that may be stored under all supplied
+	 * keys. Every key is read up to <tt>maxIDs + 1</tt> literals, one get per
+	 * key, stopping at the first key without literals; the keys that have at
+	 * most <tt>maxIDs</tt> are intersected, rarest first, and the others are
+	 * left out, so the IDs may include literals that are not stored under
+	 * every key.
+	 *
+	 * @return The IDs in ascending order, or <tt>null</tt> if every key has
+	 *         more than <tt>maxIDs</tt> literals.
+	 */
+	public int[] getLiteralIDs(List<byte[]> keys, int maxIDs) throws IOException {
+
+		HTableInterface table = store.getHTable(tableName);
+
+		List<int[]> postings = new ArrayList<int[]>(keys.size());
+		for (byte[] key : keys) {
+			Get get = new Get(key);
+			get.addFamily(HBaseTableFactory.FAMILY_NAMES[0]);
+			get.setFilter(new ColumnCountGetFilter(maxIDs + 1));
+
+			Result result = HBaseTable.get(table, get);
+			if (result == null || result.isEmpty())
+				return new int[0];
+			if (result.size() > maxIDs)
+				continue;
+
+			int[] keyIDs = new int[result.size()];
+			int i = 0;
+			for (KeyValue kv : result.raw())
+				keyIDs[i++] = Bytes.toInt(kv.getBuffer(), kv.getQualifierOffset());
+			Arrays.sort(keyIDs);
+			postings.add(keyIDs);
+		}
+
+		if (postings.isEmpty())
+			return null;
+
+		Collections.sort(postings, new Comparator<int[]>() {
+			public int compare(int[] ids1, int[] ids2) {
+				return ids1.length - ids2.length;
+			}
+		});
+
+		int[] ids = postings.get(0);
+		for (int i = 1; i < postings.size() && ids.length > 0; ++i)
+			ids = intersect(ids, postings.get(i));
+
+		return ids;
+	}
+
+	private static int[] intersect(int[] ids1, int[] ids2) {
+
+		int[] result = new int[Math.min(ids1.length, ids2.length)];
+		int length = 0;
+		for (int i = 0, j = 0; i < ids1.length && j < ids2.length;) {
+			if (ids1[i] < ids2[j])
+				++i;
+			else if (ids1[i] > ids2[j])
+				++j;
+			else {
+				result[length++] = ids1[i];
+				++i;
+				++j;
+			}
+		}
+
+		return Arrays.copyOf(result, length);
+	}
+
+	/**
+	 * Starts indexing all literals of the value table in the background if
+	 * the index is not ready, at no more than <tt>rate</tt> literals per
+	 * second (<tt>0</tt> for no limit).
+	 */
+	public synchronized void build(final IndexStateTable states, final int rate) {
+
+		if (ready || builder != null)
+			return;
+
+		builder = store.start("build", new Runnable() {
+			public void run() {
+				copy(states, rate);
+			}
+		});
+	}
+
+	public synchronized void stopBuilding() {
+		stopped = true;
+	}
+
+	private void copy(IndexStateTable states, int rate) {
+
+		ResultScanner scanner = null;
+
+		try {
+			HTableInterface valueTable = store.getHTable(HBaseTableFactory.getValueTableName(store.getHBaseStoreConfig().getCatalogName()));
+			HTableInterface targetTable = store.getHTable(tableName);
+
+			// the families of short and long literals
+			int numLiteralFamilies = HBaseTableFactory.NUM_URI_LITERAL_FAMILIES >> 1;
+			byte[][] families = new byte[numLiteralFamilies + 1][];
+			for (int i = 0; i < numLiteralFamilies; ++i)
+				families[i] = HBaseTableFactory.FAMILY_NAMES[numLiteralFamilies + i];
+			families[numLiteralFamilies] = HBaseTableFactory.FAMILY_NAMES[HBaseTableFactory.NUM_URI_LITERAL_FAMILIES + 1];
+
+			scanner = HBaseTable.scan(valueTable, null, null, families, null, null, BATCH_SIZE);
+
+			List<Put> puts = new ArrayList<Put>(BATCH_SIZE);
+			long started = System.currentTimeMillis();
+			long copied = 0;
+
+			Result result;
+			while (!stopped && (result = scanner.next()) != null) {
+				for (KeyValue kv : result.raw()) {
+					byte[] id = kv.getRow();
+					id[id.length - 1] |= kv.getBuffer()[kv.getQualifierOffset()];
+
+					Value value = store.getValueStore().getValue(id, ValueTable.getType(kv));
+					if (value instanceof Literal)
+						addPuts(id, ((Literal)value).getLabel(), puts, kv.getTimestamp());
+					++copied;
+				}
+
+				if (puts.size() >= BATCH_SIZE) {
+					HBaseTable.put(targetTable, puts);
+					puts.clear();
+
+					long due = rate > 0 ? started + copied * 1000 / rate : 0;
+					long now = System.currentTimeMillis();
+					if (due > now)
+						Thread.sleep(due - now);
+				}
+			}
+
+			if (stopped)
+				return;
+
+			if (!puts.isEmpty())
+				HBaseTable.put(targetTable, puts);
+
+			states.setState(STATE_NAME, IndexStateTable.READY);
+			ready = true;
+			logger.info("Text index is ready.");
+		}
+		catch (IOException ioe) {
+			logger.error("Error building text index", ioe);
+		}
+		catch (InterruptedException ie) {
+			// stopped
+		}
+		finally {
+			if (scanner != null)
+				scanner.close();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package org.openrdf.sail.hbase.data;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.openrdf.cursor.Cursor;
+import org.openrdf.store.StoreException;
+
+/**
+ * A cursor over the raw subject, predicate, object and context IDs of the
+ * rows of a triple index scan. Each call to {@link #next()} returns a new
+ * <tt>int[4]</tt>; no values are looked up in the value table. A cursor can
+ * be restricted to the positions its caller needs, in which case the other
+ * positions are left <tt>0</tt>.
+ */
+public class TripleIDCursor implements Cursor<int[]> {
+
+	private final HBaseCursor internalCursor;
+	private final TripleIndex index;
+	private final char orderField;
+	private final boolean[] positions;
+	private final StorageMetrics.TableMetrics metrics;
+
+	public TripleIDCursor(HBaseCursor cursor, TripleIndex index, char orderField) {
+		this(cursor, index, orderField, null);
+	}
+
+	/**
+	 * @param positions
+	 *        The positions to read, by subject, predicate, object and context,
+	 *        or <tt>null</tt> for all.
+	 */
+	public TripleIDCursor(HBaseCursor cursor, TripleIndex index, char orderField,
+			boolean[] positions) {
+		this.internalCursor = cursor;
+		this.index = index;
+		this.orderField = orderField;
+		this.positions = positions;
+		this.metrics = StorageMetrics.getTable(index.getTableName());
+	}
+
+	public TripleIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Gets the field on which the IDs returned by this cursor are ordered, see
+	 * {@link TripleIndex#getOrderField(byte[], byte[], byte[], byte[])}.
+	 */
+	public char getOrderField() {
+		return orderField;
+	}
+
+	public int[] next() throws StoreException {
+		KeyValue keyValue = internalCursor.next();
+		if (keyValue == null) {
+			return null;
+		}
+
+		if (metrics != null) {
+			metrics.returned();
+		}
+		return index.getIDs(keyValue, new int[4], positions);
+	}
+
+	public void close() throws StoreException {
+		internalCursor.close();
+	}
+}
@@ -1,9 +1,13 @@
 package org.openrdf.sail.hbase.data;
 
+import java.io.IOException;
+
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.openrdf.sail.hbase.HBaseStore;
+import org.openrdf.sail.hbase.ValueStore;
 import org.openrdf.sail.hbase.config.IndexSpec;
 import org.openrdf.sail.hbase.data.filter.StatementFilter;
 
@@ -11,176 +15,191 @@ public class TripleIndex {
 
 		private String tableName;
 		private IndexSpec indexSpec;
+		private TripleRowCodec codec;
+		
+		/**
+		 * The ID of the predicate of a partitioned index.
+		 */
+		private byte[] predicateID;
+		
+		/**
+		 * Whether this index holds all triples, or is still being built.
+		 */
+		private volatile boolean ready = true;
+
+		public TripleIndex(HBaseStore store, IndexSpec indexSpec) throws IOException {
+			this.tableName = HBaseTableFactory.getTripleTableName(store.getHBaseStoreConfig().getCatalogName(), indexSpec.getName());
+			this.indexSpec = indexSpec;
+			
+			if (indexSpec.isPartitioned()) {
+				ValueStore values = store.getValueStore();
+				this.predicateID = values.storeValue(values.createURI(indexSpec.getPredicate()));
+			}
+			this.codec = new TripleRowCodec(indexSpec, this.predicateID);
+		}
 
-		public TripleIndex(HBaseStore store, IndexSpec indexSpec) {
-			this.tableName = HBaseTableFactory.getTripleTableName(store.getHBaseStoreConfig().getCatalogName(), new String(indexSpec.getFieldSeq()));
+		/**
+		 * Creates an index that is not bound to a store, for encoding and
+		 * decoding rows without a cluster.
+		 *
+		 * @param predicateID
+		 *        The ID of the predicate of a partitioned index, or
+		 *        <tt>null</tt>.
+		 */
+		public TripleIndex(String tableName, IndexSpec indexSpec, byte[] predicateID) {
+			this.tableName = tableName;
 			this.indexSpec = indexSpec;
+			this.predicateID = predicateID;
+			this.codec = new TripleRowCodec(indexSpec, predicateID);
 		}
 
 		public String getTableName() {
 			return tableName;
 		}
+
+		public String getName() {
+			return this.indexSpec.getName();
+		}
+
+		public boolean isReady() {
+			return ready;
+		}
+
+		public void setReady(boolean ready) {
+			this.ready = ready;
+		}
 		
 		public char[] getFieldSeq() {
 			return this.indexSpec.getFieldSeq();
 		}
 
+		public boolean isPartitioned() {
+			return this.predicateID != null;
+		}
+
+		/**
+		 * Checks whether this index holds the triple with the supplied
+		 * predicate, which is the case for all but the triples of other
+		 * predicates than that of a partitioned index.
+		 */
+		public boolean contains(byte[] pred) {
+			return this.predicateID == null || Bytes.equals(this.predicateID, pred);
+		}
+
+		public boolean isSalted() {
+			return this.indexSpec.isSalted();
+		}
+
+		/**
+		 * Gets the length of the salt prefix of the row keys of this index.
+		 */
+		public int getSaltLength() {
+			return this.codec.getSaltLength();
+		}
+
+		/**
+		 * Gets the salt values whose key ranges a scan for the supplied pattern
+		 * has to cover: the salt of the salt field's ID if it is bound, all salt
+		 * values otherwise.
+		 */
+		public byte[] getSalts(byte[] subj, byte[] pred, byte[] obj, byte[] ctx) {
+			
+			byte[] saltID = getFieldID(this.codec.getSaltPosition(), subj, pred, obj, ctx);
+			if (saltID != null)
+				return new byte[] { this.codec.getSalt(saltID) };
+			
+			byte[] salts = new byte[1 << this.indexSpec.getSaltBits()];
+			for (int i = 0; i < salts.length; ++i)
+				salts[i] = (byte)i;
+			
+			return salts;
+		}
+
 		/**
 		 * Determines the 'score' of this index on the supplied pattern of
 		 * subject, predicate, object and context IDs. The higher the score, the
 		 * better the index is suited for matching the pattern. Lowest score is
-		 * 0, which means that the index will perform a sequential scan.
+		 * 0, which means that the index will perform a sequential scan. A
+		 * partitioned index scores -1 for patterns that do not fix its
+		 * predicate, as it can not match them at all; its implied predicate
+		 * counts as a bound field otherwise.
 		 */
 		public int getPatternScore(byte[] subj, byte[] pred, byte[] obj,
 				byte[] context) {
 			int score = 0;
+			
+			if (this.predicateID != null) {
+				if (pred == null || !Bytes.equals(this.predicateID, pred))
+					return -1;
+				score++;
+			}
 
-			for (char field : this.indexSpec.getFieldSeq()) {
-				switch (field) {
-				case 's':
-					if (subj != null) {
-						score++;
-					} else {
-						return score;
-					}
-					break;
-				case 'p':
-					if (pred != null) {
-						score++;
-					} else {
-						return score;
-					}
-					break;
-				case 'o':
-					if (obj != null) {
-						score++;
-					} else {
-						return score;
-					}
-					break;
-				case 'c':
-					if (context != null) {
-						score++;
-					} else {
-						return score;
-					}
-					break;
-				default:
-					throw new RuntimeException("invalid character '" + field
-							+ "' in field sequence: " + new String(this.indexSpec.getFieldSeq()));
-				}
+			for (int position : this.codec.getFieldPositions()) {
+				if (getFieldID(position, subj, pred, obj, context) == null)
+					return score;
+				score++;
 			}
 
 			return score;
 		}
-				
-		private byte[] getComposite(char[] fields, boolean start, boolean nullable,
-				byte[] subj, byte[] pred, byte[] obj, byte[] ctx) {
-			
-			if (fields == null)
-				return null;
-			
-			byte[][] componentBytes = new byte[fields.length][];
-			
-			int size = 0;
-			boolean foundNull = false;			
-			for (int fieldNum = 0; fieldNum < fields.length; ++fieldNum) {
-				char field = fields[fieldNum];
-				switch (field) {
-					case 's':
-						componentBytes[fieldNum] = subj;
-						break;
-					case 'p':
-						componentBytes[fieldNum] = pred;
-						break;
-					case 'o':
-						componentBytes[fieldNum] = obj;
-						break;
-					case 'c':
-						componentBytes[fieldNum] = ctx;
-						break;
-					default:
-						throw new RuntimeException("Invalid character '" + field
-								+ "' in field sequence: " + new String(this.indexSpec.getFieldSeq()));
-				}
 
-				if (componentBytes[fieldNum] == null || foundNull) {
-					if (nullable && fieldNum == 0)
-						return null;
-					
-					if (start)
-						componentBytes[fieldNum] = ValueTable.NULL_VALUE;
-					else
-						componentBytes[fieldNum] = ValueTable.MAX_VALUE;
-					
-					if (!foundNull)
-						foundNull = true;
+		/**
+		 * Determines the field on which the rows of a scan over this index are
+		 * ordered for the supplied pattern. Rows are sorted on their key, so a
+		 * scan that fixes the leading key fields returns its rows ordered on the
+		 * first key field that is not bound.
+		 *
+		 * @return One of 's', 'p', 'o' or 'c', or <tt>0</tt> if all key fields
+		 *         are bound and the scan does not span more than one row.
+		 */
+		public char getOrderField(byte[] subj, byte[] pred, byte[] obj,
+				byte[] context) {
+
+			char[] keyFields = this.indexSpec.getKeyFields();
+			int[] keyPositions = this.codec.getKeyPositions();
+			for (int i = 0; i < keyPositions.length; ++i) {
+				if (getFieldID(keyPositions[i], subj, pred, obj, context) == null) {
+					return keyFields[i];
 				}
-				
-				size += componentBytes[fieldNum].length;
 			}
-			
-			byte[] compositeBytes = new byte[size];
-			int offset = 0;
-			for (int fieldNum = 0; fieldNum < fields.length; ++fieldNum) {
-				
-				Bytes.putBytes(compositeBytes, offset, componentBytes[fieldNum], 0,
-						componentBytes[fieldNum].length);
-				offset += componentBytes[fieldNum].length;				
+
+			return 0;
+		}
+
+		private static byte[] getFieldID(int position, byte[] subj, byte[] pred,
+				byte[] obj, byte[] context) {
+			switch (position) {
+			case 0:
+				return subj;
+			case 1:
+				return pred;
+			case 2:
+				return obj;
+			default:
+				return context;
 			}
+		}
 
-			return compositeBytes;
+		/**
+		 * Gets the codec of the rows of this index.
+		 */
+		public TripleRowCodec getCodec() {
+			return codec;
 		}
 
 		public byte[] getKey(byte[] subj, byte[] pred, byte[] obj, byte[] ctx,
 				boolean start) {
 
-			return getComposite(this.indexSpec.getKeyFields(), start, false, 
-					subj, pred, obj, ctx);
-			
-			/*
-			char[] keyFields = this.indexSpec.getKeyFields();						
-			byte[] keyBytes = new byte[ValueTable.NUM_VALUE_BYTES * keyFields.length];
-			
-			int offset = 0;
-			boolean foundNull = false;
-			byte[] keyComponent = null;
-			for (int fieldNum = 0; fieldNum < keyFields.length; ++fieldNum) {
-				char field = keyFields[fieldNum];
-				switch (field) {
-				case 's':
-					keyComponent = subj;
-					break;
-				case 'p':
-					keyComponent = pred;
-					break;
-				case 'o':
-					keyComponent = obj;
-					break;
-				case 'c':
-					keyComponent = ctx;
-					break;
-				default:
-					throw new RuntimeException("invalid character '" + field
-							+ "' in field sequence: " + new String(this.indexSpec.getFieldSeq()));
-				}
-
-				if (keyComponent == null || foundNull) {
-					if (start)
-						keyComponent = ValueTable.NULL_VALUE;
-					else
-						keyComponent = ValueTable.MAX_VALUE;
-					if (!foundNull)
-						foundNull = true;
-				}
-				
-				Bytes.putBytes(keyBytes, offset, keyComponent, 0,
-						keyComponent.length);
-				offset += keyComponent.length;
+			byte salt = 0;
+			if (this.indexSpec.isSalted()) {
+				byte[] saltID = getFieldID(this.codec.getSaltPosition(), subj, pred, obj, ctx);
+				if (saltID != null)
+					salt = this.codec.getSalt(saltID);
+				else
+					salt = start ? 0 : this.codec.getMaxSalt();
 			}
-
-			return keyBytes;
-			*/
+			
+			return this.codec.getKey(salt, subj, pred, obj, ctx, start);
 		}
 
 		public byte[] getStartKey(byte[] subj, byte[] pred, byte[] obj,
@@ -188,6 +207,22 @@ public class TripleIndex {
 			return getKey(subj, pred, obj, ctx, true);
 		}
 
+		/**
+		 * Gets the start key of a salted index with the specified salt prefix.
+		 */
+		public byte[] getStartKey(byte salt, byte[] subj, byte[] pred, byte[] obj,
+				byte[] ctx) {
+			return this.codec.getKey(salt, subj, pred, obj, ctx, true);
+		}
+
+		/**
+		 * Gets the end key of a salted index with the specified salt prefix.
+		 */
+		public byte[] getEndKey(byte salt, byte[] subj, byte[] pred, byte[] obj, 
+				byte[] ctx) {
+			return this.codec.getKey(salt, subj, pred, obj, ctx, false);
+		}
+
 		public byte[] getEndKey(byte[] subj, byte[] pred, byte[] obj, byte[] ctx) {
 			return getKey(subj, pred, obj, ctx, false);
 		}
@@ -202,116 +237,45 @@ public class TripleIndex {
 
 		public byte[][] getFamilies(byte[] subj, byte[] pred, byte[] obj,
 				byte[] ctx) {
-
-			byte familyIndex = 0;
-			byte familyMask = 0;
-			byte position = 0;
-
-			byte[] keyComponent = null;
-			byte[] familyFieldBits = this.indexSpec.getFamilyFieldBits();
-			byte totalFamilyBits = 0;
-			char[] fieldSeq = this.indexSpec.getFieldSeq();
-			for (int fieldNum = 0; fieldNum < 4; ++fieldNum) {
-				
-				byte fieldBits = familyFieldBits[fieldNum];
-				if (fieldBits == 0)
-					continue;
-
-				totalFamilyBits += fieldBits;
-				
-				char field = fieldSeq[fieldNum];
-				switch (field) {
-				case 's':
-					keyComponent = subj;
-					break;
-				case 'p':
-					keyComponent = pred;
-					break;
-				case 'o':
-					keyComponent = obj;
-					break;
-				case 'c':
-					keyComponent = ctx; 
-					break;
-				default:
-					throw new RuntimeException("invalid character '" + field
-							+ "' in field sequence: " + new String(fieldSeq));
-				}
-
-				if (keyComponent != null) {
-					// take the specified number of bits from the LSB
-					byte keyComponentByte = keyComponent[keyComponent.length - 1];
-					familyIndex |= (keyComponentByte & ((1 << fieldBits) - 1)) << position;
-					familyMask |= ((1 << fieldBits) - 1) << position;
-				}
-				
-				position += fieldBits;
-			}
-
-			familyMask |= (HBaseTableFactory.MAX_FAMILIES - (1 << totalFamilyBits));
-			
-			byte[][] families = HBaseTableFactory.FAMILIES[familyMask][familyIndex];
-			
-			/*
-			byte[][] families = new byte[1 << Integer.bitCount(missingFamilyIndex)][];
-			getFamilies(families, new byte[] { 0 }, familyIndex,
-					missingFamilyIndex, (byte)0, familyFieldBits, (byte)0);
-			*/
-			
-			return families;
-
+			return this.codec.getFamilies(subj, pred, obj, ctx);
 		}
-/*
-		private void getFamilies(byte[][] families, byte[] familyCount,
-				byte familyIndex, byte missingFamilyIndex, byte indexOffset,
-				byte[] familyFieldBits, byte bitsOffset) {
-
-			if (bitsOffset >= familyFieldBits.length) {
-
-				families[familyCount[0]] = HBaseTableFactory.FAMILY_NAMES[familyIndex];
-				++familyCount[0];
-
-			} else {
-
-				byte bits = familyFieldBits[bitsOffset];
-				if (((missingFamilyIndex >> indexOffset) & 1) > 0) {
-
-					int vary = 1 << bits;
 
-					for (int i = 0; i < vary; ++i) {
-						getFamilies(families, familyCount, 
-								(byte)(familyIndex	| (i << indexOffset)), missingFamilyIndex,
-								(byte)(indexOffset + bits), familyFieldBits,
-								++bitsOffset);
-					}
-				} else {
-
-					getFamilies(families, familyCount, familyIndex,
-							missingFamilyIndex, (byte)(indexOffset + bits),
-							familyFieldBits, ++bitsOffset);
-				}
-			}
-		}
-*/
-		byte[] getFamily(byte[] subj, byte[] pred, byte[] obj,
+		public byte[] getFamily(byte[] subj, byte[] pred, byte[] obj,
 				byte[] ctx) {
 			assert (subj != null && pred != null && obj != null && ctx != null);
 
-			return getFamilies(subj, pred, obj, ctx)[0];
+			return this.codec.getFamilies(subj, pred, obj, ctx)[0];
 		}
 
-		byte[] getQualifier(byte[] subj, byte[] pred, byte[] obj,
+		public byte[] getQualifier(byte[] subj, byte[] pred, byte[] obj,
 				byte[] ctx) {
-
-			return getComposite(this.indexSpec.getQualifierFields(), true, true,
-					subj, pred, obj, ctx);
+			return this.codec.getQualifier(subj, pred, obj, ctx);
 		}
 		
 		public byte[] getValue(byte[] subj, byte[] pred, byte[] obj,
 				byte[] ctx) {
+			return this.codec.getValue(subj, pred, obj, ctx);
+		}
+
+		/**
+		 * Creates the put of a triple, see
+		 * {@link TripleRowCodec#getPut(byte[], byte[], byte[], byte[], byte[], byte[], long, byte[])}.
+		 *
+		 * @param buffer
+		 *        A buffer for the qualifier and value of the put, which can be
+		 *        reused once the put is created; see {@link #getBufferLength()}.
+		 */
+		public Put getPut(byte[] subj, byte[] pred, byte[] obj, byte[] ctx,
+				long timestamp, byte[] buffer) throws IOException {
+			return this.codec.getPut(getKey(subj, pred, obj, ctx), getFamily(subj, pred, obj, ctx), 
+					subj, pred, obj, ctx, timestamp, buffer);
+		}
 
-			return getComposite(this.indexSpec.getValueFields(), true, true,
-					subj, pred, obj, ctx);
+		/**
+		 * Gets the length of the buffers for {@link #getPut}.
+		 */
+		public int getBufferLength() {
+			return this.codec.getQualifierLength() + this.codec.getValueLength();
 		}
 
 		Filter getFilter(final byte[] subj, final byte[] pred,
@@ -321,26 +285,9 @@ public class TripleIndex {
 
 			boolean foundNull = false;
 
-			char[] fieldSeq = this.indexSpec.getFieldSeq();
-			for (int fieldNum = 0; fieldNum < 4; ++fieldNum) {
-				char field = fieldSeq[fieldNum];
-				switch (field) {
-				case 's':
-					filterFields[fieldNum] = subj;
-					break;
-				case 'p':
-					filterFields[fieldNum] = pred;
-					break;
-				case 'o':
-					filterFields[fieldNum] = obj;
-					break;
-				case 'c':
-					filterFields[fieldNum] = ctx;
-					break;
-				default:
-					throw new RuntimeException("invalid character '" + field
-							+ "' in field sequence: " + new String(fieldSeq));
-				}
+			int[] fieldPositions = this.codec.getFieldPositions();
+			for (int fieldNum = 0; fieldNum < fieldPositions.length; ++fieldNum) {
+				filterFields[fieldNum] = getFieldID(fieldPositions[fieldNum], subj, pred, obj, ctx);
 
 				if (!foundNull) {
 					if (filterFields[fieldNum] == null)
@@ -358,58 +305,70 @@ public class TripleIndex {
 		}
 
 		public byte[][] getValueIDs(KeyValue keyValue) {
-			
-			byte[][] valueIDs = new byte[4][ValueTable.NUM_VALUE_BYTES];
+			return this.codec.readIDs(keyValue, new byte[4][ValueTable.NUM_VALUE_BYTES]);
+		}
 
-			char[] fieldSeq = this.indexSpec.getFieldSeq();
-			char[] keyFields = this.indexSpec.getKeyFields();
-			char[] qualifierFields = this.indexSpec.getQualifierFields();
-			char[] valueFields = this.indexSpec.getValueFields();
-			
-			int valueIndex = -1;
-			int offset = 0;
-			for (int fieldNum = 0; fieldNum < 4; ++fieldNum) {
-				
-				char field = fieldSeq[fieldNum];
-				switch (field) {
-					case 's':
-						valueIndex = 0;
-						break;
-					case 'p':
-						valueIndex = 1;
-						break;
-					case 'o':
-						valueIndex = 2;
-						break;
-					case 'c':
-						valueIndex = 3;
-						break;
-					default:
-						throw new RuntimeException("Invalid character '" + field
-								+ "' in field sequence: " + new String(fieldSeq));
-				}
-				
-				if (fieldNum == keyFields.length || fieldNum == (keyFields.length + qualifierFields.length))
-					offset = 0;
-								
-				if (fieldNum < keyFields.length) {
-					Bytes.putBytes(valueIDs[valueIndex], 0, keyValue.getBuffer(),
-							keyValue.getRowOffset() + offset,
-							valueIDs[valueIndex].length);
-					offset += valueIDs[valueIndex].length;
-				} else if (fieldNum < keyFields.length + qualifierFields.length) {
-					Bytes.putBytes(valueIDs[valueIndex], 0, keyValue.getBuffer(),
-							keyValue.getQualifierOffset() + offset,
-							valueIDs[valueIndex].length);
-					offset += valueIDs[valueIndex].length;
-				} else if (fieldNum < keyFields.length + qualifierFields.length + valueFields.length) {
-					Bytes.putBytes(valueIDs[valueIndex], 0, keyValue.getBuffer(),
-							keyValue.getValueOffset() + offset,
-							valueIDs[valueIndex].length);
-					offset += valueIDs[valueIndex].length;
-				}
-			}
+		/**
+		 * Reads the subject, predicate, object and context IDs of the supplied
+		 * row into the arrays of <tt>valueIDs</tt>, which can be reused for
+		 * rows whose IDs are not kept.
+		 */
+		public byte[][] getValueIDs(KeyValue keyValue, byte[][] valueIDs) {
+			return this.codec.readIDs(keyValue, valueIDs);
+		}
+
+		/**
+		 * Reads the ID at a position of the supplied row, see
+		 * {@link #getPosition(char)}.
+		 */
+		public byte[] getValueID(KeyValue keyValue, int position) {
+			return this.codec.readID(keyValue, position, new byte[ValueTable.NUM_VALUE_BYTES]);
+		}
 
-			return valueIDs;
+		/**
+		 * Reads the ID at a position of the supplied row, see
+		 * {@link #getPosition(char)}.
+		 */
+		public int getID(KeyValue keyValue, int position) {
+			return this.codec.readID(keyValue, position);
+		}
+
+		/**
+		 * Reads the subject, predicate, object and context IDs of the supplied
+		 * row into <tt>ids</tt>, in that order.
+		 */
+		public int[] getIDs(KeyValue keyValue, int[] ids) {
+			return this.codec.readIDs(keyValue, ids, null);
+		}
+
+		/**
+		 * Reads the supplied positions of a row into <tt>ids</tt>, leaving the
+		 * other positions <tt>0</tt>.
+		 *
+		 * @param positions
+		 *        The positions to read, by subject, predicate, object and
+		 *        context, or <tt>null</tt> for all.
+		 */
+		public int[] getIDs(KeyValue keyValue, int[] ids, boolean[] positions) {
+			return this.codec.readIDs(keyValue, ids, positions);
+		}
+
+		/**
+		 * Maps a field character onto its position in a statement: 0 for the
+		 * subject, 1 for the predicate, 2 for the object and 3 for the context.
+		 */
+		public static int getPosition(char field) {
+			switch (field) {
+			case 's':
+				return 0;
+			case 'p':
+				return 1;
+			case 'o':
+				return 2;
+			case 'c':
+				return 3;
+			default:
+				throw new IllegalArgumentException("invalid field character '" + field + "'");
+			}
 		}
 	}
\ No newline at end of file
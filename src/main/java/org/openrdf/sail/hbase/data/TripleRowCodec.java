@@ -0,0 +1,488 @@
+package org.openrdf.sail.hbase.data;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.sail.hbase.config.IndexSpec;
+
+/**
+ * Encodes and decodes the rows of a triple index. The layout of the rows is
+ * compiled from the {@link IndexSpec} once: the statement position and byte
+ * offset of every field of the row key, qualifier and value, and the ID bits
+ * that select the column family. Rows are written into supplied buffers and
+ * read as <tt>int</tt>s straight from the buffer of a {@link KeyValue}, so
+ * that neither needs intermediate arrays.
+ * <p>
+ * Positions are 0 for the subject, 1 for the predicate, 2 for the object and
+ * 3 for the context. A codec is immutable and is shared by all threads.
+ */
+public class TripleRowCodec {
+
+	private static final int ID_LENGTH = ValueTable.NUM_VALUE_BYTES;
+
+	/*
+	 * The parts of a row that hold fields.
+	 */
+	private static final int ROW = 0;
+	private static final int QUALIFIER = 1;
+	private static final int VALUE = 2;
+
+	private final String fieldSeq;
+
+	private final int saltLength;
+	private final int saltPosition;
+	private final int saltBits;
+
+	/**
+	 * The positions of the fields of the row key, qualifier and value; the
+	 * qualifier and value positions are <tt>null</tt> if the index has no
+	 * qualifier or value fields at all.
+	 */
+	private final int[] keyPositions;
+	private final int[] qualifierPositions;
+	private final int[] valuePositions;
+
+	/**
+	 * Per field of the field sequence: its position, the part of the row that
+	 * holds it and its offset in that part.
+	 */
+	private final int[] fieldPositions;
+	private final int[] fieldParts;
+	private final int[] fieldOffsets;
+
+	/**
+	 * Per field that contributes to the column family: its position, the
+	 * mask of its bits and the shift of those bits in the family index.
+	 */
+	private final int[] familyPositions;
+	private final int[] familyMasks;
+	private final int[] familyShifts;
+	private final int familyMaskBase;
+
+	/**
+	 * The predicate ID of a partitioned index, which its rows do not hold.
+	 */
+	private final byte[] predicateID;
+
+	/**
+	 * @param predicateID
+	 *        The ID of the predicate of a partitioned index, or <tt>null</tt>.
+	 */
+	public TripleRowCodec(IndexSpec indexSpec, byte[] predicateID) {
+		this.fieldSeq = new String(indexSpec.getFieldSeq());
+		this.predicateID = predicateID;
+
+		this.saltLength = indexSpec.isSalted() ? 1 : 0;
+		this.saltPosition = indexSpec.isSalted() ? TripleIndex.getPosition(indexSpec.getSaltField()) : -1;
+		this.saltBits = indexSpec.getSaltBits();
+
+		this.keyPositions = getPositions(indexSpec.getKeyFields());
+		this.qualifierPositions = getPositions(indexSpec.getQualifierFields());
+		this.valuePositions = getPositions(indexSpec.getValueFields());
+
+		int numFields = indexSpec.getFieldSeq().length;
+		this.fieldPositions = new int[numFields];
+		this.fieldParts = new int[numFields];
+		this.fieldOffsets = new int[numFields];
+
+		int fieldNum = 0;
+		fieldNum = addFields(keyPositions, ROW, saltLength, fieldNum);
+		fieldNum = addFields(qualifierPositions, QUALIFIER, 0, fieldNum);
+		addFields(valuePositions, VALUE, 0, fieldNum);
+
+		byte[] familyFieldBits = indexSpec.getFamilyFieldBits();
+		int numFamilyFields = 0;
+		for (int i = 0; i < numFields; ++i)
+			if (familyFieldBits[i] > 0)
+				++numFamilyFields;
+
+		this.familyPositions = new int[numFamilyFields];
+		this.familyMasks = new int[numFamilyFields];
+		this.familyShifts = new int[numFamilyFields];
+
+		int shift = 0;
+		int familyField = 0;
+		for (int i = 0; i < numFields; ++i) {
+			int bits = familyFieldBits[i];
+			if (bits == 0)
+				continue;
+
+			familyPositions[familyField] = fieldPositions[i];
+			familyMasks[familyField] = (1 << bits) - 1;
+			familyShifts[familyField] = shift;
+			++familyField;
+			shift += bits;
+		}
+		this.familyMaskBase = HBaseTableFactory.MAX_FAMILIES - (1 << shift);
+	}
+
+	private static int[] getPositions(char[] fields) {
+		if (fields == null)
+			return null;
+
+		int[] positions = new int[fields.length];
+		for (int i = 0; i < fields.length; ++i)
+			positions[i] = TripleIndex.getPosition(fields[i]);
+		return positions;
+	}
+
+	private int addFields(int[] positions, int part, int offset, int fieldNum) {
+		if (positions == null)
+			return fieldNum;
+
+		for (int position : positions) {
+			fieldPositions[fieldNum] = position;
+			fieldParts[fieldNum] = part;
+			fieldOffsets[fieldNum] = offset;
+			offset += ID_LENGTH;
+			++fieldNum;
+		}
+		return fieldNum;
+	}
+
+	private static byte[] select(int position, byte[] subj, byte[] pred, byte[] obj, byte[] ctx) {
+		switch (position) {
+		case 0:
+			return subj;
+		case 1:
+			return pred;
+		case 2:
+			return obj;
+		default:
+			return ctx;
+		}
+	}
+
+	/**
+	 * Gets the positions of the fields of the row keys, in key order.
+	 */
+	public int[] getKeyPositions() {
+		return keyPositions;
+	}
+
+	/**
+	 * Gets the positions of the fields of the cell values, or <tt>null</tt>.
+	 */
+	public int[] getValuePositions() {
+		return valuePositions;
+	}
+
+	/**
+	 * Gets the positions of all fields, in the order of the field sequence.
+	 */
+	public int[] getFieldPositions() {
+		return fieldPositions;
+	}
+
+	public int getSaltLength() {
+		return saltLength;
+	}
+
+	/**
+	 * Gets the position of the field that the salt is computed from, or
+	 * <tt>-1</tt> if the keys are not salted.
+	 */
+	public int getSaltPosition() {
+		return saltPosition;
+	}
+
+	/**
+	 * Computes the salt of an ID from the hashed bits of the ID; the lowest
+	 * four bits only count hash collisions.
+	 */
+	public byte getSalt(byte[] id) {
+		int hash = (Bytes.toInt(id) >>> 4) * 0x9E3779B1;
+		return (byte)(hash >>> (Integer.SIZE - saltBits));
+	}
+
+	/**
+	 * Gets the highest salt value.
+	 */
+	public byte getMaxSalt() {
+		return (byte)((1 << saltBits) - 1);
+	}
+
+	public int getKeyLength() {
+		return saltLength + keyPositions.length * ID_LENGTH;
+	}
+
+	public int getQualifierLength() {
+		return qualifierPositions != null ? qualifierPositions.length * ID_LENGTH : 0;
+	}
+
+	public int getValueLength() {
+		return valuePositions != null ? valuePositions.length * ID_LENGTH : 0;
+	}
+
+	/**
+	 * Writes the fields of one part of a row. The first field that is not
+	 * given, and all after it, are written as the lowest ID if
+	 * <tt>start</tt> is set and as the highest ID otherwise.
+	 *
+	 * @return The offset after the written fields.
+	 */
+	private static int write(int[] positions, boolean start, byte[] subj, byte[] pred, byte[] obj,
+			byte[] ctx, byte[] buffer, int offset) {
+
+		boolean foundNull = false;
+		for (int position : positions) {
+			byte[] id = foundNull ? null : select(position, subj, pred, obj, ctx);
+			if (id == null) {
+				id = start ? ValueTable.NULL_VALUE : ValueTable.MAX_VALUE;
+				foundNull = true;
+			}
+
+			System.arraycopy(id, 0, buffer, offset, ID_LENGTH);
+			offset += ID_LENGTH;
+		}
+		return offset;
+	}
+
+	/**
+	 * Writes a row key, see {@link #getKeyLength()} for its length.
+	 *
+	 * @param salt
+	 *        The salt prefix of the key; ignored if the keys are not salted.
+	 * @param start
+	 *        Whether unbound fields are written as the lowest ID, for the
+	 *        start key of a scan, or as the highest, for its stop key.
+	 * @return The offset after the key.
+	 */
+	public int writeKey(byte salt, byte[] subj, byte[] pred, byte[] obj, byte[] ctx, boolean start,
+			byte[] buffer, int offset) {
+
+		if (saltLength > 0)
+			buffer[offset++] = salt;
+		return write(keyPositions, start, subj, pred, obj, ctx, buffer, offset);
+	}
+
+	public byte[] getKey(byte salt, byte[] subj, byte[] pred, byte[] obj, byte[] ctx, boolean start) {
+		byte[] key = new byte[getKeyLength()];
+		writeKey(salt, subj, pred, obj, ctx, start, key, 0);
+		return key;
+	}
+
+	/**
+	 * Checks whether the qualifier or value of a row is left out: if the index
+	 * has no such fields, or the first of them is not given.
+	 */
+	private static boolean isMissing(int[] positions, byte[] subj, byte[] pred, byte[] obj, byte[] ctx) {
+		return positions == null
+			|| positions.length > 0 && select(positions[0], subj, pred, obj, ctx) == null;
+	}
+
+	/**
+	 * Writes a qualifier, see {@link #getQualifierLength()} for its length.
+	 *
+	 * @return The offset after the qualifier.
+	 */
+	public int writeQualifier(byte[] subj, byte[] pred, byte[] obj, byte[] ctx, byte[] buffer, int offset) {
+		if (qualifierPositions == null)
+			return offset;
+		return write(qualifierPositions, true, subj, pred, obj, ctx, buffer, offset);
+	}
+
+	/**
+	 * Gets the qualifier of a row, or <tt>null</tt> if its first field is not
+	 * given.
+	 */
+	public byte[] getQualifier(byte[] subj, byte[] pred, byte[] obj, byte[] ctx) {
+		if (isMissing(qualifierPositions, subj, pred, obj, ctx))
+			return null;
+
+		byte[] qualifier = new byte[getQualifierLength()];
+		writeQualifier(subj, pred, obj, ctx, qualifier, 0);
+		return qualifier;
+	}
+
+	/**
+	 * Writes a cell value, see {@link #getValueLength()} for its length.
+	 *
+	 * @return The offset after the value.
+	 */
+	public int writeValue(byte[] subj, byte[] pred, byte[] obj, byte[] ctx, byte[] buffer, int offset) {
+		if (valuePositions == null)
+			return offset;
+		return write(valuePositions, true, subj, pred, obj, ctx, buffer, offset);
+	}
+
+	/**
+	 * Gets the cell value of a row, or <tt>null</tt> if its first field is
+	 * not given.
+	 */
+	public byte[] getValue(byte[] subj, byte[] pred, byte[] obj, byte[] ctx) {
+		if (isMissing(valuePositions, subj, pred, obj, ctx))
+			return null;
+
+		byte[] value = new byte[getValueLength()];
+		writeValue(subj, pred, obj, ctx, value, 0);
+		return value;
+	}
+
+	/**
+	 * Gets the column families that can hold the rows of a pattern: the one
+	 * family of a triple, or the families of all values of the unbound family
+	 * bits of a pattern.
+	 */
+	public byte[][] getFamilies(byte[] subj, byte[] pred, byte[] obj, byte[] ctx) {
+
+		int familyIndex = 0;
+		int familyMask = familyMaskBase;
+		for (int i = 0; i < familyPositions.length; ++i) {
+			byte[] id = select(familyPositions[i], subj, pred, obj, ctx);
+			if (id != null) {
+				// take the specified number of bits from the LSB
+				familyIndex |= (id[id.length - 1] & familyMasks[i]) << familyShifts[i];
+				familyMask |= familyMasks[i] << familyShifts[i];
+			}
+		}
+
+		return HBaseTableFactory.FAMILIES[familyMask][familyIndex];
+	}
+
+	/**
+	 * Creates the put of a triple. The qualifier and value are written to
+	 * <tt>buffer</tt>, which the cell copies, so the buffer can be reused for
+	 * the next put.
+	 *
+	 * @param buffer
+	 *        A buffer of at least {@link #getQualifierLength()} plus
+	 *        {@link #getValueLength()} bytes.
+	 */
+	public Put getPut(byte[] key, byte[] family, byte[] subj, byte[] pred, byte[] obj, byte[] ctx,
+			long timestamp, byte[] buffer) throws IOException {
+
+		int valueOffset = writeQualifier(subj, pred, obj, ctx, buffer, 0);
+		int end = writeValue(subj, pred, obj, ctx, buffer, valueOffset);
+
+		Put put = new Put(key);
+		put.add(new KeyValue(key, 0, key.length, family, 0, family.length,
+				buffer, 0, valueOffset, timestamp, KeyValue.Type.Put,
+				buffer, valueOffset, end - valueOffset));
+		return put;
+	}
+
+	/**
+	 * Reads the IDs of a row into <tt>ids</tt>, in the order of their
+	 * positions, leaving the positions that are not needed <tt>0</tt>.
+	 *
+	 * @param positions
+	 *        The positions to read, or <tt>null</tt> for all.
+	 */
+	public int[] readIDs(KeyValue keyValue, int[] ids, boolean[] positions) {
+
+		if (predicateID != null)
+			ids[1] = Bytes.toInt(predicateID);
+
+		byte[] buffer = keyValue.getBuffer();
+		int rowOffset = keyValue.getRowOffset();
+		int qualifierOffset = qualifierPositions != null ? keyValue.getQualifierOffset() : 0;
+		int valueOffset = valuePositions != null ? keyValue.getValueOffset() : 0;
+
+		for (int fieldNum = 0; fieldNum < fieldPositions.length; ++fieldNum) {
+			int position = fieldPositions[fieldNum];
+			if (positions != null && !positions[position])
+				continue;
+
+			int offset = fieldOffsets[fieldNum];
+			switch (fieldParts[fieldNum]) {
+			case ROW:
+				offset += rowOffset;
+				break;
+			case QUALIFIER:
+				offset += qualifierOffset;
+				break;
+			default:
+				offset += valueOffset;
+			}
+
+			ids[position] = Bytes.toInt(buffer, offset);
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Reads the IDs of a row into the supplied arrays, one of
+	 * {@link ValueTable#NUM_VALUE_BYTES} bytes per position.
+	 */
+	public byte[][] readIDs(KeyValue keyValue, byte[][] ids) {
+
+		if (predicateID != null)
+			System.arraycopy(predicateID, 0, ids[1], 0, ID_LENGTH);
+
+		byte[] buffer = keyValue.getBuffer();
+		int rowOffset = keyValue.getRowOffset();
+		int qualifierOffset = qualifierPositions != null ? keyValue.getQualifierOffset() : 0;
+		int valueOffset = valuePositions != null ? keyValue.getValueOffset() : 0;
+
+		for (int fieldNum = 0; fieldNum < fieldPositions.length; ++fieldNum) {
+			int offset = fieldOffsets[fieldNum];
+			switch (fieldParts[fieldNum]) {
+			case ROW:
+				offset += rowOffset;
+				break;
+			case QUALIFIER:
+				offset += qualifierOffset;
+				break;
+			default:
+				offset += valueOffset;
+			}
+
+			System.arraycopy(buffer, offset, ids[fieldPositions[fieldNum]], 0, ID_LENGTH);
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Reads the ID at a position of a row into <tt>id</tt>.
+	 */
+	public byte[] readID(KeyValue keyValue, int position, byte[] id) {
+
+		if (position == 1 && predicateID != null) {
+			System.arraycopy(predicateID, 0, id, 0, ID_LENGTH);
+			return id;
+		}
+
+		System.arraycopy(keyValue.getBuffer(), getOffset(keyValue, position), id, 0, ID_LENGTH);
+		return id;
+	}
+
+	/**
+	 * Reads the ID at a position of a row.
+	 */
+	public int readID(KeyValue keyValue, int position) {
+
+		if (position == 1 && predicateID != null)
+			return Bytes.toInt(predicateID);
+
+		return Bytes.toInt(keyValue.getBuffer(), getOffset(keyValue, position));
+	}
+
+	private int getOffset(KeyValue keyValue, int position) {
+
+		int fieldNum = 0;
+		while (fieldNum < fieldPositions.length && fieldPositions[fieldNum] != position)
+			++fieldNum;
+
+		if (fieldNum == fieldPositions.length)
+			throw new IllegalArgumentException("position " + position + " is not in field sequence: " + fieldSeq);
+
+		int offset = fieldOffsets[fieldNum];
+		switch (fieldParts[fieldNum]) {
+		case ROW:
+			offset += keyValue.getRowOffset();
+			break;
+		case QUALIFIER:
+			offset += keyValue.getQualifierOffset();
+			break;
+		default:
+			offset += keyValue.getValueOffset();
+		}
+
+		return offset;
+	}
+}
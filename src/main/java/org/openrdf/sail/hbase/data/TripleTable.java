@@ -2,13 +2,24 @@ package org.openrdf.sail.hbase.data;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.KeyValue;
-import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.openrdf.cursor.ConvertingCursor;
@@ -30,25 +41,62 @@ public class TripleTable {
 	private Logger logger = LoggerFactory.getLogger(TripleTable.class);
 
 	private HBaseStore store;
-	private TripleIndex[] indexes;
+	private volatile TripleIndex[] indexes;
+	
+	private final PatternCache patternCache;
+	
+	private final List<IndexBuilder> builders = new ArrayList<IndexBuilder>();
+	
+	private static final Comparator<Put> PUT_ORDER = new Comparator<Put>() {
+		public int compare(Put p1, Put p2) {
+			return Bytes.compareTo(p1.getRow(), p2.getRow());
+		}
+	};
+	
+	private static final Comparator<Delete> DELETE_ORDER = new Comparator<Delete>() {
+		public int compare(Delete d1, Delete d2) {
+			return Bytes.compareTo(d1.getRow(), d2.getRow());
+		}
+	};
 
-	public TripleTable(HBaseStore store) {
+	public TripleTable(HBaseStore store) throws IOException {
 		this.store = store;
 		
 		List<IndexSpec> indexSpecs = store.getHBaseStoreConfig().getTripleIndexes();
 		this.indexes = new TripleIndex[indexSpecs.size()];
+		boolean complete = false;
 		for (int i = 0; i < this.indexes.length; ++i) {
 			this.indexes[i] = new TripleIndex(store, indexSpecs.get(i));
+			complete |= !this.indexes[i].isPartitioned();
 		}
+		
+		if (!complete)
+			throw new IOException("At least one triple index must hold the statements of all predicates");
+		
+		long patternCacheSize = store.getHBaseStoreConfig().getPatternCacheSize();
+		this.patternCache = patternCacheSize > 0 ? new PatternCache(patternCacheSize) : null;
+	}
+
+	/**
+	 * Gets the cache of the rows of triple patterns, or <tt>null</tt> if
+	 * patterns are not cached.
+	 */
+	public PatternCache getPatternCache() {
+		return patternCache;
 	}
 
-	protected TripleIndex getBestIndex(byte[] subj, byte[] pred, byte[] obj,
+	public TripleIndex getBestIndex(byte[] subj, byte[] pred, byte[] obj,
 			byte[] context) {
 		int bestScore = -1;
 		List<TripleIndex> bestIndexes = new ArrayList<TripleIndex>(indexes.length);
 
 		for (int i = 0; i < indexes.length; ++i) {
 			int score = indexes[i].getPatternScore(subj, pred, obj, context);
+			if (score < 0 || !indexes[i].isReady()) {
+				// a partitioned index for another predicate, or one that is
+				// still being built
+				continue;
+			}
 			if (score > bestScore) {
 				bestScore = score;
 				bestIndexes.clear();
@@ -67,23 +115,119 @@ public class TripleTable {
 		}
 	}
 	
+	/**
+	 * Gets the best scoring index whose scan for the supplied pattern returns
+	 * its rows ordered on <tt>orderField</tt>.
+	 * 
+	 * @return An index, or <tt>null</tt> if none of the indexes can produce
+	 *         the requested order for this pattern.
+	 */
+	public TripleIndex getOrderedIndex(byte[] subj, byte[] pred, byte[] obj,
+			byte[] context, char orderField) {
+		int bestScore = -1;
+		TripleIndex bestIndex = null;
+
+		for (int i = 0; i < indexes.length; ++i) {
+			if (indexes[i].isReady() && indexes[i].getOrderField(subj, pred, obj, context) == orderField) {
+				int score = indexes[i].getPatternScore(subj, pred, obj, context);
+				if (score > bestScore) {
+					bestScore = score;
+					bestIndex = indexes[i];
+				}
+			}
+		}
+
+		return bestIndex;
+	}
+
 	public TripleIndex[] getIndexes()
 	{
 		return this.indexes;
 	}
+	
+	/**
+	 * Adds an index that is not ready yet. Triples are stored in it from now
+	 * on, but it is not read from until it has been built.
+	 */
+	public synchronized TripleIndex addIndex(IndexSpec indexSpec) throws IOException {
+		
+		TripleIndex index = new TripleIndex(store, indexSpec);
+		index.setReady(false);
+		
+		TripleIndex[] newIndexes = new TripleIndex[indexes.length + 1];
+		System.arraycopy(indexes, 0, newIndexes, 0, indexes.length);
+		newIndexes[indexes.length] = index;
+		this.indexes = newIndexes;
+		
+		return index;
+	}
+	
+	/**
+	 * Starts building the indexes that are not ready from an index that is.
+	 * 
+	 * @param numThreads
+	 *        The number of threads to build each index with.
+	 * @param rate
+	 *        The maximum number of triples per second to copy into each index,
+	 *        or <tt>0</tt> for no limit.
+	 */
+	public synchronized void buildIndexes(IndexStateTable states, int numThreads, int rate) {
+		
+		TripleIndex source = this.getBestIndex(null, null, null, null);
+		
+		for (TripleIndex index : indexes) {
+			if (index.isReady())
+				continue;
+			
+			boolean building = false;
+			for (IndexBuilder builder : builders)
+				building |= builder.getTarget() == index;
+			
+			if (!building) {
+				IndexBuilder builder = new IndexBuilder(store, source, index, states, numThreads, rate);
+				builders.add(builder);
+				builder.start();
+			}
+		}
+	}
+	
+	public synchronized void stopBuilding() {
+		
+		for (IndexBuilder builder : builders)
+			builder.stop();
+		
+		builders.clear();
+	}
 
+	/**
+	 * Counts the triples that match a pattern. Only the keys are examined:
+	 * the scan fetches large batches of rows and no IDs are decoded.
+	 */
 	public long size(HBaseConnection conn, byte[] subjID, byte[] predID, byte[] objID, byte[] contextID) throws IOException, StoreException {
 
 		TripleIndex index = this.getBestIndex(subjID, predID, objID, contextID);
-		HBaseCursor cursor = this.getTriplesInternal(
-				conn.getHTable(index.getTableName()), 
-				index, subjID, predID, objID, contextID);
+		HTableInterface table = conn.getHTable(index.getTableName());
+		byte[] startKey = index.getStartKey(subjID, predID, objID, contextID);
+		byte[] stopKey = index.getEndKey(subjID, predID, objID, contextID);
+		byte[][] families = index.getFamilies(subjID, predID, objID, contextID);
+		byte[] qualifier = index.getQualifier(subjID, predID, objID, contextID);
 		
-		long size = 0;
+		if (Bytes.compareTo(startKey, stopKey) == 0) {
+			return HBaseTable.get(table, startKey, families, qualifier).size();
+		}
 		
-		while (cursor.hasNext()) {
-			cursor.next();
-			++size;
+		Filter filter = index.getFilter(subjID, predID, objID, contextID);
+		ResultScanner scanner = this.scan(table, index, subjID, predID, objID, contextID, 
+				families, qualifier, filter, HBaseTable.COUNT_SCAN_CACHING);
+		
+		long size = 0;
+		try {
+			for (Result result : scanner) {
+				size += result.size();
+			}
+		}
+		finally {
+			scanner.close();
 		}
 		
 		return size;
@@ -113,12 +257,25 @@ public class TripleTable {
 					ValueTable.MAX_VALUE, 0, ValueTable.NUM_VALUE_BYTES);
 		}
 
-		HTable table = conn.getHTable(index.getTableName());
-		byte[] startKey = index.getStartKey(null, null, null, ValueTable.FIRST_VALUE);
-		byte[] stopKey = index.getEndKey(null, null, null, null);
+		HTableInterface table = conn.getHTable(index.getTableName());
 		Filter filter = new DistinctValueFilter(valueMask);
 		
-		ResultScanner scanner = HBaseTable.scan(table, startKey, stopKey, null, null, filter);
+		ResultScanner scanner;
+		if (index.isSalted()) {
+			byte[] salts = index.getSalts(null, null, null, null);
+			byte[][] startKeys = new byte[salts.length][];
+			byte[][] stopKeys = new byte[salts.length][];
+			for (int i = 0; i < salts.length; ++i) {
+				startKeys[i] = index.getStartKey(salts[i], null, null, null, ValueTable.FIRST_VALUE);
+				stopKeys[i] = index.getEndKey(salts[i], null, null, null, null);
+			}
+			scanner = this.scan(table, index, startKeys, stopKeys, null, null, filter, HBaseTable.SCAN_CACHING);
+		}
+		else {
+			byte[] startKey = index.getStartKey(null, null, null, ValueTable.FIRST_VALUE);
+			byte[] stopKey = index.getEndKey(null, null, null, null);
+			scanner = HBaseTable.scan(table, startKey, stopKey, null, null, filter);
+		}
 		
 		return new ReducedCursor<Resource>(
 				new ConvertingCursor<KeyValue, Resource>(
@@ -129,7 +286,7 @@ public class TripleTable {
 				
 				Resource context;
 				try {
-					context = (Resource)store.getValueStore().getValue(index.getValueIDs(kv)[3]);
+					context = (Resource)store.getValueStore().getValue(index.getID(kv, 3));
 				}
 				catch (IOException ioe) {
 					throw new StoreException(ioe);
@@ -156,11 +313,259 @@ public class TripleTable {
 		HBaseCursor cursor = this.getTriplesInternal(
 				conn.getHTable(index.getTableName()), 
 				index, subjID, predID, objID, contextID);
-		return new HBaseStatementCursor(cursor, index, store.getValueStore());
+		
+		MutationBuffer buffer = conn.getMutationBuffer();
+		if (buffer != null && !buffer.isEmpty()) {
+			// read the transaction's own changes: the buffered triples replace
+			// their stored versions and come last, so the order is lost
+			List<byte[][]> added = buffer.getAdded(subjID, predID, objID, contextID);
+			return new HBaseStatementCursor(cursor, index, store.getValueStore(),
+					added.isEmpty() ? index.getOrderField(subjID, predID, objID, contextID) : (char)0,
+					buffer, added);
+		}
+		
+		return new HBaseStatementCursor(cursor, index, store.getValueStore(),
+				index.getOrderField(subjID, predID, objID, contextID));
+	}
+
+	/**
+	 * Gets the raw IDs of the triples matching the supplied pattern, ordered
+	 * on the internal ID of <tt>orderField</tt>.
+	 * 
+	 * @return A cursor over the matching IDs, or <tt>null</tt> if none of the
+	 *         indexes can return the pattern in the requested order.
+	 */
+	public TripleIDCursor getOrderedTripleIDs(HBaseConnection conn,
+			byte[] subjID, byte[] predID, byte[] objID, byte[] contextID,
+			char orderField) throws IOException {
+
+		TripleIndex index = this.getOrderedIndex(subjID, predID, objID, contextID, orderField);
+		if (index == null) {
+			return null;
+		}
+
+		HBaseCursor cursor = this.getTriplesInternal(
+				conn.getHTable(index.getTableName()), 
+				index, subjID, predID, objID, contextID);
+		return new TripleIDCursor(cursor, index, orderField);
+	}
+
+	/**
+	 * Gets the raw IDs of the triples matching any of the supplied patterns
+	 * in one go: one multi-get when the patterns bind all key fields of the
+	 * chosen index, one scan per key range otherwise, run in parallel on the
+	 * store's worker threads. The patterns must all bind the same positions.
+	 * Rows are not checked against the non-key fields of the patterns;
+	 * callers need to route them back to the pattern they match.
+	 * 
+	 * @param patterns
+	 *        The patterns as arrays of subject, predicate, object and context
+	 *        IDs, <tt>null</tt> meaning unbound.
+	 */
+	public TripleIDCursor getTripleIDs(HBaseConnection conn, List<byte[][]> patterns)
+			throws IOException {
+
+		byte[][] first = patterns.get(0);
+		return this.getTripleIDs(conn, 
+				this.getBestIndex(first[0], first[1], first[2], first[3]), patterns);
+	}
+
+	/**
+	 * Gets the raw IDs of the triples matching any of the supplied patterns
+	 * from the specified index, see {@link #getTripleIDs(HBaseConnection, List)}.
+	 */
+	public TripleIDCursor getTripleIDs(HBaseConnection conn, TripleIndex index, 
+			List<byte[][]> patterns) throws IOException {
+		return this.getTripleIDs(conn, index, patterns, null);
+	}
+
+	/**
+	 * Gets the supplied positions of the triples matching any of the supplied
+	 * patterns from the specified index, see
+	 * {@link #getTripleIDs(HBaseConnection, List)}. The other positions of the
+	 * returned IDs are <tt>0</tt>.
+	 * 
+	 * @param positions
+	 *        The positions that are needed, by subject, predicate, object and
+	 *        context, or <tt>null</tt> for all.
+	 */
+	public TripleIDCursor getTripleIDs(HBaseConnection conn, TripleIndex index, 
+			List<byte[][]> patterns, boolean[] positions) throws IOException {
+		return this.getTripleIDs(conn.getHTable(index.getTableName()), index, patterns, positions);
 	}
 
-	private HBaseCursor getTriplesInternal(HTable table, TripleIndex index, byte[] subjID,
+	private TripleIDCursor getTripleIDs(HTableInterface table, TripleIndex index, 
+			List<byte[][]> patterns, boolean[] positions) throws IOException {
+
+		if (patterns.size() == 1) {
+			byte[][] pattern = patterns.get(0);
+			return new TripleIDCursor(
+					this.getTriplesInternal(table, index, pattern[0], pattern[1], pattern[2], pattern[3]), 
+					index, index.getOrderField(pattern[0], pattern[1], pattern[2], pattern[3]), positions);
+		}
+
+		TreeMap<byte[], byte[]> ranges = new TreeMap<byte[], byte[]>(Bytes.BYTES_COMPARATOR);
+		TreeMap<byte[], Get> gets = new TreeMap<byte[], Get>(Bytes.BYTES_COMPARATOR);
+		for (byte[][] pattern : patterns) {
+			byte[] salts = index.isSalted() ? index.getSalts(pattern[0], pattern[1], pattern[2], pattern[3]) : new byte[1];
+			for (byte salt : salts) {
+				addRange(index, salt, pattern, ranges, gets);
+			}
+		}
+
+		HBaseCursor cursor;
+		if (ranges.isEmpty()) {
+			cursor = new HBaseCursor(HBaseTable.get(table, new ArrayList<Get>(gets.values())));
+		}
+		else {
+			// single rows among the ranges are scanned as one-row ranges
+			for (byte[] key : gets.keySet()) {
+				ranges.put(key, Bytes.add(key, new byte[1]));
+			}
+
+			// merge overlapping ranges
+			List<byte[]> startKeys = new ArrayList<byte[]>(ranges.size());
+			List<byte[]> stopKeys = new ArrayList<byte[]>(ranges.size());
+			for (Map.Entry<byte[], byte[]> range : ranges.entrySet()) {
+				int last = stopKeys.size() - 1;
+				if (last >= 0 && Bytes.compareTo(range.getKey(), stopKeys.get(last)) <= 0) {
+					if (Bytes.compareTo(range.getValue(), stopKeys.get(last)) > 0) {
+						stopKeys.set(last, range.getValue());
+					}
+				}
+				else {
+					startKeys.add(range.getKey());
+					stopKeys.add(range.getValue());
+				}
+			}
+
+			// the IDs are hashed, so the ranges are spread over the whole
+			// table: every range gets its own scan
+			cursor = new HBaseCursor(this.scan(table, index, 
+					startKeys.toArray(new byte[startKeys.size()][]), 
+					stopKeys.toArray(new byte[stopKeys.size()][]), 
+					null, null, null, HBaseTable.SCAN_CACHING));
+		}
+
+		return new TripleIDCursor(cursor, index, (char)0, positions);
+	}
+
+	/**
+	 * Opens the request of
+	 * {@link #getTripleIDs(HBaseConnection, TripleIndex, List, boolean[])} on
+	 * the store's worker threads, so that the caller can go on with other
+	 * work, such as preparing its next request, until it needs the triples.
+	 * <p>
+	 * The worker reads the table on its own handle, without the connection
+	 * and its mutation buffer, which is not thread-safe; like the other ID
+	 * reads, the request does not see changes that are still buffered.
+	 */
+	public Future<TripleIDCursor> getTripleIDsAsync(final TripleIndex index, 
+			final List<byte[][]> patterns, final boolean[] positions) {
+
+		return store.submit("triples", new Callable<TripleIDCursor>() {
+			public TripleIDCursor call() throws IOException {
+				return getTripleIDs(store.getHTable(index.getTableName()), index, patterns, positions);
+			}
+		});
+	}
+
+	/**
+	 * Adds the key range of a pattern under one salt value to the ranges to
+	 * scan, or to the gets if it is a single row.
+	 */
+	private void addRange(TripleIndex index, byte salt, byte[][] pattern, 
+			Map<byte[], byte[]> ranges, Map<byte[], Get> gets) {
+
+		byte[] startKey, stopKey;
+		if (index.isSalted()) {
+			startKey = index.getStartKey(salt, pattern[0], pattern[1], pattern[2], pattern[3]);
+			stopKey = index.getEndKey(salt, pattern[0], pattern[1], pattern[2], pattern[3]);
+		}
+		else {
+			startKey = index.getStartKey(pattern[0], pattern[1], pattern[2], pattern[3]);
+			stopKey = index.getEndKey(pattern[0], pattern[1], pattern[2], pattern[3]);
+		}
+
+		if (Bytes.compareTo(startKey, stopKey) == 0) {
+			Get get = gets.get(startKey);
+			if (get == null) {
+				get = new Get(startKey);
+				gets.put(startKey, get);
+			}
+			for (byte[] family : index.getFamilies(pattern[0], pattern[1], pattern[2], pattern[3])) {
+				get.addFamily(family);
+			}
+		}
+		else {
+			ranges.put(startKey, stopKey);
+		}
+	}
+
+	/**
+	 * Opens a scan over the key range of a pattern. On a salted index the
+	 * range is scanned once for every salt value the pattern can have, and
+	 * the scans are merged back into key order.
+	 */
+	private ResultScanner scan(HTableInterface table, TripleIndex index, 
+			byte[] subjID, byte[] predID, byte[] objID, byte[] contextID,
+			byte[][] families, byte[] qualifier, Filter filter, int caching) throws IOException {
+
+		byte[] salts = index.isSalted() ? index.getSalts(subjID, predID, objID, contextID) : null;
+		if (salts == null || salts.length == 1) {
+			return this.scan(table, index, 
+					new byte[][] { index.getStartKey(subjID, predID, objID, contextID) }, 
+					new byte[][] { index.getEndKey(subjID, predID, objID, contextID) }, 
+					families, qualifier, filter, caching);
+		}
+
+		byte[][] startKeys = new byte[salts.length][];
+		byte[][] stopKeys = new byte[salts.length][];
+		for (int i = 0; i < salts.length; ++i) {
+			startKeys[i] = index.getStartKey(salts[i], subjID, predID, objID, contextID);
+			stopKeys[i] = index.getEndKey(salts[i], subjID, predID, objID, contextID);
+		}
+
+		return this.scan(table, index, startKeys, stopKeys, families, qualifier, filter, caching);
+	}
+
+	private ResultScanner scan(HTableInterface table, TripleIndex index, byte[][] startKeys, byte[][] stopKeys,
+			byte[][] families, byte[] qualifier, Filter filter, int caching) throws IOException {
+
+		if (startKeys.length == 1) {
+			int prefetch = store.getHBaseStoreConfig().getScanPrefetch();
+			if (prefetch == 0)
+				return HBaseTable.scan(table, startKeys[0], stopKeys[0], families, qualifier, filter, caching);
+
+			Scan scan = HBaseTable.getScan(startKeys[0], stopKeys[0], families, qualifier, filter, caching);
+			return StorageMetrics.scan(index.getTableName(),
+					new PrefetchingResultScanner(store, index.getTableName(), scan, prefetch),
+					StorageMetrics.start());
+		}
+
+		List<Scan> scans = new ArrayList<Scan>(startKeys.length);
+		for (int i = 0; i < startKeys.length; ++i) {
+			scans.add(HBaseTable.getScan(startKeys[i], stopKeys[i], families, qualifier, filter, caching));
+		}
+
+		return StorageMetrics.scan(index.getTableName(),
+				new MergedResultScanner(store, index.getTableName(), scans, index.getSaltLength()),
+				StorageMetrics.start());
+	}
+
+	HBaseCursor getTriplesInternal(HTableInterface table, TripleIndex index, byte[] subjID,
 		byte[] predID, byte[] objID, byte[] contextID) throws IOException {
+		
+		PatternCache.Pattern pattern = null;
+		long epoch = 0;
+		if (patternCache != null) {
+			pattern = patternCache.getPattern(index, subjID, predID, objID, contextID);
+			Result[] rows = patternCache.get(pattern);
+			if (rows != null)
+				return new HBaseCursor(rows);
+			epoch = patternCache.getEpoch(pattern);
+		}
+		
 		byte[] startKey = index.getStartKey(subjID, predID, objID, contextID);
 		byte[] stopKey = index.getEndKey(subjID, predID, objID, contextID);
 		byte[][] families = index.getFamilies(subjID, predID, objID, contextID);
@@ -169,12 +574,17 @@ public class TripleTable {
 		
 		if (Bytes.compareTo(startKey, stopKey) != 0)
 		{
-			ResultScanner scanner = HBaseTable.scan(table, startKey, stopKey, families, qualifier, filter);
+			ResultScanner scanner = this.scan(table, index, subjID, predID, objID, contextID, 
+					families, qualifier, filter, HBaseTable.SCAN_CACHING);
+			if (pattern != null)
+				scanner = patternCache.record(pattern, epoch, scanner);
 			return new HBaseCursor(scanner);			
 		}
 		else
 		{
 			Result result = HBaseTable.get(table, startKey, families, qualifier);
+			if (pattern != null && result != null)
+				patternCache.put(pattern, epoch, new Result[] { result });
 			return new HBaseCursor(result);
 		}
 	}
@@ -187,21 +597,31 @@ public class TripleTable {
 	public boolean storeTriple(HBaseConnection conn, 
 			byte[] subj, byte[] pred, byte[] obj, byte[] context,
 			boolean explicit) throws IOException {
+		
+		MutationBuffer buffer = conn.getMutationBuffer();
+		if (buffer != null) {
+			buffer.add(subj, pred, obj, context);
+			return true;
+		}
+		
 		for (TripleIndex index : indexes) {
+			if (!index.contains(pred))
+				continue;
+			
 			byte[] key = index.getKey(subj, pred, obj, context);
 			byte[] family = index.getFamily(subj, pred, obj, context);
 			byte[] qualifier = index.getQualifier(subj, pred, obj, context);
 			byte[] value = index.getValue(subj, pred, obj, context);
 
-			//if (conn.isAutoCommit())
-			//{
-				HBaseTable.put(conn.getHTable(index.getTableName()), key, family, qualifier, value);
-			//}
-			//else
-			//{
-			//	conn.addPut(index.getTableName(), HBaseTable.getPut(key, family, qualifier, value));
-			//}
+			HBaseTable.put(conn.getHTable(index.getTableName()), key, family, qualifier, value);
 		}
+		
+		RangeIndexTable ranges = store.getRangeIndexTable();
+		if (ranges != null)
+			ranges.storeTriple(conn, subj, pred, obj, context);
+		
+		if (patternCache != null)
+			patternCache.invalidate(subj, pred, obj, context);
 
 		return true;
 	}
@@ -213,14 +633,29 @@ public class TripleTable {
 		HBaseCursor triples = this.getTriplesInternal(conn.getHTable(readIndex.getTableName()),
 				readIndex, subj, pred,	obj, ctx);
 		
+		MutationBuffer buffer = conn.getMutationBuffer();
+		List<byte[][]> added = buffer != null ? buffer.getAdded(subj, pred, obj, ctx) : null;
+		
 		int count = 0;
 		try {
 			while (triples.hasNext()) {
 				KeyValue kv = triples.next();
 				byte[][] valueIDs = readIndex.getValueIDs(kv);
+				
+				if (buffer != null) {
+					if (Boolean.FALSE.equals(buffer.getChange(valueIDs[0], valueIDs[1], valueIDs[2], valueIDs[3])))
+						continue;
+					
+					buffer.remove(valueIDs[0], valueIDs[1], valueIDs[2], valueIDs[3]);
+					++count;
+					continue;
+				}
 
 				for (int i = 0; i < this.indexes.length; ++i) {
 					TripleIndex index = this.indexes[i];
+					if (!index.contains(valueIDs[1]))
+						continue;
+					
 					byte[] key = index.getKey(valueIDs[0], valueIDs[1],
 							valueIDs[2], valueIDs[3]);
 					byte[] family = index.getFamily(valueIDs[0], valueIDs[1],
@@ -228,22 +663,88 @@ public class TripleTable {
 					byte[] qualifier = index.getQualifier(valueIDs[0],
 							valueIDs[1], valueIDs[2], valueIDs[3]);
 
-					//if (conn.isAutoCommit())
-					//{
-						HBaseTable.delete(conn.getHTable(index.getTableName()), key, family, qualifier);
-					//}
-					//else
-					//{
-					//	conn.addDelete(index.getTableName(), HBaseTable.getDelete(key, family, qualifier));
-					//}
+					HBaseTable.delete(conn.getHTable(index.getTableName()), key, family, qualifier);
 				}
+				
+				RangeIndexTable ranges = store.getRangeIndexTable();
+				if (ranges != null)
+					ranges.removeTriple(conn, valueIDs[0], valueIDs[1], valueIDs[2], valueIDs[3]);
+				
+				if (patternCache != null)
+					patternCache.invalidate(valueIDs[0], valueIDs[1], valueIDs[2], valueIDs[3]);
 
 				++count;
 			}
 		} catch (StoreException se) {
 			throw new IOException(se);
+		} finally {
+			triples.close();
+		}
+		
+		if (added != null) {
+			// added triples that the store has are removed above; the others
+			// never need to reach it
+			for (byte[][] ids : added) {
+				if (Boolean.TRUE.equals(buffer.getChange(ids[0], ids[1], ids[2], ids[3]))) {
+					buffer.cancel(ids[0], ids[1], ids[2], ids[3]);
+					++count;
+				}
+			}
 		}
 
 		return count;
 	}
+	
+	/**
+	 * Writes the changes of a transaction to all indexes. Every index gets
+	 * its puts and deletes as two batches sorted on row key, so that they
+	 * arrive at each region server in as few, as large requests as possible.
+	 */
+	public void flush(HBaseConnection conn, MutationBuffer buffer) throws IOException {
+		
+		List<byte[][]> added = buffer.getAdded(null, null, null, null);
+		List<byte[][]> removed = buffer.getRemoved();
+		
+		for (TripleIndex index : indexes) {
+			List<Put> puts = new ArrayList<Put>(added.size());
+			byte[] scratch = new byte[index.getBufferLength()];
+			for (byte[][] ids : added) {
+				if (index.contains(ids[1]))
+					puts.add(index.getPut(ids[0], ids[1], ids[2], ids[3], HConstants.LATEST_TIMESTAMP, scratch));
+			}
+			
+			List<Delete> deletes = new ArrayList<Delete>(removed.size());
+			for (byte[][] ids : removed) {
+				if (index.contains(ids[1]))
+					deletes.add(HBaseTable.getDelete(
+							index.getKey(ids[0], ids[1], ids[2], ids[3]),
+							index.getFamily(ids[0], ids[1], ids[2], ids[3]),
+							index.getQualifier(ids[0], ids[1], ids[2], ids[3])));
+			}
+			
+			Collections.sort(puts, PUT_ORDER);
+			Collections.sort(deletes, DELETE_ORDER);
+			
+			HTableInterface table = conn.getHTable(index.getTableName());
+			if (!puts.isEmpty())
+				HBaseTable.put(table, puts);
+			if (!deletes.isEmpty())
+				HBaseTable.delete(table, deletes);
+		}
+		
+		RangeIndexTable ranges = store.getRangeIndexTable();
+		if (ranges != null) {
+			for (byte[][] ids : added)
+				ranges.storeTriple(conn, ids[0], ids[1], ids[2], ids[3]);
+			for (byte[][] ids : removed)
+				ranges.removeTriple(conn, ids[0], ids[1], ids[2], ids[3]);
+		}
+		
+		if (patternCache != null) {
+			for (byte[][] ids : added)
+				patternCache.invalidate(ids[0], ids[1], ids[2], ids[3]);
+			for (byte[][] ids : removed)
+				patternCache.invalidate(ids[0], ids[1], ids[2], ids[3]);
+		}
+	}
 }
@@ -5,7 +5,7 @@ import java.util.Arrays;
 import java.util.zip.CRC32;
 
 import org.apache.hadoop.hbase.KeyValue;
-import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.openrdf.sail.hbase.HBaseStore;
@@ -58,6 +58,11 @@ public class ValueTable {
 
 	public byte[] getID(byte[] data, byte type, boolean create)
 			throws IOException {
+		return getID(data, type, create, null);
+	}
+
+	private byte[] getID(byte[] data, byte type, boolean create, boolean[] created)
+			throws IOException {
 
 		int hash = getDataHash(data);
 		byte[] id = Bytes.toBytes(hash);
@@ -68,7 +73,7 @@ public class ValueTable {
 		
 		byte[][] families = ValueTable.getFamilies(id, type);
 		
-		HTable table = this.store.getHTable(this.tableName);
+		HTableInterface table = this.store.getHTable(this.tableName);
 		Result r = HBaseTable.get(table, id, families);
 		if (r.raw().length > 0) {
 			for (KeyValue keyValue : r.raw()) {
@@ -85,7 +90,8 @@ public class ValueTable {
 				byte nextSequentialId = hash == 0 ? (byte)(r.raw().length + 2) : (byte)r.raw().length;
 
 				HBaseTable.put(table, id, families[0], new byte[] { nextSequentialId }, data);
-				this.store.putHTable(table);
+				if (created != null)
+					created[0] = true;
 				
 				id[id.length - 1] |= nextSequentialId;
 				return id;
@@ -95,8 +101,6 @@ public class ValueTable {
 							+ " are in use. This wasn't supposed to be possible...");
 			}
 		}
-		
-		this.store.putHTable(table);
 
 		return null;
 	}
@@ -148,9 +152,114 @@ public class ValueTable {
 		}
 	}
 
+	/**
+	 * Encodes a URI as it is stored: the ID of its namespace followed by its
+	 * local name in UTF-8.
+	 */
+	public static byte[] encodeURI(byte[] namespaceID, String localName)
+	{
+		byte[] localNameData = Bytes.toBytes(localName);
+		byte[] data = new byte[NUM_VALUE_BYTES + localNameData.length];
+
+		Bytes.putBytes(data, 0, namespaceID, 0, NUM_VALUE_BYTES);
+		Bytes.putBytes(data, NUM_VALUE_BYTES, localNameData, 0, localNameData.length);
+
+		return data;
+	}
+
+	/**
+	 * Encodes a literal as it is stored: the ID of its datatype, or
+	 * {@link #NULL_VALUE} if it has none, the length of its language tag, the
+	 * language tag, and its label in UTF-8.
+	 */
+	public static byte[] encodeLiteral(byte[] datatypeID, String language, String label)
+	{
+		byte[] langData = language != null ? Bytes.toBytes(language) : null;
+		int langDataLength = langData != null ? langData.length : 0;
+		byte[] labelData = Bytes.toBytes(label);
+
+		byte[] data = new byte[NUM_VALUE_BYTES + 1 + langDataLength + labelData.length];
+
+		if (datatypeID != null)
+			Bytes.putBytes(data, 0, datatypeID, 0, NUM_VALUE_BYTES);
+
+		data[NUM_VALUE_BYTES] = (byte)langDataLength;
+
+		if (langData != null)
+			Bytes.putBytes(data, NUM_VALUE_BYTES + 1, langData, 0, langDataLength);
+
+		Bytes.putBytes(data, NUM_VALUE_BYTES + 1 + langDataLength, labelData, 0, labelData.length);
+
+		return data;
+	}
+
+	/**
+	 * Gets the namespace ID of a stored URI.
+	 */
+	public static int getNamespaceID(KeyValue kv)
+	{
+		return Bytes.toInt(kv.getBuffer(), kv.getValueOffset());
+	}
+
+	/**
+	 * Gets the local name of a stored URI.
+	 */
+	public static String getLocalName(KeyValue kv)
+	{
+		return Bytes.toString(kv.getBuffer(), kv.getValueOffset() + NUM_VALUE_BYTES,
+				kv.getValueLength() - NUM_VALUE_BYTES);
+	}
+
+	/**
+	 * Gets the datatype ID of a stored literal.
+	 * 
+	 * @return The ID, or <tt>0</tt> if the literal has no datatype.
+	 */
+	public static int getDatatypeID(KeyValue kv)
+	{
+		return Bytes.toInt(kv.getBuffer(), kv.getValueOffset());
+	}
+
+	/**
+	 * Gets the language tag of a stored literal.
+	 * 
+	 * @return The tag, or <tt>null</tt> if the literal has none.
+	 */
+	public static String getLanguage(KeyValue kv)
+	{
+		int langLength = kv.getBuffer()[kv.getValueOffset() + NUM_VALUE_BYTES];
+		if (langLength == 0)
+			return null;
+
+		return Bytes.toString(kv.getBuffer(), kv.getValueOffset() + NUM_VALUE_BYTES + 1, langLength);
+	}
+
+	/**
+	 * Gets the label of a stored literal.
+	 */
+	public static String getLabel(KeyValue kv)
+	{
+		int langLength = kv.getBuffer()[kv.getValueOffset() + NUM_VALUE_BYTES];
+		int offset = NUM_VALUE_BYTES + 1 + langLength;
+
+		return Bytes.toString(kv.getBuffer(), kv.getValueOffset() + offset, kv.getValueLength() - offset);
+	}
+
 	public byte[] putData(byte[] data, byte type) throws IOException {
 
-		return getID(data, type, true);
+		return getID(data, type, true, null);
+	}
+
+	/**
+	 * Gets the ID of a value, storing the value if it is new.
+	 * 
+	 * @param created
+	 *        Set to <tt>true</tt> at index 0 if the value was stored by this
+	 *        call.
+	 */
+	public byte[] putData(byte[] data, byte type, boolean[] created) throws IOException {
+
+		return getID(data, type, true, created);
 	}
 
 	public KeyValue getData(byte[] internalID, byte type)
@@ -162,9 +271,8 @@ public class ValueTable {
 		
 		byte[][] families = ValueTable.getFamilies(internalID, type);
 		
-		HTable table = this.store.getHTable(this.tableName);
+		HTableInterface table = this.store.getHTable(this.tableName);
 		Result result = HBaseTable.get(table, key, families);
-		this.store.putHTable(table);
 
 		byte[] qualifier = new byte[] { (byte)(internalID[internalID.length - 1] & 0x0F) };
 		for (KeyValue kv : result.raw())
@@ -176,8 +284,6 @@ public class ValueTable {
 	
 	public void clear() throws IOException
 	{
-		HTable table = this.store.getHTable(this.tableName);
-		HBaseTable.clear(table, store.getHBaseConfiguration());
-		this.store.putHTable(table);
+		this.store.getStorageBackend().truncate(this.tableName);
 	}
 }
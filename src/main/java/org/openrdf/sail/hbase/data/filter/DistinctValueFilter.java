@@ -27,10 +27,12 @@ public class DistinctValueFilter extends FirstKeyOnlyFilter {
 		
 		if (code == ReturnCode.INCLUDE) {
 			
-			int valueLength = Math.min(valueMask.length, v.getRowLength());
+			// the mask applies to the IDs, after any salt prefix
+			int saltLength = v.getRowLength() % ValueTable.NUM_VALUE_BYTES;
+			int valueLength = Math.min(valueMask.length, v.getRowLength() - saltLength);
 			byte[] value = new byte[valueLength];
 			for (int i = 0; i < valueLength; ++i) {
-				value[i] = (byte)(valueMask[i] & v.getBuffer()[v.getRowOffset() + i]);
+				value[i] = (byte)(valueMask[i] & v.getBuffer()[v.getRowOffset() + saltLength + i]);
 			}
 			
 			if (previousValue != null && Bytes.compareTo(value, previousValue) == 0) {
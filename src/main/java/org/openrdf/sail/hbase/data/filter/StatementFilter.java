@@ -27,13 +27,15 @@ public class StatementFilter implements Filter {
 	public Filter.ReturnCode filterKeyValue(KeyValue kv) {
 
 		int numKeyFields = kv.getRowLength() / ValueTable.NUM_VALUE_BYTES;
+		// keys are whole IDs, anything beyond is a salt prefix
+		int keyOffset = kv.getRowOffset() + kv.getRowLength() % ValueTable.NUM_VALUE_BYTES;
 
 		for (int fieldNum = 0; fieldNum < 4; ++fieldNum) {
 			if (filterFields[fieldNum] != null) {
 				if (fieldNum < numKeyFields) {
 					if (Bytes.compareTo(
 							filterFields[fieldNum], 0, ValueTable.NUM_VALUE_BYTES, 
-							kv.getBuffer(),	kv.getRowOffset() + (fieldNum * ValueTable.NUM_VALUE_BYTES), ValueTable.NUM_VALUE_BYTES)
+							kv.getBuffer(),	keyOffset + (fieldNum * ValueTable.NUM_VALUE_BYTES), ValueTable.NUM_VALUE_BYTES)
 						!= 0) {
 						return Filter.ReturnCode.NEXT_ROW;
 					}
@@ -0,0 +1,406 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.sail.hbase.ValueStore;
+import org.openrdf.sail.hbase.data.TripleIndex;
+import org.openrdf.sail.hbase.data.TripleTable;
+import org.openrdf.sail.hbase.util.Utils;
+
+/**
+ * An execution plan for a basic graph pattern: the statement patterns in the
+ * order in which they are joined, each with the triple index it is read
+ * from. Variables are carried between the steps as internal IDs in the
+ * slots of <tt>int[]</tt> rows.
+ */
+public class BGPPlan {
+
+	/**
+	 * Rough factors by which an unbound position multiplies the number of
+	 * matches of a pattern, for subject, predicate, object and context.
+	 */
+	private static final int[] UNBOUND_FACTORS = { 100, 10, 50, 2 };
+
+	/**
+	 * The factor for a pattern that has no bound prefix on its index and
+	 * hence needs a full table scan.
+	 */
+	private static final int SCAN_FACTOR = 1000;
+
+	/**
+	 * Rough factors by which the object of a pattern that is read from the
+	 * range index multiplies its number of matches, for a range with one
+	 * bound and for one with two.
+	 */
+	private static final int[] RANGE_FACTORS = { 25, 5 };
+
+	private final String[] varNames;
+
+	private final PlanStep[] steps;
+
+	private boolean empty;
+
+	/**
+	 * The names of the variables that are bound in the binding sets produced
+	 * by this plan, by slot; <tt>null</tt> for slots that are not needed.
+	 */
+	private String[] outputNames;
+
+	/**
+	 * The range index scan that the first step is read from, if any.
+	 */
+	private RangeScan rangeScan;
+
+	/**
+	 * The text index candidates that the rows of the plan start from, if any.
+	 */
+	private TextSearch textSearch;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	private BGPPlan(String[] varNames, PlanStep[] steps, boolean empty) {
+		this.varNames = varNames;
+		this.steps = steps;
+		this.empty = empty;
+		this.outputNames = varNames;
+	}
+
+	/**
+	 * Resolves the supplied patterns and orders them so that every step binds
+	 * as many positions as possible from the steps before it.
+	 */
+	public static BGPPlan create(List<StatementPattern> statementPatterns,
+			BindingSet bindings, ValueStore values, TripleTable triples)
+		throws IOException
+	{
+		return create(statementPatterns, bindings, values, triples, null);
+	}
+
+	/**
+	 * Resolves the supplied patterns and orders them as
+	 * {@link #create(List, BindingSet, ValueStore, TripleTable)} does, except
+	 * that the pattern of <tt>rangeScan</tt> may also be read from the range
+	 * index if it is not <tt>null</tt>. The plan starts with that scan if it
+	 * is cheaper than the cheapest pattern, see {@link #getRangeScan()}.
+	 */
+	public static BGPPlan create(List<StatementPattern> statementPatterns,
+			BindingSet bindings, ValueStore values, TripleTable triples, RangeScan rangeScan)
+		throws IOException
+	{
+		return create(statementPatterns, bindings, values, triples, rangeScan, null);
+	}
+
+	/**
+	 * Resolves the supplied patterns and orders them as
+	 * {@link #create(List, BindingSet, ValueStore, TripleTable, RangeScan)}
+	 * does, treating the variable <tt>seedVarName</tt> as bound before the
+	 * first step if it is not <tt>null</tt>.
+	 */
+	public static BGPPlan create(List<StatementPattern> statementPatterns,
+			BindingSet bindings, ValueStore values, TripleTable triples, RangeScan rangeScan,
+			String seedVarName)
+		throws IOException
+	{
+		Map<String, Integer> slotMap = new LinkedHashMap<String, Integer>();
+		List<PlanStep> unplanned = new ArrayList<PlanStep>(statementPatterns.size());
+		boolean empty = false;
+
+		for (StatementPattern statementPattern : statementPatterns) {
+			TriplePattern pattern = new TriplePattern(statementPattern, bindings, values);
+			empty |= pattern.isUnknown();
+			unplanned.add(new PlanStep(pattern, slotMap));
+		}
+
+		String[] varNames = slotMap.keySet().toArray(new String[slotMap.size()]);
+		boolean[] boundSlots = new boolean[varNames.length];
+		if (seedVarName != null && slotMap.containsKey(seedVarName)) {
+			boundSlots[slotMap.get(seedVarName)] = true;
+		}
+		PlanStep[] steps = new PlanStep[unplanned.size()];
+		boolean ranged = false;
+
+		for (int i = 0; i < steps.length; ++i) {
+			PlanStep best = null;
+			long bestCost = Long.MAX_VALUE;
+			boolean bestConnected = false;
+			boolean bestRanged = false;
+
+			for (PlanStep step : unplanned) {
+				boolean connected = i == 0 && seedVarName == null || isConnected(step, boundSlots);
+				long cost = getCost(step, boundSlots, triples);
+				boolean stepRanged = false;
+				if (i == 0 && rangeScan != null && step.getPattern().getStatementPattern() == rangeScan.getPattern()) {
+					long rangeCost = getRangeCost(step, boundSlots, rangeScan);
+					if (rangeCost < cost) {
+						cost = rangeCost;
+						stepRanged = true;
+					}
+				}
+
+				if (best == null || connected && !bestConnected
+						|| connected == bestConnected && cost < bestCost)
+				{
+					best = step;
+					bestCost = cost;
+					bestConnected = connected;
+					bestRanged = stepRanged;
+				}
+			}
+
+			ranged |= bestRanged;
+
+			best.setIndex(getIndex(best, boundSlots, triples));
+			best.schedule(boundSlots);
+			unplanned.remove(best);
+			steps[i] = best;
+		}
+
+		BGPPlan plan = new BGPPlan(varNames, steps, empty);
+		if (ranged) {
+			plan.rangeScan = rangeScan;
+		}
+		return plan;
+	}
+
+	private static boolean isConnected(PlanStep step, boolean[] boundSlots) {
+		for (int position = 0; position < 4; ++position) {
+			int slot = step.getSlot(position);
+			if (slot >= 0 && boundSlots[slot]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long getCost(PlanStep step, boolean[] boundSlots, TripleTable triples) {
+		long cost = 1;
+		for (int position = 0; position < 4; ++position) {
+			if (!step.isBound(position, boundSlots)
+					&& (position != TriplePattern.CONTEXT || step.getSlot(position) >= 0))
+			{
+				cost *= UNBOUND_FACTORS[position];
+			}
+		}
+
+		byte[][] ids = getBoundIDs(step, boundSlots);
+		if (triples.getBestIndex(ids[0], ids[1], ids[2], ids[3]).getPatternScore(ids[0], ids[1], ids[2], ids[3]) == 0) {
+			cost *= SCAN_FACTOR;
+		}
+
+		return cost;
+	}
+
+	/**
+	 * Gets the cost of reading a step from the range index: the range stands
+	 * in for the object, and the scan is bounded by the predicate.
+	 */
+	private static long getRangeCost(PlanStep step, boolean[] boundSlots, RangeScan rangeScan) {
+		int rangeFactor = rangeScan.getLowerBound() != null && rangeScan.getUpperBound() != null
+				? RANGE_FACTORS[1] : RANGE_FACTORS[0];
+
+		long cost = 1;
+		for (int position = 0; position < 4; ++position) {
+			if (position == TriplePattern.OBJ) {
+				cost *= rangeFactor;
+			}
+			else if (!step.isBound(position, boundSlots)
+					&& (position != TriplePattern.CONTEXT || step.getSlot(position) >= 0))
+			{
+				cost *= UNBOUND_FACTORS[position];
+			}
+		}
+		return cost;
+	}
+
+	private static TripleIndex getIndex(PlanStep step, boolean[] boundSlots, TripleTable triples) {
+		byte[][] ids = getBoundIDs(step, boundSlots);
+		return triples.getBestIndex(ids[0], ids[1], ids[2], ids[3]);
+	}
+
+	/**
+	 * Gets placeholder IDs for the positions of a step that are bound, which
+	 * is all index selection looks at.
+	 */
+	private static byte[][] getBoundIDs(PlanStep step, boolean[] boundSlots) {
+		byte[][] ids = new byte[4][];
+		for (int position = 0; position < 4; ++position) {
+			if (step.isBound(position, boundSlots)) {
+				ids[position] = step.getPattern().getID(position) != null ? step.getPattern().getID(position) : new byte[4];
+			}
+		}
+		return ids;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Checks whether one of the patterns has a value that is not in the store,
+	 * in which case the plan has no results.
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * Marks the plan as having no results, for instance because a filter on
+	 * it can never be satisfied.
+	 */
+	public void setEmpty() {
+		empty = true;
+	}
+
+	public String[] getVarNames() {
+		return varNames;
+	}
+
+	/**
+	 * Gets the slot of the named variable.
+	 *
+	 * @return The slot, or <tt>-1</tt> if the variable does not occur in the
+	 *         plan.
+	 */
+	public int getSlot(String varName) {
+		for (int slot = 0; slot < varNames.length; ++slot) {
+			if (varNames[slot].equals(varName)) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Attaches an ID condition to the first step after which all of its slots
+	 * are bound, so that rows are dropped as early as possible.
+	 */
+	public void addCondition(IDCondition condition) {
+		for (PlanStep step : steps) {
+			if (condition.canEvaluate(step.getBoundSlots())) {
+				step.addCondition(condition);
+				return;
+			}
+		}
+		throw new IllegalArgumentException("condition refers to slots that are never bound");
+	}
+
+	/**
+	 * Restricts the output of this plan to the supplied variables; the
+	 * values of the other variables are never looked up.
+	 *
+	 * @param varNames
+	 *        The names of the variables that are needed, or <tt>null</tt> if
+	 *        all are.
+	 */
+	public void setRequiredVarNames(Set<String> varNames) {
+		outputNames = this.varNames.clone();
+		if (varNames != null) {
+			for (int slot = 0; slot < outputNames.length; ++slot) {
+				if (!varNames.contains(outputNames[slot])) {
+					outputNames[slot] = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the names under which the slots are bound in the output of this
+	 * plan, <tt>null</tt> for slots that are not output.
+	 */
+	public String[] getOutputNames() {
+		return outputNames;
+	}
+
+	public PlanStep[] getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Gets the range index scan that the first step is read from, or
+	 * <tt>null</tt> if it is read from its triple index.
+	 */
+	public RangeScan getRangeScan() {
+		return rangeScan;
+	}
+
+	/**
+	 * Starts the rows of this plan from the candidates of a text search, one
+	 * row per candidate with the searched variable bound. The plan must have
+	 * been created with that variable as its seed.
+	 */
+	public void setTextSearch(TextSearch textSearch) {
+		this.textSearch = textSearch;
+	}
+
+	/**
+	 * Gets the text search that the rows of this plan start from, or
+	 * <tt>null</tt> if they start out empty.
+	 */
+	public TextSearch getTextSearch() {
+		return textSearch;
+	}
+
+	/**
+	 * Gets the positions of the triples read by a step that the plan needs:
+	 * those fixed by a constant or an earlier step, which route the triples
+	 * back to their input rows, and those whose variable is output, read by
+	 * a condition or another pattern, or restricted to named contexts. The
+	 * other positions need not be transferred or decoded.
+	 *
+	 * @return The positions by subject, predicate, object and context.
+	 */
+	public boolean[] getNeededPositions(PlanStep step) {
+		boolean[] positions = new boolean[4];
+
+		for (int position = 0; position < 4; ++position) {
+			int slot = step.getSlot(position);
+			if (step.isFixed(position)) {
+				positions[position] = true;
+			}
+			else if (slot >= 0) {
+				positions[position] = outputNames[slot] != null
+						|| position == TriplePattern.CONTEXT
+						&& step.getPattern().getStatementPattern().getScope() == StatementPattern.Scope.NAMED_CONTEXTS;
+
+				for (PlanStep other : steps) {
+					positions[position] |= other.uses(slot, other == step ? position : -1);
+				}
+			}
+		}
+
+		return positions;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("BGPPlan");
+		for (PlanStep step : steps) {
+			if (rangeScan != null && step == steps[0]) {
+				sb.append("\n   range");
+			}
+			else {
+				sb.append("\n   ").append(new String(step.getIndex().getFieldSeq()));
+			}
+			sb.append(':');
+			for (int position = 0; position < 4; ++position) {
+				TriplePattern pattern = step.getPattern();
+				if (pattern.getVarName(position) != null) {
+					sb.append(" ?").append(pattern.getVarName(position));
+				}
+				else if (pattern.getID(position) != null) {
+					sb.append(" #").append(Utils.toHex(pattern.getID(position)));
+				}
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,182 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.cursor.Cursor;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.EvaluationException;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.sail.hbase.HBaseConnection;
+import org.openrdf.sail.hbase.ValueStore;
+import org.openrdf.sail.hbase.data.TripleIDCursor;
+import org.openrdf.sail.hbase.data.TripleTable;
+import org.openrdf.sail.hbase.util.ByteArray;
+import org.openrdf.store.StoreException;
+
+/**
+ * Joins the bindings of a left-hand cursor with a statement pattern in
+ * blocks: the pattern is instantiated for a block of left-hand bindings, all
+ * instances are fetched from the triple indexes with a single request per
+ * combination of bound positions, and the returned rows are routed back to
+ * the bindings they belong to.
+ */
+public class BindJoinCursor implements Cursor<BindingSet> {
+
+	public static final int DEFAULT_BLOCK_SIZE = 500;
+
+	private final HBaseEvaluationStrategy strategy;
+	private final HBaseConnection conn;
+	private final Cursor<BindingSet> leftArg;
+	private final StatementPattern rightArg;
+	private final int blockSize;
+
+	private final LinkedList<BindingSet> pending = new LinkedList<BindingSet>();
+	private boolean leftExhausted;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public BindJoinCursor(HBaseEvaluationStrategy strategy, HBaseConnection conn,
+			Cursor<BindingSet> leftArg, StatementPattern rightArg, int blockSize) {
+		this.strategy = strategy;
+		this.conn = conn;
+		this.leftArg = leftArg;
+		this.rightArg = rightArg;
+		this.blockSize = blockSize;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public BindingSet next() throws StoreException {
+		while (pending.isEmpty()) {
+			if (leftExhausted) {
+				return null;
+			}
+
+			List<BindingSet> block = new ArrayList<BindingSet>(blockSize);
+			BindingSet bindings;
+			while (block.size() < blockSize && (bindings = leftArg.next()) != null) {
+				block.add(bindings);
+			}
+
+			if (block.size() < blockSize) {
+				leftExhausted = true;
+			}
+
+			if (!block.isEmpty()) {
+				try {
+					evaluateBlock(block);
+				}
+				catch (IOException ioe) {
+					throw new EvaluationException(ioe);
+				}
+			}
+		}
+
+		return pending.removeFirst();
+	}
+
+	private void evaluateBlock(List<BindingSet> block)
+		throws IOException, StoreException
+	{
+		ValueStore values = strategy.getStore().getValueStore();
+
+		// group the bindings on the positions they bind, and on the IDs of
+		// those positions
+		Map<Integer, Map<ByteArray, PatternInstance>> shapes = new HashMap<Integer, Map<ByteArray, PatternInstance>>();
+		for (BindingSet bindings : block) {
+			TriplePattern pattern = new TriplePattern(rightArg, bindings, values);
+			if (pattern.isUnknown()) {
+				continue;
+			}
+
+			int shape = 0;
+			byte[] key = new byte[16];
+			for (int position = 0; position < 4; ++position) {
+				byte[] id = pattern.getID(position);
+				if (id != null) {
+					shape |= 1 << position;
+					Bytes.putBytes(key, position * 4, id, 0, 4);
+				}
+			}
+
+			Map<ByteArray, PatternInstance> instances = shapes.get(shape);
+			if (instances == null) {
+				instances = new HashMap<ByteArray, PatternInstance>();
+				shapes.put(shape, instances);
+			}
+
+			ByteArray instanceKey = new ByteArray(key);
+			PatternInstance instance = instances.get(instanceKey);
+			if (instance == null) {
+				instance = new PatternInstance(pattern);
+				instances.put(instanceKey, instance);
+			}
+			instance.bindings.add(bindings);
+		}
+
+		TripleTable triples = strategy.getStore().getTripleTable();
+		for (Map.Entry<Integer, Map<ByteArray, PatternInstance>> entry : shapes.entrySet()) {
+			int shape = entry.getKey();
+			Map<ByteArray, PatternInstance> instances = entry.getValue();
+
+			List<byte[][]> patterns = new ArrayList<byte[][]>(instances.size());
+			for (PatternInstance instance : instances.values()) {
+				TriplePattern pattern = instance.pattern;
+				patterns.add(new byte[][] { pattern.getID(0), pattern.getID(1), pattern.getID(2), pattern.getID(3) });
+			}
+
+			TripleIDCursor rows = triples.getTripleIDs(conn, patterns);
+			try {
+				ByteArray rowKey = new ByteArray(new byte[16]);
+				int[] row;
+				while ((row = rows.next()) != null) {
+					byte[] key = rowKey.getArray();
+					for (int position = 0; position < 4; ++position) {
+						Bytes.putInt(key, position * 4, (shape & (1 << position)) != 0 ? row[position] : 0);
+					}
+
+					PatternInstance instance = instances.get(rowKey);
+					if (instance != null && instance.pattern.matches(row)) {
+						Map<String, Integer> idBindings = new HashMap<String, Integer>();
+						instance.pattern.bind(row, idBindings);
+
+						for (BindingSet bindings : instance.bindings) {
+							pending.add(strategy.createBindingSet(bindings, idBindings));
+						}
+					}
+				}
+			}
+			finally {
+				rows.close();
+			}
+		}
+	}
+
+	public void close() throws StoreException {
+		leftArg.close();
+	}
+
+	/**
+	 * A pattern instantiated with the IDs of one or more left-hand bindings.
+	 */
+	private static class PatternInstance {
+
+		final TriplePattern pattern;
+
+		final List<BindingSet> bindings = new ArrayList<BindingSet>(1);
+
+		PatternInstance(TriplePattern pattern) {
+			this.pattern = pattern;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import org.openrdf.cursor.Cursor;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.store.StoreException;
+
+/**
+ * Passes on the binding sets of a cursor for which a filter condition holds.
+ * Conditions that raise a type error are treated as false.
+ */
+public class ConditionCursor implements Cursor<BindingSet> {
+
+	private final EvaluationStrategy strategy;
+	private final Cursor<BindingSet> arg;
+	private final ValueExpr condition;
+
+	public ConditionCursor(EvaluationStrategy strategy, Cursor<BindingSet> arg,
+			ValueExpr condition) {
+		this.strategy = strategy;
+		this.arg = arg;
+		this.condition = condition;
+	}
+
+	public BindingSet next() throws StoreException {
+		BindingSet bindings;
+		while ((bindings = arg.next()) != null) {
+			try {
+				if (strategy.isTrue(condition, bindings)) {
+					return bindings;
+				}
+			}
+			catch (ValueExprEvaluationException e) {
+				// failed to evaluate the condition, same as false
+			}
+		}
+
+		return null;
+	}
+
+	public void close() throws StoreException {
+		arg.close();
+	}
+}
@@ -0,0 +1,1018 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.cursor.CollectionCursor;
+import org.openrdf.cursor.ConvertingCursor;
+import org.openrdf.cursor.Cursor;
+import org.openrdf.cursor.EmptyCursor;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.EvaluationException;
+import org.openrdf.query.algebra.AggregateOperator;
+import org.openrdf.query.algebra.And;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.query.algebra.Count;
+import org.openrdf.query.algebra.Filter;
+import org.openrdf.query.algebra.FunctionCall;
+import org.openrdf.query.algebra.Group;
+import org.openrdf.query.algebra.GroupElem;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.MultiProjection;
+import org.openrdf.query.algebra.Not;
+import org.openrdf.query.algebra.Projection;
+import org.openrdf.query.algebra.ProjectionElem;
+import org.openrdf.query.algebra.QueryModel;
+import org.openrdf.query.algebra.QueryModelNode;
+import org.openrdf.query.algebra.Regex;
+import org.openrdf.query.algebra.SameTerm;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+import org.openrdf.sail.hbase.HBaseConnection;
+import org.openrdf.sail.hbase.HBaseStore;
+import org.openrdf.sail.hbase.HBaseTripleSource;
+import org.openrdf.sail.hbase.ValueStore;
+import org.openrdf.sail.hbase.data.TextIndexTable;
+import org.openrdf.sail.hbase.data.TripleIDCursor;
+import org.openrdf.sail.hbase.data.TripleTable;
+import org.openrdf.sail.hbase.model.HBaseValue;
+import org.openrdf.store.StoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link EvaluationStrategyImpl} that evaluates joins of statement
+ * patterns directly against the triple indexes where it can, falling back to
+ * the generic, pattern-at-a-time evaluation otherwise.
+ */
+public class HBaseEvaluationStrategy extends EvaluationStrategyImpl {
+	private static final Logger logger = LoggerFactory.getLogger(HBaseEvaluationStrategy.class);
+
+	private static final String FN_CONTAINS = "http://www.w3.org/2005/xpath-functions#contains";
+
+	/**
+	 * The most literals a text search may find for its rows to be started
+	 * from them; above this, reading the patterns is likely to be cheaper.
+	 */
+	private static final int MAX_TEXT_CANDIDATES = 10000;
+
+	/**
+	 * The characters that give a regular expression more than its literal
+	 * meaning, apart from <tt>^</tt> and <tt>$</tt> at its ends.
+	 */
+	private static final String REGEX_META_CHARS = ".[]{}()\\*+?|^$";
+
+	protected final HBaseStore store;
+	protected final HBaseConnection conn;
+	protected final QueryModel query;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public HBaseEvaluationStrategy(HBaseTripleSource tripleSource, QueryModel query) {
+		super(tripleSource, query);
+
+		this.store = tripleSource.getStore();
+		this.conn = tripleSource.getConnection();
+		this.query = query;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	public Cursor<BindingSet> evaluate(TupleExpr expr, BindingSet bindings)
+		throws StoreException
+	{
+		if (conn.hasPendingChanges()) {
+			// only statement reads see the changes of the open transaction
+			return super.evaluate(expr, bindings);
+		}
+
+		if (expr instanceof Group) {
+			Cursor<BindingSet> result = evaluateCount((Group)expr, bindings);
+			if (result != null) {
+				return result;
+			}
+		}
+		else if (expr instanceof Filter) {
+			Cursor<BindingSet> result = evaluateFilteredBGP((Filter)expr, bindings);
+			if (result != null) {
+				return result;
+			}
+		}
+		else if (expr instanceof Join || expr instanceof StatementPattern) {
+			Cursor<BindingSet> result = null;
+			if (expr instanceof Join) {
+				result = evaluateStarJoin((Join)expr, bindings);
+			}
+			if (result == null) {
+				result = evaluateBGP(expr, bindings);
+			}
+			if (result == null && expr instanceof Join) {
+				result = evaluateBindJoin((Join)expr, bindings);
+			}
+			if (result != null) {
+				return result;
+			}
+		}
+
+		return super.evaluate(expr, bindings);
+	}
+
+	public HBaseStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Evaluates a basic graph pattern, a statement pattern or a join of
+	 * nothing but statement patterns, as a unit: the patterns are ordered by a
+	 * {@link BGPPlan} and joined on internal IDs by a chain of
+	 * {@link IDJoinCursor}s. Values are only looked up for the binding sets
+	 * that come out of the last step.
+	 *
+	 * @return The result, or <tt>null</tt> if the expression is not a basic
+	 *         graph pattern.
+	 */
+	protected Cursor<BindingSet> evaluateBGP(TupleExpr expr, BindingSet bindings)
+		throws StoreException
+	{
+		BGPPlan plan = createPlan(expr, bindings);
+		if (plan == null) {
+			return null;
+		}
+
+		plan.setRequiredVarNames(getRequiredVarNames(expr, Collections.<QueryModelNode> emptySet()));
+		return evaluatePlan(plan, bindings);
+	}
+
+	/**
+	 * Evaluates a chain of filters over a basic graph pattern. Conditions that
+	 * only test whether variables are the same term as each other or as a
+	 * constant are decided on internal IDs inside the plan; the others are
+	 * applied to the plan's binding sets.
+	 *
+	 * @return The result, or <tt>null</tt> if the filters are not over a basic
+	 *         graph pattern.
+	 */
+	protected Cursor<BindingSet> evaluateFilteredBGP(Filter filter, BindingSet bindings)
+		throws StoreException
+	{
+		List<ValueExpr> conditions = new ArrayList<ValueExpr>();
+		TupleExpr arg = filter;
+		while (arg instanceof Filter) {
+			conditions.add(((Filter)arg).getCondition());
+			arg = ((Filter)arg).getArg();
+		}
+
+		if (!(arg instanceof Join || arg instanceof StatementPattern)) {
+			return null;
+		}
+
+		BGPPlan plan = createPlan(arg, bindings, getRangeScan(arg, conditions, bindings), null);
+		if (plan == null) {
+			return null;
+		}
+		if (plan.getRangeScan() == null) {
+			TextSearch textSearch = getTextSearch(arg, conditions, bindings);
+			if (textSearch != null) {
+				plan = createPlan(arg, bindings, null, textSearch.getVarName());
+				plan.setTextSearch(textSearch);
+				if (textSearch.getIDs().length == 0) {
+					plan.setEmpty();
+				}
+			}
+		}
+
+		Set<QueryModelNode> pushed = Collections.newSetFromMap(new IdentityHashMap<QueryModelNode, Boolean>());
+		List<ValueExpr> remaining = new ArrayList<ValueExpr>();
+		for (ValueExpr condition : conditions) {
+			IDCondition idCondition = getIDCondition(condition, plan, bindings);
+			if (idCondition != null) {
+				plan.addCondition(idCondition);
+				pushed.add(condition);
+			}
+			else {
+				remaining.add(condition);
+			}
+		}
+
+		plan.setRequiredVarNames(getRequiredVarNames(arg, pushed));
+
+		Cursor<BindingSet> result = evaluatePlan(plan, bindings);
+		for (ValueExpr condition : remaining) {
+			result = new ConditionCursor(this, result, condition);
+		}
+		return result;
+	}
+
+	/**
+	 * Answers an ungrouped count over a single statement pattern by counting
+	 * the matching keys in the triple index, without decoding any triples.
+	 * Every solution of a pattern binds its subject, predicate and object, so
+	 * <tt>COUNT(*)</tt> and <tt>COUNT</tt> of any of those variables are the
+	 * number of matching triples.
+	 *
+	 * @return The single result binding set, or <tt>null</tt> if the group is
+	 *         not such a count.
+	 */
+	protected Cursor<BindingSet> evaluateCount(Group group, BindingSet bindings)
+		throws StoreException
+	{
+		if (!group.getGroupBindingNames().isEmpty() || !(group.getArg() instanceof StatementPattern)
+				|| hasDataset())
+		{
+			return null;
+		}
+
+		StatementPattern statementPattern = (StatementPattern)group.getArg();
+		for (GroupElem element : group.getGroupElements()) {
+			if (!isPatternCount(element.getOperator(), statementPattern, bindings)) {
+				return null;
+			}
+		}
+
+		try {
+			TriplePattern pattern = new TriplePattern(statementPattern, bindings, store.getValueStore());
+			if (hasRepeatedVars(pattern)
+					|| pattern.getID(TriplePattern.CONTEXT) == null
+					&& statementPattern.getScope() == StatementPattern.Scope.NAMED_CONTEXTS)
+			{
+				// needs the rows themselves to exclude non-matches
+				return null;
+			}
+
+			long size = 0;
+			if (!pattern.isUnknown()) {
+				size = store.getTripleTable().size(conn, pattern.getID(TriplePattern.SUBJ),
+						pattern.getID(TriplePattern.PRED), pattern.getID(TriplePattern.OBJ),
+						pattern.getID(TriplePattern.CONTEXT));
+			}
+
+			QueryBindingSet result = new QueryBindingSet(bindings);
+			Literal count = new LiteralImpl(Long.toString(size), XMLSchema.INTEGER);
+			for (GroupElem element : group.getGroupElements()) {
+				result.addBinding(element.getName(), count);
+			}
+			return new CollectionCursor<BindingSet>(Collections.<BindingSet> singletonList(result));
+		}
+		catch (IOException ioe) {
+			throw new EvaluationException(ioe);
+		}
+	}
+
+	private boolean isPatternCount(AggregateOperator operator, StatementPattern pattern, BindingSet bindings) {
+		if (!(operator instanceof Count)) {
+			return false;
+		}
+
+		ValueExpr arg = ((Count)operator).getArg();
+		if (arg == null) {
+			return true;
+		}
+		if (arg instanceof Var) {
+			String name = ((Var)arg).getName();
+			return name.equals(pattern.getSubjectVar().getName())
+					|| name.equals(pattern.getPredicateVar().getName())
+					|| name.equals(pattern.getObjectVar().getName());
+		}
+		return false;
+	}
+
+	private boolean hasRepeatedVars(TriplePattern pattern) {
+		for (int position = 0; position < 4; ++position) {
+			String varName = pattern.getVarName(position);
+			if (varName != null && pattern.getPosition(varName) != position) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates the plan for a statement pattern or a join of nothing but
+	 * statement patterns.
+	 *
+	 * @return The plan, or <tt>null</tt> if the expression is not a basic graph
+	 *         pattern that can be evaluated against the store as a whole.
+	 */
+	private BGPPlan createPlan(TupleExpr expr, BindingSet bindings)
+		throws StoreException
+	{
+		return createPlan(expr, bindings, null, null);
+	}
+
+	/**
+	 * Creates the plan for a statement pattern or a join of nothing but
+	 * statement patterns, starting with the range scan if it is not
+	 * <tt>null</tt> and cheaper than the other patterns, or else with the
+	 * variable <tt>seedVarName</tt> bound if that is not <tt>null</tt>.
+	 */
+	private BGPPlan createPlan(TupleExpr expr, BindingSet bindings, RangeScan rangeScan,
+			String seedVarName)
+		throws StoreException
+	{
+		List<StatementPattern> statementPatterns = getPatterns(expr);
+		if (statementPatterns == null || hasDataset()) {
+			return null;
+		}
+
+		try {
+			return BGPPlan.create(statementPatterns, bindings, store.getValueStore(), store.getTripleTable(),
+					rangeScan, seedVarName);
+		}
+		catch (IOException ioe) {
+			throw new EvaluationException(ioe);
+		}
+	}
+
+	private Cursor<BindingSet> evaluatePlan(final BGPPlan plan, final BindingSet bindings)
+		throws StoreException
+	{
+		if (plan.isEmpty()) {
+			return new EmptyCursor<BindingSet>();
+		}
+
+		logger.debug("Evaluating {}", plan);
+
+		TripleTable triples = store.getTripleTable();
+		PlanStep[] steps = plan.getSteps();
+		RangeScan rangeScan = plan.getRangeScan();
+		TextSearch textSearch = plan.getTextSearch();
+
+		Cursor<int[]> rows;
+		int firstStep = 0;
+		if (rangeScan != null) {
+			try {
+				rows = new RangeStepCursor(
+						store.getRangeIndexTable().getTriples(conn, rangeScan.getPredicateID(),
+								rangeScan.getLowerBound(), rangeScan.getUpperBound()),
+						steps[0], plan.getVarNames().length);
+			}
+			catch (IOException ioe) {
+				throw new EvaluationException(ioe);
+			}
+			firstStep = 1;
+		}
+		else if (textSearch != null) {
+			int slot = plan.getSlot(textSearch.getVarName());
+			List<int[]> seeds = new ArrayList<int[]>(textSearch.getIDs().length);
+			for (int id : textSearch.getIDs()) {
+				int[] row = new int[plan.getVarNames().length];
+				row[slot] = id;
+				seeds.add(row);
+			}
+			rows = new CollectionCursor<int[]>(seeds);
+		}
+		else {
+			rows = new CollectionCursor<int[]>(
+					Collections.singletonList(new int[plan.getVarNames().length]));
+		}
+
+		for (int i = firstStep; i < steps.length; ++i) {
+			rows = new IDJoinCursor(conn, triples, rows, steps[i], BindJoinCursor.DEFAULT_BLOCK_SIZE,
+					plan.getNeededPositions(steps[i]));
+		}
+
+		return new ConvertingCursor<int[], BindingSet>(rows) {
+
+			@Override
+			protected BindingSet convert(int[] row)
+				throws StoreException
+			{
+				return createBindingSet(bindings, plan.getOutputNames(), row);
+			}
+		};
+	}
+
+	/**
+	 * Gets the statement patterns of a statement pattern or a join of nothing
+	 * but statement patterns.
+	 *
+	 * @return The patterns, or <tt>null</tt> if the expression has other
+	 *         arguments.
+	 */
+	private List<StatementPattern> getPatterns(TupleExpr expr) {
+		if (expr instanceof StatementPattern) {
+			return Collections.singletonList((StatementPattern)expr);
+		}
+		return getJoinedPatterns((Join)expr);
+	}
+
+	/**
+	 * Looks for range comparisons among filter conditions that bound the
+	 * object variable of a pattern whose predicate has a complete range
+	 * index, so that the pattern can be read as a bounded scan of that index.
+	 * Comparisons of a variable with a numeric or dateTime constant count,
+	 * also inside conjunctions. The conditions stay in place to check the
+	 * results exactly.
+	 *
+	 * @return The scan, or <tt>null</tt> if the range index can not be used.
+	 */
+	private RangeScan getRangeScan(TupleExpr bgp, List<ValueExpr> conditions, BindingSet bindings)
+		throws StoreException
+	{
+		List<StatementPattern> statementPatterns = getPatterns(bgp);
+		if (store.getRangeIndexTable() == null || statementPatterns == null || hasDataset()) {
+			return null;
+		}
+
+		Map<String, RangeScan> ranges = new HashMap<String, RangeScan>();
+		for (ValueExpr condition : conditions) {
+			addRanges(condition, ranges, bindings);
+		}
+
+		try {
+			for (StatementPattern pattern : statementPatterns) {
+				RangeScan range = ranges.get(pattern.getObjectVar().getName());
+				Value pred = getConstant(pattern.getPredicateVar(), bindings);
+				if (range == null || !range.isValid() || !(pred instanceof Resource)
+						|| getConstant(pattern.getObjectVar(), bindings) != null)
+				{
+					continue;
+				}
+
+				byte[] predID = store.getValueStore().getID(pred);
+				if (predID != null && store.getRangeIndexTable().isReady(predID)) {
+					range.setPattern(pattern, predID);
+					return range;
+				}
+			}
+		}
+		catch (IOException ioe) {
+			throw new EvaluationException(ioe);
+		}
+
+		return null;
+	}
+
+	private void addRanges(ValueExpr condition, Map<String, RangeScan> ranges, BindingSet bindings) {
+		if (condition instanceof And) {
+			addRanges(((And)condition).getLeftArg(), ranges, bindings);
+			addRanges(((And)condition).getRightArg(), ranges, bindings);
+			return;
+		}
+
+		if (!(condition instanceof Compare)) {
+			return;
+		}
+
+		Compare compare = (Compare)condition;
+		CompareOp operator = compare.getOperator();
+		ValueExpr varArg = compare.getLeftArg();
+		ValueExpr constantArg = compare.getRightArg();
+		if (!(varArg instanceof Var) || getConstant(varArg, bindings) != null) {
+			// constant op var is var op' constant
+			varArg = compare.getRightArg();
+			constantArg = compare.getLeftArg();
+			switch (operator) {
+				case LT: operator = CompareOp.GT; break;
+				case LE: operator = CompareOp.GE; break;
+				case GT: operator = CompareOp.LT; break;
+				case GE: operator = CompareOp.LE; break;
+				default: break;
+			}
+		}
+
+		Value value = getConstant(constantArg, bindings);
+		if (!(varArg instanceof Var) || getConstant(varArg, bindings) != null || !(value instanceof Literal)) {
+			return;
+		}
+
+		String varName = ((Var)varArg).getName();
+		RangeScan range = ranges.get(varName);
+		if (range == null) {
+			range = new RangeScan(varName);
+		}
+
+		boolean added;
+		switch (operator) {
+			case GT:
+			case GE:
+				added = range.addLowerBound((Literal)value);
+				break;
+			case LT:
+			case LE:
+				added = range.addUpperBound((Literal)value);
+				break;
+			case EQ:
+				added = range.addLowerBound((Literal)value) && range.addUpperBound((Literal)value);
+				break;
+			default:
+				added = false;
+		}
+
+		if (added) {
+			ranges.put(varName, range);
+		}
+	}
+
+	/**
+	 * Looks for a text search among filter conditions that the text index can
+	 * narrow down: <tt>regex</tt> with a pattern that is a plain text,
+	 * possibly anchored, or <tt>fn:contains</tt> with a constant, of a
+	 * variable of the basic graph pattern that is not bound yet. The literals
+	 * found are candidates; the condition stays in place to check them.
+	 *
+	 * @return The search, or <tt>null</tt> if the text index can not be used
+	 *         or finds too many literals.
+	 */
+	private TextSearch getTextSearch(TupleExpr bgp, List<ValueExpr> conditions, BindingSet bindings)
+		throws StoreException
+	{
+		TextIndexTable text = store.getTextIndexTable();
+		List<StatementPattern> statementPatterns = getPatterns(bgp);
+		if (text == null || !text.isReady() || statementPatterns == null || hasDataset()) {
+			return null;
+		}
+
+		Set<String> varNames = new HashSet<String>();
+		for (StatementPattern pattern : statementPatterns) {
+			for (Var var : pattern.getVarList()) {
+				if (getConstant(var, bindings) == null) {
+					varNames.add(var.getName());
+				}
+			}
+		}
+
+		List<ValueExpr> searches = new ArrayList<ValueExpr>(conditions);
+		try {
+			for (int i = 0; i < searches.size(); ++i) {
+				ValueExpr condition = searches.get(i);
+				if (condition instanceof And) {
+					searches.add(((And)condition).getLeftArg());
+					searches.add(((And)condition).getRightArg());
+					continue;
+				}
+
+				ValueExpr arg = null;
+				List<byte[]> keys = null;
+				if (condition instanceof Regex) {
+					Regex regex = (Regex)condition;
+					arg = regex.getArg();
+					keys = getSearchKeys(text, regex.getPatternArg(), regex.getFlagsArg(), bindings);
+				}
+				else if (condition instanceof FunctionCall
+						&& FN_CONTAINS.equals(((FunctionCall)condition).getURI())
+						&& ((FunctionCall)condition).getArgs().size() == 2)
+				{
+					FunctionCall call = (FunctionCall)condition;
+					arg = call.getArgs().get(0);
+					Value value = getConstant(call.getArgs().get(1), bindings);
+					if (value instanceof Literal) {
+						keys = text.getSearchKeys(((Literal)value).getLabel(), false, false);
+					}
+				}
+
+				if (!(arg instanceof Var) || !varNames.contains(((Var)arg).getName()) || keys == null
+						|| keys.isEmpty())
+				{
+					continue;
+				}
+
+				int[] ids = text.getLiteralIDs(keys, MAX_TEXT_CANDIDATES);
+				if (ids != null && ids.length <= MAX_TEXT_CANDIDATES) {
+					return new TextSearch(((Var)arg).getName(), ids);
+				}
+			}
+		}
+		catch (IOException ioe) {
+			throw new EvaluationException(ioe);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the text index keys for a regular expression that matches a plain
+	 * text, optionally anchored by <tt>^</tt> and <tt>$</tt>.
+	 *
+	 * @return The keys, or <tt>null</tt> if the expression is not such a text.
+	 */
+	private List<byte[]> getSearchKeys(TextIndexTable text, ValueExpr patternArg, ValueExpr flagsArg,
+			BindingSet bindings)
+	{
+		Value pattern = getConstant(patternArg, bindings);
+		Value flags = flagsArg != null ? getConstant(flagsArg, bindings) : null;
+		if (!(pattern instanceof Literal) || flagsArg != null && !(flags instanceof Literal)) {
+			return null;
+		}
+
+		if (flags != null) {
+			for (char flag : ((Literal)flags).getLabel().toCharArray()) {
+				if ("ims".indexOf(flag) < 0) {
+					return null;
+				}
+			}
+		}
+
+		String label = ((Literal)pattern).getLabel();
+		boolean anchoredStart = label.startsWith("^");
+		boolean anchoredEnd = label.endsWith("$") && label.length() > (anchoredStart ? 1 : 0);
+		label = label.substring(anchoredStart ? 1 : 0, label.length() - (anchoredEnd ? 1 : 0));
+
+		for (int i = 0; i < label.length(); ++i) {
+			if (REGEX_META_CHARS.indexOf(label.charAt(i)) >= 0) {
+				return null;
+			}
+		}
+
+		return text.getSearchKeys(label, anchoredStart, anchoredEnd);
+	}
+
+	/**
+	 * Translates a filter condition into an {@link IDCondition} on the slots
+	 * of a plan. This covers <tt>sameTerm</tt>, its negation, and
+	 * <tt>=</tt>/<tt>!=</tt> against a constant resource, for which value
+	 * equality is term equality. A constant that is not in the store makes a
+	 * positive condition unsatisfiable and a negative one always true.
+	 *
+	 * @return The condition, or <tt>null</tt> if it can not be decided on IDs.
+	 */
+	private IDCondition getIDCondition(ValueExpr condition, BGPPlan plan, BindingSet bindings)
+		throws StoreException
+	{
+		boolean negated = false;
+		if (condition instanceof Not) {
+			negated = true;
+			condition = ((Not)condition).getArg();
+		}
+
+		ValueExpr left, right;
+		boolean resourcesOnly;
+		if (condition instanceof SameTerm) {
+			left = ((SameTerm)condition).getLeftArg();
+			right = ((SameTerm)condition).getRightArg();
+			resourcesOnly = false;
+		}
+		else if (condition instanceof Compare) {
+			Compare compare = (Compare)condition;
+			if (compare.getOperator() == CompareOp.NE) {
+				negated = !negated;
+			}
+			else if (compare.getOperator() != CompareOp.EQ) {
+				return null;
+			}
+			left = compare.getLeftArg();
+			right = compare.getRightArg();
+			resourcesOnly = true;
+		}
+		else {
+			return null;
+		}
+
+		int leftSlot = getSlot(left, plan, bindings);
+		int rightSlot = getSlot(right, plan, bindings);
+		if (leftSlot >= 0 && rightSlot >= 0) {
+			return resourcesOnly ? null : new IDCondition(leftSlot, rightSlot, negated);
+		}
+
+		int slot = leftSlot >= 0 ? leftSlot : rightSlot;
+		Value value = getConstant(leftSlot >= 0 ? right : left, bindings);
+		if (slot < 0 || value == null || resourcesOnly && !(value instanceof Resource)) {
+			return null;
+		}
+
+		try {
+			int id = store.getValueStore().getIntID(value);
+			if (id == HBaseValue.UNKNOWN_ID && !negated) {
+				// no triple can bind the slot to an unknown value
+				plan.setEmpty();
+			}
+			return IDCondition.forConstant(slot, id, negated);
+		}
+		catch (IOException ioe) {
+			throw new EvaluationException(ioe);
+		}
+	}
+
+	/**
+	 * Gets the plan slot of a variable that is not bound from outside the plan.
+	 */
+	private int getSlot(ValueExpr expr, BGPPlan plan, BindingSet bindings) {
+		if (expr instanceof Var) {
+			Var var = (Var)expr;
+			if (!var.hasValue() && !bindings.hasBinding(var.getName())) {
+				return plan.getSlot(var.getName());
+			}
+		}
+		return -1;
+	}
+
+	private Value getConstant(ValueExpr expr, BindingSet bindings) {
+		if (expr instanceof ValueConstant) {
+			return ((ValueConstant)expr).getValue();
+		}
+		if (expr instanceof Var) {
+			Var var = (Var)expr;
+			return var.hasValue() ? var.getValue() : bindings.getValue(var.getName());
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the names of the variables of a basic graph pattern that the rest
+	 * of the query may refer to, so that the values of the others need not be
+	 * looked up. Without a projection every variable is part of the result.
+	 *
+	 * @param bgp
+	 *        The basic graph pattern.
+	 * @param excluded
+	 *        Nodes whose variables are taken care of inside the plan.
+	 * @return The names, or <tt>null</tt> if all variables are needed.
+	 */
+	protected Set<String> getRequiredVarNames(final TupleExpr bgp, final Set<QueryModelNode> excluded) {
+		final Set<String> varNames = new HashSet<String>();
+		final boolean[] projected = { false };
+
+		query.visit(new QueryModelVisitorBase<RuntimeException>() {
+
+			@Override
+			protected void meetNode(QueryModelNode node) {
+				if (node == bgp || excluded.contains(node)) {
+					return;
+				}
+
+				if (node instanceof Var) {
+					varNames.add(((Var)node).getName());
+				}
+				else if (node instanceof ProjectionElem) {
+					varNames.add(((ProjectionElem)node).getSourceName());
+				}
+				else if (node instanceof Group) {
+					varNames.addAll(((Group)node).getGroupBindingNames());
+				}
+				else if (node instanceof Projection || node instanceof MultiProjection) {
+					projected[0] = true;
+				}
+
+				node.visitChildren(this);
+			}
+		});
+
+		return projected[0] ? varNames : null;
+	}
+
+	/**
+	 * Evaluates a join from left to right, joining every statement pattern
+	 * after the first argument with a {@link BindJoinCursor} so that the
+	 * pattern is fetched for blocks of left-hand bindings at a time.
+	 *
+	 * @return The join result, or <tt>null</tt> if the join has no statement
+	 *         pattern to bind.
+	 */
+	protected Cursor<BindingSet> evaluateBindJoin(Join join, BindingSet bindings)
+		throws StoreException
+	{
+		boolean hasPattern = false;
+		for (int i = 1; i < join.getNumberOfArguments(); ++i) {
+			hasPattern |= join.getArg(i) instanceof StatementPattern;
+		}
+
+		if (!hasPattern || hasDataset()) {
+			return null;
+		}
+
+		Cursor<BindingSet> result = evaluate(join.getArg(0), bindings);
+		for (int i = 1; i < join.getNumberOfArguments(); ++i) {
+			TupleExpr arg = join.getArg(i);
+			if (arg instanceof StatementPattern) {
+				result = new BindJoinCursor(this, conn, result, (StatementPattern)arg,
+						BindJoinCursor.DEFAULT_BLOCK_SIZE);
+			}
+			else {
+				result = new NestedLoopJoinCursor(this, result, arg);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Evaluates a join of statement patterns that all share one unbound
+	 * variable in their subject or object position with a
+	 * {@link MergeJoinCursor}. The merge join reads every input in full and
+	 * binds every variable, so it is only used when no pattern fixes its
+	 * other subject or object, which a {@link BGPPlan} would look up instead,
+	 * and when no variable is projected away.
+	 *
+	 * @return The join result, or <tt>null</tt> if the join is not such a
+	 *         star or one of its patterns can not be scanned in the order of
+	 *         the shared variable.
+	 */
+	protected Cursor<BindingSet> evaluateStarJoin(Join join, BindingSet bindings)
+		throws StoreException
+	{
+		List<StatementPattern> statementPatterns = getJoinedPatterns(join);
+		if (statementPatterns == null || statementPatterns.size() < 2 || hasDataset()) {
+			return null;
+		}
+
+		String joinVar = getStarVariable(statementPatterns, bindings);
+		if (joinVar == null) {
+			return null;
+		}
+
+		try {
+			ValueStore values = store.getValueStore();
+			TriplePattern[] patterns = new TriplePattern[statementPatterns.size()];
+			for (int i = 0; i < patterns.length; ++i) {
+				patterns[i] = new TriplePattern(statementPatterns.get(i), bindings, values);
+				if (patterns[i].isUnknown()) {
+					return new EmptyCursor<BindingSet>();
+				}
+			}
+
+			if (!isUnselectiveStar(join, patterns)) {
+				return null;
+			}
+
+			TripleTable triples = store.getTripleTable();
+			TripleIDCursor[] inputs = new TripleIDCursor[patterns.length];
+			int[] joinPositions = new int[patterns.length];
+			for (int i = 0; i < patterns.length; ++i) {
+				for (int position : new int[] { TriplePattern.SUBJ, TriplePattern.OBJ }) {
+					if (inputs[i] == null && joinVar.equals(patterns[i].getVarName(position))) {
+						joinPositions[i] = position;
+						inputs[i] = triples.getOrderedTripleIDs(conn,
+								patterns[i].getID(TriplePattern.SUBJ), patterns[i].getID(TriplePattern.PRED),
+								patterns[i].getID(TriplePattern.OBJ), patterns[i].getID(TriplePattern.CONTEXT),
+								TriplePattern.FIELDS[position]);
+					}
+				}
+
+				if (inputs[i] == null) {
+					for (int j = 0; j < i; ++j) {
+						inputs[j].close();
+					}
+					return null;
+				}
+			}
+
+			logger.debug("Evaluating star join on ?{} over {} patterns", joinVar, patterns.length);
+			return new MergeJoinCursor(this, bindings, patterns, inputs, joinPositions);
+		}
+		catch (IOException ioe) {
+			throw new EvaluationException(ioe);
+		}
+	}
+
+	/**
+	 * Gets the statement patterns of a join that consists of nothing but
+	 * (nested joins of) statement patterns.
+	 *
+	 * @return The patterns, or <tt>null</tt> if the join has other arguments.
+	 */
+	protected List<StatementPattern> getJoinedPatterns(Join join) {
+		final List<StatementPattern> patterns = new ArrayList<StatementPattern>();
+		final boolean[] patternsOnly = { true };
+
+		join.visitChildren(new QueryModelVisitorBase<RuntimeException>() {
+
+			@Override
+			public void meet(Join node) {
+				node.visitChildren(this);
+			}
+
+			@Override
+			public void meet(StatementPattern node) {
+				patterns.add(node);
+			}
+
+			@Override
+			protected void meetNode(QueryModelNode node) {
+				patternsOnly[0] = false;
+			}
+		});
+
+		return patternsOnly[0] ? patterns : null;
+	}
+
+	/**
+	 * Patterns are resolved with the whole store as their default graph, so
+	 * queries with an explicit dataset are left to the generic evaluation.
+	 */
+	protected boolean hasDataset() {
+		return !query.getDefaultGraphs().isEmpty() || !query.getNamedGraphs().isEmpty();
+	}
+
+	/**
+	 * Checks whether none of the patterns of a star fixes the subject or
+	 * object that is not the shared variable, and whether all of their
+	 * variables are needed.
+	 */
+	private boolean isUnselectiveStar(Join join, TriplePattern[] patterns) {
+		Set<String> required = getRequiredVarNames(join, Collections.<QueryModelNode> emptySet());
+
+		for (TriplePattern pattern : patterns) {
+			// the shared variable is unbound, so a fixed ID is the other end
+			if (pattern.getID(TriplePattern.SUBJ) != null || pattern.getID(TriplePattern.OBJ) != null) {
+				return false;
+			}
+			if (required != null) {
+				for (int position = 0; position < 4; ++position) {
+					String varName = pattern.getVarName(position);
+					if (varName != null && !required.contains(varName)) {
+						return false;
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private String getStarVariable(List<StatementPattern> patterns, BindingSet bindings) {
+		StatementPattern first = patterns.get(0);
+
+		for (Var candidate : new Var[] { first.getSubjectVar(), first.getObjectVar() }) {
+			if (candidate.hasValue() || bindings.hasBinding(candidate.getName())) {
+				continue;
+			}
+
+			boolean shared = true;
+			for (StatementPattern pattern : patterns) {
+				shared &= candidate.getName().equals(pattern.getSubjectVar().getName())
+						|| candidate.getName().equals(pattern.getObjectVar().getName());
+			}
+
+			if (shared) {
+				return candidate.getName();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Creates a binding set that extends <tt>bindings</tt> with the values of
+	 * the IDs in the slots of a row; empty slots and slots without a name are
+	 * left unbound.
+	 */
+	public BindingSet createBindingSet(BindingSet bindings, String[] varNames, int[] row)
+		throws StoreException
+	{
+		ValueStore values = store.getValueStore();
+		QueryBindingSet result = new QueryBindingSet(bindings);
+
+		try {
+			for (int slot = 0; slot < varNames.length; ++slot) {
+				int id = row[slot];
+				if (varNames[slot] != null && id != 0 && id != TriplePattern.NULL_CONTEXT_ID) {
+					result.addBinding(varNames[slot], values.getValue(id));
+				}
+			}
+		}
+		catch (IOException ioe) {
+			throw new EvaluationException(ioe);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates a binding set that extends <tt>bindings</tt> with the values of
+	 * the supplied internal IDs.
+	 */
+	public BindingSet createBindingSet(BindingSet bindings, Map<String, Integer> idBindings)
+		throws StoreException
+	{
+		ValueStore values = store.getValueStore();
+		QueryBindingSet result = new QueryBindingSet(bindings);
+
+		try {
+			for (Map.Entry<String, Integer> idBinding : idBindings.entrySet()) {
+				int id = idBinding.getValue();
+				if (id != TriplePattern.NULL_CONTEXT_ID) {
+					result.addBinding(idBinding.getKey(), values.getValue(id));
+				}
+			}
+		}
+		catch (IOException ioe) {
+			throw new EvaluationException(ioe);
+		}
+
+		return result;
+	}
+}
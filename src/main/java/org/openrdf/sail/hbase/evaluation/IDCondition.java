@@ -0,0 +1,74 @@
+package org.openrdf.sail.hbase.evaluation;
+
+/**
+ * A filter condition that can be decided on internal IDs alone: whether the
+ * slot of a variable holds the same term as another slot or as a constant.
+ * Two terms are the same term exactly when they have the same ID.
+ */
+public class IDCondition {
+
+	private final int leftSlot;
+
+	private final int rightSlot;
+
+	private final int rightID;
+
+	private final boolean negated;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a condition that compares two slots.
+	 */
+	public IDCondition(int leftSlot, int rightSlot, boolean negated) {
+		this(leftSlot, rightSlot, 0, negated);
+	}
+
+	/**
+	 * Creates a condition that compares a slot with a constant ID.
+	 */
+	public static IDCondition forConstant(int slot, int id, boolean negated) {
+		return new IDCondition(slot, -1, id, negated);
+	}
+
+	private IDCondition(int leftSlot, int rightSlot, int rightID, boolean negated) {
+		this.leftSlot = leftSlot;
+		this.rightSlot = rightSlot;
+		this.rightID = rightID;
+		this.negated = negated;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Checks whether all slots of this condition are among the supplied
+	 * bound slots.
+	 */
+	public boolean canEvaluate(boolean[] boundSlots) {
+		return boundSlots[leftSlot] && (rightSlot < 0 || boundSlots[rightSlot]);
+	}
+
+	/**
+	 * Checks whether this condition reads the supplied slot.
+	 */
+	public boolean uses(int slot) {
+		return leftSlot == slot || rightSlot == slot;
+	}
+
+	/**
+	 * Evaluates this condition on a row. A slot that holds the null context is
+	 * unbound, which makes the condition fail whether it is negated or not.
+	 */
+	public boolean accept(int[] row) {
+		int left = row[leftSlot];
+		int right = rightSlot >= 0 ? row[rightSlot] : rightID;
+		if (left == TriplePattern.NULL_CONTEXT_ID || rightSlot >= 0 && right == TriplePattern.NULL_CONTEXT_ID) {
+			return false;
+		}
+		return (left == right) != negated;
+	}
+}
@@ -0,0 +1,232 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.cursor.Cursor;
+import org.openrdf.query.EvaluationException;
+import org.openrdf.sail.hbase.HBaseConnection;
+import org.openrdf.sail.hbase.data.TripleIDCursor;
+import org.openrdf.sail.hbase.data.TripleTable;
+import org.openrdf.sail.hbase.util.ByteArray;
+import org.openrdf.store.StoreException;
+
+/**
+ * Executes one {@link PlanStep} of a {@link BGPPlan} for the rows of the step
+ * before it. Input rows are read in blocks; the step's pattern is fetched
+ * for a whole block with a single request, and the triples that come back
+ * are streamed out as extended rows. While a block is streamed out, the
+ * request for the next one is already under way on the store's worker
+ * threads.
+ */
+public class IDJoinCursor implements Cursor<int[]> {
+
+	private final HBaseConnection conn;
+	private final TripleTable triples;
+	private final Cursor<int[]> input;
+	private final PlanStep step;
+	private final int blockSize;
+	private final boolean[] positions;
+
+	private Map<ByteArray, List<int[]>> block;
+	private TripleIDCursor matches;
+
+	private Map<ByteArray, List<int[]>> nextBlock;
+	private Future<TripleIDCursor> nextMatches;
+	private final ByteArray matchKey = new ByteArray(new byte[16]);
+
+	private final LinkedList<int[]> pending = new LinkedList<int[]>();
+	private boolean inputExhausted;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public IDJoinCursor(HBaseConnection conn, TripleTable triples,
+			Cursor<int[]> input, PlanStep step, int blockSize) {
+		this(conn, triples, input, step, blockSize, null);
+	}
+
+	/**
+	 * @param positions
+	 *        The positions of the step's triples that are needed, see
+	 *        {@link BGPPlan#getNeededPositions(PlanStep)}, or <tt>null</tt> for
+	 *        all.
+	 */
+	public IDJoinCursor(HBaseConnection conn, TripleTable triples,
+			Cursor<int[]> input, PlanStep step, int blockSize, boolean[] positions) {
+		this.conn = conn;
+		this.triples = triples;
+		this.input = input;
+		this.step = step;
+		this.blockSize = blockSize;
+		this.positions = positions;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public int[] next() throws StoreException {
+		while (pending.isEmpty()) {
+			if (matches != null) {
+				int[] triple = matches.next();
+				if (triple != null) {
+					route(triple);
+					continue;
+				}
+
+				matches.close();
+				matches = null;
+			}
+
+			if (!nextBlock()) {
+				return null;
+			}
+		}
+
+		return pending.removeFirst();
+	}
+
+	/**
+	 * Moves to the next block of input rows and its matches, and starts the
+	 * request for the block after it.
+	 * 
+	 * @return <tt>false</tt> if there are no more input rows.
+	 */
+	private boolean nextBlock() throws StoreException {
+		if (nextMatches != null) {
+			block = nextBlock;
+			matches = await(nextMatches);
+			nextMatches = null;
+		}
+		else {
+			block = new HashMap<ByteArray, List<int[]>>();
+			List<byte[][]> instances = readBlock(block);
+			if (instances.isEmpty()) {
+				return false;
+			}
+
+			try {
+				matches = triples.getTripleIDs(conn, step.getIndex(), instances, positions);
+			}
+			catch (IOException ioe) {
+				throw new EvaluationException(ioe);
+			}
+		}
+
+		nextBlock = new HashMap<ByteArray, List<int[]>>();
+		List<byte[][]> instances = readBlock(nextBlock);
+		if (!instances.isEmpty()) {
+			nextMatches = triples.getTripleIDsAsync(step.getIndex(), instances, positions);
+		}
+
+		return true;
+	}
+
+	private TripleIDCursor await(Future<TripleIDCursor> future) throws StoreException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new EvaluationException("Interrupted while waiting for triples");
+		}
+		catch (ExecutionException ee) {
+			throw new EvaluationException(ee.getCause());
+		}
+	}
+
+	/**
+	 * Reads a block of input rows into <tt>block</tt>, by the pattern
+	 * instance they produce.
+	 * 
+	 * @return The distinct pattern instances, none if the input is exhausted.
+	 */
+	private List<byte[][]> readBlock(Map<ByteArray, List<int[]>> block) throws StoreException {
+		List<byte[][]> instances = new ArrayList<byte[][]>();
+		if (inputExhausted) {
+			return instances;
+		}
+
+		int numRows = 0;
+		int[] row;
+		while (numRows < blockSize && (row = input.next()) != null) {
+			++numRows;
+
+			byte[][] ids = step.instantiate(row);
+			ByteArray key = new ByteArray(getKey(ids, new byte[16]));
+
+			List<int[]> rows = block.get(key);
+			if (rows == null) {
+				rows = new ArrayList<int[]>(1);
+				block.put(key, rows);
+				instances.add(ids);
+			}
+			rows.add(row);
+		}
+
+		if (numRows < blockSize) {
+			inputExhausted = true;
+		}
+
+		return instances;
+	}
+
+	private byte[] getKey(byte[][] ids, byte[] key) {
+		for (int position = 0; position < 4; ++position) {
+			if (ids[position] != null) {
+				Bytes.putBytes(key, position * 4, ids[position], 0, 4);
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Extends the input rows that requested the supplied triple.
+	 */
+	private void route(int[] triple) {
+		byte[] key = matchKey.getArray();
+		for (int position = 0; position < 4; ++position) {
+			Bytes.putInt(key, position * 4, step.isFixed(position) ? triple[position] : 0);
+		}
+
+		List<int[]> rows = block.get(matchKey);
+		if (rows != null) {
+			for (int[] row : rows) {
+				int[] result = step.extend(row, triple);
+				if (result != null && step.accept(result)) {
+					pending.add(result);
+				}
+			}
+		}
+	}
+
+	public void close() throws StoreException {
+		try {
+			if (matches != null) {
+				matches.close();
+				matches = null;
+			}
+		}
+		finally {
+			try {
+				if (nextMatches != null) {
+					Future<TripleIDCursor> future = nextMatches;
+					nextMatches = null;
+					await(future).close();
+				}
+			}
+			finally {
+				input.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.openrdf.cursor.Cursor;
+import org.openrdf.query.BindingSet;
+import org.openrdf.sail.hbase.data.TripleIDCursor;
+import org.openrdf.sail.hbase.util.Utils;
+import org.openrdf.store.StoreException;
+
+/**
+ * Joins a star of triple patterns that share one variable by streaming their
+ * index scans in lockstep. Every input must be ordered on the internal ID of
+ * the shared variable; only rows with the same ID are combined, so the join
+ * reads each input exactly once.
+ */
+public class MergeJoinCursor implements Cursor<BindingSet> {
+
+	private final HBaseEvaluationStrategy strategy;
+	private final BindingSet bindings;
+
+	private final TriplePattern[] patterns;
+	private final TripleIDCursor[] inputs;
+	private final int[] joinPositions;
+
+	private final int[][] heads;
+	private final List<List<int[]>> groups;
+
+	private final LinkedList<BindingSet> pending = new LinkedList<BindingSet>();
+	private boolean exhausted;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param joinPositions
+	 *        For every input, the position of the join variable in its
+	 *        pattern. Each input must be ordered on that position.
+	 */
+	public MergeJoinCursor(HBaseEvaluationStrategy strategy, BindingSet bindings,
+			TriplePattern[] patterns, TripleIDCursor[] inputs, int[] joinPositions) {
+		this.strategy = strategy;
+		this.bindings = bindings;
+		this.patterns = patterns;
+		this.inputs = inputs;
+		this.joinPositions = joinPositions;
+
+		this.heads = new int[inputs.length][];
+		this.groups = new ArrayList<List<int[]>>(inputs.length);
+		for (int i = 0; i < inputs.length; ++i) {
+			groups.add(new ArrayList<int[]>());
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public BindingSet next() throws StoreException {
+		while (pending.isEmpty()) {
+			if (!nextGroup()) {
+				return null;
+			}
+			join(0, new HashMap<String, Integer>());
+		}
+
+		return pending.removeFirst();
+	}
+
+	/**
+	 * Advances all inputs to the next join key they have in common and
+	 * collects the rows with that key from each of them.
+	 */
+	private boolean nextGroup() throws StoreException {
+		if (exhausted) {
+			return false;
+		}
+
+		for (int i = 0; i < inputs.length; ++i) {
+			if (heads[i] == null && (heads[i] = advance(i)) == null) {
+				exhausted = true;
+				return false;
+			}
+		}
+
+		int key;
+		boolean aligned;
+		do {
+			key = getKey(0);
+			for (int i = 1; i < inputs.length; ++i) {
+				if (Utils.compareIDs(getKey(i), key) > 0) {
+					key = getKey(i);
+				}
+			}
+
+			aligned = true;
+			for (int i = 0; i < inputs.length; ++i) {
+				while (Utils.compareIDs(getKey(i), key) < 0) {
+					if ((heads[i] = advance(i)) == null) {
+						exhausted = true;
+						return false;
+					}
+				}
+				aligned &= getKey(i) == key;
+			}
+		}
+		while (!aligned);
+
+		for (int i = 0; i < inputs.length; ++i) {
+			List<int[]> group = groups.get(i);
+			group.clear();
+
+			while (heads[i] != null && getKey(i) == key) {
+				group.add(heads[i]);
+				heads[i] = advance(i);
+			}
+
+			if (heads[i] == null) {
+				// this is the last group we can produce
+				exhausted = true;
+			}
+		}
+
+		return true;
+	}
+
+	private int getKey(int input) {
+		return heads[input][joinPositions[input]];
+	}
+
+	private int[] advance(int input) throws StoreException {
+		int[] row;
+		do {
+			row = inputs[input].next();
+		}
+		while (row != null && !patterns[input].matches(row));
+
+		return row;
+	}
+
+	/**
+	 * Combines the rows of the current groups, starting at the group of input
+	 * <tt>level</tt>.
+	 */
+	private void join(int level, Map<String, Integer> idBindings)
+		throws StoreException
+	{
+		if (level == patterns.length) {
+			pending.add(strategy.createBindingSet(bindings, idBindings));
+			return;
+		}
+
+		for (int[] row : groups.get(level)) {
+			Map<String, Integer> rowBindings = new HashMap<String, Integer>(idBindings);
+			if (patterns[level].bind(row, rowBindings)) {
+				join(level + 1, rowBindings);
+			}
+		}
+	}
+
+	public void close() throws StoreException {
+		for (TripleIDCursor input : inputs) {
+			input.close();
+		}
+	}
+}
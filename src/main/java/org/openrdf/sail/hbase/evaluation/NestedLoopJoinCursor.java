@@ -0,0 +1,55 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import org.openrdf.cursor.Cursor;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.store.StoreException;
+
+/**
+ * Evaluates the right-hand argument of a join once for every binding set of
+ * the left-hand cursor.
+ */
+public class NestedLoopJoinCursor implements Cursor<BindingSet> {
+
+	private final EvaluationStrategy strategy;
+	private final Cursor<BindingSet> leftArg;
+	private final TupleExpr rightArg;
+
+	private Cursor<BindingSet> rightCursor;
+
+	public NestedLoopJoinCursor(EvaluationStrategy strategy,
+			Cursor<BindingSet> leftArg, TupleExpr rightArg) {
+		this.strategy = strategy;
+		this.leftArg = leftArg;
+		this.rightArg = rightArg;
+	}
+
+	public BindingSet next() throws StoreException {
+		while (true) {
+			if (rightCursor != null) {
+				BindingSet result = rightCursor.next();
+				if (result != null) {
+					return result;
+				}
+
+				rightCursor.close();
+				rightCursor = null;
+			}
+
+			BindingSet leftBindings = leftArg.next();
+			if (leftBindings == null) {
+				return null;
+			}
+
+			rightCursor = strategy.evaluate(rightArg, leftBindings);
+		}
+	}
+
+	public void close() throws StoreException {
+		if (rightCursor != null) {
+			rightCursor.close();
+		}
+		leftArg.close();
+	}
+}
@@ -0,0 +1,197 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.sail.hbase.data.TripleIndex;
+
+/**
+ * One statement pattern of a {@link BGPPlan}. Variables are mapped onto
+ * slots of the <tt>int[]</tt> rows that flow between the steps of the plan;
+ * a slot holds the internal ID of its variable, or <tt>0</tt> while the
+ * variable is unbound.
+ */
+public class PlanStep {
+
+	private final TriplePattern pattern;
+
+	private final int[] slots = { -1, -1, -1, -1 };
+
+	/**
+	 * The positions whose variable is bound by an earlier step of the plan.
+	 */
+	private final boolean[] inputs = new boolean[4];
+
+	private TripleIndex index;
+
+	private boolean[] boundSlots;
+
+	private final List<IDCondition> conditions = new ArrayList<IDCondition>(0);
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	PlanStep(TriplePattern pattern, Map<String, Integer> slotMap) {
+		this.pattern = pattern;
+
+		for (int position = 0; position < 4; ++position) {
+			String varName = pattern.getVarName(position);
+			if (varName != null) {
+				Integer slot = slotMap.get(varName);
+				if (slot == null) {
+					slot = slotMap.size();
+					slotMap.put(varName, slot);
+				}
+				slots[position] = slot;
+			}
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public TriplePattern getPattern() {
+		return pattern;
+	}
+
+	public TripleIndex getIndex() {
+		return index;
+	}
+
+	void setIndex(TripleIndex index) {
+		this.index = index;
+	}
+
+	public int getSlot(int position) {
+		return slots[position];
+	}
+
+	/**
+	 * Checks whether the supplied position will be fixed when this step is
+	 * executed, either by a constant or by the variable binding of an earlier
+	 * step, given the slots that are bound at that point.
+	 */
+	boolean isBound(int position, boolean[] boundSlots) {
+		return pattern.getID(position) != null || slots[position] >= 0 && boundSlots[slots[position]];
+	}
+
+	/**
+	 * Checks whether the supplied position is fixed when this step executes,
+	 * by a constant or by an earlier step. Only valid once the step has been
+	 * scheduled.
+	 */
+	boolean isFixed(int position) {
+		return inputs[position] || pattern.getID(position) != null;
+	}
+
+	/**
+	 * Schedules this step after the steps that bound <tt>boundSlots</tt>, and
+	 * marks the slots of its own variables as bound.
+	 */
+	void schedule(boolean[] boundSlots) {
+		for (int position = 0; position < 4; ++position) {
+			if (slots[position] >= 0) {
+				inputs[position] = boundSlots[slots[position]];
+			}
+		}
+		for (int position = 0; position < 4; ++position) {
+			if (slots[position] >= 0) {
+				boundSlots[slots[position]] = true;
+			}
+		}
+		this.boundSlots = boundSlots.clone();
+	}
+
+	/**
+	 * Gets the slots that are bound once this step has been executed.
+	 */
+	boolean[] getBoundSlots() {
+		return boundSlots;
+	}
+
+	void addCondition(IDCondition condition) {
+		conditions.add(condition);
+	}
+
+	/**
+	 * Checks whether this step reads the supplied slot: through the variable
+	 * of its pattern at another position than <tt>position</tt>, or through
+	 * one of its conditions.
+	 */
+	boolean uses(int slot, int position) {
+		for (int i = 0; i < 4; ++i) {
+			if (i != position && slots[i] == slot) {
+				return true;
+			}
+		}
+		for (IDCondition condition : conditions) {
+			if (condition.uses(slot)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks the ID conditions that were attached to this step against a
+	 * row it produced.
+	 */
+	boolean accept(int[] row) {
+		for (IDCondition condition : conditions) {
+			if (!condition.accept(row)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the IDs this step's pattern has for an input row, as subject,
+	 * predicate, object and context, <tt>null</tt> meaning unbound.
+	 */
+	byte[][] instantiate(int[] row) {
+		byte[][] ids = new byte[4][];
+
+		for (int position = 0; position < 4; ++position) {
+			if (inputs[position]) {
+				ids[position] = Bytes.toBytes(row[slots[position]]);
+			}
+			else {
+				ids[position] = pattern.getID(position);
+			}
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Extends an input row with the variable bindings of a matching triple.
+	 *
+	 * @return A new row, or <tt>null</tt> if the triple does not match the
+	 *         bindings of the row.
+	 */
+	int[] extend(int[] row, int[] triple) {
+		if (!pattern.matches(triple)) {
+			return null;
+		}
+
+		int[] result = row.clone();
+		for (int position = 0; position < 4; ++position) {
+			int slot = slots[position];
+			if (slot >= 0) {
+				if (result[slot] == 0) {
+					result[slot] = triple[position];
+				}
+				else if (result[slot] != triple[position]) {
+					return null;
+				}
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,121 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.model.Literal;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.sail.hbase.data.RangeIndexTable;
+
+/**
+ * The bounds that the range comparisons of a filter put on a variable, and
+ * the statement pattern whose object that variable is, if that pattern can
+ * be read from the {@link RangeIndexTable}. Bounds are encoded as by the
+ * range index, and are inclusive: the comparisons themselves still have to
+ * be applied to the results.
+ */
+public class RangeScan {
+
+	private final String varName;
+
+	private byte[] lower;
+
+	private byte[] upper;
+
+	private boolean conflicting;
+
+	private StatementPattern pattern;
+
+	private byte[] predID;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public RangeScan(String varName) {
+		this.varName = varName;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public String getVarName() {
+		return varName;
+	}
+
+	/**
+	 * Narrows the range to values of at least the supplied literal.
+	 *
+	 * @return <tt>false</tt> if the literal is not a numeric or dateTime value.
+	 */
+	public boolean addLowerBound(Literal literal) {
+		byte[] bound = RangeIndexTable.encodeLowerBound(literal);
+		if (bound == null) {
+			return false;
+		}
+		if (lower == null || checkType(bound, lower) && Bytes.compareTo(bound, lower) > 0) {
+			lower = bound;
+		}
+		checkType(lower, upper);
+		return true;
+	}
+
+	/**
+	 * Narrows the range to values of at most the supplied literal.
+	 *
+	 * @return <tt>false</tt> if the literal is not a numeric or dateTime value.
+	 */
+	public boolean addUpperBound(Literal literal) {
+		byte[] bound = RangeIndexTable.encodeUpperBound(literal);
+		if (bound == null) {
+			return false;
+		}
+		if (upper == null || checkType(bound, upper) && Bytes.compareTo(bound, upper) < 0) {
+			upper = bound;
+		}
+		checkType(lower, upper);
+		return true;
+	}
+
+	/**
+	 * Notes a conflict if two bounds are of different types, such as a number
+	 * and a dateTime: the range index can not answer that.
+	 */
+	private boolean checkType(byte[] bound1, byte[] bound2) {
+		if (bound1 != null && bound2 != null && bound1[0] != bound2[0]) {
+			conflicting = true;
+		}
+		return !conflicting;
+	}
+
+	/**
+	 * Checks whether the bounds can be scanned for: there is at least one and
+	 * they are of the same type.
+	 */
+	public boolean isValid() {
+		return !conflicting && (lower != null || upper != null);
+	}
+
+	public byte[] getLowerBound() {
+		return lower;
+	}
+
+	public byte[] getUpperBound() {
+		return upper;
+	}
+
+	/**
+	 * Gets the pattern that is read from the range index.
+	 */
+	public StatementPattern getPattern() {
+		return pattern;
+	}
+
+	public byte[] getPredicateID() {
+		return predID;
+	}
+
+	void setPattern(StatementPattern pattern, byte[] predID) {
+		this.pattern = pattern;
+		this.predID = predID;
+	}
+}
@@ -0,0 +1,44 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import org.openrdf.cursor.Cursor;
+import org.openrdf.store.StoreException;
+
+/**
+ * Executes the first {@link PlanStep} of a {@link BGPPlan} on triples that
+ * are read from elsewhere than its triple index, such as the range index:
+ * every triple that matches the step's pattern becomes a row.
+ */
+public class RangeStepCursor implements Cursor<int[]> {
+
+	private final Cursor<int[]> triples;
+	private final PlanStep step;
+	private final int width;
+
+	/**
+	 * @param width
+	 *        The number of slots of the rows of the plan.
+	 */
+	public RangeStepCursor(Cursor<int[]> triples, PlanStep step, int width) {
+		this.triples = triples;
+		this.step = step;
+		this.width = width;
+	}
+
+	public int[] next() throws StoreException {
+		int[] triple;
+		while ((triple = triples.next()) != null) {
+			if (step.getPattern().matchesIDs(triple)) {
+				int[] row = step.extend(new int[width], triple);
+				if (row != null && step.accept(row)) {
+					return row;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	public void close() throws StoreException {
+		triples.close();
+	}
+}
@@ -0,0 +1,39 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import org.openrdf.sail.hbase.data.TextIndexTable;
+
+/**
+ * The literals that the {@link TextIndexTable} found for a text search
+ * condition on a variable. They are candidates only: the condition itself
+ * still has to be applied to the results.
+ */
+public class TextSearch {
+
+	private final String varName;
+
+	private final int[] ids;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public TextSearch(String varName, int[] ids) {
+		this.varName = varName;
+		this.ids = ids;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public String getVarName() {
+		return varName;
+	}
+
+	/**
+	 * Gets the IDs of the candidate literals, in ascending order.
+	 */
+	public int[] getIDs() {
+		return ids;
+	}
+}
@@ -0,0 +1,172 @@
+package org.openrdf.sail.hbase.evaluation;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.sail.hbase.ValueStore;
+import org.openrdf.sail.hbase.data.ValueTable;
+import org.openrdf.sail.hbase.model.HBaseValue;
+
+/**
+ * A {@link StatementPattern} resolved against the value store: every position
+ * is either fixed to an internal ID, bound to a variable, or a wildcard (an
+ * absent context variable).
+ */
+public class TriplePattern {
+
+	public static final int SUBJ = 0;
+	public static final int PRED = 1;
+	public static final int OBJ = 2;
+	public static final int CONTEXT = 3;
+
+	public static final char[] FIELDS = { 's', 'p', 'o', 'c' };
+
+	public static final int NULL_CONTEXT_ID = Bytes.toInt(ValueTable.NULL_CONTEXT);
+
+	private final StatementPattern statementPattern;
+
+	private final String[] varNames = new String[4];
+
+	private final byte[][] ids = new byte[4][];
+
+	private final int[] intIDs = new int[4];
+
+	private final boolean namedContexts;
+
+	private boolean unknown;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public TriplePattern(StatementPattern statementPattern, BindingSet bindings,
+			ValueStore values) throws IOException {
+		this.statementPattern = statementPattern;
+		this.namedContexts = statementPattern.getScope() == StatementPattern.Scope.NAMED_CONTEXTS;
+
+		resolve(SUBJ, statementPattern.getSubjectVar(), bindings, values);
+		resolve(PRED, statementPattern.getPredicateVar(), bindings, values);
+		resolve(OBJ, statementPattern.getObjectVar(), bindings, values);
+		resolve(CONTEXT, statementPattern.getContextVar(), bindings, values);
+	}
+
+	private void resolve(int position, Var var, BindingSet bindings,
+			ValueStore values) throws IOException {
+		if (var == null) {
+			return;
+		}
+
+		Value value = var.hasValue() ? var.getValue() : bindings.getValue(var.getName());
+		if (value != null) {
+			intIDs[position] = values.getIntID(value);
+			if (intIDs[position] == HBaseValue.UNKNOWN_ID) {
+				unknown = true;
+			}
+			else {
+				ids[position] = Bytes.toBytes(intIDs[position]);
+			}
+		} else {
+			varNames[position] = var.getName();
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public StatementPattern getStatementPattern() {
+		return statementPattern;
+	}
+
+	/**
+	 * Checks whether one of the fixed values of this pattern is not known to
+	 * the value store, in which case the pattern can not match anything.
+	 */
+	public boolean isUnknown() {
+		return unknown;
+	}
+
+	public byte[] getID(int position) {
+		return ids[position];
+	}
+
+	public String getVarName(int position) {
+		return varNames[position];
+	}
+
+	/**
+	 * Gets the first position at which the named variable occurs in this
+	 * pattern, or <tt>-1</tt> if it does not occur.
+	 */
+	public int getPosition(String varName) {
+		for (int position = 0; position < 4; ++position) {
+			if (varName.equals(varNames[position])) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks the constraints on a row that can not be expressed in a scan:
+	 * repeated variables must be bound to the same ID, and statements in the
+	 * null context do not match a pattern over named contexts.
+	 */
+	public boolean matches(int[] row) {
+		if (namedContexts && varNames[CONTEXT] != null && row[CONTEXT] == NULL_CONTEXT_ID) {
+			return false;
+		}
+
+		for (int i = 0; i < 4; ++i) {
+			if (varNames[i] != null) {
+				for (int j = i + 1; j < 4; ++j) {
+					if (varNames[i].equals(varNames[j]) && row[i] != row[j]) {
+						return false;
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks whether a triple has the fixed IDs of this pattern, for triples
+	 * that were not read with this pattern as their key range.
+	 */
+	public boolean matchesIDs(int[] row) {
+		for (int position = 0; position < 4; ++position) {
+			if (ids[position] != null && intIDs[position] != row[position]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the variable bindings of a matching row to <tt>idBindings</tt>.
+	 *
+	 * @return <tt>false</tt> if a variable was already bound to a different
+	 *         ID, in which case <tt>idBindings</tt> may be partially updated.
+	 */
+	public boolean bind(int[] row, Map<String, Integer> idBindings) {
+		for (int position = 0; position < 4; ++position) {
+			if (varNames[position] != null) {
+				Integer boundID = idBindings.get(varNames[position]);
+				if (boundID == null) {
+					idBindings.put(varNames[position], row[position]);
+				} else if (boundID.intValue() != row[position]) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+}
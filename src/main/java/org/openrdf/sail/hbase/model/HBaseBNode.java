@@ -2,8 +2,6 @@ package org.openrdf.sail.hbase.model;
 
 import java.io.IOException;
 
-import org.apache.hadoop.hbase.util.Bytes;
-import org.apache.hadoop.util.StringUtils;
 import org.openrdf.model.BNode;
 import org.openrdf.model.URI;
 import org.openrdf.model.impl.BNodeImpl;
@@ -17,25 +15,25 @@ public class HBaseBNode implements HBaseResource, BNode {
 	private static final Logger logger = LoggerFactory.getLogger(HBaseBNode.class);	
 	
 	private volatile ValueStoreRevision revision;
-	private volatile byte[] internalID;
+	private volatile int internalID;
 	private volatile BNode internalBNode;
 
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
 
-	protected HBaseBNode(ValueStoreRevision revision, byte[] internalID) {
+	protected HBaseBNode(ValueStoreRevision revision, int internalID) {
 		this(revision, internalID, null);
 	}
 
 	public HBaseBNode(ValueStoreRevision revision, String nodeID) {
-		this(revision, null, new BNodeImpl(nodeID));
+		this(revision, UNKNOWN_ID, new BNodeImpl(nodeID));
 	}
 
-	public HBaseBNode(ValueStoreRevision revision, byte[] internalID, BNode bNode) {
+	public HBaseBNode(ValueStoreRevision revision, int internalID, BNode bNode) {
 		this.revision = revision;
 		
-		if (internalID != null || bNode != null) {
+		if (internalID != UNKNOWN_ID || bNode != null) {
 			this.setInternalID(internalID, revision);
 			this.internalBNode = bNode;
 		}
@@ -54,19 +52,19 @@ public class HBaseBNode implements HBaseResource, BNode {
 		if (this.internalBNode != null)
 			return this.internalBNode.toString();
 		else
-			return "URI #" + StringUtils.byteToHexString(this.internalID);
+			return "URI #" + Integer.toHexString(this.internalID);
 	}
 
-	public void setInternalID(byte[] internalID, ValueStoreRevision revision) {
+	public void setInternalID(int internalID, ValueStoreRevision revision) {
 		this.internalID = internalID;
 		this.revision = revision;
 	}
 
-	public byte[] getInternalID() {
-		if (internalID == null)
+	public int getInternalID() {
+		if (internalID == UNKNOWN_ID)
 		{
 			try	{
-				this.internalID = this.revision.getValueStore().getID(this.internalBNode);
+				this.internalID = this.revision.getValueStore().getIntID(this.internalBNode);
 			}
 			catch (IOException ioe)	{
 				logger.error("Failed to get ID for BNode: " + this.internalBNode, ioe);
@@ -89,12 +87,12 @@ public class HBaseBNode implements HBaseResource, BNode {
 		if (o instanceof HBaseBNode) {
 			HBaseBNode otherHBaseBNode = (HBaseBNode)o;
 
-			if (otherHBaseBNode.internalID != null
+			if (internalID != UNKNOWN_ID && otherHBaseBNode.internalID != UNKNOWN_ID
 					&& revision.equals(otherHBaseBNode.revision))
 			{
 				// NativeBNode's from the same revision of the same native store,
 				// with both ID's set
-				return Bytes.compareTo(internalID, otherHBaseBNode.internalID) == 0;
+				return internalID == otherHBaseBNode.internalID;
 			}
 		}
 
@@ -7,8 +7,6 @@ import java.math.BigInteger;
 import javax.xml.datatype.Duration;
 import javax.xml.datatype.XMLGregorianCalendar;
 
-import org.apache.hadoop.hbase.util.Bytes;
-import org.apache.hadoop.util.StringUtils;
 import org.openrdf.model.BNode;
 import org.openrdf.model.Literal;
 import org.openrdf.model.URI;
@@ -23,34 +21,34 @@ public class HBaseLiteral implements HBaseValue, Literal {
 	private static final Logger logger = LoggerFactory.getLogger(HBaseLiteral.class);
 	
 	private volatile ValueStoreRevision revision;
-	private volatile byte[] internalID;
+	private volatile int internalID;
 	private volatile Literal internalLiteral;
 
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
 
-	protected HBaseLiteral(ValueStoreRevision revision, byte[] internalID) {
+	protected HBaseLiteral(ValueStoreRevision revision, int internalID) {
 		this(revision, internalID, null);
 	}
 
 	public HBaseLiteral(ValueStoreRevision revision, String label) {
-		this(revision, null, new LiteralImpl(label));
+		this(revision, UNKNOWN_ID, new LiteralImpl(label));
 	}
 
 	public HBaseLiteral(ValueStoreRevision revision, String label, String lang) {
-		this(revision, null, new LiteralImpl(label, lang));
+		this(revision, UNKNOWN_ID, new LiteralImpl(label, lang));
 	}
 
 	public HBaseLiteral(ValueStoreRevision revision, String label, URI datatype) {
-		this(revision, null, new LiteralImpl(label, datatype));
+		this(revision, UNKNOWN_ID, new LiteralImpl(label, datatype));
 	}
 
-	public HBaseLiteral(ValueStoreRevision revision, byte[] internalID, Literal literal)
+	public HBaseLiteral(ValueStoreRevision revision, int internalID, Literal literal)
 	{
 		this.revision = revision;
 		
-		if (internalID != null || literal != null) {
+		if (internalID != UNKNOWN_ID || literal != null) {
 			this.setInternalID(internalID, revision);
 			this.internalLiteral = literal;
 		}
@@ -69,19 +67,19 @@ public class HBaseLiteral implements HBaseValue, Literal {
 		if (this.internalLiteral != null)
 			return this.internalLiteral.toString();
 		else
-			return "Literal #" + StringUtils.byteToHexString(this.internalID);
+			return "Literal #" + Integer.toHexString(this.internalID);
 	}
 
-	public void setInternalID(byte[] internalID, ValueStoreRevision revision) {
+	public void setInternalID(int internalID, ValueStoreRevision revision) {
 		this.internalID = internalID;
 		this.revision = revision;
 	}
 
-	public byte[] getInternalID() {
-		if (internalID == null)
+	public int getInternalID() {
+		if (internalID == UNKNOWN_ID)
 		{
 			try	{
-				this.internalID = this.revision.getValueStore().getID(this.internalLiteral);
+				this.internalID = this.revision.getValueStore().getIntID(this.internalLiteral);
 			}
 			catch (IOException ioe)	{
 				logger.error("Failed to get ID for Literal: " + this.internalLiteral, ioe);
@@ -104,12 +102,12 @@ public class HBaseLiteral implements HBaseValue, Literal {
 		if (o instanceof HBaseLiteral) {
 			HBaseLiteral otherHBaseLiteral = (HBaseLiteral)o;
 
-			if (otherHBaseLiteral.internalID != null
+			if (internalID != UNKNOWN_ID && otherHBaseLiteral.internalID != UNKNOWN_ID
 					&& revision.equals(otherHBaseLiteral.revision))
 			{
 				// HBaseLiterals from the same revision of the same HBase store,
 				// with both IDs set
-				return Bytes.compareTo(internalID, otherHBaseLiteral.internalID) == 0;
+				return internalID == otherHBaseLiteral.internalID;
 			}
 		}
 
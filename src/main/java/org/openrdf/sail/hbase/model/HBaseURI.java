@@ -2,8 +2,6 @@ package org.openrdf.sail.hbase.model;
 
 import java.io.IOException;
 
-import org.apache.hadoop.hbase.util.Bytes;
-import org.apache.hadoop.util.StringUtils;
 import org.openrdf.model.URI;
 import org.openrdf.model.impl.URIImpl;
 import org.openrdf.sail.hbase.ValueStore;
@@ -18,26 +16,26 @@ import org.slf4j.LoggerFactory;
 	
 	private volatile ValueStoreRevision revision;
 
-	private volatile byte[] internalID;
+	private volatile int internalID;
 	private volatile URI internalURI;
 
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
 
-	protected HBaseURI(ValueStoreRevision revision, byte[] internalID) {
+	protected HBaseURI(ValueStoreRevision revision, int internalID) {
 		this(revision, internalID, null);
 	}
 
 	public HBaseURI(ValueStoreRevision revision, String uri) {
-		this(revision, (byte[])null, new URIImpl(uri));
+		this(revision, UNKNOWN_ID, new URIImpl(uri));
 	}
 	
-	public HBaseURI(ValueStoreRevision revision, byte[] internalID, URI uri)
+	public HBaseURI(ValueStoreRevision revision, int internalID, URI uri)
 	{
 		this.revision = revision;
 		
-		if (internalID != null || uri != null) {
+		if (internalID != UNKNOWN_ID || uri != null) {
 			this.setInternalID(internalID, revision);
 			this.internalURI = uri;
 		}
@@ -56,23 +54,23 @@ import org.slf4j.LoggerFactory;
 		if (this.internalURI != null)
 			return this.internalURI.toString();
 		else
-			return "URI #" + StringUtils.byteToHexString(this.internalID);
+			return "URI #" + Integer.toHexString(this.internalID);
 	}
 
 	public ValueStoreRevision getValueStoreRevision() {
 		return revision;
 	}
 	
-	public void setInternalID(byte[] internalID, ValueStoreRevision revision) {
+	public void setInternalID(int internalID, ValueStoreRevision revision) {
 		this.internalID = internalID;
 		this.revision = revision;
 	}
 
-	public byte[] getInternalID() {
-		if (internalID == null)
+	public int getInternalID() {
+		if (internalID == UNKNOWN_ID)
 		{
 			try	{
-				this.internalID = this.revision.getValueStore().getID(this.internalURI);
+				this.internalID = this.revision.getValueStore().getIntID(this.internalURI);
 			}
 			catch (IOException ioe)	{
 				logger.error("Failed to get internal ID for URI: " + this.internalURI, ioe);
@@ -91,11 +89,12 @@ import org.slf4j.LoggerFactory;
 		if (o instanceof HBaseURI) {
 			HBaseURI otherHBaseURI = (HBaseURI)o;
 
-			if (otherHBaseURI.internalID != null && revision.equals(otherHBaseURI.revision))
+			if (internalID != UNKNOWN_ID && otherHBaseURI.internalID != UNKNOWN_ID
+					&& revision.equals(otherHBaseURI.revision))
 			{
 				// HBaseURI's from the same revision of the same HBase store, with
 				// both ID's set
-				return Bytes.compareTo(internalID, otherHBaseURI.internalID) == 0;
+				return internalID == otherHBaseURI.internalID;
 			}
 		}
 
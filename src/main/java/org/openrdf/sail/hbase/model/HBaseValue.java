@@ -10,18 +10,24 @@ import org.openrdf.sail.hbase.data.ValueTable;
 
 public interface HBaseValue extends Value {
 
+	/**
+	 * The ID of values that are not in the store. No value is stored with this
+	 * ID, see {@link ValueTable#NULL_VALUE}.
+	 */
+	public static final int UNKNOWN_ID = 0;
+
 	/**
 	 * Sets the ID that is used for this value in a specific revision of the
 	 * value store.
 	 */
-	public void setInternalID(byte[] id, ValueStoreRevision revision);
+	public void setInternalID(int id, ValueStoreRevision revision);
 
 	/**
 	 * Gets the ID that is used in the native store for this Value.
 	 * 
 	 * @return The value's ID, or {@link #UNKNOWN_ID} if not yet set.
 	 */
-	public byte[] getInternalID();
+	public int getInternalID();
 
 	/**
 	 * Gets the revision of the value store that created this value. The value's
@@ -0,0 +1,144 @@
+package org.openrdf.sail.hbase.util;
+
+/**
+ * A fixed-size cache of objects by <tt>int</tt> key, for the value store's
+ * caches by value ID. Keys are kept in an open-addressing table, so that a
+ * lookup neither boxes the key nor follows entry links. When the cache is
+ * full, an entry that was not read since the clock hand last passed it is
+ * evicted, which approximates least-recently-used eviction.
+ * <p>
+ * The key <tt>0</tt> cannot be cached. Like {@link LRUCache}, the cache is
+ * not thread-safe.
+ */
+public class IntObjectCache<V> {
+
+	private final int capacity;
+
+	private final int[] keys;
+	private final Object[] values;
+	private final boolean[] referenced;
+
+	private final int mask;
+	private final int shift;
+
+	private int size;
+	private int hand;
+
+	public IntObjectCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+		this.capacity = capacity;
+
+		// at most half full, which keeps probe sequences short
+		int length = Integer.highestOneBit(2 * capacity - 1) << 1;
+		this.keys = new int[length];
+		this.values = new Object[length];
+		this.referenced = new boolean[length];
+		this.mask = length - 1;
+		this.shift = Integer.numberOfLeadingZeros(length) + 1;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private int slot(int key) {
+		return (key * 0x9E3779B9) >>> shift;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		if (key == 0)
+			return null;
+
+		for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				referenced[i] = true;
+				return (V)values[i];
+			}
+		}
+
+		return null;
+	}
+
+	public void put(int key, V value) {
+		if (key == 0)
+			throw new IllegalArgumentException("key must not be 0");
+
+		int i = slot(key);
+		for (; keys[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				values[i] = value;
+				referenced[i] = true;
+				return;
+			}
+		}
+
+		if (size == capacity) {
+			evict();
+
+			// the eviction may have moved entries into the probe sequence
+			i = slot(key);
+			while (keys[i] != 0)
+				i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		referenced[i] = false;
+		++size;
+	}
+
+	public void clear() {
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = 0;
+			values[i] = null;
+			referenced[i] = false;
+		}
+		size = 0;
+	}
+
+	private void evict() {
+		while (true) {
+			int i = hand;
+			hand = (hand + 1) & mask;
+
+			if (keys[i] == 0)
+				continue;
+
+			if (referenced[i]) {
+				referenced[i] = false;
+			}
+			else {
+				removeAt(i);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry in a slot, moving later entries of its probe sequence
+	 * back so that no lookup stops at the emptied slot too early.
+	 */
+	private void removeAt(int gap) {
+		for (int i = (gap + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+			int home = slot(keys[i]);
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				referenced[gap] = referenced[i];
+				gap = i;
+			}
+		}
+
+		keys[gap] = 0;
+		values[gap] = null;
+		referenced[gap] = false;
+		--size;
+	}
+}
@@ -12,4 +12,14 @@ public class Utils {
 		}
 		return strbuf.toString();
 	}
+
+	/**
+	 * Compares two internal value IDs the way HBase orders them in a row key,
+	 * i.e. as unsigned integers.
+	 */
+	public static int compareIDs(int id1, int id2) {
+		int unsigned1 = id1 ^ Integer.MIN_VALUE;
+		int unsigned2 = id2 ^ Integer.MIN_VALUE;
+		return unsigned1 < unsigned2 ? -1 : (unsigned1 == unsigned2 ? 0 : 1);
+	}
 }
@@ -0,0 +1,118 @@
+package org.openrdf.sail.hbase;
+
+import java.util.List;
+
+import org.openrdf.model.URI;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.QueryModel;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+
+/**
+ * Checks basic graph patterns that are planned and joined on internal IDs
+ * against the generic evaluation.
+ */
+public class BGPPlanTest extends LocalStoreTestCase {
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		URI type = uri("type");
+		URI name = uri("name");
+		URI worksFor = uri("worksFor");
+		URI advisor = uri("advisor");
+		URI takesCourse = uri("takesCourse");
+		URI teacherOf = uri("teacherOf");
+
+		conn.begin();
+		for (int d = 0; d < 3; ++d) {
+			URI dept = uri("dept" + d);
+			URI graph = uri("graph" + d);
+			add(dept, type, uri("Department"));
+
+			for (int p = 0; p < 4; ++p) {
+				URI prof = uri("prof" + d + "_" + p);
+				add(prof, type, uri("Professor"), graph);
+				add(prof, name, vf.createLiteral("Professor " + d + "_" + p), graph);
+				add(prof, worksFor, dept, graph);
+				add(prof, teacherOf, uri("course" + d + "_" + p));
+				add(prof, teacherOf, uri("course" + d + "_" + (p + 1) % 4));
+			}
+
+			for (int s = 0; s < 10; ++s) {
+				URI student = uri("student" + d + "_" + s);
+				add(student, type, uri("Student"));
+				add(student, name, vf.createLiteral("Student " + d + "_" + s));
+				add(student, advisor, uri("prof" + d + "_" + s % 4));
+				add(student, takesCourse, uri("course" + d + "_" + s % 4));
+				add(student, takesCourse, uri("course" + d + "_" + (s + 2) % 4));
+			}
+		}
+
+		// a statement in the default graph and in a named one
+		add(uri("prof0_0"), worksFor, uri("dept0"));
+		conn.commit();
+	}
+
+	private void assertPlanned(String query) throws Exception {
+		QueryModel model = parse(query);
+		TupleExpr bgp = find(model, Join.class);
+		if (bgp == null) {
+			bgp = find(model, StatementPattern.class);
+		}
+
+		List<String> expected = evaluateGeneric(model, bgp);
+		List<String> actual = toList(createStrategy(model).bgp(bgp));
+
+		assertEquals(expected, actual);
+		assertSameResults(query);
+	}
+
+	public void testSinglePattern() throws Exception {
+		assertPlanned("SELECT * WHERE { ?x ex:advisor ?p }");
+	}
+
+	public void testPath() throws Exception {
+		assertPlanned("SELECT * WHERE { ?p ex:worksFor ex:dept1 . ?s ex:advisor ?p . "
+				+ "?p ex:teacherOf ?c . ?s ex:takesCourse ?c }");
+	}
+
+	public void testConstantSubject() throws Exception {
+		assertPlanned("SELECT * WHERE { ex:student2_3 ex:takesCourse ?c . ?p ex:teacherOf ?c . ?p ex:name ?n }");
+	}
+
+	public void testSelectiveStar() throws Exception {
+		String query = "SELECT * WHERE { ?x ex:type ex:Student . ?x ex:advisor ?p . ?x ex:name ?n }";
+		QueryModel model = parse(query);
+
+		// a fixed object makes the star selective, so it is planned instead
+		assertNull(createStrategy(model).starJoin(find(model, Join.class)));
+		assertPlanned(query);
+	}
+
+	public void testProjection() throws Exception {
+		// values are only looked up for the projected variables
+		assertSameResults("SELECT ?n WHERE { ?s ex:advisor ?p . ?p ex:name ?n }");
+		assertSameResults("SELECT DISTINCT ?p WHERE { ?s ex:advisor ?p . ?s ex:takesCourse ?c }");
+	}
+
+	public void testRepeatedVariable() throws Exception {
+		assertPlanned("SELECT * WHERE { ?x ex:type ?t . ?t ex:type ?t }");
+	}
+
+	public void testNamedGraphs() throws Exception {
+		assertPlanned("SELECT * WHERE { GRAPH ?g { ?p ex:worksFor ?d } }");
+		assertPlanned("SELECT * WHERE { GRAPH ?g { ?p ex:worksFor ?d . ?p ex:name ?n } }");
+		assertPlanned("SELECT * WHERE { GRAPH ex:graph2 { ?p ex:worksFor ?d } }");
+	}
+
+	public void testDefaultGraph() throws Exception {
+		assertPlanned("SELECT * WHERE { ?p ex:worksFor ?d . ?s ex:advisor ?p }");
+	}
+
+	public void testUnknownValue() throws Exception {
+		assertPlanned("SELECT * WHERE { ?x ex:advisor ?p . ?p ex:unknown ?n }");
+		assertTrue(evaluate("SELECT * WHERE { ?x ex:advisor ?p . ?p ex:unknown ?n }").isEmpty());
+	}
+}
@@ -0,0 +1,83 @@
+package org.openrdf.sail.hbase;
+
+import java.util.List;
+
+import org.openrdf.model.URI;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.QueryModel;
+import org.openrdf.sail.hbase.evaluation.BindJoinCursor;
+
+/**
+ * Checks the joins that fetch a statement pattern for blocks of left-hand
+ * bindings against the generic evaluation.
+ */
+public class BindJoinTest extends LocalStoreTestCase {
+
+	/**
+	 * More people than fit in one block of left-hand bindings.
+	 */
+	private static final int PEOPLE = BindJoinCursor.DEFAULT_BLOCK_SIZE * 2 + 100;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		URI name = uri("name");
+		URI email = uri("email");
+		URI knows = uri("knows");
+		URI likes = uri("likes");
+
+		conn.begin();
+		for (int i = 0; i < PEOPLE; ++i) {
+			URI person = uri("person" + i);
+			add(person, name, vf.createLiteral("Person " + i));
+			if (i % 3 != 0) {
+				add(person, email, vf.createLiteral("p" + i + "@example.org"));
+			}
+			add(person, knows, uri("person" + (i + 1) % PEOPLE));
+			add(person, knows, uri("person" + (i * 7) % PEOPLE));
+			if (i % 2 == 0) {
+				add(person, likes, uri("person" + (i + 3) % PEOPLE));
+			}
+		}
+		conn.commit();
+	}
+
+	private void assertBindJoin(String query) throws Exception {
+		QueryModel model = parse(query);
+		Join join = find(model, Join.class);
+
+		List<String> expected = evaluateGeneric(model, join);
+		List<String> actual = toList(createStrategy(model).bindJoin(join));
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+		assertSameResults(query);
+	}
+
+	public void testPatternJoin() throws Exception {
+		assertBindJoin("SELECT * WHERE { ?x ex:knows ?y . ?y ex:email ?e }");
+	}
+
+	public void testJoinOfThree() throws Exception {
+		assertBindJoin("SELECT * WHERE { ?x ex:likes ?y . ?y ex:knows ?z . ?z ex:name ?n }");
+	}
+
+	public void testRepeatedVariable() throws Exception {
+		assertBindJoin("SELECT * WHERE { ?x ex:name ?n . ?x ex:knows ?x }");
+	}
+
+	public void testUnionOnTheLeft() throws Exception {
+		assertBindJoin("SELECT * WHERE { { ?x ex:knows ?y } UNION { ?x ex:likes ?y } . ?y ex:email ?e }");
+	}
+
+	public void testLeftBindingsOfDifferentShapes() throws Exception {
+		// the second branch leaves ?y unbound, so its rows join with every name
+		assertBindJoin("SELECT * WHERE { { ?x ex:likes ?y } UNION { ?x ex:email \"p1@example.org\" } . ?y ex:name ?n }");
+	}
+
+	public void testUnknownValue() throws Exception {
+		QueryModel model = parse("SELECT * WHERE { ?x ex:knows ?y . ?y ex:unknown ?e }");
+		assertTrue(toList(createStrategy(model).bindJoin(find(model, Join.class))).isEmpty());
+	}
+}
@@ -0,0 +1,142 @@
+package org.openrdf.sail.hbase;
+
+import org.openrdf.cursor.Cursor;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.Count;
+import org.openrdf.query.algebra.Group;
+import org.openrdf.query.algebra.GroupElem;
+import org.openrdf.query.algebra.QueryModel;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.store.StoreException;
+
+/**
+ * Checks the counts of single statement patterns that are answered from the
+ * triple indexes against the generic evaluation.
+ */
+public class CountTest extends LocalStoreTestCase {
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		URI name = uri("name");
+		URI knows = uri("knows");
+
+		conn.begin();
+		for (int i = 0; i < 50; ++i) {
+			URI person = uri("person" + i);
+			URI graph = uri("graph" + i % 3);
+			add(person, name, vf.createLiteral("Person " + i), graph);
+			add(person, knows, uri("person" + (i + 1) % 50), graph);
+			if (i % 5 == 0) {
+				add(person, knows, person);
+				add(person, knows, uri("person0"), graph);
+			}
+		}
+		conn.commit();
+	}
+
+	/**
+	 * Creates an ungrouped count of the only statement pattern of a query.
+	 *
+	 * @param arg
+	 *        The counted expression, or <tt>null</tt> for <tt>COUNT(*)</tt>.
+	 */
+	private Group createCount(QueryModel model, ValueExpr arg) {
+		Group group = new Group(find(model, StatementPattern.class).clone());
+		group.addGroupElement(new GroupElem("n", new Count(arg)));
+		return group;
+	}
+
+	private static int getCount(Cursor<BindingSet> cursor) throws StoreException {
+		try {
+			BindingSet bindings = cursor.next();
+			assertNotNull(bindings);
+			assertNull(cursor.next());
+			return ((Literal)bindings.getValue("n")).intValue();
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
+	private int countGeneric(QueryModel model, Group group) throws StoreException {
+		EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(
+				new HBaseTripleSource(store, conn, false, false), model);
+		return getCount(strategy.evaluate(group, EmptyBindingSet.getInstance()));
+	}
+
+	/**
+	 * Checks that a count is pushed down and agrees with the generic one.
+	 */
+	private void assertCount(String query, ValueExpr arg, int expected) throws Exception {
+		QueryModel model = parse(query);
+		Group group = createCount(model, arg);
+
+		assertEquals(expected, countGeneric(model, group));
+		assertEquals(expected, getCount(createStrategy(model).count(group)));
+		assertEquals(expected, getCount(createStrategy(model).evaluate(group, EmptyBindingSet.getInstance())));
+	}
+
+	private void assertNotPushedDown(String query, int expected) throws Exception {
+		QueryModel model = parse(query);
+		Group group = createCount(model, null);
+
+		assertNull(createStrategy(model).count(group));
+		assertEquals(expected, countGeneric(model, group));
+		assertEquals(expected, getCount(createStrategy(model).evaluate(group, EmptyBindingSet.getInstance())));
+	}
+
+	public void testCountAll() throws Exception {
+		assertCount("SELECT * WHERE { ?s ?p ?o }", null, 100 + 10 + 10);
+		assertCount("SELECT * WHERE { ?s ex:knows ?o }", null, 50 + 10 + 10);
+		assertCount("SELECT * WHERE { ?s ex:name ?o }", null, 50);
+	}
+
+	public void testCountOfVariable() throws Exception {
+		assertCount("SELECT * WHERE { ?s ex:knows ?o }", new Var("o"), 70);
+		assertCount("SELECT * WHERE { ?s ex:knows ?o }", new Var("s"), 70);
+	}
+
+	public void testBoundPositions() throws Exception {
+		assertCount("SELECT * WHERE { ex:person5 ex:knows ?o }", null, 3);
+		assertCount("SELECT * WHERE { ?s ex:knows ex:person0 }", null, 12);
+		assertCount("SELECT * WHERE { ex:person5 ?p ex:person0 }", null, 1);
+		assertCount("SELECT * WHERE { ex:person5 ex:knows ex:person5 }", null, 1);
+	}
+
+	public void testUnknownValue() throws Exception {
+		assertCount("SELECT * WHERE { ?s ex:unknown ?o }", null, 0);
+	}
+
+	public void testNamedGraph() throws Exception {
+		assertCount("SELECT * WHERE { GRAPH ex:graph1 { ?s ex:name ?o } }", null, 17);
+
+		// the rows are needed to leave out the default graph
+		assertNotPushedDown("SELECT * WHERE { GRAPH ?g { ?s ex:knows ?o } }", 60);
+	}
+
+	public void testRepeatedVariable() throws Exception {
+		assertNotPushedDown("SELECT * WHERE { ?s ex:knows ?s }", 11);
+	}
+
+	public void testDataset() throws Exception {
+		// patterns read the whole store, so an explicit dataset is not pushed down
+		assertNotPushedDown("SELECT * FROM ex:graph1 WHERE { ?s ex:name ?o }", 17);
+		assertNotPushedDown("SELECT * FROM NAMED ex:graph2 WHERE { GRAPH ?g { ?s ex:name ?o } }", 16);
+	}
+
+	public void testCountAfterRemoval() throws Exception {
+		conn.begin();
+		conn.removeStatements(null, uri("name"), null, uri("graph0"));
+		conn.commit();
+
+		assertCount("SELECT * WHERE { ?s ex:name ?o }", null, 33);
+	}
+}
@@ -0,0 +1,75 @@
+package org.openrdf.sail.hbase;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+/**
+ * Checks filters that are decided on internal IDs, and the values that are
+ * looked up for the projected variables only, against the generic
+ * evaluation.
+ */
+public class IDFilterTest extends LocalStoreTestCase {
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		URI knows = uri("knows");
+		URI name = uri("name");
+		URI count = uri("count");
+
+		conn.begin();
+		for (int i = 0; i < 30; ++i) {
+			URI person = uri("person" + i);
+			add(person, name, vf.createLiteral("Person " + i % 10));
+			add(person, knows, uri("person" + (i + 1) % 30));
+			add(person, knows, uri("person" + (i * 7) % 30));
+			add(person, count, vf.createLiteral(Integer.toString(i % 5), XMLSchema.INT));
+		}
+
+		// equal numbers with different lexical forms
+		add(uri("item1"), count, vf.createLiteral("1", XMLSchema.INT));
+		add(uri("item2"), count, vf.createLiteral("01", XMLSchema.INT));
+		conn.commit();
+	}
+
+	public void testSameTermOfVariables() throws Exception {
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . ?y ex:knows ?z . FILTER(sameTerm(?x, ?z)) }");
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . ?y ex:knows ?z . FILTER(!sameTerm(?x, ?z)) }");
+		assertSameResults("SELECT * WHERE { ?x ex:name ?n . ?y ex:name ?m . ?x ex:knows ?y . FILTER(sameTerm(?n, ?m)) }");
+	}
+
+	public void testResourceConstant() throws Exception {
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . FILTER(?y = ex:person7) }");
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . FILTER(?y != ex:person7) }");
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . FILTER(ex:person7 = ?x) }");
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . FILTER(sameTerm(?y, ex:person7)) }");
+	}
+
+	public void testUnknownConstant() throws Exception {
+		assertTrue(evaluate("SELECT * WHERE { ?x ex:knows ?y . FILTER(?y = ex:nobody) }").isEmpty());
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . FILTER(?y = ex:nobody) }");
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . FILTER(?y != ex:nobody) }");
+	}
+
+	public void testLiteralEqualityIsValueEquality() throws Exception {
+		// not decided on IDs, as equal numbers can be different terms
+		assertEquals(2, evaluate("SELECT ?x WHERE { ?x ex:count ?c . FILTER(?c = \"1\"^^xsd:int) "
+				+ "FILTER(?x = ex:item1 || ?x = ex:item2) }").size());
+		assertSameResults("SELECT * WHERE { ?x ex:count ?c . FILTER(?c = 1) }");
+		assertSameResults("SELECT * WHERE { ?x ex:count ?c . FILTER(sameTerm(?c, \"1\"^^xsd:int)) }");
+	}
+
+	public void testConditionsLeftOver() throws Exception {
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . ?y ex:name ?n . "
+				+ "FILTER(?x != ex:person1 && regex(?n, \"3\")) }");
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . ?y ex:name ?n . "
+				+ "FILTER(?x != ex:person1) FILTER(regex(?n, \"3\")) }");
+	}
+
+	public void testProjectedVariablesOnly() throws Exception {
+		assertSameResults("SELECT ?n WHERE { ?x ex:knows ?y . ?y ex:name ?n . FILTER(!sameTerm(?x, ?y)) }");
+		assertSameResults("SELECT DISTINCT ?x WHERE { ?x ex:knows ?y . ?y ex:count ?c . FILTER(?y != ex:person2) }");
+		assertSameResults("SELECT ?x WHERE { ?x ex:knows ?y . ?y ex:knows ?x }");
+	}
+}
@@ -0,0 +1,29 @@
+package org.openrdf.sail.hbase;
+
+import org.openrdf.sail.RDFStoreTest;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.hbase.config.HBaseStoreConfig;
+import org.openrdf.store.StoreException;
+
+
+/**
+ * Runs the store tests on the in-memory backend, which needs no cluster.
+ */
+public class LocalHBaseSailTest extends RDFStoreTest {
+
+	public LocalHBaseSailTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected Sail createSail() throws StoreException
+	{
+		HBaseStoreConfig config = new HBaseStoreConfig("test");
+		config.setBackend(HBaseStoreConfig.LOCAL_BACKEND);
+
+		Sail sail = new HBaseStore(config);
+		sail.initialize();
+
+		return sail;
+	}
+}
@@ -0,0 +1,200 @@
+package org.openrdf.sail.hbase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.openrdf.cursor.Cursor;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.algebra.Group;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.QueryModel;
+import org.openrdf.query.algebra.QueryModelNode;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.query.parser.QueryParserUtil;
+import org.openrdf.sail.hbase.config.HBaseStoreConfig;
+import org.openrdf.sail.hbase.data.LocalBackend;
+import org.openrdf.sail.hbase.evaluation.HBaseEvaluationStrategy;
+import org.openrdf.store.StoreException;
+
+/**
+ * Base of the tests that run a store on the in-memory backend. The results
+ * of the store's own query evaluation are checked against those of the
+ * generic evaluation over the same statements.
+ */
+public abstract class LocalStoreTestCase extends TestCase {
+
+	protected static final String NS = "http://example.org/";
+
+	protected static final String PREFIXES = "PREFIX ex: <" + NS + ">\n"
+			+ "PREFIX xsd: <http://www.w3.org/2001/XMLSchema#>\n";
+
+	protected HBaseStore store;
+	protected ValueFactory vf;
+	protected HBaseConnection conn;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		store = new HBaseStore(createConfig(), new LocalBackend());
+		store.initialize();
+		vf = store.getValueFactory();
+		conn = (HBaseConnection)store.getConnectionInternal();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		try {
+			conn.close();
+		}
+		finally {
+			store.shutDown();
+			super.tearDown();
+		}
+	}
+
+	/**
+	 * Creates the configuration of the store, with the default indexes.
+	 */
+	protected HBaseStoreConfig createConfig() {
+		return new HBaseStoreConfig("test");
+	}
+
+	protected URI uri(String localName) {
+		return vf.createURI(NS, localName);
+	}
+
+	protected void add(Resource subj, URI pred, Value obj, Resource... contexts) throws StoreException {
+		conn.addStatement(subj, pred, obj, contexts);
+	}
+
+	protected QueryModel parse(String query) throws Exception {
+		return QueryParserUtil.parseQuery(QueryLanguage.SPARQL, PREFIXES + query, null);
+	}
+
+	/**
+	 * Evaluates a query the way the store does.
+	 */
+	protected List<String> evaluate(String query) throws Exception {
+		return toList(conn.evaluate(parse(query), EmptyBindingSet.getInstance(), false));
+	}
+
+	/**
+	 * Evaluates a query with the generic evaluation strategy, which only reads
+	 * statements from the store.
+	 */
+	protected List<String> evaluateGeneric(String query) throws Exception {
+		QueryModel model = parse(query);
+		return evaluateGeneric(model, model);
+	}
+
+	/**
+	 * Evaluates a part of a parsed query with the generic evaluation strategy.
+	 */
+	protected List<String> evaluateGeneric(QueryModel model, TupleExpr expr) throws StoreException {
+		EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(
+				new HBaseTripleSource(store, conn, false, false), model);
+		return toList(strategy.evaluate(expr, EmptyBindingSet.getInstance()));
+	}
+
+	protected void assertSameResults(String query) throws Exception {
+		List<String> expected = evaluateGeneric(query);
+		List<String> actual = evaluate(query);
+		assertEquals(query, expected, actual);
+	}
+
+	/**
+	 * Reads a result into a sorted list of its binding sets, each written as
+	 * the sorted map of its binding names to their values.
+	 */
+	protected static List<String> toList(Cursor<? extends BindingSet> cursor) throws StoreException {
+		List<String> result = new ArrayList<String>();
+		try {
+			BindingSet bindings;
+			while ((bindings = cursor.next()) != null) {
+				Map<String, String> row = new TreeMap<String, String>();
+				for (String name : bindings.getBindingNames()) {
+					Value value = bindings.getValue(name);
+					if (value != null) {
+						row.put(name, value.toString());
+					}
+				}
+				result.add(row.toString());
+			}
+		}
+		finally {
+			cursor.close();
+		}
+
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Finds the first node of a type in a query model, in depth-first order.
+	 */
+	protected static <T extends QueryModelNode> T find(QueryModelNode root, final Class<T> type) {
+		final List<T> found = new ArrayList<T>();
+
+		root.visit(new QueryModelVisitorBase<RuntimeException>() {
+
+			@Override
+			protected void meetNode(QueryModelNode node) {
+				if (found.isEmpty() && type.isInstance(node)) {
+					found.add(type.cast(node));
+				}
+				node.visitChildren(this);
+			}
+		});
+
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	/**
+	 * Creates a strategy whose single evaluation paths can be called on a
+	 * parsed query.
+	 */
+	protected TestStrategy createStrategy(QueryModel model) {
+		return new TestStrategy(new HBaseTripleSource(store, conn, false, false), model);
+	}
+
+	/**
+	 * Opens up the evaluation paths of the store's strategy, which return
+	 * <tt>null</tt> where they do not apply.
+	 */
+	protected static class TestStrategy extends HBaseEvaluationStrategy {
+
+		public TestStrategy(HBaseTripleSource tripleSource, QueryModel query) {
+			super(tripleSource, query);
+		}
+
+		public Cursor<BindingSet> starJoin(Join join) throws StoreException {
+			return evaluateStarJoin(join, EmptyBindingSet.getInstance());
+		}
+
+		public Cursor<BindingSet> bindJoin(Join join) throws StoreException {
+			return evaluateBindJoin(join, EmptyBindingSet.getInstance());
+		}
+
+		public Cursor<BindingSet> bgp(TupleExpr expr) throws StoreException {
+			return evaluateBGP(expr, EmptyBindingSet.getInstance());
+		}
+
+		public Cursor<BindingSet> count(Group group) throws StoreException {
+			return evaluateCount(group, EmptyBindingSet.getInstance());
+		}
+	}
+}
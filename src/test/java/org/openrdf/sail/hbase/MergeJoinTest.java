@@ -0,0 +1,103 @@
+package org.openrdf.sail.hbase;
+
+import java.util.List;
+
+import org.openrdf.model.URI;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.QueryModel;
+import org.openrdf.sail.hbase.config.HBaseStoreConfig;
+import org.openrdf.sail.hbase.config.IndexSpec;
+
+/**
+ * Checks the star joins that are merged on the shared variable against the
+ * generic evaluation.
+ */
+public class MergeJoinTest extends LocalStoreTestCase {
+
+	@Override
+	protected HBaseStoreConfig createConfig() {
+		// ordered on the subject of a predicate, for stars on the subject
+		HBaseStoreConfig config = super.createConfig();
+		config.addTripleIndex(IndexSpec.parse("pso/c"));
+		return config;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		URI name = uri("name");
+		URI email = uri("email");
+		URI knows = uri("knows");
+		URI likes = uri("likes");
+		URI type = uri("type");
+
+		for (int i = 0; i < 20; ++i) {
+			URI person = uri("person" + i);
+			add(person, type, uri("Person"));
+			add(person, name, vf.createLiteral("Person " + i));
+			if (i % 3 != 0) {
+				add(person, email, vf.createLiteral("p" + i + "@example.org"));
+			}
+			if (i % 4 == 0) {
+				add(person, email, vf.createLiteral("person" + i + "@example.org"));
+			}
+			add(person, knows, uri("person" + (i + 1) % 20));
+			add(person, knows, uri("person" + (i * 7) % 20));
+			if (i % 2 == 0) {
+				add(person, likes, uri("person" + (i + 3) % 20));
+			}
+		}
+	}
+
+	/**
+	 * Merges the star and checks it against the generic evaluation of the
+	 * same join.
+	 */
+	private void assertMerged(String query) throws Exception {
+		QueryModel model = parse(query);
+		Join join = find(model, Join.class);
+
+		List<String> expected = evaluateGeneric(model, join);
+		List<String> actual = toList(createStrategy(model).starJoin(join));
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+		assertSameResults(query);
+	}
+
+	private void assertNotMerged(String query) throws Exception {
+		QueryModel model = parse(query);
+		assertNull(createStrategy(model).starJoin(find(model, Join.class)));
+		assertSameResults(query);
+	}
+
+	public void testSubjectStar() throws Exception {
+		assertMerged("SELECT * WHERE { ?x ex:name ?n . ?x ex:email ?e }");
+	}
+
+	public void testSubjectStarOfThree() throws Exception {
+		assertMerged("SELECT * WHERE { ?x ex:name ?n . ?x ex:email ?e . ?x ex:knows ?y }");
+	}
+
+	public void testObjectStar() throws Exception {
+		assertMerged("SELECT * WHERE { ?a ex:knows ?x . ?b ex:likes ?x }");
+	}
+
+	public void testSubjectAndObjectStar() throws Exception {
+		assertMerged("SELECT * WHERE { ?x ex:likes ?y . ?z ex:knows ?x }");
+	}
+
+	public void testStarWithoutMatches() throws Exception {
+		QueryModel model = parse("SELECT * WHERE { ?x ex:name ?n . ?x ex:unknown ?e }");
+		assertTrue(toList(createStrategy(model).starJoin(find(model, Join.class))).isEmpty());
+	}
+
+	public void testSelectiveStarIsNotMerged() throws Exception {
+		assertNotMerged("SELECT * WHERE { ?x ex:type ex:Person . ?x ex:email ?e }");
+	}
+
+	public void testProjectedStarIsNotMerged() throws Exception {
+		assertNotMerged("SELECT ?x ?n WHERE { ?x ex:name ?n . ?x ex:email ?e }");
+	}
+}
@@ -0,0 +1,180 @@
+package org.openrdf.sail.hbase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.sail.hbase.config.HBaseStoreConfig;
+import org.openrdf.sail.hbase.data.RangeIndexTable;
+
+/**
+ * Checks range filters on numeric and dateTime objects that are read from
+ * the range index against the generic evaluation.
+ */
+public class RangeFilterTest extends LocalStoreTestCase {
+
+	@Override
+	protected HBaseStoreConfig createConfig() {
+		HBaseStoreConfig config = super.createConfig();
+		config.addRangeIndexPredicate(NS + "age");
+		config.addRangeIndexPredicate(NS + "time");
+		return config;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		URI age = uri("age");
+		URI time = uri("time");
+		URI name = uri("name");
+
+		conn.begin();
+		for (int i = -20; i < 120; ++i) {
+			URI person = uri("person" + i);
+			add(person, name, vf.createLiteral("Person " + i));
+			add(person, age, vf.createLiteral(i));
+			if (i % 10 == 0) {
+				add(person, age, vf.createLiteral(i + 0.5));
+				add(person, age, vf.createLiteral(Integer.toString(i), XMLSchema.DECIMAL));
+			}
+		}
+
+		// objects that are not in the range index
+		add(uri("other1"), age, vf.createLiteral("42"));
+		add(uri("other2"), age, vf.createLiteral("unknown", XMLSchema.INT));
+		add(uri("other3"), age, uri("person42"));
+
+		// dateTimes around noon of a day, with and without timezones
+		String[] times = {
+				"2010-01-01T12:00:00", "2010-01-01T11:59:59", "2010-01-01T12:00:01",
+				"2010-01-01T00:00:00", "2010-01-02T00:00:00", "2009-12-31T21:59:59",
+				"2010-01-01T12:00:00Z", "2010-01-01T00:00:00Z", "2010-01-01T23:00:00Z",
+				"2009-12-31T21:59:59Z", "2009-12-31T22:00:01Z", "2010-01-02T02:00:01Z",
+				"2010-01-02T01:59:59Z", "2010-01-01T12:00:00+14:00", "2010-01-01T12:00:00-14:00",
+				"2010-01-01T12:00:00+05:00", "2010-06-01T00:00:00Z", "2009-06-01T00:00:00" };
+		for (int i = 0; i < times.length; ++i) {
+			add(uri("event" + i), time, vf.createLiteral(times[i], XMLSchema.DATETIME));
+		}
+		conn.commit();
+	}
+
+	public void testIndexIsReady() throws Exception {
+		RangeIndexTable ranges = store.getRangeIndexTable();
+		assertNotNull(ranges);
+		assertTrue(ranges.isReady(store.getValueStore().getID(uri("age"))));
+		assertTrue(ranges.isReady(store.getValueStore().getID(uri("time"))));
+	}
+
+	public void testNumericBounds() throws Exception {
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a > 30) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a >= 30) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a < 0) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a <= -10.5) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a = 40) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a > 29.5e0) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a > \"100\"^^xsd:decimal) }");
+	}
+
+	public void testReversedComparison() throws Exception {
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(30 < ?a) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(30 >= ?a) }");
+	}
+
+	public void testWindow() throws Exception {
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a > 10 && ?a <= 20) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a > 10) FILTER(?a < 20) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a > 10 && ?a > 15 && ?a < 30 && ?a < 25) }");
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a > 20 && ?a < 10) }");
+	}
+
+	public void testJoin() throws Exception {
+		assertSameResults("SELECT * WHERE { ?x ex:name ?n . ?x ex:age ?a . FILTER(?a >= 100) }");
+		assertSameResults("SELECT ?n WHERE { ?x ex:age ?a . ?x ex:name ?n . FILTER(?a < -15 || ?a > 115) }");
+	}
+
+	public void testMixedTypes() throws Exception {
+		// a number and a dateTime bound can not be scanned for together
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . "
+				+ "FILTER(?a > 10 && ?a < \"2010-01-01T00:00:00Z\"^^xsd:dateTime) }");
+	}
+
+	public void testDateTimeWithTimezone() throws Exception {
+		assertSameResults("SELECT * WHERE { ?x ex:time ?t . FILTER(?t >= \"2010-01-01T12:00:00Z\"^^xsd:dateTime) }");
+		assertSameResults("SELECT * WHERE { ?x ex:time ?t . FILTER(?t < \"2010-01-01T12:00:00+02:00\"^^xsd:dateTime) }");
+		assertSameResults("SELECT * WHERE { ?x ex:time ?t . "
+				+ "FILTER(?t > \"2009-12-31T00:00:00Z\"^^xsd:dateTime && ?t < \"2010-01-02T00:00:00Z\"^^xsd:dateTime) }");
+	}
+
+	public void testDateTimeWithoutTimezone() throws Exception {
+		// values with a timezone less than 14 hours off are indeterminate,
+		// those just outside must be found
+		assertSameResults("SELECT * WHERE { ?x ex:time ?t . FILTER(?t >= \"2010-01-01T12:00:00\"^^xsd:dateTime) }");
+		assertSameResults("SELECT * WHERE { ?x ex:time ?t . FILTER(?t > \"2010-01-01T12:00:00\"^^xsd:dateTime) }");
+		assertSameResults("SELECT * WHERE { ?x ex:time ?t . FILTER(?t <= \"2010-01-01T12:00:00\"^^xsd:dateTime) }");
+		assertSameResults("SELECT * WHERE { ?x ex:time ?t . FILTER(?t < \"2010-01-01T12:00:00\"^^xsd:dateTime) }");
+		assertSameResults("SELECT * WHERE { ?x ex:time ?t . FILTER(?t = \"2010-01-01T12:00:00\"^^xsd:dateTime) }");
+
+		List<String> later = evaluate("SELECT ?x WHERE { ?x ex:time ?t . "
+				+ "FILTER(?t > \"2010-01-01T12:00:00\"^^xsd:dateTime) }");
+		assertTrue(later.contains("{x=" + uri("event11") + "}"));
+		assertFalse(later.contains("{x=" + uri("event12") + "}"));
+	}
+
+	public void testAfterRemoval() throws Exception {
+		conn.begin();
+		conn.removeStatements(null, uri("age"), vf.createLiteral(50));
+		conn.removeStatements(uri("event0"), null, null);
+		conn.commit();
+
+		assertSameResults("SELECT * WHERE { ?x ex:age ?a . FILTER(?a >= 50 && ?a <= 51) }");
+		assertSameResults("SELECT * WHERE { ?x ex:time ?t . FILTER(?t >= \"2010-01-01T12:00:00\"^^xsd:dateTime) }");
+	}
+
+	public void testEncodingOrder() throws Exception {
+		List<Literal> values = new ArrayList<Literal>();
+		for (double d : new double[] { Double.NEGATIVE_INFINITY, -1e300, -100.5, -1, -1e-300, 0, 1e-300, 1,
+				100.5, 1e300, Double.POSITIVE_INFINITY })
+		{
+			values.add(vf.createLiteral(d));
+		}
+		assertOrdered(values);
+
+		values.clear();
+		for (String dateTime : new String[] { "1969-12-31T23:59:59Z", "1970-01-01T00:00:00Z",
+				"2010-01-01T11:59:59Z", "2010-01-01T12:00:00Z", "2010-01-01T12:00:00-01:00" })
+		{
+			values.add(vf.createLiteral(dateTime, XMLSchema.DATETIME));
+		}
+		assertOrdered(values);
+
+		assertNull(RangeIndexTable.encode(vf.createLiteral("42")));
+		assertNull(RangeIndexTable.encode(vf.createLiteral("NaN", XMLSchema.DOUBLE)));
+		assertNull(RangeIndexTable.encode(vf.createLiteral("unknown", XMLSchema.INT)));
+	}
+
+	public void testBoundsWithoutTimezone() throws Exception {
+		Literal local = vf.createLiteral("2010-01-01T12:00:00", XMLSchema.DATETIME);
+		Literal earliest = vf.createLiteral("2010-01-01T12:00:00+14:00", XMLSchema.DATETIME);
+		Literal latest = vf.createLiteral("2010-01-01T12:00:00-14:00", XMLSchema.DATETIME);
+
+		// the bounds of a dateTime without timezone cover every timezone
+		assertTrue(Bytes.compareTo(RangeIndexTable.encodeLowerBound(local), RangeIndexTable.encode(earliest)) <= 0);
+		assertTrue(Bytes.compareTo(RangeIndexTable.encodeUpperBound(local), RangeIndexTable.encode(latest)) >= 0);
+
+		// and values with a timezone are not widened
+		assertTrue(Bytes.equals(RangeIndexTable.encode(earliest), RangeIndexTable.encodeLowerBound(earliest)));
+		assertTrue(Bytes.equals(RangeIndexTable.encode(earliest), RangeIndexTable.encodeUpperBound(earliest)));
+	}
+
+	private static void assertOrdered(List<Literal> values) {
+		for (int i = 1; i < values.size(); ++i) {
+			byte[] previous = RangeIndexTable.encode(values.get(i - 1));
+			byte[] current = RangeIndexTable.encode(values.get(i));
+			assertTrue(values.get(i - 1) + " < " + values.get(i), Bytes.compareTo(previous, current) < 0);
+		}
+	}
+}
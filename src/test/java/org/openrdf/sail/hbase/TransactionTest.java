@@ -0,0 +1,142 @@
+package org.openrdf.sail.hbase;
+
+import org.openrdf.cursor.Cursor;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.sail.SailConnection;
+
+/**
+ * Checks that a transaction reads its own buffered changes, that others do
+ * not see them before the commit, and that a rollback discards them.
+ */
+public class TransactionTest extends LocalStoreTestCase {
+
+	private URI knows;
+
+	private HBaseConnection other;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		knows = uri("knows");
+		for (int i = 0; i < 10; ++i) {
+			add(uri("person" + i), knows, uri("person" + (i + 1)));
+		}
+
+		other = (HBaseConnection)store.getConnectionInternal();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		try {
+			other.close();
+		}
+		finally {
+			super.tearDown();
+		}
+	}
+
+	private static int count(SailConnection connection, Resource subj, URI pred, Value obj)
+		throws Exception
+	{
+		Cursor<? extends Statement> statements = connection.getStatements(subj, pred, obj, false);
+		try {
+			int count = 0;
+			while (statements.next() != null) {
+				++count;
+			}
+			return count;
+		}
+		finally {
+			statements.close();
+		}
+	}
+
+	public void testReadYourWrites() throws Exception {
+		conn.begin();
+		add(uri("person0"), knows, uri("person5"));
+		add(uri("person11"), knows, uri("person0"));
+
+		assertTrue(conn.hasPendingChanges());
+		assertEquals(12, count(conn, null, knows, null));
+		assertEquals(2, count(conn, uri("person0"), null, null));
+		assertEquals(2, count(conn, null, null, uri("person5")));
+		assertEquals(12, conn.size(null, knows, null, false));
+		assertEquals(2, evaluate("SELECT * WHERE { ex:person0 ex:knows ?y }").size());
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . ?y ex:knows ?z }");
+
+		// not visible to others before the commit
+		assertEquals(10, count(other, null, knows, null));
+		assertEquals(1, count(other, uri("person0"), null, null));
+
+		conn.commit();
+
+		assertFalse(conn.hasPendingChanges());
+		assertEquals(12, count(other, null, knows, null));
+		assertEquals(12, other.size(null, knows, null, false));
+	}
+
+	public void testRemoveInTransaction() throws Exception {
+		conn.begin();
+		conn.removeStatements(uri("person3"), knows, null);
+
+		assertEquals(9, count(conn, null, knows, null));
+		assertEquals(0, count(conn, uri("person3"), null, null));
+		assertEquals(9, conn.size(null, knows, null, false));
+		assertEquals(10, count(other, null, knows, null));
+
+		conn.commit();
+
+		assertEquals(9, count(other, null, knows, null));
+		assertEquals(0, count(other, uri("person3"), null, null));
+	}
+
+	public void testAddThenRemove() throws Exception {
+		conn.begin();
+		add(uri("person20"), knows, uri("person21"));
+		assertEquals(1, count(conn, uri("person20"), null, null));
+
+		// the triple never needs to reach the store
+		conn.removeStatements(uri("person20"), null, null);
+		assertFalse(conn.hasPendingChanges());
+		assertEquals(0, count(conn, uri("person20"), null, null));
+
+		conn.commit();
+		assertEquals(10, count(other, null, knows, null));
+	}
+
+	public void testRemoveThenAdd() throws Exception {
+		conn.begin();
+		conn.removeStatements(uri("person4"), knows, uri("person5"));
+		assertEquals(0, count(conn, uri("person4"), null, null));
+
+		add(uri("person4"), knows, uri("person5"));
+		assertEquals(1, count(conn, uri("person4"), null, null));
+		assertEquals(10, count(conn, null, knows, null));
+		assertEquals(1, conn.getMutationBuffer().size());
+
+		conn.commit();
+		assertEquals(1, count(other, uri("person4"), null, null));
+		assertEquals(10, count(other, null, knows, null));
+	}
+
+	public void testRollback() throws Exception {
+		conn.begin();
+		add(uri("person30"), knows, uri("person0"));
+		conn.removeStatements(uri("person1"), null, null);
+		assertEquals(10, count(conn, null, knows, null));
+
+		conn.rollback();
+
+		assertNull(conn.getMutationBuffer());
+		assertFalse(conn.hasPendingChanges());
+		assertEquals(0, count(conn, uri("person30"), null, null));
+		assertEquals(1, count(conn, uri("person1"), null, null));
+		assertEquals(10, count(conn, null, knows, null));
+		assertEquals(10, count(other, null, knows, null));
+		assertEquals(10, conn.size(null, knows, null, false));
+	}
+}
@@ -0,0 +1,126 @@
+package org.openrdf.sail.hbase.data;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.openrdf.model.URI;
+import org.openrdf.sail.hbase.LocalStoreTestCase;
+import org.openrdf.sail.hbase.config.HBaseStoreConfig;
+import org.openrdf.sail.hbase.config.IndexSpec;
+
+/**
+ * Checks that an index that is added to a store with data ends up with the
+ * same triples as the existing indexes while statements keep being added
+ * and removed, and that it is not read from before it is complete.
+ */
+public class IndexBuilderTest extends LocalStoreTestCase {
+
+	private static final int PEOPLE = 4000;
+
+	private static final long BUILD_TIMEOUT = 60000;
+
+	@Override
+	protected HBaseStoreConfig createConfig() {
+		HBaseStoreConfig config = super.createConfig();
+		config.setIndexBuildThreads(4);
+		// slow enough for the writes below to overlap with the copy
+		config.setIndexBuildRate(2000);
+		return config;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		URI name = uri("name");
+		URI knows = uri("knows");
+
+		conn.begin();
+		for (int i = 0; i < PEOPLE; ++i) {
+			URI person = uri("person" + i);
+			URI graph = uri("graph" + i % 8);
+			add(person, name, vf.createLiteral("Person " + i), graph);
+			add(person, knows, uri("person" + (i + 1) % PEOPLE), graph);
+		}
+		conn.commit();
+	}
+
+	private TripleIndex getIndex(String spec) {
+		String name = IndexSpec.parse(spec).getName();
+		for (TripleIndex index : store.getTripleTable().getIndexes()) {
+			if (index.getName().equals(name)) {
+				return index;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the IDs of all triples of an index.
+	 */
+	private Set<String> readAll(TripleIndex index) throws Exception {
+		Set<String> triples = new HashSet<String>();
+		HBaseCursor cursor = store.getTripleTable().getTriplesInternal(
+				conn.getHTable(index.getTableName()), index, null, null, null, null);
+		try {
+			KeyValue kv;
+			while ((kv = cursor.next()) != null) {
+				assertTrue(triples.add(Arrays.toString(index.getIDs(kv, new int[4]))));
+			}
+		}
+		finally {
+			cursor.close();
+		}
+		return triples;
+	}
+
+	public void testBuildWhileWriting() throws Exception {
+		TripleTable triples = store.getTripleTable();
+		byte[] knowsID = store.getValueStore().getID(uri("knows"));
+
+		store.setTripleIndexes("pso/c");
+		TripleIndex index = getIndex("pso/c");
+		assertNotNull(index);
+
+		URI age = uri("age");
+		for (int i = 0; i < PEOPLE; i += 4) {
+			URI person = uri("person" + i);
+			add(person, age, vf.createLiteral(i), uri("graph" + i % 8));
+			conn.removeStatements(person, uri("knows"), null);
+
+			// the new index is not read from until it is complete
+			TripleIndex best = triples.getBestIndex(null, knowsID, null, null);
+			if (!index.isReady()) {
+				assertNotSame(index, best);
+			}
+		}
+
+		long deadline = System.currentTimeMillis() + BUILD_TIMEOUT;
+		while (!index.isReady()) {
+			assertTrue("index not built in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(50);
+		}
+
+		Set<String> expected = readAll(getIndex("csp/o"));
+		// every fourth person has gained an age and lost the person they know
+		assertEquals(PEOPLE * 2, expected.size());
+		assertEquals(expected, readAll(index));
+
+		assertSame(index, triples.getBestIndex(null, knowsID, null, null));
+		assertSameResults("SELECT * WHERE { ?x ex:knows ?y . ?x ex:age ?a }");
+		assertTrue(evaluate("SELECT * WHERE { ex:person4 ex:knows ?y }").isEmpty());
+	}
+
+	public void testExistingIndexIsKept() throws Exception {
+		TripleIndex index = getIndex("csp/o");
+		int count = store.getTripleTable().getIndexes().length;
+
+		store.setTripleIndexes("csp/o");
+
+		assertEquals(count, store.getTripleTable().getIndexes().length);
+		assertSame(index, getIndex("csp/o"));
+		assertTrue(index.isReady());
+	}
+}
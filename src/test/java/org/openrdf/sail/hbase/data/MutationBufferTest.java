@@ -0,0 +1,122 @@
+package org.openrdf.sail.hbase.data;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Checks how {@link MutationBuffer} coalesces the changes to triples and
+ * finds the added triples of a pattern.
+ */
+public class MutationBufferTest extends TestCase {
+
+	private static final byte[] S1 = Bytes.toBytes(0x100);
+	private static final byte[] S2 = Bytes.toBytes(0x200);
+	private static final byte[] P = Bytes.toBytes(0x300);
+	private static final byte[] O1 = Bytes.toBytes(0x400);
+	private static final byte[] O2 = Bytes.toBytes(0x500);
+	private static final byte[] C = ValueTable.NULL_CONTEXT;
+
+	private MutationBuffer buffer;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		buffer = new MutationBuffer();
+	}
+
+	private static void assertTriple(byte[][] ids, byte[] subj, byte[] pred, byte[] obj, byte[] ctx) {
+		assertTrue(Bytes.equals(subj, ids[0]));
+		assertTrue(Bytes.equals(pred, ids[1]));
+		assertTrue(Bytes.equals(obj, ids[2]));
+		assertTrue(Bytes.equals(ctx, ids[3]));
+	}
+
+	public void testAdd() throws Exception {
+		assertTrue(buffer.isEmpty());
+		assertNull(buffer.getChange(S1, P, O1, C));
+
+		buffer.add(S1, P, O1, C);
+		buffer.add(S1, P, O1, C);
+
+		assertFalse(buffer.isEmpty());
+		assertEquals(1, buffer.size());
+		assertEquals(Boolean.TRUE, buffer.getChange(S1, P, O1, C));
+		assertTrue(buffer.getRemoved().isEmpty());
+
+		List<byte[][]> added = buffer.getAdded(null, null, null, null);
+		assertEquals(1, added.size());
+		assertTriple(added.get(0), S1, P, O1, C);
+	}
+
+	public void testAddedOfPattern() throws Exception {
+		buffer.add(S1, P, O1, C);
+		buffer.add(S1, P, O2, C);
+		buffer.add(S2, P, O1, C);
+
+		assertEquals(3, buffer.getAdded(null, P, null, null).size());
+		assertEquals(2, buffer.getAdded(S1, null, null, null).size());
+		assertEquals(2, buffer.getAdded(null, null, O1, C).size());
+		assertEquals(1, buffer.getAdded(S2, P, null, null).size());
+		assertTriple(buffer.getAdded(S2, P, null, null).get(0), S2, P, O1, C);
+		assertTriple(buffer.getAdded(S1, null, O2, null).get(0), S1, P, O2, C);
+
+		assertTrue(buffer.getAdded(S2, null, O2, null).isEmpty());
+		assertTrue(buffer.getAdded(P, null, null, null).isEmpty());
+	}
+
+	public void testRemoveAdded() throws Exception {
+		buffer.add(S1, P, O1, C);
+		buffer.add(S1, P, O2, C);
+		buffer.remove(S1, P, O1, C);
+
+		// the last change wins
+		assertEquals(Boolean.FALSE, buffer.getChange(S1, P, O1, C));
+		assertEquals(2, buffer.size());
+
+		List<byte[][]> added = buffer.getAdded(S1, null, null, null);
+		assertEquals(1, added.size());
+		assertTriple(added.get(0), S1, P, O2, C);
+
+		List<byte[][]> removed = buffer.getRemoved();
+		assertEquals(1, removed.size());
+		assertTriple(removed.get(0), S1, P, O1, C);
+	}
+
+	public void testAddRemoved() throws Exception {
+		buffer.remove(S1, P, O1, C);
+		buffer.add(S1, P, O1, C);
+
+		assertEquals(Boolean.TRUE, buffer.getChange(S1, P, O1, C));
+		assertEquals(1, buffer.size());
+		assertTrue(buffer.getRemoved().isEmpty());
+		assertEquals(1, buffer.getAdded(null, null, O1, null).size());
+	}
+
+	public void testCancel() throws Exception {
+		buffer.add(S1, P, O1, C);
+		buffer.add(S2, P, O1, C);
+		buffer.cancel(S1, P, O1, C);
+
+		assertNull(buffer.getChange(S1, P, O1, C));
+		assertEquals(1, buffer.size());
+		assertTrue(buffer.getAdded(S1, null, null, null).isEmpty());
+		assertEquals(1, buffer.getAdded(null, null, O1, null).size());
+
+		buffer.cancel(S2, P, O1, C);
+		assertTrue(buffer.isEmpty());
+		assertTrue(buffer.getAdded(null, null, null, null).isEmpty());
+	}
+
+	public void testClear() throws Exception {
+		buffer.add(S1, P, O1, C);
+		buffer.remove(S2, P, O2, C);
+		buffer.clear();
+
+		assertTrue(buffer.isEmpty());
+		assertTrue(buffer.getAdded(null, P, null, null).isEmpty());
+		assertTrue(buffer.getRemoved().isEmpty());
+	}
+}
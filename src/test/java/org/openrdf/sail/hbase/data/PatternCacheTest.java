@@ -0,0 +1,254 @@
+package org.openrdf.sail.hbase.data;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.cursor.Cursor;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.sail.hbase.HBaseConnection;
+import org.openrdf.sail.hbase.LocalStoreTestCase;
+import org.openrdf.sail.hbase.config.HBaseStoreConfig;
+import org.openrdf.sail.hbase.config.IndexSpec;
+
+/**
+ * Checks that {@link PatternCache} never answers a pattern with rows from
+ * before a write that the pattern may match, also when the write overlaps
+ * the read that fills the cache.
+ */
+public class PatternCacheTest extends LocalStoreTestCase {
+
+	private static final byte[] SUBJ = Bytes.toBytes(0x12345670);
+	private static final byte[] PRED = Bytes.toBytes(0x00abcde0);
+	private static final byte[] OBJ = Bytes.toBytes(0x7fffff01);
+	private static final byte[] CTX = ValueTable.NULL_CONTEXT;
+
+	private static final byte[] FAMILY = Bytes.toBytes("t");
+
+	private final TripleIndex index = new TripleIndex("test", IndexSpec.parse("pso/c"), null);
+
+	@Override
+	protected HBaseStoreConfig createConfig() {
+		HBaseStoreConfig config = super.createConfig();
+		config.setPatternCacheSize(1 << 20);
+		return config;
+	}
+
+	/**
+	 * Creates the rows of a pattern, each holding one cell with a version.
+	 */
+	private static Result[] rows(int count, int version) {
+		Result[] rows = new Result[count];
+		for (int i = 0; i < count; ++i) {
+			KeyValue cell = new KeyValue(Bytes.toBytes(i), FAMILY, Bytes.toBytes(i), Bytes.toBytes(version));
+			rows[i] = new Result(new KeyValue[] { cell });
+		}
+		return rows;
+	}
+
+	private static int version(Result[] rows) {
+		return Bytes.toInt(rows[0].raw()[0].getValue());
+	}
+
+	public void testHitUntilWrite() throws Exception {
+		PatternCache cache = new PatternCache(1 << 20);
+		PatternCache.Pattern pattern = cache.getPattern(index, null, PRED, null, null);
+
+		assertNull(cache.get(pattern));
+		cache.put(pattern, cache.getEpoch(pattern), rows(3, 1));
+		assertEquals(1, version(cache.get(pattern)));
+		assertEquals(3, cache.get(pattern).length);
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// a triple with the predicate of the pattern is written
+		cache.invalidate(SUBJ, PRED, OBJ, CTX);
+		assertNull(cache.get(pattern));
+		assertEquals(0, cache.getSize());
+	}
+
+	public void testPutAfterWriteIsDropped() throws Exception {
+		PatternCache cache = new PatternCache(1 << 20);
+		PatternCache.Pattern pattern = cache.getPattern(index, SUBJ, PRED, null, null);
+
+		// the rows were read before a write that finished before they are put
+		long epoch = cache.getEpoch(pattern);
+		Result[] rows = rows(1, 1);
+		cache.invalidate(SUBJ, PRED, Bytes.toBytes(0x01010100), CTX);
+		cache.put(pattern, epoch, rows);
+
+		assertNull(cache.get(pattern));
+		assertEquals(0, cache.getSize());
+
+		cache.put(pattern, cache.getEpoch(pattern), rows(1, 2));
+		assertEquals(2, version(cache.get(pattern)));
+	}
+
+	public void testWildcardPattern() throws Exception {
+		PatternCache cache = new PatternCache(1 << 20);
+		PatternCache.Pattern all = cache.getPattern(index, null, null, null, null);
+
+		cache.put(all, cache.getEpoch(all), rows(2, 1));
+		assertNotNull(cache.get(all));
+
+		// any write may match a pattern without fixed IDs
+		cache.invalidate(Bytes.toBytes(0x01010100), Bytes.toBytes(0x02020200), Bytes.toBytes(0x03030300), CTX);
+		assertNull(cache.get(all));
+	}
+
+	public void testPatternsAreKeyedByIndex() throws Exception {
+		PatternCache cache = new PatternCache(1 << 20);
+		TripleIndex other = new TripleIndex("other", IndexSpec.parse("csp/o"), null);
+		PatternCache.Pattern pattern = cache.getPattern(index, null, PRED, null, null);
+
+		cache.put(pattern, cache.getEpoch(pattern), rows(1, 1));
+		assertNull(cache.get(cache.getPattern(other, null, PRED, null, null)));
+		assertNull(cache.get(cache.getPattern(index, SUBJ, PRED, null, null)));
+		assertNotNull(cache.get(cache.getPattern(index, null, PRED, null, null)));
+	}
+
+	public void testInvalidateAll() throws Exception {
+		PatternCache cache = new PatternCache(1 << 20);
+		PatternCache.Pattern pattern = cache.getPattern(index, SUBJ, null, OBJ, null);
+
+		long epoch = cache.getEpoch(pattern);
+		cache.put(pattern, epoch, rows(1, 1));
+		assertTrue(cache.getSize() > 0);
+
+		cache.invalidateAll();
+		assertEquals(0, cache.getSize());
+		assertNull(cache.get(pattern));
+
+		// rows read before the invalidation are not kept either
+		cache.put(pattern, epoch, rows(1, 1));
+		assertNull(cache.get(pattern));
+	}
+
+	public void testSizeLimits() throws Exception {
+		// a row of one small cell takes 97 bytes, so a pattern may have one
+		PatternCache cache = new PatternCache(1600);
+
+		PatternCache.Pattern large = cache.getPattern(index, SUBJ, null, null, null);
+		cache.put(large, cache.getEpoch(large), rows(2, 1));
+		assertNull(cache.get(large));
+
+		// the least recently read patterns are dropped first
+		PatternCache.Pattern[] patterns = new PatternCache.Pattern[20];
+		for (int i = 0; i < patterns.length; ++i) {
+			patterns[i] = cache.getPattern(index, Bytes.toBytes(i + 1 << 4), null, null, null);
+			cache.put(patterns[i], cache.getEpoch(patterns[i]), rows(1, i));
+			assertNotNull(cache.get(patterns[0]));
+			assertTrue(cache.getSize() <= cache.getCapacity());
+		}
+		assertNull(cache.get(patterns[1]));
+		assertEquals(19, version(cache.get(patterns[19])));
+	}
+
+	public void testPutRacingWrites() throws Exception {
+		final PatternCache cache = new PatternCache(1 << 20);
+		final PatternCache.Pattern pattern = cache.getPattern(index, null, PRED, null, null);
+
+		// the version in the table, and the last version whose write finished
+		final AtomicInteger table = new AtomicInteger();
+		final AtomicInteger written = new AtomicInteger();
+
+		Thread writer = new Thread() {
+
+			@Override
+			public void run() {
+				for (int version = 1; version <= 20000; ++version) {
+					table.set(version);
+					cache.invalidate(SUBJ, PRED, Bytes.toBytes(version << 4), CTX);
+					written.set(version);
+				}
+			}
+		};
+		writer.start();
+
+		try {
+			while (writer.isAlive()) {
+				int floor = written.get();
+				Result[] rows = cache.get(pattern);
+				if (rows == null) {
+					long epoch = cache.getEpoch(pattern);
+					rows = rows(1, table.get());
+					cache.put(pattern, epoch, rows);
+				}
+				assertTrue(version(rows) >= floor);
+			}
+		}
+		finally {
+			writer.join();
+		}
+
+		Result[] rows = cache.get(pattern);
+		assertTrue(rows == null || version(rows) == 20000);
+	}
+
+	private int count(HBaseConnection connection, URI pred) throws Exception {
+		Cursor<? extends Statement> statements = connection.getStatements(null, pred, null, false);
+		try {
+			int count = 0;
+			while (statements.next() != null) {
+				++count;
+			}
+			return count;
+		}
+		finally {
+			statements.close();
+		}
+	}
+
+	public void testStoreReadsRacingWrites() throws Exception {
+		final URI knows = uri("knows");
+		PatternCache cache = store.getTripleTable().getPatternCache();
+		assertNotNull(cache);
+
+		add(uri("person0"), knows, uri("person1"));
+		assertEquals(1, count(conn, knows));
+		assertEquals(1, count(conn, knows));
+		assertTrue(cache.getHits() > 0);
+
+		final HBaseConnection other = (HBaseConnection)store.getConnectionInternal();
+		final AtomicInteger written = new AtomicInteger(1);
+		final Exception[] failure = new Exception[1];
+
+		Thread writer = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					for (int i = 1; i < 500; ++i) {
+						other.addStatement(uri("person" + i), knows, uri("person" + (i + 1)));
+						written.incrementAndGet();
+					}
+				}
+				catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		};
+		writer.start();
+
+		try {
+			while (writer.isAlive()) {
+				int floor = written.get();
+				assertTrue(count(conn, knows) >= floor);
+			}
+		}
+		finally {
+			writer.join();
+			other.close();
+		}
+
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		assertEquals(500, count(conn, knows));
+
+		conn.removeStatements(uri("person0"), null, null);
+		assertEquals(499, count(conn, knows));
+	}
+}
@@ -0,0 +1,194 @@
+package org.openrdf.sail.hbase.data;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openrdf.sail.hbase.config.IndexSpec;
+
+/**
+ * Checks that the rows written by {@link TripleRowCodec} read back as the
+ * IDs they were written from.
+ */
+public class TripleRowCodecTest extends TestCase {
+
+	private static final byte[] SUBJ = Bytes.toBytes(0x12345670);
+	private static final byte[] PRED = Bytes.toBytes(0x00abcde0);
+	private static final byte[] OBJ = Bytes.toBytes(0x7fffff01);
+	private static final byte[] CTX = ValueTable.NULL_CONTEXT;
+
+	/**
+	 * Writes the row of a triple and returns its cell.
+	 */
+	private static KeyValue write(TripleRowCodec codec, byte[] subj, byte[] pred, byte[] obj, byte[] ctx)
+		throws Exception
+	{
+		byte[][] triple = { subj, pred, obj, ctx };
+		byte salt = codec.getSaltPosition() >= 0 ? codec.getSalt(triple[codec.getSaltPosition()]) : 0;
+		byte[] key = codec.getKey(salt, subj, pred, obj, ctx, true);
+		byte[][] families = codec.getFamilies(subj, pred, obj, ctx);
+		assertEquals(1, families.length);
+
+		byte[] buffer = new byte[codec.getQualifierLength() + codec.getValueLength()];
+		Put put = codec.getPut(key, families[0], subj, pred, obj, ctx, 1L, buffer);
+
+		// the cell must not depend on the buffer after the put
+		for (int i = 0; i < buffer.length; ++i) {
+			buffer[i] = (byte)0xff;
+		}
+
+		List<KeyValue> cells = put.getFamilyMap().get(families[0]);
+		assertEquals(1, cells.size());
+		return cells.get(0);
+	}
+
+	/**
+	 * Checks that all positions of a cell read back as the triple.
+	 */
+	private static void assertRoundTrip(TripleRowCodec codec, byte[] subj, byte[] pred, byte[] obj, byte[] ctx)
+		throws Exception
+	{
+		KeyValue cell = write(codec, subj, pred, obj, ctx);
+		byte[][] expected = { subj, pred, obj, ctx };
+
+		int[] ids = codec.readIDs(cell, new int[4], null);
+		byte[][] byteIDs = codec.readIDs(cell, new byte[4][ValueTable.NUM_VALUE_BYTES]);
+		for (int position = 0; position < 4; ++position) {
+			assertEquals(Bytes.toInt(expected[position]), ids[position]);
+			assertTrue(Bytes.equals(expected[position], byteIDs[position]));
+			assertEquals(Bytes.toInt(expected[position]), codec.readID(cell, position));
+			assertTrue(Bytes.equals(expected[position],
+					codec.readID(cell, position, new byte[ValueTable.NUM_VALUE_BYTES])));
+		}
+
+		// only the requested positions are read
+		int[] some = codec.readIDs(cell, new int[4], new boolean[] { false, false, true, false });
+		assertEquals(0, some[0]);
+		assertEquals(Bytes.toInt(obj), some[2]);
+	}
+
+	public void testSaltedRoundTrip() throws Exception {
+		TripleRowCodec codec = new TripleRowCodec(new IndexSpec("pso", "c", null, "0000", 's', 4), null);
+
+		assertEquals(1, codec.getSaltLength());
+		assertEquals(0, codec.getSaltPosition());
+		assertEquals(1 + 3 * ValueTable.NUM_VALUE_BYTES, codec.getKeyLength());
+
+		assertRoundTrip(codec, SUBJ, PRED, OBJ, CTX);
+		assertRoundTrip(codec, OBJ, SUBJ, PRED, Bytes.toBytes(0x0fedcba0));
+	}
+
+	public void testSaltedKey() throws Exception {
+		TripleRowCodec codec = new TripleRowCodec(new IndexSpec("pso", "c", null, "0000", 's', 4), null);
+		KeyValue cell = write(codec, SUBJ, PRED, OBJ, CTX);
+
+		byte[] row = cell.getRow();
+		assertEquals(codec.getSalt(SUBJ), row[0]);
+		assertEquals(Bytes.toInt(PRED), Bytes.toInt(row, 1));
+
+		// a scan of the predicate within the salt of the subject finds the row
+		byte[] start = codec.getKey(row[0], null, PRED, null, null, true);
+		byte[] stop = codec.getKey(row[0], null, PRED, null, null, false);
+		assertTrue(Bytes.compareTo(start, row) <= 0);
+		assertTrue(Bytes.compareTo(row, stop) <= 0);
+	}
+
+	public void testSaltValues() throws Exception {
+		for (int bits = 1; bits <= 8; ++bits) {
+			TripleRowCodec codec = new TripleRowCodec(new IndexSpec("spo", "c", null, "0000", 'p', bits), null);
+			int maxSalt = codec.getMaxSalt() & 0xff;
+			assertEquals((1 << bits) - 1, maxSalt);
+
+			Set<Integer> salts = new HashSet<Integer>();
+			for (int id = 1; id < 10000; ++id) {
+				int salt = codec.getSalt(Bytes.toBytes(id << 4)) & 0xff;
+				assertTrue(salt <= maxSalt);
+				salts.add(salt);
+
+				// the collision count in the lowest bits does not change the salt
+				assertEquals(salt, codec.getSalt(Bytes.toBytes(id << 4 | 0x0f)) & 0xff);
+			}
+
+			// consecutive hashes are spread over all salts
+			assertEquals(maxSalt + 1, salts.size());
+		}
+	}
+
+	public void testPlainRoundTrip() throws Exception {
+		for (IndexSpec spec : new IndexSpec[] {
+				new IndexSpec("csp", "o", null, "0060"), new IndexSpec("opc", "s", null, "0600"),
+				IndexSpec.parse("spoc"), IndexSpec.parse("po/sc"), IndexSpec.parse("c/s/po") })
+		{
+			TripleRowCodec codec = new TripleRowCodec(spec, null);
+			assertRoundTrip(codec, SUBJ, PRED, OBJ, CTX);
+			assertRoundTrip(codec, CTX, OBJ, SUBJ, PRED);
+		}
+	}
+
+	public void testPlainLayout() throws Exception {
+		TripleRowCodec codec = new TripleRowCodec(IndexSpec.parse("c/s/po"), null);
+
+		assertEquals(ValueTable.NUM_VALUE_BYTES, codec.getKeyLength());
+		assertEquals(ValueTable.NUM_VALUE_BYTES, codec.getQualifierLength());
+		assertEquals(2 * ValueTable.NUM_VALUE_BYTES, codec.getValueLength());
+
+		KeyValue cell = write(codec, SUBJ, PRED, OBJ, CTX);
+		assertTrue(Bytes.equals(CTX, cell.getRow()));
+		assertTrue(Bytes.equals(SUBJ, cell.getQualifier()));
+		assertTrue(Bytes.equals(Bytes.add(PRED, OBJ), cell.getValue()));
+
+		// a missing qualifier or value is left out rather than written
+		assertNull(codec.getQualifier(null, PRED, OBJ, CTX));
+		assertNull(codec.getValue(SUBJ, null, OBJ, CTX));
+	}
+
+	public void testFamilies() throws Exception {
+		TripleRowCodec codec = new TripleRowCodec(new IndexSpec("csp", "o", null, "0060"), null);
+
+		// the lowest six bits of the predicate select one of 64 families
+		byte[][] families = codec.getFamilies(SUBJ, PRED, OBJ, CTX);
+		assertEquals(1, families.length);
+		assertEquals(64, codec.getFamilies(SUBJ, null, OBJ, CTX).length);
+		assertTrue(Bytes.equals(families[0], codec.getFamilies(null, PRED, null, null)[0]));
+		assertFalse(Bytes.equals(families[0], codec.getFamilies(null, Bytes.toBytes(0x00abcde1), null, null)[0]));
+	}
+
+	public void testPartitionedRoundTrip() throws Exception {
+		IndexSpec spec = new IndexSpec("so", "c", null, "000", "http://example.org/knows");
+		TripleRowCodec codec = new TripleRowCodec(spec, PRED);
+
+		// the predicate is implied by the partition
+		assertEquals(2 * ValueTable.NUM_VALUE_BYTES, codec.getKeyLength());
+		assertEquals(3, codec.getFieldPositions().length);
+
+		KeyValue cell = write(codec, SUBJ, PRED, OBJ, CTX);
+		assertEquals(2 * ValueTable.NUM_VALUE_BYTES, cell.getRowLength());
+		assertEquals(Bytes.toInt(SUBJ), Bytes.toInt(cell.getRow(), 0));
+		assertEquals(Bytes.toInt(OBJ), Bytes.toInt(cell.getRow(), ValueTable.NUM_VALUE_BYTES));
+
+		assertRoundTrip(codec, SUBJ, PRED, OBJ, CTX);
+		assertRoundTrip(codec, OBJ, PRED, SUBJ, Bytes.toBytes(0x0fedcba0));
+	}
+
+	public void testPartitionedKeyIgnoresPredicate() throws Exception {
+		IndexSpec spec = new IndexSpec("os", "c", null, "000", "http://example.org/knows");
+		TripleRowCodec codec = new TripleRowCodec(spec, PRED);
+
+		assertTrue(Bytes.equals(codec.getKey((byte)0, SUBJ, PRED, OBJ, CTX, true),
+				codec.getKey((byte)0, SUBJ, null, OBJ, CTX, true)));
+		assertTrue(Bytes.equals(Bytes.add(OBJ, SUBJ), codec.getKey((byte)0, SUBJ, PRED, OBJ, CTX, true)));
+	}
+
+	public void testUnsaltedHasNoSalt() throws Exception {
+		TripleRowCodec codec = new TripleRowCodec(new IndexSpec("pso", "c", null, "0000"), null);
+
+		assertEquals(0, codec.getSaltLength());
+		assertEquals(-1, codec.getSaltPosition());
+		assertEquals(3 * ValueTable.NUM_VALUE_BYTES, codec.getKeyLength());
+	}
+}
@@ -0,0 +1,169 @@
+package org.openrdf.sail.hbase.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the lookups, the clock eviction and the removal of entries from
+ * the probe sequences of {@link IntObjectCache}.
+ */
+public class IntObjectCacheTest extends TestCase {
+
+	/**
+	 * The home slot of a key in a table of the supplied length, as the cache
+	 * computes it.
+	 */
+	private static int slot(int key, int length) {
+		return (key * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(length) + 1);
+	}
+
+	private static String value(int key) {
+		return "value" + key;
+	}
+
+	public void testPutAndGet() throws Exception {
+		IntObjectCache<String> cache = new IntObjectCache<String>(100);
+
+		for (int key : new int[] { 1, -1, 42, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+			cache.put(key, value(key));
+		}
+		assertEquals(5, cache.size());
+		assertEquals(value(-1), cache.get(-1));
+		assertEquals(value(Integer.MIN_VALUE), cache.get(Integer.MIN_VALUE));
+		assertNull(cache.get(2));
+
+		cache.put(42, "other");
+		assertEquals(5, cache.size());
+		assertEquals("other", cache.get(42));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get(42));
+	}
+
+	public void testZeroKey() throws Exception {
+		IntObjectCache<String> cache = new IntObjectCache<String>(10);
+		assertNull(cache.get(0));
+
+		try {
+			cache.put(0, "zero");
+			fail("0 is not a valid key");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(0, cache.size());
+	}
+
+	public void testInvalidCapacity() throws Exception {
+		try {
+			new IntObjectCache<String>(0);
+			fail("the capacity must be positive");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testEvictsUnreferencedEntries() throws Exception {
+		IntObjectCache<String> cache = new IntObjectCache<String>(4);
+		for (int key = 1; key <= 4; ++key) {
+			cache.put(key, value(key));
+		}
+		cache.get(1);
+		cache.get(2);
+
+		cache.put(5, value(5));
+
+		assertEquals(4, cache.size());
+		assertEquals(value(1), cache.get(1));
+		assertEquals(value(2), cache.get(2));
+		assertEquals(value(5), cache.get(5));
+		assertTrue(cache.get(3) == null ^ cache.get(4) == null);
+	}
+
+	public void testEvictionMovesProbeSequenceBack() throws Exception {
+		// a capacity of 8 makes a table of 16 slots
+		IntObjectCache<String> cache = new IntObjectCache<String>(8);
+		int length = 16;
+
+		// four keys that share a home slot, so that they form one probe sequence
+		List<Integer> chain = new ArrayList<Integer>();
+		int home = slot(1, length);
+		for (int key = 1; chain.size() < 4; ++key) {
+			if (slot(key, length) == home) {
+				chain.add(key);
+			}
+		}
+
+		// and four keys far from that sequence
+		List<Integer> others = new ArrayList<Integer>();
+		for (int key = chain.get(3) + 1; others.size() < 4; ++key) {
+			if (((slot(key, length) - home) & (length - 1)) >= 8) {
+				others.add(key);
+			}
+		}
+
+		for (int key : chain) {
+			cache.put(key, value(key));
+		}
+		for (int key : others) {
+			cache.put(key, value(key));
+		}
+
+		// only the head of the sequence is not referenced, so it is evicted
+		for (int i = 1; i < 4; ++i) {
+			cache.get(chain.get(i));
+		}
+		for (int key : others) {
+			cache.get(key);
+		}
+		cache.put(1000003, value(1000003));
+
+		assertEquals(8, cache.size());
+		assertNull(cache.get(chain.get(0)));
+		for (int i = 1; i < 4; ++i) {
+			assertEquals(value(chain.get(i)), cache.get(chain.get(i)));
+		}
+		for (int key : others) {
+			assertEquals(value(key), cache.get(key));
+		}
+		assertEquals(value(1000003), cache.get(1000003));
+	}
+
+	public void testRandomUse() throws Exception {
+		Random random = new Random(42);
+
+		for (int capacity : new int[] { 1, 3, 16, 100 }) {
+			IntObjectCache<String> cache = new IntObjectCache<String>(capacity);
+			int maxKey = capacity * 4;
+
+			for (int i = 0; i < 20000; ++i) {
+				int key = 1 + random.nextInt(maxKey);
+				if (random.nextBoolean()) {
+					cache.put(key, value(key));
+					assertEquals(value(key), cache.get(key));
+				}
+				else {
+					String value = cache.get(key);
+					assertTrue(value == null || value.equals(value(key)));
+				}
+				assertTrue(cache.size() <= capacity);
+
+				if (i % 100 == 0) {
+					// every entry can still be found
+					int found = 0;
+					for (int k = 1; k <= maxKey; ++k) {
+						if (cache.get(k) != null) {
+							++found;
+						}
+					}
+					assertEquals(cache.size(), found);
+				}
+			}
+		}
+	}
+}